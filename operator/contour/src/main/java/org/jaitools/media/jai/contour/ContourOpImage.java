@@ -47,6 +47,7 @@ import org.jaitools.jts.Utils;
 import org.jaitools.media.jai.AttributeOpImage;
 import org.jaitools.numeric.CompareOp;
 import org.jaitools.numeric.Range;
+import org.jaitools.numeric.RangeMatcher;
 
 
 /**
@@ -95,6 +96,8 @@ public class ContourOpImage extends AttributeOpImage {
     private List<Double> noDataNumbers;
     /** List of Ranges to treat as NO_DATA */
     private List<Range<Double>> noDataRanges;
+    /** Compiled form of the NO_DATA values and ranges */
+    private RangeMatcher noDataMatcher;
 
     /** Whether to use strict NODATA exclusion */
     private final boolean strictNodata;
@@ -220,6 +223,7 @@ public class ContourOpImage extends AttributeOpImage {
                 }
             }
         } 
+        this.noDataMatcher = new RangeMatcher(noDataNumbers, noDataRanges);
 
         this.strictNodata = strictNodata;
         this.simplify = simplify;
@@ -733,18 +737,6 @@ public class ContourOpImage extends AttributeOpImage {
             return true;
         }
 
-        for (Double d : noDataNumbers) {
-            if (CompareOp.aequal(value, d)) {
-                return true;
-            }
-        }
-
-        for (Range r : noDataRanges) {
-            if (r.contains(value)) {
-                return true;
-            }
-        }
-
-        return false;
+        return noDataMatcher.contains(value);
     }
 }
@@ -83,8 +83,9 @@ public class KernelStatsOpImage extends AreaOpImage {
     private boolean maskDest;
 
     private Statistic[] stats;
-    private Double[] sampleData;
-    private Calculator functionTable;
+    private boolean ignoreNaN;
+    private double[] sampleData;
+    private double[] statValues;
     private Number nilValue;
 
 
@@ -195,11 +196,12 @@ public class KernelStatsOpImage extends AreaOpImage {
             this.maskDest = maskDest;
         }
 
-        this.functionTable = new Calculator(ignoreNaN);
+        this.ignoreNaN = ignoreNaN;
 
         this.nilValue = nilValue;
 
-        this.sampleData = new Double[kernelN];
+        this.sampleData = new double[kernelN];
+        this.statValues = new double[stats.length];
     }
 
     /**
@@ -311,13 +313,17 @@ public class KernelStatsOpImage extends AreaOpImage {
                     }
                 }
 
+                if (numSamples > 0) {
+                    SampleStats.calculate(sampleData, numSamples, ignoreNaN, stats, statValues, null);
+                }
+
                 for (int band = 0; band < destBands; band++) {
                     byte destBandData[] = destData[band];
                     int dstPixelOffset = destBandOffsets[band] + destPixelDelta + destLineDelta;
 
                     int val = nilValue.byteValue();
                     if (numSamples > 0) {
-                        double statValue = functionTable.call(stats[band], sampleData, numSamples);
+                        double statValue = statValues[band];
                         if (!Double.isNaN(statValue)) {
                             val = (int) (statValue + 0.5);
                             if (val < 0) {
@@ -380,13 +386,17 @@ public class KernelStatsOpImage extends AreaOpImage {
                     }
                 }
 
+                if (numSamples > 0) {
+                    SampleStats.calculate(sampleData, numSamples, ignoreNaN, stats, statValues, null);
+                }
+
                 for (int band = 0; band < destBands; band++) {
                     short destBandData[] = destData[band];
                     int dstPixelOffset = destBandOffsets[band] + destPixelDelta + destLineDelta;
 
                     int val = nilValue.shortValue();
                     if (numSamples > 0) {
-                        double statValue = functionTable.call(stats[band], sampleData, numSamples);
+                        double statValue = statValues[band];
                         if (!Double.isNaN(statValue)) {
                             val = (int) (statValue + 0.5);
                             if (val < Short.MIN_VALUE) {
@@ -449,13 +459,17 @@ public class KernelStatsOpImage extends AreaOpImage {
                     }
                 }
 
+                if (numSamples > 0) {
+                    SampleStats.calculate(sampleData, numSamples, ignoreNaN, stats, statValues, null);
+                }
+
                 for (int band = 0; band < destBands; band++) {
                     short destBandData[] = destData[band];
                     int dstPixelOffset = destBandOffsets[band] + destPixelDelta + destLineDelta;
 
                     int val = nilValue.shortValue();
                     if (numSamples > 0) {
-                        double statValue = functionTable.call(stats[band], sampleData, numSamples);
+                        double statValue = statValues[band];
                         if (!Double.isNaN(statValue)) {
                             val = (int) (statValue + 0.5);
                             if (val < 0) {
@@ -517,13 +531,17 @@ public class KernelStatsOpImage extends AreaOpImage {
                     }
                 }
 
+                if (numSamples > 0) {
+                    SampleStats.calculate(sampleData, numSamples, ignoreNaN, stats, statValues, null);
+                }
+
                 for (int band = 0; band < destBands; band++) {
                     int destBandData[] = destData[band];
                     int dstPixelOffset = destBandOffsets[band] + destPixelDelta + destLineDelta;
 
                     int val = nilValue.intValue();
                     if (numSamples > 0) {
-                        double statValue = functionTable.call(stats[band], sampleData, numSamples);
+                        double statValue = statValues[band];
                         if (!Double.isNaN(statValue)) {
                             val = (int) (statValue + 0.5);
                         }
@@ -580,13 +598,17 @@ public class KernelStatsOpImage extends AreaOpImage {
                     }
                 }
 
+                if (numSamples > 0) {
+                    SampleStats.calculate(sampleData, numSamples, ignoreNaN, stats, statValues, null);
+                }
+
                 for (int band = 0; band < destBands; band++) {
                     float destBandData[] = destData[band];
                     int dstPixelOffset = destBandOffsets[band] + destPixelDelta + destLineDelta;
 
                     float val = nilValue.floatValue();
                     if (numSamples > 0) {
-                        double statValue = functionTable.call(stats[band], sampleData, numSamples);
+                        double statValue = statValues[band];
                         if (!Double.isNaN(statValue)) {
                             val = (float) statValue;
                         }
@@ -643,13 +665,17 @@ public class KernelStatsOpImage extends AreaOpImage {
                     }
                 }
 
+                if (numSamples > 0) {
+                    SampleStats.calculate(sampleData, numSamples, ignoreNaN, stats, statValues, null);
+                }
+
                 for (int band = 0; band < destBands; band++) {
                     double destBandData[] = destData[band];
                     int dstPixelOffset = destBandOffsets[band] + destPixelDelta + destLineDelta;
 
                     double val = nilValue.doubleValue();
                     if (numSamples > 0) {
-                        double statValue = functionTable.call(stats[band], sampleData, numSamples);
+                        double statValue = statValues[band];
                         if (!Double.isNaN(statValue)) {
                             val = statValue;
                         }
@@ -666,69 +692,4 @@ public class KernelStatsOpImage extends AreaOpImage {
             destLineDelta += destScanlineStride;
         }
     }
-
-
-    /**
-     * This class handles preparation of sample data, passing calculation tasks
-     * to {@linkplain jaitools.utils.SampleStats} methods, and returning results
-     */
-    private static class Calculator {
-
-        private boolean ignoreNaN;
-
-        /**
-         * Constructor
-         * @param ignoreNaN specifies how to respond to NaN values
-         */
-        Calculator(boolean ignoreNaN) {
-            this.ignoreNaN = ignoreNaN;
-        }
-
-        /**
-         * Calculate the specified statistic on sample data
-         * @param stat the {@linkplain Statistic} constant for the desired statistic
-         * @param data the sample data
-         * @param n number of elements to use from the sample data array
-         * @return value of the statistic as a double (may be NaN)
-         */
-        public double call(Statistic stat, Double[] data, int n) {
-            Double[] values = null;
-            if (data.length == n) {
-                values = data;
-            } else {
-                values = new Double[n];
-                System.arraycopy(data, 0, values, 0, n);
-            }
-
-            switch (stat) {
-                case MAX:
-                    return SampleStats.max(values, ignoreNaN);
-
-                case MEAN:
-                    return SampleStats.mean(values, ignoreNaN);
-
-                case MEDIAN:
-                    return SampleStats.median(values, ignoreNaN);
-
-                case MIN:
-                    return SampleStats.min(values, ignoreNaN);
-
-                case RANGE:
-                    return SampleStats.range(values, ignoreNaN);
-
-                case SDEV:
-                    return SampleStats.sdev(values, ignoreNaN);
-                
-                case VARIANCE:
-                    return SampleStats.variance(values, ignoreNaN);
-
-                case SUM:
-                    return SampleStats.sum(values, ignoreNaN);
-
-                default:
-                throw new IllegalArgumentException("Unrecognized KernelStatstic arg");
-            }
-        }
-    }
 }
-
@@ -43,8 +43,8 @@ import javax.media.jai.RasterAccessor;
 import javax.media.jai.RasterFormatTag;
 
 import org.jaitools.CollectionFactory;
-import org.jaitools.numeric.CompareOp;
 import org.jaitools.numeric.Range;
+import org.jaitools.numeric.RangeMatcher;
 
 /**
  * An operator to perform masked convolution on a source image.
@@ -97,6 +97,8 @@ public class MaskedConvolveOpImage extends AreaOpImage {
     private final List<Double> noDataNumbers;
     /* List of Ranges to treat as NO_DATA */
     private final List<Range<Double>> noDataRanges;
+    /* Compiled form of the NO_DATA values and ranges */
+    private final RangeMatcher noDataMatcher;
     /*
      * The value to write to the destination when there is no
      * convolution result
@@ -235,11 +237,14 @@ public class MaskedConvolveOpImage extends AreaOpImage {
                             + "noDataValues Collection");
                 }
             }
+            noDataMatcher = new RangeMatcher(noDataNumbers, noDataRanges);
+
         } else {
             noDataDefined = false;
             this.strictNodata = false;
             noDataNumbers = null;
             noDataRanges = null;
+            noDataMatcher = null;
         }
     }
 
@@ -331,21 +336,7 @@ public class MaskedConvolveOpImage extends AreaOpImage {
      * @return {@code true} if a NODATA value; {@code false} otherwise
      */
     private boolean isNoData(double value) {
-        if (noDataDefined) {
-            for (Double d : noDataNumbers) {
-                if (CompareOp.aequal(value, d)) {
-                    return true;
-                }
-            }
-
-            for (Range r : noDataRanges) {
-                if (r.contains(value)) {
-                    return true;
-                }
-            }
-        }
-
-        return false;
+        return noDataDefined && noDataMatcher.contains(value);
     }
 
     private void convolveAsByteData(RasterAccessor srcAcc, RasterAccessor destAcc) {
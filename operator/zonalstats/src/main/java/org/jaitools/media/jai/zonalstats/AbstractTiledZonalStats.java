@@ -0,0 +1,277 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import javax.media.jai.PlanarImage;
+import javax.media.jai.ROI;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
+
+
+/**
+ * Base class for objects which calculate zonal statistics outside of the
+ * {@code ZonalStats} operator by scanning the data image tile by tile. Holds 
+ * the arguments, which have the same meaning as for the operator, and the
+ * layout of the data image tiles to be processed.
+ *
+ * @see IncrementalZonalStats
+ * @see StreamingZonalStats
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+abstract class AbstractTiledZonalStats {
+
+    final RenderedImage dataImage;
+    final RenderedImage zoneImage;
+    final Statistic[] stats;
+    final Integer[] srcBands;
+    final ROI roi;
+    final List<Range<Double>> ranges;
+    final Range.Type rangesType;
+    final List<Range<Double>> noDataRanges;
+
+    /** Area of the data image processed */
+    final Rectangle scanBounds;
+
+    // data image tiles intersecting scanBounds
+    private final int minTileX;
+    private final int minTileY;
+    private final int numTilesX;
+    private final int numTilesY;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dataImage the data image
+     * @param zoneImage an optional zone image of integral data type; if
+     *     {@code null} all data image pixels are in zone 0
+     * @param stats the statistics to calculate
+     * @param bands the data image bands to process; if {@code null} or empty
+     *     band 0 is processed
+     * @param roi an optional {@code ROI} for data image masking
+     * @param ranges an optional list of {@link Range} objects defining values to 
+     *     include or exclude (depending on {@code rangesType}) from the calculations
+     * @param rangesType whether the {@code ranges} are to be included or excluded;
+     *     if {@code null}, {@code Range.Type.EXCLUDE} is used
+     * @param noDataRanges an optional list of {@link Range} objects defining values
+     *     to treat as NODATA
+     * 
+     * @throws IllegalArgumentException if {@code dataImage} is {@code null}; if 
+     *     {@code stats} is {@code null} or empty; if a band index is invalid or if
+     *     the zone image is not of integral data type
+     */
+    AbstractTiledZonalStats(RenderedImage dataImage, RenderedImage zoneImage,
+            Statistic[] stats, Integer[] bands, ROI roi,
+            Collection<Range<Double>> ranges, Range.Type rangesType,
+            Collection<Range<Double>> noDataRanges) {
+
+        if (dataImage == null) {
+            throw new IllegalArgumentException("dataImage must not be null");
+        }
+        if (stats == null || stats.length == 0) {
+            throw new IllegalArgumentException("At least one statistic must be provided");
+        }
+        if (zoneImage != null) {
+            int dataType = zoneImage.getSampleModel().getDataType();
+            if (!(dataType == DataBuffer.TYPE_BYTE || dataType == DataBuffer.TYPE_INT
+                    || dataType == DataBuffer.TYPE_SHORT || dataType == DataBuffer.TYPE_USHORT)) {
+                throw new IllegalArgumentException("zoneImage must be of integral data type");
+            }
+        }
+
+        if (bands == null || bands.length == 0) {
+            bands = new Integer[] {0};
+        }
+        for (Integer b : bands) {
+            if (b == null || b < 0 || b >= dataImage.getSampleModel().getNumBands()) {
+                throw new IllegalArgumentException("Invalid band index: " + b);
+            }
+        }
+
+        this.dataImage = dataImage;
+        this.zoneImage = zoneImage;
+        this.roi = roi;
+
+        this.stats = new Statistic[stats.length];
+        System.arraycopy(stats, 0, this.stats, 0, stats.length);
+
+        this.srcBands = new Integer[bands.length];
+        System.arraycopy(bands, 0, this.srcBands, 0, bands.length);
+
+        // copy the ranges defensively
+        this.ranges = CollectionFactory.list();
+        if (ranges != null) {
+            for (Range<Double> r : ranges) {
+                this.ranges.add(new Range<Double>(r));
+            }
+        }
+        this.noDataRanges = CollectionFactory.list();
+        if (noDataRanges != null) {
+            for (Range<Double> r : noDataRanges) {
+                this.noDataRanges.add(new Range<Double>(r));
+            }
+        }
+
+        // as for the ZonalStats operator, ranges are excluded from zonal statistics
+        if (zoneImage != null || rangesType == null) {
+            this.rangesType = Range.Type.EXCLUDE;
+        } else {
+            this.rangesType = rangesType;
+        }
+
+        Rectangle bounds = getBounds(dataImage);
+        if (zoneImage != null) {
+            // data pixels without a corresponding zone pixel are ignored
+            bounds = bounds.intersection(getBounds(zoneImage));
+        }
+        scanBounds = bounds;
+
+        if (scanBounds.isEmpty()) {
+            minTileX = minTileY = numTilesX = numTilesY = 0;
+        } else {
+            minTileX = PlanarImage.XToTileX(scanBounds.x, 
+                    dataImage.getTileGridXOffset(), dataImage.getTileWidth());
+            minTileY = PlanarImage.YToTileY(scanBounds.y, 
+                    dataImage.getTileGridYOffset(), dataImage.getTileHeight());
+            numTilesX = PlanarImage.XToTileX(scanBounds.x + scanBounds.width - 1, 
+                    dataImage.getTileGridXOffset(), dataImage.getTileWidth()) - minTileX + 1;
+            numTilesY = PlanarImage.YToTileY(scanBounds.y + scanBounds.height - 1, 
+                    dataImage.getTileGridYOffset(), dataImage.getTileHeight()) - minTileY + 1;
+        }
+    }
+
+    /**
+     * Gets the number of data image tiles to be processed. Tiles are indexed
+     * from 0 in row-major order.
+     * 
+     * @return number of tiles
+     */
+    int getNumTiles() {
+        return numTilesX * numTilesY;
+    }
+
+    /**
+     * Gets the index of a data image tile.
+     * 
+     * @param tileX tile X ordinate
+     * @param tileY tile Y ordinate
+     * 
+     * @return the index, or -1 if the tile is not processed
+     */
+    int getTileIndex(int tileX, int tileY) {
+        final int i = tileX - minTileX;
+        final int j = tileY - minTileY;
+        if (i >= 0 && i < numTilesX && j >= 0 && j < numTilesY) {
+            return j * numTilesX + i;
+        }
+        return -1;
+    }
+
+    /**
+     * Gets the part of a data image tile within the area processed.
+     * 
+     * @param index tile index
+     * 
+     * @return tile area in image coordinates
+     */
+    Rectangle getTileArea(int index) {
+        final int tileX = minTileX + index % numTilesX;
+        final int tileY = minTileY + index / numTilesX;
+        return scanBounds.intersection(new Rectangle(
+                PlanarImage.tileXToX(tileX, dataImage.getTileGridXOffset(), dataImage.getTileWidth()),
+                PlanarImage.tileYToY(tileY, dataImage.getTileGridYOffset(), dataImage.getTileHeight()),
+                dataImage.getTileWidth(), dataImage.getTileHeight()));
+    }
+
+    /**
+     * Scans the part of a data image tile within the area processed.
+     * 
+     * @param index tile index
+     * 
+     * @return partial statistics for the tile
+     */
+    ZoneAccumulator scanTile(int index) {
+        ZoneAccumulator accumulator = createAccumulator();
+        ZonalStatsOpImage.accumulateRows(accumulator, dataImage, zoneImage, srcBands, roi, 
+                getTileArea(index));
+        return accumulator;
+    }
+
+    /**
+     * Creates an accumulator for per-zone statistics.
+     * 
+     * @return a new accumulator
+     */
+    ZoneAccumulator createAccumulator() {
+        return new ZoneAccumulator(stats, srcBands.length, ranges, rangesType, noDataRanges);
+    }
+
+    /**
+     * Copies statistics into a new {@code ZonalStats} object in the same 
+     * form as results of the {@code ZonalStats} operator.
+     * 
+     * @param zoneStats statistics by zone, in ascending zone order
+     * 
+     * @return the results
+     */
+    ZonalStats createResults(Map<Integer, StreamingSampleStats[]> zoneStats) {
+        ZonalStats zs = new ZonalStats();
+        if (zoneImage == null) {
+            StreamingSampleStats[] sss = zoneStats.get(0);
+            if (sss == null) {
+                sss = createAccumulator().get(0);
+            }
+            for (int k = 0; k < srcBands.length; k++) {
+                zs.setResults(srcBands[k], 0, sss[k], 
+                        ZonalStatsOpImage.getIncludedRanges(ranges, rangesType));
+            }
+
+        } else {
+            for (int k = 0; k < srcBands.length; k++) {
+                for (Map.Entry<Integer, StreamingSampleStats[]> e : zoneStats.entrySet()) {
+                    zs.setResults(srcBands[k], e.getKey(), e.getValue()[k]);
+                }
+            }
+        }
+        return zs;
+    }
+
+    private static Rectangle getBounds(RenderedImage image) {
+        return new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight());
+    }
+}
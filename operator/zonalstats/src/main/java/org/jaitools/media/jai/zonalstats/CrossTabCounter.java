@@ -0,0 +1,136 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import org.jaitools.numeric.LongCountMap;
+
+
+/**
+ * Counts pixels by combination of zone and class for {@link ZonalHistogramOpImage}.
+ * <p>
+ * Each zone and class pair is packed into a single {@code long} key and the 
+ * counts are held in a {@link LongCountMap}, so only the combinations which
+ * occur take up space and no objects are created per pixel.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class CrossTabCounter {
+
+    private final LongCountMap counts;
+
+    /**
+     * Creates a new, empty counter.
+     */
+    CrossTabCounter() {
+        counts = new LongCountMap();
+    }
+
+    /**
+     * Adds one to the count for a zone and class.
+     * 
+     * @param zone zone ID
+     * @param cls class value or bin index
+     */
+    void increment(int zone, int cls) {
+        counts.add(key(zone, cls), 1);
+    }
+
+    /**
+     * Adds the counts of another counter to this one.
+     * 
+     * @param other the other counter
+     */
+    void merge(CrossTabCounter other) {
+        counts.addAll(other.counts);
+    }
+
+    /**
+     * Gets the number of zone and class combinations counted.
+     * 
+     * @return number of combinations
+     */
+    int size() {
+        return counts.size();
+    }
+
+    /**
+     * Gets the keys of all combinations counted, in ascending order. 
+     * The order is that of zone and then class.
+     * 
+     * @return a new array of keys
+     */
+    long[] getSortedKeys() {
+        return counts.sortedKeys();
+    }
+
+    /**
+     * Gets the count for a key.
+     * 
+     * @param key the key
+     * 
+     * @return the count, or 0 if the key has not been counted
+     */
+    long getCount(long key) {
+        return counts.get(key);
+    }
+
+    /**
+     * Packs a zone and class into a key. The sign bit of the class is flipped
+     * so that ascending keys are in order of zone and then class.
+     * 
+     * @param zone zone ID
+     * @param cls class value or bin index
+     * 
+     * @return the key
+     */
+    static long key(int zone, int cls) {
+        return ((long) zone << 32) | ((cls ^ 0x80000000) & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Gets the zone from a key.
+     * 
+     * @param key the key
+     * 
+     * @return zone ID
+     */
+    static int zoneOf(long key) {
+        return (int) (key >> 32);
+    }
+
+    /**
+     * Gets the class from a key.
+     * 
+     * @param key the key
+     * 
+     * @return class value or bin index
+     */
+    static int classOf(long key) {
+        return (int) key ^ 0x80000000;
+    }
+}
@@ -0,0 +1,279 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.Shape;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Polygon;
+import com.vividsolutions.jts.geom.Polygonal;
+import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.geom.prep.PreparedGeometry;
+import com.vividsolutions.jts.geom.prep.PreparedGeometryFactory;
+import com.vividsolutions.jts.index.strtree.STRtree;
+
+import org.jaitools.imageutils.shape.LiteShape;
+import org.jaitools.jts.CoordinateSequence2D;
+
+/**
+ * Zones defined by polygonal geometries, for use by {@link ZonalStatsOpImage}
+ * as an alternative to a zone image. Geometries are in data image pixel 
+ * coordinates and may overlap.
+ * <p>
+ * The geometries are indexed with a JTS {@code STRtree} so that the zones
+ * overlapping an image tile can be found quickly. Each zone's coverage of a
+ * tile is then worked out in the same way as the {@code VectorBinarize}
+ * operation: tiles entirely inside or outside the geometry are identified with
+ * a prepared geometry, and other tiles are rasterized with Java2D, which
+ * includes a pixel if its centre is within the geometry (to within the 
+ * sub-pixel precision of the renderer).
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class GeometryZones {
+
+    /** The zone covers none of an area */
+    static final int OUTSIDE = 0;
+
+    /** The zone covers all of an area */
+    static final int INSIDE = 1;
+
+    /** The zone covers part of an area */
+    static final int PARTIAL = 2;
+
+    private final int[] ids;
+    private final Geometry[] geometries;
+    private final PreparedGeometry[] prepared;
+    private final STRtree index;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param zones polygonal geometries keyed by zone ID
+     * 
+     * @throws IllegalArgumentException if {@code zones} is {@code null} or empty,
+     *         or contains {@code null} keys or non-polygonal geometries
+     */
+    GeometryZones(Map<Integer, ? extends Geometry> zones) {
+        if (zones == null || zones.isEmpty()) {
+            throw new IllegalArgumentException("zones must not be null or empty");
+        }
+
+        final int n = zones.size();
+        ids = new int[n];
+        int k = 0;
+        for (Integer id : zones.keySet()) {
+            if (id == null) {
+                throw new IllegalArgumentException("zone IDs must not be null");
+            }
+            ids[k++] = id;
+        }
+        // zones are processed in order of ID
+        Arrays.sort(ids);
+
+        geometries = new Geometry[n];
+        prepared = new PreparedGeometry[n];
+        index = new STRtree();
+        for (int i = 0; i < n; i++) {
+            Geometry geom = zones.get(ids[i]);
+            if (!(geom instanceof Polygonal)) {
+                throw new IllegalArgumentException("zone " + ids[i] + " is not a polygonal geometry");
+            }
+            geometries[i] = geom;
+            prepared[i] = PreparedGeometryFactory.prepare(geom);
+            index.insert(geom.getEnvelopeInternal(), Integer.valueOf(i));
+        }
+        index.build();
+    }
+
+    /**
+     * Gets the number of zones.
+     * 
+     * @return number of zones
+     */
+    int size() {
+        return ids.length;
+    }
+
+    /**
+     * Gets the ID of a zone.
+     * 
+     * @param zone zone index (in ascending order of ID)
+     * 
+     * @return the zone ID
+     */
+    int getId(int zone) {
+        return ids[zone];
+    }
+
+    /**
+     * Finds the zones whose bounds overlap an image area.
+     * 
+     * @param area the image area
+     * 
+     * @return indices of candidate zones in ascending order
+     */
+    int[] getCandidates(Rectangle area) {
+        Envelope env = new Envelope(area.x, area.x + area.width, area.y, area.y + area.height);
+        List<?> items = index.query(env);
+
+        int[] zones = new int[items.size()];
+        for (int i = 0; i < zones.length; i++) {
+            zones[i] = (Integer) items.get(i);
+        }
+        Arrays.sort(zones);
+        return zones;
+    }
+
+    /**
+     * Creates an object to rasterize zones within image areas no larger
+     * than the given size. Each thread should use its own.
+     * 
+     * @param maxWidth maximum area width
+     * @param maxHeight maximum area height
+     * 
+     * @return a new rasterizer
+     */
+    Rasterizer createRasterizer(int maxWidth, int maxHeight) {
+        return new Rasterizer(maxWidth, maxHeight);
+    }
+
+
+    /**
+     * Works out the pixels of an image area covered by zones.
+     */
+    class Rasterizer {
+        private final BufferedImage buffer;
+        private final byte[] mask;
+        private final int stride;
+        private final GeometryFactory gf = new GeometryFactory();
+
+        // image position of the first buffer pixel for the last rasterized area
+        private final Point origin = new Point();
+
+        private Rasterizer(int maxWidth, int maxHeight) {
+            buffer = new BufferedImage(maxWidth, maxHeight, BufferedImage.TYPE_BYTE_GRAY);
+            mask = ((DataBufferByte) buffer.getRaster().getDataBuffer()).getData();
+            stride = maxWidth;
+        }
+
+        /**
+         * Works out the coverage of an image area by a zone.
+         * 
+         * @param zone zone index
+         * @param area the image area
+         * @param covered if the result is {@link #PARTIAL}, receives the part 
+         *        of the area within the bounds of the zone
+         * 
+         * @return {@link #OUTSIDE}, {@link #INSIDE} or {@link #PARTIAL}; in the 
+         *         last case {@link #isCovered(int, int)} gives the coverage of 
+         *         pixels within {@code covered}
+         */
+        int rasterize(int zone, Rectangle area, Rectangle covered) {
+            Envelope env = geometries[zone].getEnvelopeInternal();
+            int minX = Math.max(area.x, (int) Math.floor(env.getMinX()));
+            int minY = Math.max(area.y, (int) Math.floor(env.getMinY()));
+            int maxX = Math.min(area.x + area.width, (int) Math.ceil(env.getMaxX()));
+            int maxY = Math.min(area.y + area.height, (int) Math.ceil(env.getMaxY()));
+            if (minX >= maxX || minY >= maxY) {
+                return OUTSIDE;
+            }
+
+            Polygon testRect = getTestRect(area);
+            try {
+                PreparedGeometry pg = prepared[zone];
+                synchronized (pg) {
+                    if (pg.contains(testRect)) {
+                        return INSIDE;
+                    } else if (pg.disjoint(testRect)) {
+                        return OUTSIDE;
+                    }
+                }
+            } catch (TopologyException ex) {
+                // fall through to rasterizing the zone
+            }
+
+            covered.setBounds(minX, minY, maxX - minX, maxY - minY);
+            Shape shape = new LiteShape(geometries[zone]);
+            Graphics2D graphics = buffer.createGraphics();
+            try {
+                // pure stroke control so that pixel centres are tested exactly
+                graphics.setRenderingHint(RenderingHints.KEY_STROKE_CONTROL, 
+                        RenderingHints.VALUE_STROKE_PURE);
+                graphics.translate(-area.x, -area.y);
+                graphics.setClip(covered);
+                graphics.setColor(Color.BLACK);
+                graphics.fill(covered);
+                graphics.setColor(Color.WHITE);
+                graphics.fill(shape);
+            } finally {
+                graphics.dispose();
+            }
+
+            origin.setLocation(area.x, area.y);
+            return PARTIAL;
+        }
+
+        /**
+         * Tests if a pixel is covered by the zone last passed to
+         * {@link #rasterize(int, Rectangle, Rectangle)} with a 
+         * {@link #PARTIAL} result. The pixel must lie within the 
+         * {@code covered} area.
+         * 
+         * @param x pixel X ordinate
+         * @param y pixel Y ordinate
+         * 
+         * @return {@code true} if the pixel is covered
+         */
+        boolean isCovered(int x, int y) {
+            return mask[(y - origin.y) * stride + (x - origin.x)] != 0;
+        }
+
+        private Polygon getTestRect(Rectangle area) {
+            CoordinateSequence2D cs = new CoordinateSequence2D(5);
+            cs.setXY(0, area.x, area.y);
+            cs.setXY(1, area.x, area.y + area.height);
+            cs.setXY(2, area.x + area.width, area.y + area.height);
+            cs.setXY(3, area.x + area.width, area.y);
+            cs.setXY(4, area.x, area.y);
+            return gf.createPolygon(gf.createLinearRing(cs), null);
+        }
+    }
+}
@@ -0,0 +1,309 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.awt.image.TileObserver;
+import java.awt.image.WritableRenderedImage;
+import java.util.Collection;
+import java.util.Map;
+import java.util.SortedSet;
+
+import javax.media.jai.PlanarImage;
+import javax.media.jai.ROI;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
+
+
+/**
+ * Calculates zonal statistics for a data image which changes over time, such 
+ * as a {@link org.jaitools.tiledimage.DiskMemImage} being updated by a 
+ * simulation, without rescanning the whole image each time results are 
+ * requested.
+ * <p>
+ * Partial statistics are kept for each zone within each tile of the data image.
+ * If the data image (or the zone image) is a {@code WritableRenderedImage} this 
+ * object registers itself as a {@code TileObserver} and marks tiles as changed 
+ * when they are checked out or released for writing. Other changes can be 
+ * reported with the {@code invalidate} methods. When {@linkplain #getResults()} 
+ * is called, only the changed tiles are rescanned. The statistics of the zones 
+ * present in those tiles are then rebuilt by merging the partial statistics of 
+ * all tiles containing them, while the statistics of other zones are re-used.
+ * Since values can't be removed from statistics such as the median, this works 
+ * for all statistics.
+ * <pre><code>
+ * DiskMemImage dataImage = ...
+ * RenderedImage zoneImage = ...
+ * 
+ * IncrementalZonalStats izs = new IncrementalZonalStats(dataImage, zoneImage,
+ *         new Statistic[] {Statistic.MEAN, Statistic.MEDIAN}, new Integer[] {0}, 
+ *         null, null, null, null);
+ * 
+ * while (simulating) {
+ *     // update the data image
+ *     ...
+ *     ZonalStats zs = izs.getResults();
+ * }
+ * 
+ * izs.dispose();
+ * </code></pre>
+ * Arguments have the same meaning as for the {@code ZonalStats} operator. Since
+ * results are merged from the partial statistics of tiles, exact statistics are
+ * the same as the operator's but floating-point sums and moment-based statistics
+ * (e.g. mean, variance) may differ in the final decimal places, and approximate
+ * statistics (e.g. {@code APPROX_MEDIAN}) may differ slightly. Data to zone
+ * transforms, zone geometries and range-local statistics are not supported.
+ *
+ * @see ZonalStatsDescriptor
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class IncrementalZonalStats extends AbstractTiledZonalStats implements TileObserver {
+
+    // partial statistics by tile and changed tiles (guarded by the changed array)
+    private final ZoneAccumulator[] tileStats;
+    private final boolean[] changed;
+    private int numChanged;
+
+    // merged statistics by zone
+    private final Map<Integer, StreamingSampleStats[]> zoneStats;
+
+    /**
+     * Creates a new instance. Statistics are calculated when 
+     * {@linkplain #getResults()} is first called.
+     * 
+     * @param dataImage the data image
+     * @param zoneImage an optional zone image of integral data type; if
+     *     {@code null} all data image pixels are in zone 0
+     * @param stats the statistics to calculate
+     * @param bands the data image bands to process; if {@code null} or empty
+     *     band 0 is processed
+     * @param roi an optional {@code ROI} for data image masking
+     * @param ranges an optional list of {@link Range} objects defining values to 
+     *     include or exclude (depending on {@code rangesType}) from the calculations
+     * @param rangesType whether the {@code ranges} are to be included or excluded;
+     *     if {@code null}, {@code Range.Type.EXCLUDE} is used
+     * @param noDataRanges an optional list of {@link Range} objects defining values
+     *     to treat as NODATA
+     * 
+     * @throws IllegalArgumentException if {@code dataImage} is {@code null}; if 
+     *     {@code stats} is {@code null} or empty; if a band index is invalid; if
+     *     the zone image is not of integral data type or if the processor for a
+     *     statistic does not support merging (see 
+     *     {@link org.jaitools.numeric.AbstractProcessor#canMerge()})
+     */
+    public IncrementalZonalStats(RenderedImage dataImage, RenderedImage zoneImage,
+            Statistic[] stats, Integer[] bands, ROI roi,
+            Collection<Range<Double>> ranges, Range.Type rangesType,
+            Collection<Range<Double>> noDataRanges) {
+
+        super(dataImage, zoneImage, stats, bands, roi, ranges, rangesType, noDataRanges);
+        if (!createAccumulator().canMerge()) {
+            throw new IllegalArgumentException(
+                    "The processors for all statistics must support merging");
+        }
+
+        tileStats = new ZoneAccumulator[getNumTiles()];
+        changed = new boolean[tileStats.length];
+        invalidate();
+
+        zoneStats = CollectionFactory.sortedMap();
+
+        if (dataImage instanceof WritableRenderedImage) {
+            ((WritableRenderedImage) dataImage).addTileObserver(this);
+        }
+        if (zoneImage instanceof WritableRenderedImage && zoneImage != dataImage) {
+            ((WritableRenderedImage) zoneImage).addTileObserver(this);
+        }
+    }
+
+    /**
+     * Receives notification that a tile of the data image or zone image is 
+     * about to be written to, or has been released, and marks the affected 
+     * data image tiles as changed.
+     * 
+     * @param source the image
+     * @param tileX tile X ordinate
+     * @param tileY tile Y ordinate
+     * @param willBeWritable {@code true} if the tile is being checked out
+     *        for writing; {@code false} if it is being released
+     */
+    public void tileUpdate(WritableRenderedImage source, int tileX, int tileY, boolean willBeWritable) {
+        if (source == dataImage) {
+            synchronized (changed) {
+                setChanged(tileX, tileY);
+            }
+        }
+        if (source == zoneImage) {
+            invalidate(new Rectangle(
+                    PlanarImage.tileXToX(tileX, zoneImage.getTileGridXOffset(), zoneImage.getTileWidth()),
+                    PlanarImage.tileYToY(tileY, zoneImage.getTileGridYOffset(), zoneImage.getTileHeight()),
+                    zoneImage.getTileWidth(), zoneImage.getTileHeight()));
+        }
+    }
+
+    /**
+     * Marks all tiles as changed, so that the whole image will be scanned
+     * on the next call to {@linkplain #getResults()}.
+     */
+    public void invalidate() {
+        synchronized (changed) {
+            for (int i = 0; i < changed.length; i++) {
+                changed[i] = true;
+            }
+            numChanged = changed.length;
+        }
+    }
+
+    /**
+     * Marks the data image tiles which intersect the given bounds as changed.
+     * This can be used when the data image is changed by means which don't 
+     * notify tile observers.
+     * 
+     * @param bounds bounds of the changed area in image coordinates
+     */
+    public void invalidate(Rectangle bounds) {
+        Rectangle r = scanBounds.intersection(bounds);
+        if (r.isEmpty()) {
+            return;
+        }
+
+        final int ox = dataImage.getTileGridXOffset();
+        final int oy = dataImage.getTileGridYOffset();
+        final int tw = dataImage.getTileWidth();
+        final int th = dataImage.getTileHeight();
+        synchronized (changed) {
+            for (int tileY = PlanarImage.YToTileY(r.y, oy, th); 
+                    tileY <= PlanarImage.YToTileY(r.y + r.height - 1, oy, th); tileY++) {
+                for (int tileX = PlanarImage.XToTileX(r.x, ox, tw); 
+                        tileX <= PlanarImage.XToTileX(r.x + r.width - 1, ox, tw); tileX++) {
+                    setChanged(tileX, tileY);
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the current statistics, rescanning tiles which have changed since
+     * the previous call.
+     * 
+     * @return the results as a new instance of {@code ZonalStats}
+     */
+    public synchronized ZonalStats getResults() {
+        update();
+        return createResults(zoneStats);
+    }
+
+    /**
+     * Stops observing the data and zone images. This object should not 
+     * be used afterwards.
+     */
+    public void dispose() {
+        if (dataImage instanceof WritableRenderedImage) {
+            ((WritableRenderedImage) dataImage).removeTileObserver(this);
+        }
+        if (zoneImage instanceof WritableRenderedImage) {
+            ((WritableRenderedImage) zoneImage).removeTileObserver(this);
+        }
+    }
+
+    /**
+     * Rescans changed tiles and rebuilds the statistics of the zones 
+     * which are, or were, present in them.
+     */
+    private void update() {
+        boolean[] toScan = null;
+        synchronized (changed) {
+            if (numChanged > 0) {
+                toScan = new boolean[changed.length];
+                System.arraycopy(changed, 0, toScan, 0, changed.length);
+                for (int i = 0; i < changed.length; i++) {
+                    changed[i] = false;
+                }
+                numChanged = 0;
+            }
+        }
+        if (toScan == null) {
+            return;
+        }
+
+        SortedSet<Integer> affectedZones = CollectionFactory.sortedSet();
+        for (int i = 0; i < toScan.length; i++) {
+            if (toScan[i]) {
+                if (tileStats[i] != null) {
+                    addAll(affectedZones, tileStats[i].getZones());
+                }
+                tileStats[i] = scanTile(i);
+                addAll(affectedZones, tileStats[i].getZones());
+            }
+        }
+
+        ZoneAccumulator merged = createAccumulator();
+        for (ZoneAccumulator tileAcc : tileStats) {
+            for (int zone : tileAcc.getZones()) {
+                if (affectedZones.contains(zone)) {
+                    StreamingSampleStats[] dest = merged.get(zone);
+                    StreamingSampleStats[] src = tileAcc.find(zone);
+                    for (int k = 0; k < srcBands.length; k++) {
+                        dest[k].merge(src[k]);
+                    }
+                }
+            }
+        }
+
+        for (Integer zone : affectedZones) {
+            StreamingSampleStats[] sss = merged.find(zone);
+            if (sss == null) {
+                zoneStats.remove(zone);
+            } else {
+                zoneStats.put(zone, sss);
+            }
+        }
+    }
+
+    /*
+     * Must be called while holding the lock on the changed array.
+     */
+    private void setChanged(int tileX, int tileY) {
+        final int index = getTileIndex(tileX, tileY);
+        if (index >= 0 && !changed[index]) {
+            changed[index] = true;
+            numChanged++ ;
+        }
+    }
+
+    private static void addAll(SortedSet<Integer> set, int[] values) {
+        for (int value : values) {
+            set.add(value);
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.RenderedImage;
+import java.util.Arrays;
+
+import javax.media.jai.ROI;
+import javax.media.jai.ROIShape;
+
+import org.jaitools.imageutils.ROIGeometry;
+
+/**
+ * Provides ROI membership for the lines of an image area, working out the
+ * status of each tile that the area overlaps rather than testing each pixel.
+ * Used by {@link ZonalStatsOpImage}.
+ * <p>
+ * Pixel positions are tested as with {@code roi.contains(x, y)}. For 
+ * {@link ROIGeometry} and {@link ROIShape} objects, the area of each tile is 
+ * first tested against the ROI: tiles entirely inside need no further tests
+ * and tiles entirely outside can be skipped. Tiles on the ROI boundary are 
+ * rasterized to a mask by recursively dividing them into blocks which are 
+ * classified in the same way, down to a small block size at which individual
+ * positions are tested. For other types of ROI every position is tested.
+ * <p>
+ * ROI objects may not be thread-safe (e.g. {@code ROIGeometry} reuses a test
+ * point) so all queries are synchronized on the ROI. Instances of this 
+ * class are not thread-safe and each thread should use its own.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class ROITileMask {
+
+    /** No positions in a line or block are in the ROI */
+    static final int OUTSIDE = 0;
+
+    /** All positions in a line or block are in the ROI */
+    static final int INSIDE = 1;
+
+    /** Some positions in a line or block may be in the ROI */
+    static final int PARTIAL = 2;
+
+    /* Blocks with no more pixels than this are tested pixel by pixel */
+    private static final int MIN_BLOCK_PIXELS = 64;
+
+    private final ROI roi;
+    private final boolean geometric;
+    private final Rectangle bounds;
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int tileGridXOffset;
+    private final int tileGridYOffset;
+
+    // image columns at the start of each tile column within the bounds,
+    // plus the end of the bounds
+    private final int minTileX;
+    private final int[] segmentX;
+
+    // state of the current tile row
+    private int currentTileY;
+    private final int[] segmentStatus;
+    private final boolean[][][] segmentMasks;
+    private int rowStatus;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param roi the ROI
+     * @param image the image whose tile layout will be used
+     * @param bounds the area of the image to be processed
+     */
+    ROITileMask(ROI roi, RenderedImage image, Rectangle bounds) {
+        this.roi = roi;
+        this.geometric = roi instanceof ROIGeometry || roi instanceof ROIShape;
+        this.bounds = new Rectangle(bounds);
+
+        final int tw = image.getTileWidth();
+        final int ox = image.getTileGridXOffset();
+        this.tileWidth = tw;
+        this.tileHeight = image.getTileHeight();
+        this.tileGridXOffset = ox;
+        this.tileGridYOffset = image.getTileGridYOffset();
+
+        this.minTileX = tileIndex(bounds.x, ox, tw);
+        final int maxTileX = tileIndex(bounds.x + bounds.width - 1, ox, tw);
+        final int numSegments = maxTileX - minTileX + 1;
+
+        segmentX = new int[numSegments + 1];
+        segmentX[0] = bounds.x;
+        for (int i = 1; i < numSegments; i++) {
+            segmentX[i] = ox + (minTileX + i) * tw;
+        }
+        segmentX[numSegments] = bounds.x + bounds.width;
+
+        segmentStatus = new int[numSegments];
+        segmentMasks = new boolean[numSegments][][];
+        currentTileY = Integer.MIN_VALUE;
+    }
+
+    /**
+     * Gets the ROI membership of the positions in a line of the image area.
+     * 
+     * @param y the line
+     * @param dest receives the membership of each position in the line; 
+     *        only set if the return value is {@link #PARTIAL}
+     * 
+     * @return {@link #OUTSIDE} if no positions are in the ROI; {@link #INSIDE} 
+     *         if all positions are in the ROI; otherwise {@link #PARTIAL}
+     */
+    int getRow(int y, boolean[] dest) {
+        return getRow(y, bounds.x, bounds.width, dest);
+    }
+
+    /**
+     * Gets the ROI membership of the positions in part of a line of the
+     * image area, such as the part within one tile.
+     * 
+     * @param y the line
+     * @param x the first position, which must be within the area
+     * @param width the number of positions, which must be within the area
+     * @param dest receives the membership of each position, starting at
+     *        index 0; only set if the return value is {@link #PARTIAL}
+     * 
+     * @return {@link #OUTSIDE} if no positions are in the ROI; {@link #INSIDE} 
+     *         if all positions are in the ROI; otherwise {@link #PARTIAL}
+     */
+    int getRow(int y, int x, int width, boolean[] dest) {
+        final int tileY = tileIndex(y, tileGridYOffset, tileHeight);
+        if (tileY != currentTileY) {
+            classifyTileRow(tileY);
+            currentTileY = tileY;
+        }
+        if (rowStatus != PARTIAL) {
+            return rowStatus;
+        }
+
+        // segments overlapping the positions
+        final int first = tileIndex(x, tileGridXOffset, tileWidth) - minTileX;
+        final int end = x + width;
+        boolean allInside = true;
+        boolean allOutside = true;
+        for (int i = first; i < segmentStatus.length && segmentX[i] < end; i++) {
+            allInside &= segmentStatus[i] == INSIDE;
+            allOutside &= segmentStatus[i] == OUTSIDE;
+        }
+        if (allInside) {
+            return INSIDE;
+        } else if (allOutside) {
+            return OUTSIDE;
+        }
+
+        final int tileMinY = Math.max(bounds.y, tileGridYOffset + tileY * tileHeight);
+        for (int i = first; i < segmentStatus.length && segmentX[i] < end; i++) {
+            final int x0 = Math.max(x, segmentX[i]);
+            final int x1 = Math.min(end, segmentX[i + 1]);
+            switch (segmentStatus[i]) {
+                case OUTSIDE:
+                    Arrays.fill(dest, x0 - x, x1 - x, false);
+                    break;
+
+                case INSIDE:
+                    Arrays.fill(dest, x0 - x, x1 - x, true);
+                    break;
+
+                default:
+                    System.arraycopy(segmentMasks[i][y - tileMinY], x0 - segmentX[i], 
+                            dest, x0 - x, x1 - x0);
+            }
+        }
+
+        return PARTIAL;
+    }
+
+    /**
+     * Classifies each tile in a row of tiles and prepares masks for those 
+     * on the ROI boundary.
+     */
+    private void classifyTileRow(int tileY) {
+        final int minY = Math.max(bounds.y, tileGridYOffset + tileY * tileHeight);
+        final int maxY = Math.min(bounds.y + bounds.height, tileGridYOffset + (tileY + 1) * tileHeight);
+        final int h = maxY - minY;
+
+        boolean allInside = true;
+        boolean allOutside = true;
+        for (int i = 0; i < segmentStatus.length; i++) {
+            final int x = segmentX[i];
+            final int w = segmentX[i + 1] - x;
+
+            int status = classify(x, minY, w, h);
+            if (status == PARTIAL) {
+                boolean[][] mask = segmentMasks[i];
+                if (mask == null || mask.length < h) {
+                    mask = new boolean[tileHeight][w];
+                    segmentMasks[i] = mask;
+                }
+                fillMask(mask, 0, 0, x, minY, w, h);
+            }
+
+            segmentStatus[i] = status;
+            allInside &= status == INSIDE;
+            allOutside &= status == OUTSIDE;
+        }
+
+        rowStatus = allOutside ? OUTSIDE : (allInside ? INSIDE : PARTIAL);
+    }
+
+    /**
+     * Sets ROI membership for a block of positions by dividing it into 
+     * smaller blocks until each is either inside or outside the ROI, or
+     * small enough to test its positions individually.
+     */
+    private void fillMask(boolean[][] mask, int maskX, int maskY, int x, int y, int w, int h) {
+        if (w * h <= MIN_BLOCK_PIXELS || !geometric) {
+            synchronized (roi) {
+                for (int j = 0; j < h; j++) {
+                    for (int i = 0; i < w; i++) {
+                        mask[maskY + j][maskX + i] = roi.contains(x + i, y + j);
+                    }
+                }
+            }
+            return;
+        }
+
+        // halve the block along its longer side
+        final int dx = w >= h ? w / 2 : 0;
+        final int dy = w >= h ? 0 : h / 2;
+
+        fillBlock(mask, maskX, maskY, x, y, dx > 0 ? dx : w, dy > 0 ? dy : h);
+        fillBlock(mask, maskX + dx, maskY + dy, x + dx, y + dy, w - dx, h - dy);
+    }
+
+    private void fillBlock(boolean[][] mask, int maskX, int maskY, int x, int y, int w, int h) {
+        switch (classify(x, y, w, h)) {
+            case OUTSIDE:
+                for (int j = 0; j < h; j++) {
+                    Arrays.fill(mask[maskY + j], maskX, maskX + w, false);
+                }
+                break;
+
+            case INSIDE:
+                for (int j = 0; j < h; j++) {
+                    Arrays.fill(mask[maskY + j], maskX, maskX + w, true);
+                }
+                break;
+
+            default:
+                fillMask(mask, maskX, maskY, x, y, w, h);
+        }
+    }
+
+    /**
+     * Classifies a block of image positions. The area tested against the ROI 
+     * extends half a pixel beyond the positions on each side, so that all of
+     * the positions are interior to it.
+     */
+    private int classify(int x, int y, int w, int h) {
+        if (!geometric) {
+            return PARTIAL;
+        }
+
+        Rectangle2D area = new Rectangle2D.Double(x - 0.5, y - 0.5, w, h);
+        synchronized (roi) {
+            if (!roi.intersects(area)) {
+                return OUTSIDE;
+            }
+            if (roi.contains(area)) {
+                return INSIDE;
+            }
+        }
+        return PARTIAL;
+    }
+
+    private static int tileIndex(int pos, int offset, int tileSize) {
+        return (int) Math.floor((double) (pos - offset) / tileSize);
+    }
+}
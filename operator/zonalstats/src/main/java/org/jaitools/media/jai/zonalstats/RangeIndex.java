@@ -0,0 +1,184 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import org.jaitools.numeric.DoubleRange;
+import org.jaitools.numeric.NumberOperations;
+import org.jaitools.numeric.Range;
+
+/**
+ * Finds which of a list of ranges contain a data value. Used by 
+ * {@link ZonalStatsOpImage} to route each value to the statistics for its
+ * range when calculating range-local statistics in a single pass.
+ * <p>
+ * Each range is tested as a {@link DoubleRange}, so membership is decided
+ * without boxing and exactly as for a {@code StreamingSampleStats} object
+ * given that range alone. When the ranges do not overlap and their lower bounds are 
+ * separated by more than twice the comparison tolerance (e.g. the adjacent
+ * bins of a histogram), a value can only be contained in the range found 
+ * with a binary search over the sorted lower bounds or in one of its 
+ * neighbours. Otherwise all ranges are tested.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class RangeIndex {
+
+    private final DoubleRange[] primRanges;
+
+    // range indices in order of lower bound, and the sorted lower bounds;
+    // null if the ranges overlap or are not well separated
+    private final int[] order;
+    private final double[] lowerBounds;
+
+    /**
+     * Creates a new index.
+     * 
+     * @param ranges the ranges
+     */
+    RangeIndex(final List<Range<Double>> ranges) {
+        final int n = ranges.size();
+        primRanges = new DoubleRange[n];
+        for (int i = 0; i < n; i++) {
+            primRanges[i] = DoubleRange.fromRange(ranges.get(i));
+        }
+
+        Integer[] sorted = new Integer[n];
+        boolean separated = true;
+        for (int i = 0; i < n; i++) {
+            sorted[i] = i;
+            Range<Double> r = ranges.get(i);
+            separated &= (r.isMinNegInf() || r.getMin() != null)
+                    && (r.isMaxInf() || r.getMax() != null);
+        }
+
+        if (separated) {
+            Arrays.sort(sorted, new Comparator<Integer>() {
+                public int compare(Integer i1, Integer i2) {
+                    return Double.compare(lower(ranges.get(i1)), lower(ranges.get(i2)));
+                }
+            });
+
+            final double gap = 2 * NumberOperations.getDoubleTolerance();
+            for (int i = 1; i < n && separated; i++) {
+                Range<Double> prev = ranges.get(sorted[i - 1]);
+                Range<Double> r = ranges.get(sorted[i]);
+                separated = lower(r) >= upper(prev) && lower(r) - lower(prev) > gap;
+            }
+        }
+
+        if (separated) {
+            order = new int[n];
+            lowerBounds = new double[n];
+            for (int i = 0; i < n; i++) {
+                order[i] = sorted[i];
+                lowerBounds[i] = lower(ranges.get(sorted[i]));
+            }
+        } else {
+            order = null;
+            lowerBounds = null;
+        }
+    }
+
+    /**
+     * Gets the number of ranges.
+     * 
+     * @return number of ranges
+     */
+    int size() {
+        return primRanges.length;
+    }
+
+    /**
+     * Finds the ranges which contain a value.
+     * 
+     * @param value the value
+     * @param dest receives the indices, in the list passed to the constructor,
+     *        of the matching ranges; must be at least as long as the number
+     *        of ranges
+     * 
+     * @return the number of matching ranges
+     */
+    int find(double value, int[] dest) {
+        if (order == null) {
+            int count = 0;
+            for (int i = 0; i < primRanges.length; i++) {
+                if (primRanges[i].contains(value)) {
+                    dest[count++] = i;
+                }
+            }
+            return count;
+        }
+
+        if (Double.isNaN(value)) {
+            return 0;
+        }
+
+        // last range whose lower bound is not above the value; the 
+        // neighbouring ranges are also checked to allow for tolerance
+        int lo = 0;
+        int hi = lowerBounds.length - 1;
+        int index = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (lowerBounds[mid] <= value) {
+                index = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        // within tolerance a value at a shared bound can be in two ranges;
+        // matches are returned in list order
+        int count = 0;
+        final int last = Math.min(index + 1, order.length - 1);
+        for (int i = Math.max(index - 1, 0); i <= last; i++) {
+            if (primRanges[order[i]].contains(value)) {
+                int pos = count++;
+                while (pos > 0 && dest[pos - 1] > order[i]) {
+                    dest[pos] = dest[pos - 1];
+                    pos--;
+                }
+                dest[pos] = order[i];
+            }
+        }
+        return count;
+    }
+
+    private static double lower(Range<Double> r) {
+        return r.isMinNegInf() ? Double.NEGATIVE_INFINITY : r.getMin();
+    }
+
+    private static double upper(Range<Double> r) {
+        return r.isMaxInf() ? Double.POSITIVE_INFINITY : r.getMax();
+    }
+}
@@ -87,9 +87,13 @@ public class Result {
      * Get the ranges (if defined) that were used to filter data image
      * values for inclusion in the calculation of this result.
      * 
-     * @return ranges used to filter data image values
+     * @return ranges used to filter data image values (an empty collection
+     *         if none were used)
      */
     public Collection<Range> getRanges() {
+        if (ranges == null) {
+            return Collections.emptyList();
+        }
         return Collections.unmodifiableCollection(ranges);
     }
 
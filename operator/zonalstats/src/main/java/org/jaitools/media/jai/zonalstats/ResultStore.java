@@ -0,0 +1,359 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.LongCountMap;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+
+/**
+ * Column-oriented storage for the results of the ZonalStats operator, used
+ * by {@link ZonalStats}. Values and counters are held in primitive arrays, 
+ * one element per result, and results are indexed by zone and by the 
+ * combination of band, zone and statistic so that they can be found without
+ * scanning the whole store.
+ * <p>
+ * Statistics are stored as codes which index a table of the statistics
+ * held by this store, in order of first use, rather than as enum ordinals
+ * which would change if constants were added to {@code Statistic}.
+ * <p>
+ * Results are kept in the order in which they were added, and lookups return
+ * row numbers in that order.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class ResultStore {
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    private int size;
+    private int[] bands;
+    private int[] zones;
+    private byte[] stats;
+    private double[] values;
+    private long[] numOffered;
+    private long[] numAccepted;
+    private long[] numNaN;
+    private long[] numNoData;
+    private List<Range>[] ranges;
+
+    // statistics in order of first use, and their codes
+    private final List<Statistic> statTable = CollectionFactory.list();
+    private final Map<Statistic, Integer> statCodes = 
+            new EnumMap<Statistic, Integer>(Statistic.class);
+
+    // chains of rows with the same key (band, zone and statistic) and the same 
+    // zone; the maps hold the first and last row of each chain plus one
+    private int[] nextWithKey;
+    private int[] nextInZone;
+    private final LongCountMap keyIndex = new LongCountMap();
+    private final LongCountMap keyTails = new LongCountMap();
+    private final LongCountMap zoneIndex = new LongCountMap();
+    private final LongCountMap zoneTails = new LongCountMap();
+
+    // distinct zones and bands, sorted; rebuilt when results are added
+    private int[] sortedZones;
+    private int[] sortedBands;
+
+    /**
+     * Creates an empty store.
+     */
+    ResultStore() {
+        allocate(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds a result.
+     * 
+     * @param band data image band
+     * @param zone zone ID
+     * @param stat statistic
+     * @param rangeList ranges used to filter data values (may be {@code null})
+     * @param value statistic value ({@code null} is stored as {@code Double.NaN})
+     * @param offered number of values offered
+     * @param accepted number of values accepted
+     * @param nan number of NaN values
+     * @param noData number of NODATA values
+     */
+    void add(int band, int zone, Statistic stat, List<Range> rangeList, Double value,
+            long offered, long accepted, long nan, long noData) {
+
+        if (size == bands.length) {
+            allocate(2 * size);
+        }
+
+        final int row = size++ ;
+        bands[row] = band;
+        zones[row] = zone;
+        Integer code = statCodes.get(stat);
+        if (code == null) {
+            code = statTable.size();
+            statTable.add(stat);
+            statCodes.put(stat, code);
+        }
+        stats[row] = code.byteValue();
+        values[row] = value == null ? Double.NaN : value;
+        numOffered[row] = offered;
+        numAccepted[row] = accepted;
+        numNaN[row] = nan;
+        numNoData[row] = noData;
+        ranges[row] = rangeList;
+
+        nextWithKey[row] = -1;
+        nextInZone[row] = -1;
+        link(keyIndex, keyTails, key(band, zone, code), row, nextWithKey);
+        link(zoneIndex, zoneTails, zone, row, nextInZone);
+
+        sortedZones = null;
+        sortedBands = null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    int getBand(int row) {
+        return bands[row];
+    }
+
+    int getZone(int row) {
+        return zones[row];
+    }
+
+    Statistic getStatistic(int row) {
+        return statTable.get(getStatisticCode(row));
+    }
+
+    /**
+     * Gets the code of the statistic for a row, which is its index
+     * in the list returned by {@link #getStatisticTable()}.
+     */
+    int getStatisticCode(int row) {
+        return stats[row] & 0xFF;
+    }
+
+    /**
+     * Gets the statistics held by this store in order of first use.
+     * 
+     * @return an unmodifiable list of statistics
+     */
+    List<Statistic> getStatisticTable() {
+        return Collections.unmodifiableList(statTable);
+    }
+
+    double getValue(int row) {
+        return values[row];
+    }
+
+    long getNumOffered(int row) {
+        return numOffered[row];
+    }
+
+    long getNumAccepted(int row) {
+        return numAccepted[row];
+    }
+
+    long getNumNaN(int row) {
+        return numNaN[row];
+    }
+
+    long getNumNoData(int row) {
+        return numNoData[row];
+    }
+
+    List<Range> getRanges(int row) {
+        return ranges[row];
+    }
+
+    /**
+     * Creates a {@code Result} object for a row.
+     * 
+     * @param row the row
+     * 
+     * @return a new {@code Result}
+     */
+    Result getResult(int row) {
+        return new Result(bands[row], zones[row], getStatistic(row), ranges[row],
+                values[row], numOffered[row], numAccepted[row], numNaN[row], numNoData[row]);
+    }
+
+    /**
+     * Finds the first row (in order of addition) with the given band, zone
+     * and statistic.
+     * 
+     * @return the row or -1 if there is none
+     */
+    int find(int band, int zone, Statistic stat) {
+        Integer code = statCodes.get(stat);
+        return code == null ? -1 : (int) keyIndex.get(key(band, zone, code)) - 1;
+    }
+
+    /**
+     * Gets the next row with the same band, zone and statistic as the given row.
+     * 
+     * @return the row or -1 if there is none
+     */
+    int nextWithKey(int row) {
+        return nextWithKey[row];
+    }
+
+    /**
+     * Finds the first row (in order of addition) for the given zone.
+     * 
+     * @return the row or -1 if there is none
+     */
+    int findZone(int zone) {
+        return (int) zoneIndex.get(zone) - 1;
+    }
+
+    /**
+     * Gets the next row with the same zone as the given row.
+     * 
+     * @return the row or -1 if there is none
+     */
+    int nextInZone(int row) {
+        return nextInZone[row];
+    }
+
+    /**
+     * Gets the distinct zones in ascending order.
+     * 
+     * @return zone IDs (the array must not be modified)
+     */
+    int[] getZones() {
+        if (sortedZones == null) {
+            sortedZones = distinct(zones);
+        }
+        return sortedZones;
+    }
+
+    /**
+     * Gets the distinct bands in ascending order.
+     * 
+     * @return band indices (the array must not be modified)
+     */
+    int[] getBands() {
+        if (sortedBands == null) {
+            sortedBands = distinct(bands);
+        }
+        return sortedBands;
+    }
+
+    private int[] distinct(int[] column) {
+        int[] sorted = new int[size];
+        System.arraycopy(column, 0, sorted, 0, size);
+        Arrays.sort(sorted);
+
+        int n = 0;
+        for (int i = 0; i < size; i++) {
+            if (n == 0 || sorted[i] != sorted[n - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+
+        int[] result = new int[n];
+        System.arraycopy(sorted, 0, result, 0, n);
+        return result;
+    }
+
+    /*
+     * Appends a row to the chain of rows for a key.
+     */
+    private void link(LongCountMap heads, LongCountMap tails, long key, int row, int[] next) {
+        int tail = (int) tails.get(key) - 1;
+        if (tail < 0) {
+            heads.put(key, row + 1);
+        } else {
+            next[tail] = row;
+        }
+        tails.put(key, row + 1);
+    }
+
+    private static long key(int band, int zone, int statCode) {
+        // band and statistic code share the high word
+        long high = ((long) band << 8) | statCode;
+        return (high << 32) | (zone & 0xFFFFFFFFL);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        bands = grow(bands, capacity);
+        zones = grow(zones, capacity);
+        values = grow(values, capacity);
+        numOffered = grow(numOffered, capacity);
+        numAccepted = grow(numAccepted, capacity);
+        numNaN = grow(numNaN, capacity);
+        numNoData = grow(numNoData, capacity);
+        nextWithKey = grow(nextWithKey, capacity);
+        nextInZone = grow(nextInZone, capacity);
+
+        byte[] s = new byte[capacity];
+        if (stats != null) {
+            System.arraycopy(stats, 0, s, 0, size);
+        }
+        stats = s;
+
+        List<Range>[] r = new List[capacity];
+        if (ranges != null) {
+            System.arraycopy(ranges, 0, r, 0, size);
+        }
+        ranges = r;
+    }
+
+    private int[] grow(int[] a, int capacity) {
+        int[] b = new int[capacity];
+        if (a != null) {
+            System.arraycopy(a, 0, b, 0, size);
+        }
+        return b;
+    }
+
+    private long[] grow(long[] a, int capacity) {
+        long[] b = new long[capacity];
+        if (a != null) {
+            System.arraycopy(a, 0, b, 0, size);
+        }
+        return b;
+    }
+
+    private double[] grow(double[] a, int capacity) {
+        double[] b = new double[capacity];
+        if (a != null) {
+            System.arraycopy(a, 0, b, 0, size);
+        }
+        return b;
+    }
+
+}
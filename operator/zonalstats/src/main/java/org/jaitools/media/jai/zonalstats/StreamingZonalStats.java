@@ -0,0 +1,256 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.image.RenderedImage;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.media.jai.ROI;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
+
+
+/**
+ * Calculates zonal statistics as a task which reports its progress, can be 
+ * cancelled, and can provide partial results while it runs. This is an 
+ * alternative to the {@code ZonalStats} operator, which calculates statistics 
+ * when its results property is first requested and provides no results until
+ * the whole data image has been scanned.
+ * <p>
+ * The data image is processed one tile at a time, in row-major order of the tile
+ * grid. Each tile is requested once and no reference to it is kept afterwards, 
+ * so the memory used is bounded by the tile cache of the images concerned (e.g.
+ * a {@link org.jaitools.tilecache.DiskMemTileCache} can swap processed tiles
+ * to disk) rather than by the size of the data image.
+ * <p>
+ * Progress and results are reported to {@link ZonalStatsListener}s. If a
+ * checkpoint interval is set, listeners also receive partial results each time
+ * that number of tiles has been processed. Processing can be cancelled by
+ * calling {@linkplain #cancel()} or by interrupting the thread which is running 
+ * it; it stops before the next tile.
+ * <pre><code>
+ * StreamingZonalStats szs = new StreamingZonalStats(dataImage, zoneImage,
+ *         new Statistic[] {Statistic.MEAN, Statistic.SDEV}, null, 
+ *         null, null, null, null);
+ * szs.addListener(myListener);
+ * szs.setCheckpointInterval(100);
+ * 
+ * // run in the current thread...
+ * ZonalStats zs = szs.call();
+ * 
+ * // or in the background
+ * Future&lt;ZonalStats&gt; future = executor.submit(szs);
+ * </code></pre>
+ * Arguments have the same meaning as for the {@code ZonalStats} operator. Values
+ * are offered to the statistics in tile order rather than image line order, so 
+ * while exact statistics are the same as the operator's, floating-point sums and
+ * moment-based statistics (e.g. mean, variance) may differ in the final decimal
+ * places and approximate statistics (e.g. {@code APPROX_MEDIAN}) may differ 
+ * slightly. Data to zone transforms, zone geometries and range-local statistics
+ * are not supported.
+ *
+ * @see ZonalStatsDescriptor
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class StreamingZonalStats extends AbstractTiledZonalStats implements Callable<ZonalStats> {
+
+    private final List<ZonalStatsListener> listeners;
+    private volatile int checkpointInterval;
+    private volatile boolean cancelled;
+
+    /**
+     * Creates a new instance.
+     * 
+     * @param dataImage the data image
+     * @param zoneImage an optional zone image of integral data type; if
+     *     {@code null} all data image pixels are in zone 0
+     * @param stats the statistics to calculate
+     * @param bands the data image bands to process; if {@code null} or empty
+     *     band 0 is processed
+     * @param roi an optional {@code ROI} for data image masking
+     * @param ranges an optional list of {@link Range} objects defining values to 
+     *     include or exclude (depending on {@code rangesType}) from the calculations
+     * @param rangesType whether the {@code ranges} are to be included or excluded;
+     *     if {@code null}, {@code Range.Type.EXCLUDE} is used
+     * @param noDataRanges an optional list of {@link Range} objects defining values
+     *     to treat as NODATA
+     * 
+     * @throws IllegalArgumentException if {@code dataImage} is {@code null}; if 
+     *     {@code stats} is {@code null} or empty; if a band index is invalid or if
+     *     the zone image is not of integral data type
+     */
+    public StreamingZonalStats(RenderedImage dataImage, RenderedImage zoneImage,
+            Statistic[] stats, Integer[] bands, ROI roi,
+            Collection<Range<Double>> ranges, Range.Type rangesType,
+            Collection<Range<Double>> noDataRanges) {
+
+        super(dataImage, zoneImage, stats, bands, roi, ranges, rangesType, noDataRanges);
+        listeners = new CopyOnWriteArrayList<ZonalStatsListener>();
+    }
+
+    /**
+     * Adds a listener.
+     * 
+     * @param listener the listener
+     */
+    public void addListener(ZonalStatsListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener must not be null");
+        }
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * 
+     * @param listener the listener
+     */
+    public void removeListener(ZonalStatsListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the number of data image tiles to process between checkpoints, at 
+     * which partial results are passed to listeners.
+     * 
+     * @param numTiles number of tiles, or 0 (the default) for no checkpoints
+     * 
+     * @throws IllegalArgumentException if {@code numTiles} is negative
+     */
+    public void setCheckpointInterval(int numTiles) {
+        if (numTiles < 0) {
+            throw new IllegalArgumentException("numTiles must not be negative");
+        }
+        checkpointInterval = numTiles;
+    }
+
+    /**
+     * Gets the number of data image tiles processed between checkpoints.
+     * 
+     * @return number of tiles, or 0 for no checkpoints
+     */
+    public int getCheckpointInterval() {
+        return checkpointInterval;
+    }
+
+    /**
+     * Requests that processing stop. This may be called from any thread.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Tests if processing was cancelled, either by calling {@linkplain #cancel()}
+     * or by interrupting the processing thread.
+     * 
+     * @return {@code true} if cancelled
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Calculates the statistics. 
+     * 
+     * @return the results, or {@code null} if processing was cancelled
+     */
+    public ZonalStats call() {
+        final int numTiles = getNumTiles();
+        final double numPixels = (double) scanBounds.width * scanBounds.height;
+        long pixelsDone = 0;
+
+        ZoneAccumulator accumulator = createAccumulator();
+        for (int index = 0; index < numTiles; index++) {
+            if (Thread.currentThread().isInterrupted()) {
+                cancelled = true;
+            }
+            if (cancelled) {
+                fireFinished(null);
+                return null;
+            }
+
+            Rectangle area = getTileArea(index);
+            ZonalStatsOpImage.accumulateRows(accumulator, dataImage, zoneImage, srcBands, roi, area);
+            pixelsDone += (long) area.width * area.height;
+            final float progress = (float) (pixelsDone / numPixels);
+            fireProgress(progress);
+
+            final int interval = checkpointInterval;
+            if (interval > 0 && (index + 1) % interval == 0 && index < numTiles - 1) {
+                fireCheckpoint(createResults(getZoneStats(accumulator)), progress);
+            }
+        }
+
+        if (numTiles == 0) {
+            fireProgress(1.0f);
+        }
+
+        ZonalStats zs = createResults(getZoneStats(accumulator));
+        fireFinished(zs);
+        return zs;
+    }
+
+    /**
+     * Gets the statistics in an accumulator by zone in ascending order.
+     */
+    private Map<Integer, StreamingSampleStats[]> getZoneStats(ZoneAccumulator accumulator) {
+        Map<Integer, StreamingSampleStats[]> zoneStats = CollectionFactory.sortedMap();
+        for (int zone : accumulator.getZones()) {
+            zoneStats.put(zone, accumulator.find(zone));
+        }
+        return zoneStats;
+    }
+
+    private void fireProgress(float progress) {
+        for (ZonalStatsListener listener : listeners) {
+            listener.progress(progress);
+        }
+    }
+
+    private void fireCheckpoint(ZonalStats results, float progress) {
+        for (ZonalStatsListener listener : listeners) {
+            listener.checkpoint(results, progress);
+        }
+    }
+
+    private void fireFinished(ZonalStats results) {
+        for (ZonalStatsListener listener : listeners) {
+            listener.finished(results);
+        }
+    }
+}
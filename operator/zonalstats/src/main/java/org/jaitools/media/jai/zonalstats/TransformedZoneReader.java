@@ -0,0 +1,195 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.RenderedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.jaitools.imageutils.iterator.SimpleIterator;
+
+
+/**
+ * Reads the zone IDs for lines of data image pixels when data image positions
+ * are mapped to zone image positions with an affine transform. Used by
+ * {@link ZonalStatsOpImage}.
+ * <p>
+ * Rather than transforming each pixel position and sampling the zone image at
+ * random, the parts of the transform which are constant along a line are worked
+ * out once per line and zone image rows are read in bulk and cached. For 
+ * transforms with only scale and translation, the usual case of a coarser or 
+ * offset zone grid, the zone image column for each data image column is worked 
+ * out once, so that finding the zones for a line only requires integer lookups.
+ * <p>
+ * Transformed positions are rounded in the same way as by 
+ * {@code AffineTransform.transform(Point2D, Point2D)} with a {@code Point} 
+ * destination, so the zones are the same as those found by transforming
+ * each position.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class TransformedZoneReader {
+
+    private final Rectangle zoneBounds;
+    private final SimpleIterator zoneIter;
+    private final int minX;
+    private final int width;
+
+    private final double m00, m01, m02, m10, m11, m12;
+    private final boolean scaleOnly;
+
+    // for scale-only transforms: offset of each column in a zone image row, or -1 if outside
+    private final int[] zoneCols;
+
+    // recently read zone image rows by Y ordinate
+    private final Map<Integer, int[]> rowCache;
+
+    /**
+     * Creates a new reader.
+     * 
+     * @param zoneImage the zone image
+     * @param dataToZone transform from data image to zone image positions
+     * @param minX minimum X ordinate of the data image lines to be read
+     * @param width width of the data image lines to be read
+     */
+    TransformedZoneReader(RenderedImage zoneImage, AffineTransform dataToZone, int minX, int width) {
+        this.zoneBounds = new Rectangle(zoneImage.getMinX(), zoneImage.getMinY(),
+                zoneImage.getWidth(), zoneImage.getHeight());
+        this.zoneIter = new SimpleIterator(zoneImage, zoneBounds, null);
+        this.minX = minX;
+        this.width = width;
+
+        m00 = dataToZone.getScaleX();
+        m01 = dataToZone.getShearX();
+        m02 = dataToZone.getTranslateX();
+        m10 = dataToZone.getShearY();
+        m11 = dataToZone.getScaleY();
+        m12 = dataToZone.getTranslateY();
+        scaleOnly = m01 == 0 && m10 == 0;
+
+        if (scaleOnly) {
+            zoneCols = new int[width];
+            for (int i = 0; i < width; i++) {
+                int zx = round((minX + i) * m00 + m02);
+                zoneCols[i] = zx >= zoneBounds.x && zx < zoneBounds.x + zoneBounds.width ? 
+                        zx - zoneBounds.x : -1;
+            }
+        } else {
+            zoneCols = null;
+        }
+
+        // enough rows for those spanned by one data image line plus the next
+        final int maxRows = (int) Math.min(zoneBounds.height, 
+                Math.ceil(Math.abs(m10) * width + Math.abs(m11)) + 2);
+        rowCache = new LinkedHashMap<Integer, int[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, int[]> eldest) {
+                return size() > maxRows;
+            }
+        };
+    }
+
+    /**
+     * Gets the zone IDs for a line of data image pixels. 
+     * 
+     * @param y data image Y ordinate
+     * @param zones receives the zone IDs (length must be at least the width
+     *        of the lines)
+     * @param hasZone receives {@code true} for each pixel which maps to a 
+     *        position within the zone image and {@code false} otherwise
+     * 
+     * @return {@code true} if any pixel of the line maps to a position within
+     *         the zone image
+     */
+    boolean getRow(int y, int[] zones, boolean[] hasZone) {
+        boolean any = false;
+
+        if (scaleOnly) {
+            final int zy = round(y * m11 + m12);
+            if (zy < zoneBounds.y || zy >= zoneBounds.y + zoneBounds.height) {
+                return false;
+            }
+
+            final int[] zoneRow = getZoneRow(zy);
+            for (int i = 0; i < width; i++) {
+                final int col = zoneCols[i];
+                if (col < 0) {
+                    hasZone[i] = false;
+                } else {
+                    zones[i] = zoneRow[col];
+                    hasZone[i] = true;
+                    any = true;
+                }
+            }
+
+        } else {
+            // same order of evaluation as AffineTransform
+            final double ry = y * m01;
+            final double ryy = y * m11;
+            for (int i = 0, x = minX; i < width; i++, x++) {
+                final int zx = round(x * m00 + ry + m02);
+                final int zy = round(x * m10 + ryy + m12);
+                if (zoneBounds.contains(zx, zy)) {
+                    zones[i] = getZoneRow(zy)[zx - zoneBounds.x];
+                    hasZone[i] = true;
+                    any = true;
+                } else {
+                    hasZone[i] = false;
+                }
+            }
+        }
+
+        return any;
+    }
+
+    /**
+     * Releases the zone image.
+     */
+    void done() {
+        zoneIter.done();
+        rowCache.clear();
+    }
+
+    private int[] getZoneRow(int zy) {
+        int[] row = rowCache.get(zy);
+        if (row == null) {
+            row = zoneIter.getRowInt(zy, 0, null);
+            rowCache.put(zy, row);
+        }
+        return row;
+    }
+
+    /*
+     * Rounds as Point.setLocation(double, double) does.
+     */
+    private static int round(double value) {
+        return (int) Math.floor(value + 0.5);
+    }
+}
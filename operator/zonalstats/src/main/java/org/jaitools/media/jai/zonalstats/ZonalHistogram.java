@@ -0,0 +1,293 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+
+
+/**
+ * Holds the results of the ZonalHistogram operator: the number of data image
+ * pixels in each combination of zone and class. In categorical mode the 
+ * classes are the integral values of the data image; when bins were provided
+ * they are the indices of the bins, in the order they were given, and can be
+ * related to value ranges with {@linkplain #getBins()}.
+ * <p>
+ * Only the combinations which occur are held, sorted by zone and then class.
+ * Counts for other combinations are zero.
+ * <pre><code>
+ * ZonalHistogram hist = (ZonalHistogram) op.getProperty(
+ *         ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY);
+ *
+ * for (int zone : hist.getZones()) {
+ *     long total = hist.getTotal(zone);
+ *     for (Map.Entry&lt;Integer, Long&gt; e : hist.getCounts(zone).entrySet()) {
+ *         System.out.printf("zone %d class %d: %.1f%%\n", 
+ *                 zone, e.getKey(), 100.0 * e.getValue() / total);
+ *     }
+ * }
+ * </code></pre>
+ *
+ * @see ZonalHistogramDescriptor
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ZonalHistogram {
+
+    private static final String CSV_HEADER = "zone,class,count";
+
+    private final List<Range<Double>> bins;
+
+    // counted combinations in order of zone and then class
+    private final int[] zones;
+    private final int[] classes;
+    private final long[] counts;
+
+    /**
+     * Constructor. Package-private; called by ZonalHistogramOpImage.
+     * 
+     * @param counter the counts by zone and class
+     * @param bins the bins, or {@code null} for categorical mode
+     */
+    ZonalHistogram(CrossTabCounter counter, List<Range<Double>> bins) {
+        if (bins == null) {
+            this.bins = null;
+        } else {
+            List<Range<Double>> copy = CollectionFactory.list();
+            copy.addAll(bins);
+            this.bins = Collections.unmodifiableList(copy);
+        }
+
+        long[] keys = counter.getSortedKeys();
+        zones = new int[keys.length];
+        classes = new int[keys.length];
+        counts = new long[keys.length];
+        for (int i = 0; i < keys.length; i++) {
+            zones[i] = CrossTabCounter.zoneOf(keys[i]);
+            classes[i] = CrossTabCounter.classOf(keys[i]);
+            counts[i] = counter.getCount(keys[i]);
+        }
+    }
+
+    /**
+     * Tests whether the classes are data image values rather than bin indices.
+     * 
+     * @return {@code true} for categorical mode
+     */
+    public boolean isCategorical() {
+        return bins == null;
+    }
+
+    /**
+     * Gets the bins in the order of their indices.
+     * 
+     * @return an unmodifiable list of bins; empty in categorical mode
+     */
+    public List<Range<Double>> getBins() {
+        if (bins == null) {
+            return Collections.emptyList();
+        }
+        return bins;
+    }
+
+    /**
+     * Gets the zones which have at least one counted pixel.
+     * 
+     * @return a new set of zone IDs
+     */
+    public SortedSet<Integer> getZones() {
+        SortedSet<Integer> set = CollectionFactory.sortedSet();
+        for (int i = 0; i < zones.length; i++) {
+            set.add(zones[i]);
+        }
+        return set;
+    }
+
+    /**
+     * Gets the classes which have at least one counted pixel in any zone.
+     * 
+     * @return a new set of class values or bin indices
+     */
+    public SortedSet<Integer> getClasses() {
+        SortedSet<Integer> set = CollectionFactory.sortedSet();
+        for (int i = 0; i < classes.length; i++) {
+            set.add(classes[i]);
+        }
+        return set;
+    }
+
+    /**
+     * Gets the number of pixels of a class in a zone.
+     * 
+     * @param zone zone ID
+     * @param cls class value or bin index
+     * 
+     * @return the count, which is 0 if the combination did not occur
+     */
+    public long getCount(int zone, int cls) {
+        int lo = findZoneStart(zone);
+        int hi = findZoneEnd(zone, lo) - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (classes[mid] < cls) {
+                lo = mid + 1;
+            } else if (classes[mid] > cls) {
+                hi = mid - 1;
+            } else {
+                return counts[mid];
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * Gets the counts for the classes which occur in a zone.
+     * 
+     * @param zone zone ID
+     * 
+     * @return a new map of counts keyed by class value or bin index; empty
+     *         if the zone has no counted pixels
+     */
+    public SortedMap<Integer, Long> getCounts(int zone) {
+        SortedMap<Integer, Long> map = CollectionFactory.sortedMap();
+        int start = findZoneStart(zone);
+        int end = findZoneEnd(zone, start);
+        for (int i = start; i < end; i++) {
+            map.put(classes[i], counts[i]);
+        }
+        return map;
+    }
+
+    /**
+     * Gets the number of counted pixels in a zone.
+     * 
+     * @param zone zone ID
+     * 
+     * @return total count over all classes
+     */
+    public long getTotal(int zone) {
+        long total = 0;
+        int start = findZoneStart(zone);
+        int end = findZoneEnd(zone, start);
+        for (int i = start; i < end; i++) {
+            total += counts[i];
+        }
+        return total;
+    }
+
+    /**
+     * Gets the full zone by class matrix of counts. Rows are in the order 
+     * of {@linkplain #getZones()} and columns in the order of 
+     * {@linkplain #getClasses()}.
+     * 
+     * @return a new matrix of counts
+     */
+    public long[][] getMatrix() {
+        int[] zoneIds = toArray(getZones());
+        int[] classIds = toArray(getClasses());
+
+        long[][] matrix = new long[zoneIds.length][classIds.length];
+        for (int i = 0, row = -1; i < zones.length; i++) {
+            if (i == 0 || zones[i] != zones[i - 1]) {
+                row++;
+            }
+            matrix[row][Arrays.binarySearch(classIds, classes[i])] = counts[i];
+        }
+        return matrix;
+    }
+
+    /**
+     * Writes the counts as comma-separated text with a header line. Each
+     * line holds a zone, class value or bin index, and count. Only the
+     * combinations which occur are written.
+     *
+     * @param writer the destination
+     *
+     * @throws IOException on error writing to {@code writer}
+     */
+    public void writeCSV(Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < zones.length; i++) {
+            sb.setLength(0);
+            sb.append(zones[i]).append(',');
+            sb.append(classes[i]).append(',');
+            sb.append(counts[i]).append('\n');
+            writer.write(sb.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Finds the first position for a zone, or the position at which 
+     * it would be inserted.
+     */
+    private int findZoneStart(int zone) {
+        int lo = 0;
+        int hi = zones.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (zones[mid] < zone) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Finds the position following the last for a zone.
+     */
+    private int findZoneEnd(int zone, int start) {
+        int end = start;
+        while (end < zones.length && zones[end] == zone) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int[] toArray(SortedSet<Integer> set) {
+        int[] array = new int[set.size()];
+        int i = 0;
+        for (Integer value : set) {
+            array[i++] = value;
+        }
+        return array;
+    }
+}
@@ -0,0 +1,382 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.AffineTransform;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.Collection;
+
+import javax.media.jai.OperationDescriptorImpl;
+import javax.media.jai.ROI;
+import javax.media.jai.registry.RenderedRegistryMode;
+
+import org.jaitools.numeric.Range;
+
+
+/**
+ * Counts the pixels of each class of a data image within zones defined in a 
+ * separate zone image, giving a zone by class cross-tabulation (e.g. the area
+ * of each land cover class within each administrative region) in a single pass.
+ * When used without a zone image, all data image pixels are treated as belonging
+ * to a single zone 0. Optionally, an ROI can be provided to constrain which areas
+ * of the data image are counted.
+ * <p>
+ * Classes are defined in one of two ways:
+ * <ul>
+ * <li>In categorical mode, the default, each value of the data image is a class.
+ *     The data image must be of integral data type.
+ * <li>If a {@code List} of {@link Range} objects is provided with the "bins" 
+ *     parameter, each bin is a class identified by its index in the list. A value
+ *     is counted in each bin that contains it, and values outside all bins are
+ *     not counted.
+ * </ul>
+ * Values can be excluded from the counts with the "noDataRanges" parameter. 
+ * NaN values are never counted.
+ * <p>
+ * As for the ZonalStats operator, the source image is simply passed through to the
+ * destination image and the results are retrieved as a property, whose name can 
+ * be referred to via the {@link #ZONAL_HISTOGRAM_PROPERTY} constant. The source 
+ * names are "dataImage" and "zoneImage", and the zone image must be of integral
+ * data type. Zone image positions are mapped to data image positions in the same
+ * way, with an identity mapping by default or the optional "zoneTransform" 
+ * parameter.
+ * <p>
+ * Counts are held in a hash table of primitive values keyed by zone and class,
+ * so that only the combinations which occur take up space. Setting the 
+ * "numThreads" parameter to a value greater than 1 causes the data image to be
+ * divided into chunks of whole tile rows which are counted concurrently and 
+ * then merged. The size of chunks can be controlled with the "chunkSize" 
+ * parameter. The counts are the same as for sequential processing.
+ * <p>
+ * Example of use...
+ * <pre><code>
+ * RenderedImage landCover = ...
+ * RenderedImage regions = ...
+ *
+ * ParameterBlockJAI pb = new ParameterBlockJAI("ZonalHistogram");
+ * pb.setSource("dataImage", landCover);
+ * pb.setSource("zoneImage", regions);
+ * pb.setParameter("numThreads", 4);
+ * RenderedOp op = JAI.create("ZonalHistogram", pb);
+ *
+ * ZonalHistogram hist = (ZonalHistogram) op.getProperty(
+ *         ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY);
+ *
+ * long forestInRegion3 = hist.getCount(3, FOREST);
+ * </code></pre>
+ *
+ * Counting the values of a continuous data image in bins...
+ * <pre><code>
+ * List&lt;Range&lt;Double>> bins = CollectionFactory.list();
+ * for (int i = 0; i < 10; i++) {
+ *     bins.add(Range.create(i * 100.0, true, (i + 1) * 100.0, false));
+ * }
+ * pb.setParameter("bins", bins);
+ * </code></pre>
+ *
+ * <b>Parameters</b>
+ * <table border="1">
+ * <tr>
+ * <th>Name</th><th>Type</th><th>Description</th><th>Default value</th>
+ * </tr>
+ * <tr>
+ * <td>band</td><td>Integer</td><td>Image band to sample</td><td>0</td>
+ * </tr>
+ * <tr>
+ * <td>roi</td><td>ROI</td><td>An optional ROI to constrain sampling</td><td>null</td>
+ * </tr>
+ * <tr>
+ * <td>zoneTransform</td><td>AffineTransform</td>
+ * <td>Maps data image positions to zone image positions</td>
+ * <td>null (identity transform)</td>
+ * </tr>
+ * <tr>
+ * <td>bins</td><td>Collection&lt;Range></td><td>Ranges of values defining classes</td>
+ * <td>null (each integral data value is a class)</td>
+ * </tr>
+ * <tr>
+ * <td>noDataRanges</td><td>Collection&lt;Range></td>
+ * <td>Ranges of values to treat as NODATA
+ * </td><td>null (no NODATA values defined)</td>
+ * </tr>
+ * <tr>
+ * <td>numThreads</td><td>Integer</td>
+ * <td>Number of threads to use when scanning the data image</td>
+ * <td>1</td>
+ * </tr>
+ * <tr>
+ * <td>chunkSize</td><td>Integer</td>
+ * <td>Approximate number of image lines in each chunk processed by a thread
+ * (rounded up to whole tile rows), or 0 to divide the image automatically</td>
+ * <td>0</td>
+ * </tr>
+ * </table>
+ *
+ * @see ZonalHistogram
+ * @see ZonalStatsDescriptor
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ZonalHistogramDescriptor extends OperationDescriptorImpl {
+
+    private static final long serialVersionUID = 4583710519446627931L;
+
+    /** Property name used to retrieve the results */
+    public static final String ZONAL_HISTOGRAM_PROPERTY = "ZonalHistogramProperty";
+
+    static final int DATA_IMAGE = 0;
+    static final int ZONE_IMAGE = 1;
+
+    private static final String[] srcImageNames = {"dataImage", "zoneImage"};
+
+    private static final Class<?>[][] srcImageClasses = {{RenderedImage.class, RenderedImage.class}};
+
+    static final int BAND_ARG = 0;
+    static final int ROI_ARG = 1;
+    static final int ZONE_TRANSFORM_ARG = 2;
+    static final int BINS_ARG = 3;
+    static final int NODATA_RANGES_ARG = 4;
+    static final int NUM_THREADS_ARG = 5;
+    static final int CHUNK_SIZE_ARG = 6;
+
+    private static final String[] paramNames = {
+        "band", 
+        "roi", 
+        "zoneTransform", 
+        "bins", 
+        "noDataRanges",
+        "numThreads",
+        "chunkSize"
+    };
+
+    private static final Class<?>[] paramClasses = {
+        Integer.class,
+        javax.media.jai.ROI.class, 
+        AffineTransform.class, 
+        Collection.class, 
+        Collection.class,
+        Integer.class,
+        Integer.class
+    };
+
+    private static final Object[] paramDefaults = {
+        Integer.valueOf(0),
+        (ROI) null, 
+        (AffineTransform) null, 
+        (Collection) null, 
+        (Collection) null,
+        Integer.valueOf(1),
+        Integer.valueOf(0)
+    };
+    
+
+    /** Constructor. */
+    public ZonalHistogramDescriptor() {
+        super(new String[][]{
+                {"GlobalName", "ZonalHistogram"},
+                {"LocalName", "ZonalHistogram"},
+                {"Vendor", "org.jaitools.media.jai"},
+                {"Description", "Count data image pixels by zone and class"},
+                {"DocURL", "http://code.google.com/p/jaitools/"},
+                {"Version", "1.0.0"},
+
+                {
+                        "arg0Desc",
+                        String.format("%s (default %s) - the band of the data image to process",
+                                paramNames[BAND_ARG], paramDefaults[BAND_ARG])},
+
+                {
+                        "arg1Desc",
+                        String.format("%s (default %s) - an optional ROI for masking the data image",
+                                paramNames[ROI_ARG], paramDefaults[ROI_ARG])},
+
+                {
+                        "arg2Desc",
+                        String.format("%s (default %s) - an optional AffineTransform to "
+                                + "map dataImage pixel coords to zoneImage pixel coords",
+                                paramNames[ZONE_TRANSFORM_ARG], paramDefaults[ZONE_TRANSFORM_ARG])},
+
+                {
+                        "arg3Desc",
+                        String.format("%s (default %s) - an optional Collection of Ranges "
+                                + "defining classes; if null each integral value is a class",
+                                paramNames[BINS_ARG], paramDefaults[BINS_ARG])},
+                {
+                        "arg4Desc",
+                        String.format("%s (default %s) - an optional Collection of Ranges "
+                            + "defining values to treat as NODATA",
+                            paramNames[NODATA_RANGES_ARG], paramDefaults[NODATA_RANGES_ARG])},
+                {
+                        "arg5Desc",
+                        String.format("%s (default %s) - number of threads to use when "
+                            + "scanning the data image",
+                            paramNames[NUM_THREADS_ARG], paramDefaults[NUM_THREADS_ARG])},
+                {
+                        "arg6Desc",
+                        String.format("%s (default %s) - approximate number of image lines "
+                            + "in each chunk processed by a thread, or 0 for automatic",
+                            paramNames[CHUNK_SIZE_ARG], paramDefaults[CHUNK_SIZE_ARG])},
+        },
+
+        new String[]{RenderedRegistryMode.MODE_NAME}, // supported modes
+
+                srcImageNames, srcImageClasses,
+
+                paramNames, paramClasses, paramDefaults,
+
+                null // valid values (none defined)
+        );
+    }
+
+    /**
+     * Validates supplied parameters.
+     * 
+     * @param modeName the rendering mode
+     * @param pb the parameter block
+     * @param msg a {@code StringBuffer} to receive error messages
+     * 
+     * @return {@code true} if parameters are valid; {@code false} otherwise
+     */
+    @Override
+    public boolean validateArguments( String modeName, ParameterBlock pb, StringBuffer msg ) {
+        if (pb.getNumSources() == 0 || pb.getNumSources() > 2) {
+            msg.append("ZonalHistogram operator takes 1 or 2 source images");
+            return false;
+        }
+
+        RenderedImage dataImg = pb.getRenderedSource(DATA_IMAGE);
+
+        Object bandObject = pb.getObjectParameter(BAND_ARG);
+        if (!(bandObject instanceof Integer)) {
+            msg.append(paramNames[BAND_ARG]).append(" arg has to be of type Integer");
+            return false;
+        }
+        int band = (Integer) bandObject;
+        if (band < 0 || band >= dataImg.getSampleModel().getNumBands()) {
+            msg.append("band index out of bounds for source image: ").append(band);
+            return false;
+        }
+
+        Object binsObject = pb.getObjectParameter(BINS_ARG);
+        if (binsObject == null) {
+            if (!isIntegral(dataImg)) {
+                msg.append(paramNames[BINS_ARG]).append(
+                        " arg must be provided for a data image of non-integral type");
+                return false;
+            }
+        } else if (!isRangeCollection(binsObject) || ((Collection) binsObject).isEmpty()) {
+            msg.append(paramNames[BINS_ARG]).append(" arg has to be a non-empty List<Range<Double>>");
+            return false;
+        }
+
+        Object noDataObject = pb.getObjectParameter(NODATA_RANGES_ARG);
+        if (noDataObject != null && !isRangeCollection(noDataObject)) {
+            msg.append(paramNames[NODATA_RANGES_ARG]).append(" arg has to be of type List<Range<Double>>");
+            return false;
+        }
+
+        Object numThreads = pb.getObjectParameter(NUM_THREADS_ARG);
+        if (numThreads != null && ((Integer) numThreads) < 1) {
+            msg.append(paramNames[NUM_THREADS_ARG]).append(" arg must be 1 or greater");
+            return false;
+        }
+
+        Object chunkSize = pb.getObjectParameter(CHUNK_SIZE_ARG);
+        if (chunkSize != null && ((Integer) chunkSize) < 0) {
+            msg.append(paramNames[CHUNK_SIZE_ARG]).append(" arg must not be negative");
+            return false;
+        }
+
+        Rectangle dataBounds = new Rectangle(
+                dataImg.getMinX(), dataImg.getMinY(),
+                dataImg.getWidth(), dataImg.getHeight());
+
+        Object roiObject = pb.getObjectParameter(ROI_ARG);
+        if (roiObject != null) {
+            if (!(roiObject instanceof ROI)) {
+                msg.append("The supplied ROI is not a supported class");
+                return false;
+            }
+            if (!((ROI)roiObject).intersects(dataBounds)) {
+                msg.append("The supplied ROI does not intersect the source image");
+                return false;
+            }
+        }
+
+        if (pb.getNumSources() == 2) {
+            RenderedImage zoneImg = pb.getRenderedSource(ZONE_IMAGE);
+            if (!isIntegral(zoneImg)) {
+                msg.append("The zone image must be an integral data type");
+                return false;
+            }
+
+            Object trObject = pb.getObjectParameter(ZONE_TRANSFORM_ARG);
+            if (trObject != null && !(trObject instanceof AffineTransform)) {
+                msg.append("The supplied transform should be an instance of AffineTransform");
+                return false;
+            }
+            AffineTransform tr = (AffineTransform) trObject;
+
+            final Rectangle zoneBounds = new Rectangle(zoneImg.getMinX(), zoneImg.getMinY(), zoneImg.getWidth(), zoneImg.getHeight());
+            if (tr != null && !tr.isIdentity()) {
+                final Shape zoneBoundsTransformed = tr.createTransformedShape(zoneBounds);
+                if (!zoneBoundsTransformed.intersects(dataBounds)) {
+                    msg.append("Zone image bounds are outside the data image bounds");
+                    return false;
+                }
+            } else if (!dataBounds.intersects(zoneBounds)) {
+                msg.append("Zone image bounds are outside the data image bounds");
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static boolean isIntegral(RenderedImage image) {
+        int dataType = image.getSampleModel().getDataType();
+        return dataType == DataBuffer.TYPE_BYTE || dataType == DataBuffer.TYPE_INT
+                || dataType == DataBuffer.TYPE_SHORT || dataType == DataBuffer.TYPE_USHORT;
+    }
+
+    private static boolean isRangeCollection(Object obj) {
+        if (!(obj instanceof Collection)) {
+            return false;
+        }
+        for (Object range : (Collection) obj) {
+            if (!(range instanceof Range)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,414 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.NullOpImage;
+import javax.media.jai.OpImage;
+import javax.media.jai.ROI;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.DaemonThreadFactory;
+import org.jaitools.imageutils.iterator.ParallelIteration;
+import org.jaitools.imageutils.iterator.SimpleIterator;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.RangeMatcher;
+
+
+/**
+ * Counts data image pixels by zone and class, where classes are either the 
+ * integral values of the data image or the indices of a list of bins. If a 
+ * zone image is not provided all data image pixels are treated as being in 
+ * the same zone (zone 0).
+ *
+ * @see ZonalHistogramDescriptor Description of the algorithm and example
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ZonalHistogramOpImage extends NullOpImage {
+
+    private final RenderedImage dataImage;
+    private final Rectangle dataImageBounds;
+    private final RenderedImage zoneImage;
+    private final AffineTransform dataToZoneTransform;
+
+    private final int band;
+    private final ROI roi;
+
+    /** Bins, or null for categorical mode */
+    private final List<Range<Double>> bins;
+
+    /** Ranges of values to treat as NODATA and exclude from the counts */
+    private final List<Range<Double>> noDataRanges;
+
+    /** Number of threads used to scan the data image */
+    private final int numThreads;
+
+    /** Approximate number of image lines per chunk, or 0 for automatic */
+    private final int chunkSize;
+
+    /** Zone ID used for all counts when no zone image was provided */
+    private static final int DEFAULT_ZONE = 0;
+
+    /**
+     * Constructor.
+     *
+     * @param dataImage a {@code RenderedImage} from which data values will be read.
+     *
+     * @param zoneImage an optional {@code RenderedImage} of integral data type that defines
+     *     the zones for which to count data values.
+     *
+     * @param config configurable attributes of the image
+     *
+     * @param layout an optional {@code ImageLayout} object.
+     *
+     * @param band the data image band to process.
+     *
+     * @param roi an optional {@code ROI} for data image masking.
+     *
+     * @param dataToZoneTransform an optional {@code AffineTransform} which maps data 
+     *     image positions to zone image positions
+     *
+     * @param bins an optional list of {@link Range} objects defining the classes;
+     *     if {@code null} each integral data value is a class
+     *
+     * @param noDataRanges an optional list of {@link Range} objects defining values to
+     *     treat as NODATA
+     * 
+     * @param numThreads number of threads to use when scanning the data image
+     * 
+     * @param chunkSize approximate number of image lines in each chunk of the data
+     *     image processed by a thread (rounded to whole tile rows); or 0 to divide
+     *     the image automatically
+     * 
+     * @throws IllegalArgumentException if {@code bins} is empty; if {@code bins} is 
+     *     {@code null} and the data image is not of integral data type; or if
+     *     {@code numThreads} or {@code chunkSize} is invalid
+     * 
+     * @see ZonalHistogramDescriptor
+     */
+    public ZonalHistogramOpImage(RenderedImage dataImage, RenderedImage zoneImage,
+            Map<?, ?> config,
+            ImageLayout layout,
+            int band,
+            ROI roi,
+            AffineTransform dataToZoneTransform,
+            Collection<Range<Double>> bins,
+            Collection<Range<Double>> noDataRanges,
+            int numThreads,
+            int chunkSize) {
+
+        super(dataImage, layout, config, OpImage.OP_COMPUTE_BOUND);
+
+        this.dataImage = dataImage;
+        this.zoneImage = zoneImage;
+
+        dataImageBounds = new Rectangle(
+                dataImage.getMinX(), dataImage.getMinY(),
+                dataImage.getWidth(), dataImage.getHeight());
+        
+        this.dataToZoneTransform = dataToZoneTransform;
+        this.band = band;
+        this.roi = roi;
+
+        if (bins == null) {
+            if (!isIntegral(dataImage)) {
+                throw new IllegalArgumentException(
+                        "bins must be provided for a data image of non-integral type");
+            }
+            this.bins = null;
+
+        } else {
+            if (bins.isEmpty()) {
+                throw new IllegalArgumentException("bins must not be empty");
+            }
+
+            // copy the ranges defensively
+            this.bins = CollectionFactory.list();
+            for (Range<Double> r : bins) {
+                this.bins.add(new Range<Double>(r));
+            }
+        }
+
+        this.noDataRanges = CollectionFactory.list();
+        if (noDataRanges != null) {
+            for (Range<Double> r : noDataRanges) {
+                this.noDataRanges.add(new Range<Double>(r));
+            }
+        }
+
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be 1 or greater");
+        }
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunkSize must not be negative");
+        }
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Counts data image pixels by zone and class.
+     *
+     * @return the results as a new instance of {@code ZonalHistogram}
+     */
+    private synchronized ZonalHistogram compileHistogram() {
+        Rectangle scanBounds = dataImageBounds;
+        if (zoneImage != null && dataToZoneTransform == null) {
+            // data pixels without a corresponding zone pixel are ignored
+            scanBounds = dataImageBounds.intersection(new Rectangle(
+                    zoneImage.getMinX(), zoneImage.getMinY(),
+                    zoneImage.getWidth(), zoneImage.getHeight()));
+        }
+
+        return new ZonalHistogram(scan(scanBounds), bins);
+    }
+
+    /**
+     * Scans the given area of the data image, and the zone image if present,
+     * and counts pixels by zone and class. If more than one thread has been 
+     * requested, the area is divided into tile-aligned chunks which are processed 
+     * concurrently, each with its own counter, and the partial counts are
+     * then merged.
+     * 
+     * @param scanBounds the area to process, which must be within the bounds
+     *        of the data image and, if the zone image is not transformed, 
+     *        the zone image
+     * 
+     * @return the counts
+     */
+    private CrossTabCounter scan(Rectangle scanBounds) {
+        if (scanBounds.isEmpty()) {
+            return new CrossTabCounter();
+        }
+
+        List<Rectangle> chunks = ZonalStatsOpImage.getChunks(
+                dataImage, scanBounds, numThreads, chunkSize);
+        if (chunks.size() == 1) {
+            CrossTabCounter counter = new CrossTabCounter();
+            count(counter, scanBounds);
+            return counter;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(numThreads, chunks.size()), new DaemonThreadFactory());
+        try {
+            return ParallelIteration.run(chunks, executor,
+                    new ParallelIteration.ChunkTask<Rectangle, CrossTabCounter>() {
+                        public CrossTabCounter process(Rectangle chunk) {
+                            CrossTabCounter counter = new CrossTabCounter();
+                            count(counter, chunk);
+                            return counter;
+                        }
+                    },
+                    new ParallelIteration.Reducer<CrossTabCounter>() {
+                        public CrossTabCounter reduce(CrossTabCounter first, CrossTabCounter second) {
+                            first.merge(second);
+                            return first;
+                        }
+                    });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Reads the data image, and the zone image if present, line by line and
+     * counts data values by zone and class. NaN and NODATA values, and values
+     * outside all bins, are not counted.
+     * 
+     * @param counter receives the counts
+     * @param scanBounds the area to process
+     */
+    private void count(CrossTabCounter counter, Rectangle scanBounds) {
+        final int w = scanBounds.width;
+        SimpleIterator dataIter = new SimpleIterator(dataImage, scanBounds, null);
+        SimpleIterator zoneIter = null;
+        TransformedZoneReader zoneReader = null;
+        if (zoneImage != null) {
+            if (dataToZoneTransform != null) {
+                zoneReader = new TransformedZoneReader(
+                        zoneImage, dataToZoneTransform, scanBounds.x, w);
+            } else {
+                zoneIter = new SimpleIterator(zoneImage, scanBounds, null);
+            }
+        }
+
+        final RangeMatcher noDataMatcher = new RangeMatcher(noDataRanges);
+        final boolean checkNoData = !noDataMatcher.isEmpty();
+        final RangeIndex binIndex = bins == null ? null : new RangeIndex(bins);
+        final int[] matches = bins == null ? null : new int[bins.size()];
+
+        int[] zoneRow = new int[w];
+        boolean[] hasZone = new boolean[w];
+        int[] intRow = new int[w];
+        double[] doubleRow = new double[w];
+        boolean[] inROI = new boolean[w];
+        ROITileMask roiMask = roi == null ? null : new ROITileMask(roi, dataImage, scanBounds);
+
+        if (zoneImage == null) {
+            for (int i = 0; i < w; i++) {
+                zoneRow[i] = DEFAULT_ZONE;
+            }
+        }
+
+        for (int y = scanBounds.y, ny = 0; ny < scanBounds.height; y++, ny++) {
+            final int roiStatus = roiMask == null ? ROITileMask.INSIDE : roiMask.getRow(y, inROI);
+            if (roiStatus == ROITileMask.OUTSIDE) {
+                continue;
+            }
+
+            if (zoneReader != null) {
+                if (!zoneReader.getRow(y, zoneRow, hasZone)) {
+                    continue;
+                }
+            } else if (zoneIter != null) {
+                zoneIter.getRowInt(y, 0, zoneRow);
+            }
+
+            if (bins == null) {
+                dataIter.getRowInt(y, band, intRow);
+                for (int i = 0; i < w; i++) {
+                    if ((roiStatus == ROITileMask.INSIDE || inROI[i])
+                            && (zoneReader == null || hasZone[i])
+                            && !(checkNoData && noDataMatcher.contains(intRow[i]))) {
+                        counter.increment(zoneRow[i], intRow[i]);
+                    }
+                }
+
+            } else {
+                dataIter.getRowDouble(y, band, doubleRow);
+                for (int i = 0; i < w; i++) {
+                    if ((roiStatus == ROITileMask.INSIDE || inROI[i])
+                            && (zoneReader == null || hasZone[i])) {
+                        final double value = doubleRow[i];
+                        if (Double.isNaN(value) || (checkNoData && noDataMatcher.contains(value))) {
+                            continue;
+                        }
+                        final int numMatches = binIndex.find(value, matches);
+                        for (int m = 0; m < numMatches; m++) {
+                            counter.increment(zoneRow[i], matches[m]);
+                        }
+                    }
+                }
+            }
+        }
+
+        dataIter.done();
+        if (zoneIter != null) {
+            zoneIter.done();
+        }
+        if (zoneReader != null) {
+            zoneReader.done();
+        }
+    }
+
+    private static boolean isIntegral(RenderedImage image) {
+        switch (image.getSampleModel().getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+            case DataBuffer.TYPE_SHORT:
+            case DataBuffer.TYPE_USHORT:
+            case DataBuffer.TYPE_INT:
+                return true;
+
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Get the specified property.
+     * <p>
+     * Use this method to retrieve the counts by zone and class with the property 
+     * name {@linkplain ZonalHistogramDescriptor#ZONAL_HISTOGRAM_PROPERTY}.
+     *
+     * @param name property name
+     *
+     * @return the requested property
+     */
+    @Override
+    public Object getProperty( String name ) {
+        if (ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY.equalsIgnoreCase(name)) {
+            return compileHistogram();
+        } else {
+            return super.getProperty(name);
+        }
+    }
+
+    /**
+     * Get the class of the given property. For
+     * {@linkplain ZonalHistogramDescriptor#ZONAL_HISTOGRAM_PROPERTY} this will return
+     * {@code ZonalHistogram.class}.
+     *
+     * @param name property name
+     *
+     * @return the property class
+     */
+    @Override
+    public Class<?> getPropertyClass( String name ) {
+        if (ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY.equalsIgnoreCase(name)) {
+            return ZonalHistogram.class;
+        } else {
+            return super.getPropertyClass(name);
+        }
+    }
+
+    /**
+     * Get all property names
+     * @return property names as an array of Strings
+     */
+    @Override
+    public String[] getPropertyNames() {
+        String[] names;
+        int k = 0;
+
+        String[] superNames = super.getPropertyNames();
+        if (superNames != null) {
+            names = new String[superNames.length + 1];
+            for( String name : superNames ) {
+                names[k++] = name;
+            }
+        } else {
+            names = new String[1];
+        }
+
+        names[k] = ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY;
+        return names;
+    }
+
+}
@@ -0,0 +1,107 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.RenderedImage;
+import java.awt.image.renderable.ParameterBlock;
+import java.awt.image.renderable.RenderedImageFactory;
+import java.util.Collection;
+
+import javax.media.jai.ImageLayout;
+import javax.media.jai.ROI;
+
+import com.sun.media.jai.opimage.RIFUtil;
+
+import org.jaitools.numeric.Range;
+
+/**
+ * The image factory for the {@link ZonalHistogramOpImage} operation.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ZonalHistogramRIF implements RenderedImageFactory {
+
+    /** Constructor */
+    public ZonalHistogramRIF() {
+    }
+
+    /**
+     * Create a new instance of ZonalHistogramOpImage in the rendered layer.
+     *
+     * @param paramBlock specifies the source image, the optional zone image,
+     * and the following parameters: "band", "roi", "zoneTransform", "bins",
+     * "noDataRanges", "numThreads", "chunkSize"
+     *
+     * @param renderHints optional RenderingHints object
+     */
+    public RenderedImage create(ParameterBlock paramBlock, RenderingHints renderHints) {
+
+        RenderedImage dataImage = paramBlock.getRenderedSource(ZonalHistogramDescriptor.DATA_IMAGE);
+        RenderedImage zoneImage = null;
+
+        if (paramBlock.getNumSources() == 2) {
+            zoneImage = paramBlock.getRenderedSource(ZonalHistogramDescriptor.ZONE_IMAGE);
+        }
+
+        ImageLayout layout = RIFUtil.getImageLayoutHint(renderHints);
+
+        Object bandObj = paramBlock.getObjectParameter(ZonalHistogramDescriptor.BAND_ARG);
+        int band = bandObj != null ? (Integer) bandObj : 0;
+
+        ROI roi = (ROI) paramBlock.getObjectParameter(ZonalHistogramDescriptor.ROI_ARG);
+
+        AffineTransform zoneTransform =
+                (AffineTransform) paramBlock.getObjectParameter(ZonalHistogramDescriptor.ZONE_TRANSFORM_ARG);
+
+        Collection<Range<Double>> bins = (Collection<Range<Double>>) 
+                paramBlock.getObjectParameter(ZonalHistogramDescriptor.BINS_ARG);
+
+        Collection<Range<Double>> noDataRanges = (Collection<Range<Double>>) 
+                paramBlock.getObjectParameter(ZonalHistogramDescriptor.NODATA_RANGES_ARG);
+
+        Object threads = paramBlock.getObjectParameter(ZonalHistogramDescriptor.NUM_THREADS_ARG);
+        int numThreads = threads != null ? (Integer) threads : 1;
+
+        Object chunk = paramBlock.getObjectParameter(ZonalHistogramDescriptor.CHUNK_SIZE_ARG);
+        int chunkSize = chunk != null ? (Integer) chunk : 0;
+
+        return new ZonalHistogramOpImage(
+                dataImage, zoneImage,
+                renderHints,
+                layout,
+                band,
+                roi,
+                zoneTransform,
+                bins,
+                noDataRanges,
+                numThreads,
+                chunkSize);
+    }
+}
@@ -25,6 +25,13 @@
 
 package org.jaitools.media.jai.zonalstats;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.AbstractList;
 import java.util.Collections;
 import java.util.List;
 import java.util.SortedSet;
@@ -90,7 +97,7 @@ import org.jaitools.numeric.StreamingSampleStats;
  * System.out.println("-----------------------------------------------------------");
  *
  * for (int b : allStats.getImageBands()) {
- *     for (int z : zs.getZones()) {
+ *     for (int z : allStats.getZones()) {
  *         System.out.printf(" %4d %4d", b, z);
  *         ZonalStats subset = zs.band(b).zone(z);
  *         for (Statistic s : statistics) {
@@ -101,6 +108,17 @@ import org.jaitools.numeric.StreamingSampleStats;
  * }
  *
  * </code></pre>
+ * 
+ * Results are held in a column-oriented store, indexed by zone and by the
+ * combination of band, zone and statistic, so that selecting the results for
+ * a zone, or looking up a single value with {@linkplain #getValue(int, int, Statistic)},
+ * does not require scanning all results. The objects returned by the chaining 
+ * methods are views of the same store, and the {@code Result} objects in the
+ * list returned by {@linkplain #results()} are created on request.
+ * <p>
+ * Results can be exported as CSV text with {@linkplain #writeCSV(Writer)} or in a 
+ * compact binary form with {@linkplain #writeBinary(OutputStream)}, which can be
+ * read back with {@linkplain #readBinary(InputStream)}.
  *
  * @see Result
  * @see ZonalStatsDescriptor
@@ -112,46 +130,55 @@ import org.jaitools.numeric.StreamingSampleStats;
  */
 public class ZonalStats {
 
-    private List<Result> results;
+    /* Identifies the binary format written by writeBinary */
+    private static final int BINARY_MAGIC = 0x4A545A53;  // "JTZS"
+    private static final int BINARY_VERSION = 1;
+
+    private static final String CSV_HEADER = 
+            "band,zone,statistic,value,offered,accepted,nan,nodata,ranges";
+
+    private final ResultStore store;
+
+    // selection criteria of this view; null values select all
+    private final Integer band;
+    private final Integer zone;
+    private final Statistic stat;
+
+    // rows to which the criteria are applied, or null for all rows
+    private final int[] baseRows;
+
+    // selected rows, worked out on first use (views only)
+    private int[] rows;
+
+    // cached zone and band sets, with the number of results they were made from
+    private SortedSet<Integer> zoneSet;
+    private SortedSet<Integer> bandSet;
+    private int zoneSetSize = -1;
+    private int bandSetSize = -1;
 
     /**
      * Constructor. Package-private; called by ZonalStatsOpImage.
      */
     ZonalStats() {
-        results = CollectionFactory.list();
+        this(new ResultStore(), null, null, null, null);
     }
 
     /**
-     * Copy constructor. Used by the chaining methods such as {@linkplain #band(int)}.
+     * Creates a view of a result store. Used by the chaining methods 
+     * such as {@linkplain #band(int)}.
      *
-     * @param src source object
+     * @param store the result store
      * @param band selected image band or {@code null} for all bands
      * @param zone selected zone or {@code null} for all zones
      * @param stat selected statistic or {@code null} for all statistics
-     * @param ranges selected ranges or {@code null} for all ranges
+     * @param baseRows rows from which to select or {@code null} for all rows
      */
-    private ZonalStats(ZonalStats src, Integer band, Integer zone, Statistic stat, List<Range> ranges) {
-        results = CollectionFactory.list();
-        for (Result r : src.results) {
-            if ((band == null || r.getImageBand() == band) &&
-                (zone == null || r.getZone() == zone) &&
-                (stat == null || r.getStatistic() == stat)) {
-                if (ranges == null || ranges.isEmpty()) {
-                    results.add(r);
-                } else {
-                    if (r.getRanges().containsAll(ranges)) {
-                        results.add(r);
-                    } else {
-                        for (Range range : ranges) {
-                            if (r.getRanges().contains(range)) {
-                                results.add(r);
-                            }
-                        }
-                    }
-                }
-
-            }
-        }
+    private ZonalStats(ResultStore store, Integer band, Integer zone, Statistic stat, int[] baseRows) {
+        this.store = store;
+        this.band = band;
+        this.zone = zone;
+        this.stat = stat;
+        this.baseRows = baseRows;
     }
 
     /**
@@ -160,14 +187,30 @@ public class ZonalStats {
      */
     void setResults(int band, int zone, StreamingSampleStats stats, List<Range> includedRanges) {
         for (Statistic s : stats.getStatistics()) {
-            Result r = new Result(band, zone, s, includedRanges,
+            store.add(band, zone, s, includedRanges,
                     stats.getStatisticValue(s),
                     stats.getNumOffered(s),
                     stats.getNumAccepted(s),
                     stats.getNumNaN(s),
                     stats.getNumNoData(s));
+        }
+    }
 
-            results.add(r);
+    /**
+     * Store the results for the given zone, taking the counts of offered, NaN
+     * and NODATA values from the arguments rather than the statistics object,
+     * which was only offered accepted values. Package-private method used by
+     * {@code ZonalStatsOpImage}.
+     */
+    void setResults(int band, int zone, StreamingSampleStats stats, List<Range> includedRanges,
+            long numOffered, long numNaN, long numNoData) {
+        for (Statistic s : stats.getStatistics()) {
+            store.add(band, zone, s, includedRanges,
+                    stats.getStatisticValue(s),
+                    numOffered,
+                    stats.getNumAccepted(s),
+                    numNaN,
+                    numNoData);
         }
     }
 
@@ -179,6 +222,15 @@ public class ZonalStats {
         setResults(band, zone, stats, null);
     }
 
+    /**
+     * Store a single result. Package-private method used when reading
+     * results and by unit tests.
+     */
+    void setResult(int band, int zone, Statistic stat, List<Range> includedRanges, Double value,
+            long numOffered, long numAccepted, long numNaN, long numNoData) {
+        store.add(band, zone, stat, includedRanges, value, numOffered, numAccepted, numNaN, numNoData);
+    }
+
     /**
      * Get the integer IDs read from the zone image. If a zone image
      * was not used all results are treated as being in zone 0.
@@ -186,16 +238,55 @@ public class ZonalStats {
      * Note that statistics will not necessarily have been calculated for
      * all zones.
      *
-     * @return the sorted zone IDs
+     * @return the sorted zone IDs (unmodifiable)
      */
     public SortedSet<Integer> getZones() {
-        SortedSet<Integer> ids = CollectionFactory.sortedSet();
-
-        for (Result r : results) {
-            ids.add(r.getZone());
+        // rows are only worked out for views; for all results the store size
+        // shows whether results have been added since the set was cached
+        final boolean all = isAll();
+        final int[] selected = all ? null : getRows();
+        final int size = all ? store.size() : selected.length;
+        if (zoneSet == null || zoneSetSize != size) {
+            SortedSet<Integer> ids = CollectionFactory.sortedSet();
+            if (all) {
+                for (int z : store.getZones()) {
+                    ids.add(z);
+                }
+            } else {
+                for (int row : selected) {
+                    ids.add(store.getZone(row));
+                }
+            }
+            zoneSet = Collections.unmodifiableSortedSet(ids);
+            zoneSetSize = size;
         }
+        return zoneSet;
+    }
 
-        return ids;
+    /**
+     * Get the data image bands for which results are held.
+     *
+     * @return the sorted band indices (unmodifiable)
+     */
+    public SortedSet<Integer> getImageBands() {
+        final boolean all = isAll();
+        final int[] selected = all ? null : getRows();
+        final int size = all ? store.size() : selected.length;
+        if (bandSet == null || bandSetSize != size) {
+            SortedSet<Integer> ids = CollectionFactory.sortedSet();
+            if (all) {
+                for (int b : store.getBands()) {
+                    ids.add(b);
+                }
+            } else {
+                for (int row : selected) {
+                    ids.add(store.getBand(row));
+                }
+            }
+            bandSet = Collections.unmodifiableSortedSet(ids);
+            bandSetSize = size;
+        }
+        return bandSet;
     }
 
     /**
@@ -209,7 +300,7 @@ public class ZonalStats {
      *         (data are shared with the source object rather than copied)
      */
     public ZonalStats band(int b) {
-        return new ZonalStats(this, b, null, null, null);
+        return select(b, null, null);
     }
 
     /**
@@ -223,7 +314,7 @@ public class ZonalStats {
      *         (data are shared with the source object rather than copied)
      */
     public ZonalStats zone(int z) {
-        return new ZonalStats(this, null, z, null, null);
+        return select(null, z, null);
     }
 
     /**
@@ -237,7 +328,7 @@ public class ZonalStats {
      *         (data are shared with the source object rather than copied)
      */
     public ZonalStats statistic(Statistic s) {
-        return new ZonalStats(this, null, null, s, null);
+        return select(null, null, s);
     }
 
     /**
@@ -249,7 +340,61 @@ public class ZonalStats {
      *         (data are shared with the source object rather than copied)
      */
     public ZonalStats ranges(List<Range> ranges) {
-        return new ZonalStats(this, null, null, null, ranges);
+        int[] selected = getRows();
+        if (ranges == null || ranges.isEmpty()) {
+            return new ZonalStats(store, null, null, null, selected);
+        }
+
+        int[] subset = new int[selected.length];
+        int n = 0;
+        for (int row : selected) {
+            List<Range> rowRanges = store.getRanges(row);
+            if (rowRanges == null) {
+                continue;
+            }
+            if (rowRanges.containsAll(ranges)) {
+                subset = add(subset, n++ , row);
+            } else {
+                for (Range range : ranges) {
+                    if (rowRanges.contains(range)) {
+                        subset = add(subset, n++ , row);
+                    }
+                }
+            }
+        }
+        return new ZonalStats(store, null, null, null, trim(subset, n));
+    }
+
+    /**
+     * Gets the result for the given band, zone and statistic. If more than
+     * one result matches (e.g. when statistics were calculated separately for
+     * ranges of data values) the first is returned.
+     *
+     * @param b band index
+     * @param z zone ID
+     * @param s the statistic
+     *
+     * @return the result or {@code null} if there is no matching result
+     */
+    public Result getResult(int b, int z, Statistic s) {
+        int row = find(b, z, s);
+        return row < 0 ? null : store.getResult(row);
+    }
+
+    /**
+     * Gets the value of the given statistic for a band and zone. If more than
+     * one result matches (e.g. when statistics were calculated separately for
+     * ranges of data values) the value of the first is returned.
+     *
+     * @param b band index
+     * @param z zone ID
+     * @param s the statistic
+     *
+     * @return the value or {@code null} if there is no matching result
+     */
+    public Double getValue(int b, int z, Statistic s) {
+        int row = find(b, z, s);
+        return row < 0 ? null : store.getValue(row);
     }
 
     /**
@@ -259,6 +404,336 @@ public class ZonalStats {
      * @see Result
      */
     public List<Result> results() {
-        return Collections.unmodifiableList(results);
+        final int[] selected = isAll() ? null : getRows();
+        return new AbstractList<Result>() {
+            @Override
+            public Result get(int index) {
+                if (selected == null) {
+                    if (index < 0 || index >= store.size()) {
+                        throw new IndexOutOfBoundsException("invalid index: " + index);
+                    }
+                    return store.getResult(index);
+                }
+                return store.getResult(selected[index]);
+            }
+
+            @Override
+            public int size() {
+                return selected == null ? store.size() : selected.length;
+            }
+        };
+    }
+
+    /**
+     * Writes the results as comma-separated text with a header line. Each line 
+     * holds the band, zone, statistic name, value, the numbers of values offered,
+     * accepted, NaN and NODATA and, in double quotes, the ranges (if any) 
+     * separated by semicolons.
+     *
+     * @param writer the destination
+     *
+     * @throws IOException on error writing to {@code writer}
+     */
+    public void writeCSV(Writer writer) throws IOException {
+        writer.write(CSV_HEADER);
+        writer.write('\n');
+
+        StringBuilder sb = new StringBuilder();
+        for (int row : getRows()) {
+            sb.setLength(0);
+            sb.append(store.getBand(row)).append(',');
+            sb.append(store.getZone(row)).append(',');
+            sb.append(store.getStatistic(row).name()).append(',');
+            sb.append(store.getValue(row)).append(',');
+            sb.append(store.getNumOffered(row)).append(',');
+            sb.append(store.getNumAccepted(row)).append(',');
+            sb.append(store.getNumNaN(row)).append(',');
+            sb.append(store.getNumNoData(row)).append(',');
+
+            List<Range> rowRanges = store.getRanges(row);
+            if (rowRanges != null && !rowRanges.isEmpty()) {
+                sb.append('"');
+                for (int i = 0; i < rowRanges.size(); i++) {
+                    if (i > 0) {
+                        sb.append(';');
+                    }
+                    sb.append(rowRanges.get(i));
+                }
+                sb.append('"');
+            }
+            sb.append('\n');
+            writer.write(sb.toString());
+        }
+        writer.flush();
+    }
+
+    /**
+     * Writes the results in a compact binary form which can be read with 
+     * {@linkplain #readBinary(InputStream)}. The format (all values big-endian
+     * as written by {@code DataOutputStream}) is:
+     * <pre>
+     * int     magic number 0x4A545A53 ("JTZS")
+     * int     format version (1)
+     * int     number of statistic names N
+     * N x UTF names of the statistics in the results ({@code Statistic.name()})
+     * int     number of results
+     * for each result:
+     *     int     band
+     *     int     zone
+     *     byte    index of the statistic name
+     *     double  value
+     *     long    numbers of values offered, accepted, NaN, NODATA (4 values)
+     *     short   number of ranges R
+     *     R x range: byte flags (1 = point, 2 = min included, 4 = max included),
+     *                double min, double max (infinite for open ranges)
+     * </pre>
+     *
+     * @param out the destination
+     *
+     * @throws IOException on error writing to {@code out}
+     */
+    public void writeBinary(OutputStream out) throws IOException {
+        DataOutputStream dos = new DataOutputStream(out);
+        List<Statistic> statistics = store.getStatisticTable();
+
+        dos.writeInt(BINARY_MAGIC);
+        dos.writeInt(BINARY_VERSION);
+        dos.writeInt(statistics.size());
+        for (Statistic s : statistics) {
+            dos.writeUTF(s.name());
+        }
+
+        int[] selected = getRows();
+        dos.writeInt(selected.length);
+        for (int row : selected) {
+            dos.writeInt(store.getBand(row));
+            dos.writeInt(store.getZone(row));
+            dos.writeByte(store.getStatisticCode(row));
+            dos.writeDouble(store.getValue(row));
+            dos.writeLong(store.getNumOffered(row));
+            dos.writeLong(store.getNumAccepted(row));
+            dos.writeLong(store.getNumNaN(row));
+            dos.writeLong(store.getNumNoData(row));
+
+            List<Range> rowRanges = store.getRanges(row);
+            int numRanges = rowRanges == null ? 0 : rowRanges.size();
+            dos.writeShort(numRanges);
+            for (int i = 0; i < numRanges; i++) {
+                writeRange(dos, rowRanges.get(i));
+            }
+        }
+        dos.flush();
+    }
+
+    /**
+     * Reads results written by {@linkplain #writeBinary(OutputStream)}.
+     *
+     * @param in the source
+     *
+     * @return a new {@code ZonalStats} object holding the results
+     *
+     * @throws IOException on error reading from {@code in} or if the data
+     *         are not in the expected format
+     */
+    public static ZonalStats readBinary(InputStream in) throws IOException {
+        DataInputStream dis = new DataInputStream(in);
+        if (dis.readInt() != BINARY_MAGIC) {
+            throw new IOException("Not a ZonalStats binary stream");
+        }
+        int version = dis.readInt();
+        if (version != BINARY_VERSION) {
+            throw new IOException("Unsupported ZonalStats binary version: " + version);
+        }
+
+        Statistic[] statistics = new Statistic[dis.readInt()];
+        for (int i = 0; i < statistics.length; i++) {
+            String name = dis.readUTF();
+            try {
+                statistics[i] = Statistic.valueOf(name);
+            } catch (IllegalArgumentException ex) {
+                throw new IOException("Unknown statistic: " + name);
+            }
+        }
+
+        ZonalStats zs = new ZonalStats();
+        final int n = dis.readInt();
+        for (int i = 0; i < n; i++) {
+            int b = dis.readInt();
+            int z = dis.readInt();
+            Statistic s = statistics[dis.readUnsignedByte()];
+            double value = dis.readDouble();
+            long offered = dis.readLong();
+            long accepted = dis.readLong();
+            long nan = dis.readLong();
+            long noData = dis.readLong();
+
+            List<Range> rowRanges = null;
+            int numRanges = dis.readUnsignedShort();
+            if (numRanges > 0) {
+                rowRanges = CollectionFactory.list();
+                for (int k = 0; k < numRanges; k++) {
+                    rowRanges.add(readRange(dis));
+                }
+            }
+
+            zs.setResult(b, z, s, rowRanges, value, offered, accepted, nan, noData);
+        }
+        return zs;
+    }
+
+    private static void writeRange(DataOutputStream dos, Range r) throws IOException {
+        int flags = (r.isPoint() ? 1 : 0) | (r.isMinIncluded() ? 2 : 0) | (r.isMaxIncluded() ? 4 : 0);
+        dos.writeByte(flags);
+
+        double min = r.getMin() != null ? ((Number) r.getMin()).doubleValue()
+                : r.isMinNegInf() ? Double.NEGATIVE_INFINITY
+                : r.isMinInf() ? Double.POSITIVE_INFINITY : Double.NaN;
+        double max = r.getMax() != null ? ((Number) r.getMax()).doubleValue()
+                : r.isMaxInf() ? Double.POSITIVE_INFINITY
+                : r.isMaxNegInf() ? Double.NEGATIVE_INFINITY : Double.NaN;
+        dos.writeDouble(min);
+        dos.writeDouble(max);
+    }
+
+    private static Range<Double> readRange(DataInputStream dis) throws IOException {
+        int flags = dis.readUnsignedByte();
+        double min = dis.readDouble();
+        double max = dis.readDouble();
+
+        if ((flags & 1) != 0) {
+            return new Range<Double>(min);
+        }
+        return new Range<Double>(min, (flags & 2) != 0, max, (flags & 4) != 0);
+    }
+
+    /**
+     * Tests if this object selects all results.
+     */
+    private boolean isAll() {
+        return baseRows == null && band == null && zone == null && stat == null;
+    }
+
+    /**
+     * Creates a view selecting a subset of this object's results.
+     */
+    private ZonalStats select(Integer b, Integer z, Statistic s) {
+        if ((b != null && band != null && !b.equals(band))
+                || (z != null && zone != null && !z.equals(zone))
+                || (s != null && stat != null && s != stat)) {
+            // conflicting criteria
+            return new ZonalStats(store, null, null, null, new int[0]);
+        }
+
+        return new ZonalStats(store, 
+                b != null ? b : band,
+                z != null ? z : zone,
+                s != null ? s : stat,
+                baseRows);
+    }
+
+    /**
+     * Gets the rows selected by this object, in the order they were added.
+     */
+    private int[] getRows() {
+        if (isAll()) {
+            int[] all = new int[store.size()];
+            for (int i = 0; i < all.length; i++) {
+                all[i] = i;
+            }
+            return all;
+        }
+
+        if (rows == null) {
+            int[] selected = new int[16];
+            int n = 0;
+
+            if (baseRows != null) {
+                for (int row : baseRows) {
+                    if (matches(row)) {
+                        selected = add(selected, n++ , row);
+                    }
+                }
+
+            } else if (band != null && zone != null && stat != null) {
+                for (int row = store.find(band, zone, stat); row >= 0; row = store.nextWithKey(row)) {
+                    selected = add(selected, n++ , row);
+                }
+
+            } else if (zone != null) {
+                for (int row = store.findZone(zone); row >= 0; row = store.nextInZone(row)) {
+                    if (matches(row)) {
+                        selected = add(selected, n++ , row);
+                    }
+                }
+
+            } else {
+                for (int row = 0; row < store.size(); row++) {
+                    if (matches(row)) {
+                        selected = add(selected, n++ , row);
+                    }
+                }
+            }
+
+            rows = trim(selected, n);
+        }
+
+        return rows;
+    }
+
+    /**
+     * Finds the first selected row for the given band, zone and statistic.
+     */
+    private int find(int b, int z, Statistic s) {
+        for (int row = store.find(b, z, s); row >= 0; row = store.nextWithKey(row)) {
+            if (isAll()) {
+                return row;
+            }
+            if (matches(row) && (baseRows == null || contains(baseRows, row))) {
+                return row;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int row) {
+        return (band == null || store.getBand(row) == band)
+                && (zone == null || store.getZone(row) == zone)
+                && (stat == null || store.getStatistic(row) == stat);
+    }
+
+    /*
+     * Row arrays are in ascending order (possibly with repeats) so they
+     * can be searched.
+     */
+    private static boolean contains(int[] rowArray, int row) {
+        int lo = 0;
+        int hi = rowArray.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (rowArray[mid] < row) {
+                lo = mid + 1;
+            } else if (rowArray[mid] > row) {
+                hi = mid - 1;
+            } else {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int[] add(int[] rowArray, int n, int row) {
+        if (n == rowArray.length) {
+            int[] larger = new int[Math.max(16, 2 * n)];
+            System.arraycopy(rowArray, 0, larger, 0, n);
+            rowArray = larger;
+        }
+        rowArray[n] = row;
+        return rowArray;
+    }
+
+    private static int[] trim(int[] rowArray, int n) {
+        int[] result = new int[n];
+        System.arraycopy(rowArray, 0, result, 0, n);
+        return result;
     }
 }
@@ -33,6 +33,7 @@ import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import javax.media.jai.OperationDescriptorImpl;
 import javax.media.jai.ROI;
@@ -43,6 +44,8 @@ import org.jaitools.numeric.RangeComparator;
 import org.jaitools.numeric.RangeUtils;
 import org.jaitools.numeric.Statistic;
 
+import com.vividsolutions.jts.geom.Polygonal;
+
 
 /**
  * Calculates a number of summary statistics, either for the whole data image or
@@ -61,6 +64,14 @@ import org.jaitools.numeric.Statistic;
  * calculations, allowing it to handle very large images for statistics other than
  * {@link org.jaitools.numeric.Statistic#MEDIAN}, for which the
  * {@link org.jaitools.numeric.Statistic#APPROX_MEDIAN} alternative is provided.
+ * Percentile statistics such as {@link org.jaitools.numeric.Statistic#PERCENTILE_95}
+ * are estimated with a bounded-memory sketch whose error bound is described in
+ * {@link org.jaitools.numeric.QuantileSketchProcessor}.
+ * {@link org.jaitools.numeric.Statistic#MODE} and 
+ * {@link org.jaitools.numeric.Statistic#DISTINCT} (e.g. the majority class and number
+ * of classes of categorical data within each zone) are exact up to a limiting number of
+ * distinct values per zone, beyond which they are estimated as described in
+ * {@link org.jaitools.numeric.FrequencyProcessor}.
  * <p>
  * Note that the source names for this operator are "dataImage" and "zoneImage"
  * rather than the more typical JAI names "source0", "source1".
@@ -75,6 +86,26 @@ import org.jaitools.numeric.Statistic;
  * positions to zone image positions. For example, multiple data image pixels
  * could be mapped to a single zone image pixel.
  * <p>
+ * As an alternative to a zone image, zones can be provided as polygonal JTS 
+ * {@code Geometry} objects, in data image pixel coordinates, with the 
+ * "zoneGeometries" parameter: a {@code Map} of geometries keyed by {@code Integer}
+ * zone ID. A data image pixel is in a zone if its centre is within the geometry,
+ * as for the {@code VectorBinarize} operation. Zones may overlap, in which case
+ * pixels contribute to the statistics of each zone that contains them. The 
+ * geometries are indexed spatially and each zone's coverage is worked out tile by
+ * tile, so statistics for all zones are calculated in a single pass over the data
+ * image. Results are provided for every zone, including those which do not contain
+ * any data image pixels. This parameter cannot be used with a zone image or the
+ * "zoneTransform" parameter.
+ * <pre><code>
+ * Map&lt;Integer, Geometry&gt; parcels = ...
+ *
+ * ParameterBlockJAI pb = new ParameterBlockJAI("ZonalStats");
+ * pb.setSource("dataImage", myDataImage);
+ * pb.setParameter("stats", someStats);
+ * pb.setParameter("zoneGeometries", parcels);
+ * </code></pre>
+ * <p>
  * The range of data image values that contribute to the analysis can be constrained
  * in two ways: with the "ranges" parameter and the "noDataRanges" parameter.
  * Each of these parameters take a {@code Collection} of {@link Range} objects.
@@ -89,6 +120,21 @@ import org.jaitools.numeric.Statistic;
  * As well as being excluded from calculations of statistics, the frequency of 
  * NODATA values is tracked by the operator and can be retrieved from the results.
  * <p>
+ * Setting the "numThreads" parameter to a value greater than 1 causes the data
+ * image to be divided into chunks of whole tile rows which are processed
+ * concurrently, each thread accumulating its own zone statistics which are then
+ * merged. The size of chunks can be controlled with the "chunkSize" parameter.
+ * The chunks are run on a fixed-size thread pool (a standard 
+ * {@code ExecutorService}, not a {@code ForkJoinPool}, which requires Java 7)
+ * with "numThreads" threads, or one per chunk if there are fewer chunks. The
+ * pool is created when the statistics are calculated and shut down afterwards.
+ * Parallel processing is used unless range-local statistics have been
+ * requested or the processor for one of the statistics does not support 
+ * merging (see {@link org.jaitools.numeric.AbstractProcessor#canMerge()}). Exact 
+ * statistics are the same as for sequential processing but moment-based 
+ * statistics (e.g. mean, variance) may differ in the final decimal places,
+ * and approximate statistics (e.g. {@code APPROX_MEDIAN}) may differ slightly.
+ * <p>
  * Example of use...
  * <pre><code>
  * RenderedImage myData = ...
@@ -252,6 +298,22 @@ import org.jaitools.numeric.Statistic;
  * <td>Ranges of values to treat specifically as NODATA
  * </td><td>null (no NODATA values defined)</td>
  * </tr>
+ * <tr>
+ * <td>numThreads</td><td>Integer</td>
+ * <td>Number of threads to use when scanning the data image</td>
+ * <td>1</td>
+ * </tr>
+ * <tr>
+ * <td>chunkSize</td><td>Integer</td>
+ * <td>Approximate number of image lines in each chunk processed by a thread
+ * (rounded up to whole tile rows), or 0 to divide the image automatically</td>
+ * <td>0</td>
+ * </tr>
+ * <tr>
+ * <td>zoneGeometries</td><td>Map&lt;Integer, Geometry></td>
+ * <td>Polygonal zones, in data image pixel coordinates, keyed by zone ID</td>
+ * <td>null (zones are taken from the zone image if provided)</td>
+ * </tr>
  * </table>
  *
  * @see Result
@@ -287,6 +349,9 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
     static final int RANGES_TYPE_ARG = 5;
     static final int RANGE_LOCAL_STATS_ARG = 6;
     static final int NODATA_RANGES_ARG = 7;
+    static final int NUM_THREADS_ARG = 8;
+    static final int CHUNK_SIZE_ARG = 9;
+    static final int ZONE_GEOMETRIES_ARG = 10;
 
     private static final String[] paramNames = {
         "stats", 
@@ -296,7 +361,10 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
         "ranges", 
         "rangesType", 
         "rangeLocalStats", 
-        "noDataRanges"
+        "noDataRanges",
+        "numThreads",
+        "chunkSize",
+        "zoneGeometries"
     };
 
     private static final Class<?>[] paramClasses = {
@@ -307,7 +375,10 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
         Collection.class, 
         Range.Type.class, 
         Boolean.class, 
-        Collection.class 
+        Collection.class,
+        Integer.class,
+        Integer.class,
+        Map.class
     };
 
     private static final Object[] paramDefaults = {
@@ -317,7 +388,10 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
         (Collection) null, 
         Range.Type.UNDEFINED, 
         Boolean.FALSE, 
-        (Collection) null
+        (Collection) null,
+        Integer.valueOf(1),
+        Integer.valueOf(0),
+        (Map) null
     };
     
 
@@ -373,6 +447,21 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
                         String.format("%s (default %s) - an optional Collection of Ranges "
                             + "defining values to treat as NODATA",
                             paramNames[NODATA_RANGES_ARG], paramDefaults[NODATA_RANGES_ARG])},
+                {
+                        "arg8Desc",
+                        String.format("%s (default %s) - number of threads to use when "
+                            + "scanning the data image",
+                            paramNames[NUM_THREADS_ARG], paramDefaults[NUM_THREADS_ARG])},
+                {
+                        "arg9Desc",
+                        String.format("%s (default %s) - approximate number of image lines "
+                            + "in each chunk processed by a thread, or 0 for automatic",
+                            paramNames[CHUNK_SIZE_ARG], paramDefaults[CHUNK_SIZE_ARG])},
+                {
+                        "arg10Desc",
+                        String.format("%s (default %s) - an optional Map of polygonal "
+                            + "Geometry zones keyed by Integer zone ID",
+                            paramNames[ZONE_GEOMETRIES_ARG], paramDefaults[ZONE_GEOMETRIES_ARG])},
 
         },
 
@@ -477,6 +566,40 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
             }
         }
 
+        Object numThreads = pb.getObjectParameter(NUM_THREADS_ARG);
+        if (numThreads != null && ((Integer) numThreads) < 1) {
+            msg.append(paramNames[NUM_THREADS_ARG]).append(" arg must be 1 or greater");
+            return false;
+        }
+
+        Object chunkSize = pb.getObjectParameter(CHUNK_SIZE_ARG);
+        if (chunkSize != null && ((Integer) chunkSize) < 0) {
+            msg.append(paramNames[CHUNK_SIZE_ARG]).append(" arg must not be negative");
+            return false;
+        }
+
+        Object zoneGeometries = pb.getObjectParameter(ZONE_GEOMETRIES_ARG);
+        if (zoneGeometries != null) {
+            if (pb.getNumSources() == 2 || pb.getObjectParameter(ZONE_TRANSFORM_ARG) != null) {
+                msg.append(paramNames[ZONE_GEOMETRIES_ARG]).append(
+                        " arg can't be used with a zone image or zone transform");
+                return false;
+            }
+
+            Map<?, ?> zones = (Map<?, ?>) zoneGeometries;
+            if (zones.isEmpty()) {
+                msg.append(paramNames[ZONE_GEOMETRIES_ARG]).append(" arg must not be empty");
+                return false;
+            }
+            for (Map.Entry<?, ?> e : zones.entrySet()) {
+                if (!(e.getKey() instanceof Integer && e.getValue() instanceof Polygonal)) {
+                    msg.append(paramNames[ZONE_GEOMETRIES_ARG]).append(
+                            " arg has to be of type Map<Integer, Geometry> with polygonal geometries");
+                    return false;
+                }
+            }
+        }
+
         // CHECKING BANDS
         Object bandsObject = pb.getObjectParameter(BAND_ARG);
         Integer[] bands = null;
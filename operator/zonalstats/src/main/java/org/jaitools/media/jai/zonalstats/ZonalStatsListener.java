@@ -0,0 +1,82 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+
+/**
+ * Receives progress reports and results from a {@link StreamingZonalStats} 
+ * object. Methods are called on the thread running the calculation.
+ * <p>
+ * Example: displaying progress with a {@link org.jaitools.swing.ProgressMeter}
+ * <pre><code>
+ * final ProgressMeter meter = new ProgressMeter("Zonal statistics");
+ * meter.setVisible(true);
+ * 
+ * szs.addListener(new ZonalStatsListener() {
+ *     public void progress(float progress) {
+ *         meter.setProgress(progress);
+ *     }
+ *     
+ *     public void checkpoint(ZonalStats results, float progress) {
+ *         meter.setLabel(String.format("%.0f%% done", 100 * progress));
+ *     }
+ *     
+ *     public void finished(ZonalStats results) {
+ *         meter.dispose();
+ *     }
+ * });
+ * </code></pre>
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public interface ZonalStatsListener {
+
+    /**
+     * Called after each data image tile has been processed.
+     * 
+     * @param progress proportion of data image pixels processed (0 - 1)
+     */
+    void progress(float progress);
+
+    /**
+     * Called at each checkpoint with the statistics of the pixels 
+     * processed so far.
+     * 
+     * @param results partial results
+     * @param progress proportion of data image pixels processed (0 - 1)
+     */
+    void checkpoint(ZonalStats results, float progress);
+
+    /**
+     * Called when processing has finished.
+     * 
+     * @param results the final results, or {@code null} if processing
+     *        was cancelled
+     */
+    void finished(ZonalStats results);
+}
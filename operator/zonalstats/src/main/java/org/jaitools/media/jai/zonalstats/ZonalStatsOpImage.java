@@ -25,32 +25,36 @@
 
 package org.jaitools.media.jai.zonalstats;
 
-import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
-import java.awt.geom.NoninvertibleTransformException;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.SortedSet;
-import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.logging.Logger;
 
 import javax.media.jai.AreaOpImage;
 import javax.media.jai.ImageLayout;
 import javax.media.jai.NullOpImage;
 import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
 import javax.media.jai.ROI;
 
 import org.jaitools.CollectionFactory;
+import org.jaitools.DaemonThreadFactory;
+import org.jaitools.imageutils.iterator.ParallelIteration;
 import org.jaitools.imageutils.iterator.SimpleIterator;
 import org.jaitools.numeric.Range;
+import org.jaitools.numeric.RangeMatcher;
 import org.jaitools.numeric.RangeUtils;
 import org.jaitools.numeric.Statistic;
 import org.jaitools.numeric.StreamingSampleStats;
 
+import com.vividsolutions.jts.geom.Geometry;
+
 
 /**
  * Calculates image summary statistics for a data image within zones defined by
@@ -76,9 +80,9 @@ public class ZonalStatsOpImage extends NullOpImage {
 
     private final RenderedImage dataImage;
     private final Rectangle dataImageBounds;
-    private final Rectangle zoneImageBounds;
     private final RenderedImage zoneImage;
     private final AffineTransform dataToZoneTransform;
+    private final GeometryZones zoneGeometries;
 
     /** Optional ranges to exclude/include values from/in statistics computations */
     private final List<Range<Double>> ranges;
@@ -93,7 +97,17 @@ public class ZonalStatsOpImage extends NullOpImage {
      * from statistics computations */
     private Range.Type rangesType;
 
-    private SortedSet<Integer> zones;
+    /** Number of threads used to scan the data image */
+    private final int numThreads;
+
+    /** Approximate number of image lines per chunk, or 0 for automatic */
+    private final int chunkSize;
+
+    /** Number of chunks per thread when chunk size is automatic */
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    /** Zone ID used for all results when no zone image was provided */
+    private static final Integer DEFAULT_ZONE = 0;
 
     /**
      * Constructor.
@@ -144,6 +158,73 @@ public class ZonalStatsOpImage extends NullOpImage {
             final boolean rangeLocalStats,
             Collection<Range<Double>> noDataRanges) {
 
+        this(dataImage, zoneImage, config, layout, stats, bands, roi, dataToZoneTransform,
+                ranges, rangesType, rangeLocalStats, noDataRanges, 1, 0, null);
+    }
+
+    /**
+     * Creates a new instance which can scan the data image with multiple threads
+     * and which can take zones from polygonal geometries.
+     *
+     * @param dataImage a {@code RenderedImage} from which data values will be read.
+     *
+     * @param zoneImage an optional {@code RenderedImage} of integral data type that defines
+     *     the zones for which to calculate summary data.
+     *
+     * @param config configurable attributes of the image (see {@link AreaOpImage}).
+     *
+     * @param layout an optional {@code ImageLayout} object.
+     *
+     * @param stats an array of {@code Statistic} constants specifying the data required.
+     *
+     * @param bands the data image band to process.
+     *
+     * @param roi an optional {@code ROI} for data image masking.
+     *
+     * @param dataToZoneTransform an optional {@code AffineTransform} which maps data 
+     *     image positions to zone image positions
+     *
+     * @param ranges an optional list of {@link Range} objects defining values to include or
+     *     exclude (de pending on {@code rangesType} from the calculations; may be
+     *     {@code null} or empty
+     * 
+     * @param rangesType specifies whether the {@code ranges} argument defines values
+     *     to include or exclude
+     *
+     * @param rangeLocalStats if {@code true}, the statistics should be computed for ranges,
+     *     separately.
+     *
+     * @param noDataRanges an optional list of {@link Range} objects defining values to
+     *     treat as NODATA
+     * 
+     * @param numThreads number of threads to use when scanning the data image
+     * 
+     * @param chunkSize approximate number of image lines in each chunk of the data
+     *     image processed by a thread (rounded to whole tile rows); or 0 to divide
+     *     the image automatically
+     * 
+     * @param zoneGeometries an optional {@code Map} of polygonal geometries, in data
+     *     image pixel coordinates, keyed by zone ID; may only be provided if
+     *     {@code zoneImage} and {@code dataToZoneTransform} are {@code null}
+     * 
+     * @see ZonalStatsDescriptor
+     * @see Statistic
+     */
+    public ZonalStatsOpImage(RenderedImage dataImage, RenderedImage zoneImage,
+            Map<?, ?> config,
+            ImageLayout layout,
+            Statistic[] stats,
+            Integer[] bands,
+            ROI roi,
+            AffineTransform dataToZoneTransform,
+            Collection<Range<Double>> ranges,
+            Range.Type rangesType,
+            final boolean rangeLocalStats,
+            Collection<Range<Double>> noDataRanges,
+            int numThreads,
+            int chunkSize,
+            Map<Integer, ? extends Geometry> zoneGeometries) {
+
         super(dataImage, layout, config, OpImage.OP_COMPUTE_BOUND);
 
         this.dataImage = dataImage;
@@ -154,27 +235,6 @@ public class ZonalStatsOpImage extends NullOpImage {
                 dataImage.getWidth(), dataImage.getHeight());
         
         this.dataToZoneTransform = dataToZoneTransform;
-        if (zoneImage == null) {
-            this.zoneImageBounds = null;
-            
-        } else {
-            if (dataToZoneTransform == null) {
-                this.zoneImageBounds = dataImageBounds;
-                
-            } else {
-                Rectangle r = null;
-                try {
-                    AffineTransform inverse = dataToZoneTransform.createInverse();
-                    r = inverse.createTransformedShape(dataImageBounds).getBounds();
-                    
-                } catch (NoninvertibleTransformException ex) {
-                    LOGGER.warning("The data to zone transform is non-invertible. "
-                            + "The whole zone image will be scanned.");
-                    r = dataImageBounds;
-                }
-                this.zoneImageBounds = r;
-            }
-        }
 
         this.stats = new Statistic[stats.length];
         System.arraycopy(stats, 0, this.stats, 0, stats.length);
@@ -202,42 +262,39 @@ public class ZonalStatsOpImage extends NullOpImage {
                 this.noDataRanges.add(new Range<Double>(r));
             }
         }
-    }
 
-    /**
-     * Compiles the set of zone ID values from the zone image. Note, we are
-     * assuming that the zone values are in band 0.
-     * <p>
-     * If a zone image wasn't provided we treat all data image pixels as
-     * belonging to zone 0.
-     */
-    private void buildZoneList() {
-        zones = CollectionFactory.sortedSet();
-        if (zoneImage != null) {
-            SimpleIterator iter = new SimpleIterator(dataImage, zoneImageBounds, null);
-            do {
-                Number zoneVal = iter.getSample();
-                if (zoneVal != null) {
-                    zones.add(zoneVal.intValue());
-                }
-            } while (iter.next());
-            iter.done();
-            
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be 1 or greater");
+        }
+        if (chunkSize < 0) {
+            throw new IllegalArgumentException("chunkSize must not be negative");
+        }
+        this.numThreads = numThreads;
+        this.chunkSize = chunkSize;
+
+        if (zoneGeometries == null) {
+            this.zoneGeometries = null;
         } else {
-            zones.add(0);
+            if (zoneImage != null || dataToZoneTransform != null) {
+                throw new IllegalArgumentException(
+                        "zoneGeometries can't be used with a zone image or zone transform");
+            }
+            this.zoneGeometries = new GeometryZones(zoneGeometries);
         }
     }
 
-
     /**
-     * Delegates calculation of statistics to either {@linkplain #compileZonalStatistics()}
-     * or {@linkplain #compileUnzonedStatistics()}.
+     * Delegates calculation of statistics to {@linkplain #compileZonalStatistics()},
+     * {@linkplain #compileGeometryZoneStatistics()}, {@linkplain #compileUnzonedStatistics()}
+     * or {@linkplain #compileRangeStatistics()}.
      *
      * @return the results as a new instance of {@code ZonalStats}
      */
     private synchronized ZonalStats compileStatistics() {
         if (zoneImage != null) {
             return compileZonalStatistics();
+        } else if (zoneGeometries != null) {
+            return compileGeometryZoneStatistics();
         } else {
             if (!rangeLocalStats) {
                 return compileUnzonedStatistics();
@@ -248,16 +305,19 @@ public class ZonalStatsOpImage extends NullOpImage {
     }
 
     /**
-     * Called by {@link #compileZonalStatistics()} to lazily create a
-     * {@link StreamingSampleStats} object for each zone as it is encountered
-     * in the zone image. The new object is added to the provided {@code resultsPerBand}
-     * {@code Map}.
+     * Creates a {@link StreamingSampleStats} object for a zone, configured
+     * with this operator's statistics and ranges, and adds it to the provided
+     * {@code resultsPerBand} {@code Map}.
      * 
      * @param resultsPerBand {@code Map} of results by zone id
      * @param zone integer zone id
      * 
      * @return a new {@code StreamingSampleStats} object
+     * 
+     * @deprecated no longer called by this class; per-zone statistics are 
+     *     now held by a {@code ZoneAccumulator}
      */
+    @Deprecated
     protected StreamingSampleStats setupZoneStats(Map<Integer, StreamingSampleStats> resultsPerBand, Integer zone) {
         StreamingSampleStats sampleStats = new StreamingSampleStats(Range.Type.EXCLUDE);
         for (Range<Double> r : ranges) {
@@ -272,146 +332,435 @@ public class ZonalStatsOpImage extends NullOpImage {
     }
 
     /**
-     * Used to calculate statistics when a zone image was provided.
+     * Used to calculate statistics when a zone image was provided. Zones are
+     * found and their statistics accumulated in a single pass.
      *
      * @return the results as a {@code ZonalStats} instance
      */
     private ZonalStats compileZonalStatistics() {
+        Rectangle scanBounds = dataImageBounds;
+        if (dataToZoneTransform == null) { // Identity transform assumed
+            Rectangle zoneBounds = new Rectangle(
+                    zoneImage.getMinX(), zoneImage.getMinY(),
+                    zoneImage.getWidth(), zoneImage.getHeight());
 
-        Map<Integer, Map<Integer, StreamingSampleStats>> results = CollectionFactory.sortedMap();
-        for( Integer srcBand : srcBands) {
-            Map<Integer, StreamingSampleStats> resultsPerBand = CollectionFactory.sortedMap();
-            results.put(srcBand, resultsPerBand);
+            // data pixels without a corresponding zone pixel are ignored
+            scanBounds = dataImageBounds.intersection(zoneBounds);
         }
+        ZoneAccumulator accumulator = scan(scanBounds, Range.Type.EXCLUDE);
 
-        SimpleIterator dataIter = new SimpleIterator(dataImage, dataImageBounds, null);
-        SimpleIterator zoneIter = new SimpleIterator(zoneImage, zoneImageBounds, null);
-        
-        if (dataToZoneTransform == null) { // Identity transform assumed
-            do {
-                if (roi == null || roi.contains(dataIter.getPos())) {
-                    for (Integer band : srcBands) {
-                        Map<Integer, StreamingSampleStats> resultPerBand = results.get(band);
-
-                        int zone = zoneIter.getSample().intValue();
-                        StreamingSampleStats sss = resultPerBand.get(zone);
-                        if (sss == null) {
-                            // init the zoned stats lazily
-                            sss = setupZoneStats(resultPerBand, zone);
+        ZonalStats zs = new ZonalStats();
+        accumulator.setResults(zs, srcBands);
+        return zs;
+    }
+
+    /**
+     * Used to calculate statistics when zones were provided as geometries. 
+     * Results are provided for all zones, including any which do not 
+     * cover any data image pixels.
+     *
+     * @return the results as a {@code ZonalStats} instance
+     */
+    private ZonalStats compileGeometryZoneStatistics() {
+        ZoneAccumulator accumulator = scan(dataImageBounds, rangesType);
+        for (int z = 0; z < zoneGeometries.size(); z++) {
+            accumulator.get(zoneGeometries.getId(z));
+        }
+
+        ZonalStats zs = new ZonalStats();
+        accumulator.setResults(zs, srcBands);
+        return zs;
+    }
+
+    /**
+     * Creates an accumulator for per-zone statistics. Package-private
+     * so that unit tests can substitute their own accumulators.
+     * 
+     * @param type how the {@code ranges} are to be applied
+     * 
+     * @return a new accumulator
+     */
+    ZoneAccumulator createAccumulator(Range.Type type) {
+        return new ZoneAccumulator(stats, srcBands.length, ranges, type, noDataRanges);
+    }
+
+    /**
+     * Scans the given area of the data image, and the zone image if present, and
+     * accumulates statistics for each zone. If more than one thread has been 
+     * requested, and the statistics support merging, the area is divided into 
+     * tile-aligned chunks which are processed concurrently, each with its own 
+     * accumulator, and the partial results are then merged.
+     * 
+     * @param scanBounds the area to process, which must be within the bounds
+     *        of the data image and, if present, the zone image
+     * @param type how the {@code ranges} are to be applied
+     * 
+     * @return the accumulated statistics
+     */
+    private ZoneAccumulator scan(Rectangle scanBounds, final Range.Type type) {
+        ZoneAccumulator single = createAccumulator(type);
+        if (scanBounds.isEmpty()) {
+            return single;
+        }
+
+        // statistics which can't be merged are calculated in a single chunk
+        List<Rectangle> chunks = getChunks(dataImage, scanBounds, 
+                single.canMerge() ? numThreads : 1, chunkSize);
+        if (chunks.size() == 1) {
+            accumulate(single, scanBounds);
+            return single;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(numThreads, chunks.size()), new DaemonThreadFactory());
+        try {
+            return ParallelIteration.run(chunks, executor,
+                    new ParallelIteration.ChunkTask<Rectangle, ZoneAccumulator>() {
+                        public ZoneAccumulator process(Rectangle chunk) {
+                            ZoneAccumulator accumulator = createAccumulator(type);
+                            accumulate(accumulator, chunk);
+                            return accumulator;
                         }
-                        sss.offer(dataIter.getSample(band).doubleValue());
-                    }
-                }
-                zoneIter.next();
-            } while( dataIter.next() );
+                    },
+                    new ParallelIteration.Reducer<ZoneAccumulator>() {
+                        public ZoneAccumulator reduce(ZoneAccumulator first, ZoneAccumulator second) {
+                            first.merge(second);
+                            return first;
+                        }
+                    });
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Divides an area of an image into chunks aligned with its tile rows.
+     * Package-private method also used by {@link ZonalHistogramOpImage}.
+     * 
+     * @param image the image to scan
+     * @param scanBounds the area to scan
+     * @param numThreads number of threads which will process the chunks
+     * @param chunkSize approximate number of image lines in each chunk,
+     *        or 0 to divide the area automatically
+     * 
+     * @return chunk bounds in scanning order
+     */
+    static List<Rectangle> getChunks(RenderedImage image, Rectangle scanBounds, 
+            int numThreads, int chunkSize) {
+        List<Rectangle> chunks = CollectionFactory.list();
+        if (numThreads == 1) {
+            chunks.add(scanBounds);
+            return chunks;
+        }
 
+        final int th = image.getTileHeight();
+        final int oy = image.getTileGridYOffset();
+        final int numTileRows = (int) (Math.floor((double) (scanBounds.y + scanBounds.height - 1 - oy) / th)
+                - Math.floor((double) (scanBounds.y - oy) / th)) + 1;
+
+        int numChunks;
+        if (chunkSize > 0) {
+            int tileRowsPerChunk = Math.max(1, (chunkSize + th - 1) / th);
+            numChunks = (numTileRows + tileRowsPerChunk - 1) / tileRowsPerChunk;
         } else {
-            Point zonePos = new Point();
-            do {
-                if (roi == null || roi.contains(dataIter.getPos())) {
-                    dataToZoneTransform.transform(dataIter.getPos(), zonePos);
-
-                    for (Integer band : srcBands) {
-                        Map<Integer, StreamingSampleStats> resultPerBand = results.get(band);
-                        int zone = zoneIter.getSample(zonePos.x, zonePos.y, 0).intValue();
-
-                        StreamingSampleStats sss = resultPerBand.get(zone);
-                        if (sss == null) {
-                            // init the zoned stats lazily
-                            sss = setupZoneStats(resultPerBand, zone);
+            numChunks = numThreads * CHUNKS_PER_THREAD;
+        }
+
+        SimpleIterator iter = new SimpleIterator(image, scanBounds, null, SimpleIterator.Order.IMAGE_X_Y);
+        for (SimpleIterator chunkIter : iter.split(numChunks)) {
+            chunks.add(chunkIter.getBounds());
+            chunkIter.done();
+        }
+        iter.done();
+        return chunks;
+    }
+
+    /**
+     * Accumulates statistics for an area of the data image using either the 
+     * zone geometries or the zone image, if provided.
+     * 
+     * @param accumulator per-zone statistics
+     * @param scanBounds the area to process
+     */
+    private void accumulate(ZoneAccumulator accumulator, Rectangle scanBounds) {
+        if (zoneGeometries != null) {
+            accumulateGeometryZones(accumulator, scanBounds);
+        } else if (dataToZoneTransform != null) {
+            accumulateTransformedRows(accumulator, dataImage, zoneImage, dataToZoneTransform,
+                    srcBands, roi, scanBounds);
+        } else {
+            accumulateRows(accumulator, scanBounds);
+        }
+    }
+
+    /**
+     * Reads the data image tile by tile and offers data values to the 
+     * statistics for each zone geometry which covers them. Zones which 
+     * overlap share pixels. Buffers for the data and ROI membership of
+     * a tile are allocated once and reused for each tile.
+     * 
+     * @param accumulator per-zone statistics
+     * @param scanBounds the area to process, which must be within the
+     *        bounds of the data image
+     */
+    private void accumulateGeometryZones(ZoneAccumulator accumulator, Rectangle scanBounds) {
+        final int tw = dataImage.getTileWidth();
+        final int th = dataImage.getTileHeight();
+        final int numBands = srcBands.length;
+
+        GeometryZones.Rasterizer rasterizer = zoneGeometries.createRasterizer(tw, th);
+        ROITileMask roiMask = roi == null ? null : new ROITileMask(roi, dataImage, scanBounds);
+        double[][] data = new double[numBands][tw * th];
+        boolean[] inROI = new boolean[tw * th];
+        boolean[] roiRow = new boolean[tw];
+        Rectangle area = new Rectangle();
+        Rectangle covered = new Rectangle();
+
+        final int ox = dataImage.getTileGridXOffset();
+        final int oy = dataImage.getTileGridYOffset();
+        final int minTileX = PlanarImage.XToTileX(scanBounds.x, ox, tw);
+        final int maxTileX = PlanarImage.XToTileX(scanBounds.x + scanBounds.width - 1, ox, tw);
+        final int minTileY = PlanarImage.YToTileY(scanBounds.y, oy, th);
+        final int maxTileY = PlanarImage.YToTileY(scanBounds.y + scanBounds.height - 1, oy, th);
+
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            final int y0 = Math.max(scanBounds.y, PlanarImage.tileYToY(tileY, oy, th));
+            final int y1 = Math.min(scanBounds.y + scanBounds.height, PlanarImage.tileYToY(tileY + 1, oy, th));
+
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+                final int x0 = Math.max(scanBounds.x, PlanarImage.tileXToX(tileX, ox, tw));
+                final int x1 = Math.min(scanBounds.x + scanBounds.width, PlanarImage.tileXToX(tileX + 1, ox, tw));
+                area.setBounds(x0, y0, x1 - x0, y1 - y0);
+
+                int[] zones = zoneGeometries.getCandidates(area);
+                if (zones.length == 0) {
+                    continue;
+                }
+
+                // read the ROI membership and tile data, with the area width as stride
+                final int w = area.width;
+                if (roiMask != null) {
+                    boolean anyInROI = false;
+                    for (int j = 0; j < area.height; j++) {
+                        int status = roiMask.getRow(area.y + j, area.x, w, roiRow);
+                        for (int i = 0; i < w; i++) {
+                            inROI[j * w + i] = status == ROITileMask.INSIDE 
+                                    || (status == ROITileMask.PARTIAL && roiRow[i]);
                         }
-                        sss.offer(dataIter.getSample(band).doubleValue());
+                        anyInROI |= status != ROITileMask.OUTSIDE;
+                    }
+                    if (!anyInROI) {
+                        continue;
                     }
                 }
-            } while (!dataIter.next());
-        }
-        
-        dataIter.done();
-        zoneIter.done();
 
-        // collect all found zones
-        Set<Integer> zonesFound = new TreeSet<Integer>();
-        for( Integer band : srcBands ) {
-            Set<Integer> zoneSetForBand = results.get(band).keySet();
-            zonesFound.addAll(zoneSetForBand);
-        }
+                Raster tile = dataImage.getTile(tileX, tileY);
+                for (int k = 0; k < numBands; k++) {
+                    tile.getSamples(area.x, area.y, w, area.height, srcBands[k], data[k]);
+                }
 
-        // set the results
-        ZonalStats zs = new ZonalStats();
-        for( Integer band : srcBands ) {
-            for( Integer zone : zonesFound ) {
-                zs.setResults(band, zone, results.get(band).get(zone));
+                for (int zone : zones) {
+                    final int status = rasterizer.rasterize(zone, area, covered);
+                    if (status == GeometryZones.OUTSIDE) {
+                        continue;
+                    }
+
+                    Rectangle r = status == GeometryZones.INSIDE ? area : covered;
+                    StreamingSampleStats[] sss = accumulator.get(zoneGeometries.getId(zone));
+                    for (int y = r.y; y < r.y + r.height; y++) {
+                        for (int x = r.x; x < r.x + r.width; x++) {
+                            final int pos = (y - area.y) * w + (x - area.x);
+                            if ((roi == null || inROI[pos])
+                                    && (status == GeometryZones.INSIDE || rasterizer.isCovered(x, y))) {
+                                for (int k = 0; k < numBands; k++) {
+                                    sss[k].offer(data[k][pos]);
+                                }
+                            }
+                        }
+                    }
+                }
             }
         }
+    }
 
-        return zs;
+    /**
+     * Reads the data image, and the zone image if present, line by line and 
+     * offers data values to the statistics for their zones. Without a zone image
+     * all values are offered to zone 0.
+     * 
+     * @param accumulator per-zone statistics
+     * @param scanBounds the area to process, which must be within the bounds
+     *        of the data image and, if present, the zone image
+     */
+    private void accumulateRows(ZoneAccumulator accumulator, Rectangle scanBounds) {
+        accumulateRows(accumulator, dataImage, zoneImage, srcBands, roi, scanBounds);
     }
 
     /**
-     * Used to calculate statistics when no zone image was provided.
-     *
-     * @return the results as a {@code ZonalStats} instance
+     * Reads the data image, and the zone image if present, line by line and 
+     * offers data values to the statistics for their zones. Without a zone image
+     * all values are offered to zone 0. Package-private method also used by
+     * {@link IncrementalZonalStats}.
+     * 
+     * @param accumulator per-zone statistics
+     * @param dataImage the data image
+     * @param zoneImage the zone image or {@code null}
+     * @param srcBands the data image bands to read
+     * @param roi an optional ROI
+     * @param scanBounds the area to process, which must be within the bounds
+     *        of the data image and, if present, the zone image
      */
-    private ZonalStats compileUnzonedStatistics() {
-        buildZoneList();
-        Integer zoneID = zones.first();
+    static void accumulateRows(ZoneAccumulator accumulator, RenderedImage dataImage, 
+            RenderedImage zoneImage, Integer[] srcBands, ROI roi, Rectangle scanBounds) {
+        SimpleIterator dataIter = new SimpleIterator(dataImage, scanBounds, null);
+        SimpleIterator zoneIter = zoneImage == null ? null : new SimpleIterator(zoneImage, scanBounds, null);
+
+        final int w = scanBounds.width;
+        final int numBands = srcBands.length;
+        int[] zoneRow = new int[w];
+        double[][] dataRows = new double[numBands][w];
+        boolean[] inROI = new boolean[w];
+        ROITileMask roiMask = roi == null ? null : new ROITileMask(roi, dataImage, scanBounds);
+
+        for (int y = scanBounds.y, ny = 0; ny < scanBounds.height; y++, ny++) {
+            final int roiStatus = roiMask == null ? ROITileMask.INSIDE : roiMask.getRow(y, inROI);
+            if (roiStatus == ROITileMask.OUTSIDE) {
+                continue;
+            }
 
-        // create the stats
-        final StreamingSampleStats sampleStatsPerBand[] = new StreamingSampleStats[srcBands.length];
-        for (int index = 0; index < srcBands.length; index++) {
-            final StreamingSampleStats sampleStats = new StreamingSampleStats(rangesType);
-            for (Range<Double> r : ranges) {
-                sampleStats.addRange(r);
+            if (zoneIter != null) {
+                zoneIter.getRowInt(y, 0, zoneRow);
             }
-            for (Range<Double> r : noDataRanges) {
-                sampleStats.addNoDataRange(r);
+            for (int k = 0; k < numBands; k++) {
+                dataIter.getRowDouble(y, srcBands[k], dataRows[k]);
             }
-            sampleStats.setStatistics(stats);
-            sampleStatsPerBand[index] = sampleStats;
+
+            for (int i = 0; i < w; i++) {
+                if (roiStatus == ROITileMask.INSIDE || inROI[i]) {
+                    StreamingSampleStats[] sss = accumulator.get(zoneRow[i]);
+                    for (int k = 0; k < numBands; k++) {
+                        sss[k].offer(dataRows[k][i]);
+                    }
+                }
+            }
+        }
+
+        dataIter.done();
+        if (zoneIter != null) {
+            zoneIter.done();
         }
+    }
+
+    /**
+     * Reads the data image line by line and offers data values to the statistics
+     * for the zones found by mapping their positions to the zone image with the
+     * given transform. Data pixels which map to positions outside the zone image
+     * are ignored. Package-private for unit tests.
+     * 
+     * @param accumulator per-zone statistics
+     * @param dataImage the data image
+     * @param zoneImage the zone image
+     * @param dataToZoneTransform transform from data image to zone image positions
+     * @param srcBands the data image bands to read
+     * @param roi an optional ROI
+     * @param scanBounds the area to process, which must be within the bounds
+     *        of the data image
+     */
+    static void accumulateTransformedRows(ZoneAccumulator accumulator, RenderedImage dataImage,
+            RenderedImage zoneImage, AffineTransform dataToZoneTransform,
+            Integer[] srcBands, ROI roi, Rectangle scanBounds) {
+        SimpleIterator dataIter = new SimpleIterator(dataImage, scanBounds, null);
+        TransformedZoneReader zoneReader = new TransformedZoneReader(
+                zoneImage, dataToZoneTransform, scanBounds.x, scanBounds.width);
+
+        final int w = scanBounds.width;
+        final int numBands = srcBands.length;
+        int[] zoneRow = new int[w];
+        boolean[] hasZone = new boolean[w];
+        double[][] dataRows = new double[numBands][w];
+        boolean[] inROI = new boolean[w];
+        ROITileMask roiMask = roi == null ? null : new ROITileMask(roi, dataImage, scanBounds);
+
+        for (int y = scanBounds.y, ny = 0; ny < scanBounds.height; y++, ny++) {
+            final int roiStatus = roiMask == null ? ROITileMask.INSIDE : roiMask.getRow(y, inROI);
+            if (roiStatus == ROITileMask.OUTSIDE || !zoneReader.getRow(y, zoneRow, hasZone)) {
+                continue;
+            }
 
-        SimpleIterator dataIter = new SimpleIterator(dataImage, dataImageBounds, null);
-        do {
-            if (roi == null || roi.contains(dataIter.getPos())) {
-                for (int k = 0; k < srcBands.length; k++) {
-                    double value = dataIter.getSample(srcBands[k]).doubleValue();
-                    sampleStatsPerBand[k].offer(value);
+            for (int k = 0; k < numBands; k++) {
+                dataIter.getRowDouble(y, srcBands[k], dataRows[k]);
+            }
+
+            for (int i = 0; i < w; i++) {
+                if (hasZone[i] && (roiStatus == ROITileMask.INSIDE || inROI[i])) {
+                    StreamingSampleStats[] sss = accumulator.get(zoneRow[i]);
+                    for (int k = 0; k < numBands; k++) {
+                        sss[k].offer(dataRows[k][i]);
+                    }
                 }
             }
-        } while (dataIter.next() );
+        }
+
         dataIter.done();
+        zoneReader.done();
+    }
+
+    /**
+     * Used to calculate statistics when no zone image was provided.
+     *
+     * @return the results as a {@code ZonalStats} instance
+     */
+    private ZonalStats compileUnzonedStatistics() {
+        final Integer zoneID = DEFAULT_ZONE;
+
+        ZoneAccumulator accumulator = scan(dataImageBounds, rangesType);
+        final StreamingSampleStats sampleStatsPerBand[] = accumulator.get(zoneID);
 
         // get the results
         final ZonalStats zs = new ZonalStats();
         for (int index = 0; index < srcBands.length; index++) {
             final StreamingSampleStats sampleStats = sampleStatsPerBand[index];
-            List<Range> inclRanges = null;
-            if (ranges != null && !ranges.isEmpty()) {
-                switch (rangesType) {
-                    case INCLUDE:
-                        inclRanges = CollectionFactory.list();
-                        inclRanges.addAll(ranges);
-                        break;
-                    case EXCLUDE:
-                        inclRanges = CollectionFactory.list();
-                        List<Range<Double>> incRanges = RangeUtils.createComplement(RangeUtils.sort(ranges));
-                        inclRanges.addAll(incRanges);
-                        break;
-                }
-            }
-            zs.setResults(srcBands[index], zoneID, sampleStats, inclRanges);
+            zs.setResults(srcBands[index], zoneID, sampleStats, getIncludedRanges(ranges, rangesType));
         }
         return zs;
     }
 
+    /**
+     * Gets the ranges of values included in unzoned statistics, as reported
+     * in their results. Package-private method also used by 
+     * {@link IncrementalZonalStats}.
+     * 
+     * @param ranges ranges of values to include or exclude
+     * @param rangesType whether {@code ranges} are to be included or excluded
+     * 
+     * @return the included ranges, or {@code null} if {@code ranges} is
+     *         {@code null} or empty
+     */
+    static List<Range> getIncludedRanges(List<Range<Double>> ranges, Range.Type rangesType) {
+        List<Range> inclRanges = null;
+        if (ranges != null && !ranges.isEmpty()) {
+            switch (rangesType) {
+                case INCLUDE:
+                    inclRanges = CollectionFactory.list();
+                    inclRanges.addAll(ranges);
+                    break;
+                case EXCLUDE:
+                    inclRanges = CollectionFactory.list();
+                    List<Range<Double>> incRanges = RangeUtils.createComplement(RangeUtils.sort(ranges));
+                    inclRanges.addAll(incRanges);
+                    break;
+            }
+        }
+        return inclRanges;
+    }
+
     /**
      * Used to calculate statistics when range local statistics are required.
      *
      * @return the results as a {@code ZonalStats} instance
      */
     private ZonalStats compileRangeStatistics() {
-        buildZoneList();
-        final Integer zoneID = zones.first();
+        final Integer zoneID = DEFAULT_ZONE;
         final ZonalStats zs = new ZonalStats();
         List<Range> localRanges = null;
         switch (rangesType) {
@@ -428,37 +777,97 @@ public class ZonalStatsOpImage extends NullOpImage {
                 throw new UnsupportedOperationException("Unable to compute range local statistics on UNDEFINED ranges type");
         }
 
+        final List<Range<Double>> bucketRanges = CollectionFactory.list();
         for (Range<Double> range : localRanges) {
-
-            // create the stats
-            final StreamingSampleStats sampleStatsPerBand[] = new StreamingSampleStats[srcBands.length];
-            for (int index = 0; index < srcBands.length; index++) {
-                final StreamingSampleStats sampleStats = new StreamingSampleStats(rangesType);
-                sampleStats.addRange(range);
-                for (Range<Double> noDataRange : noDataRanges) {
-                    sampleStats.addNoDataRange(noDataRange);
-                }
-                sampleStats.setStatistics(stats);
-                sampleStatsPerBand[index] = sampleStats;
+            bucketRanges.add(range);
+        }
+        final int numRanges = bucketRanges.size();
+        final int numBands = srcBands.length;
+
+        /*
+         * Each range has its own statistics, which in earlier versions were
+         * calculated with a separate pass over the image. Here the image is 
+         * scanned once and each value is offered only to the statistics that 
+         * would accept it. NaN and NODATA values, which every range would 
+         * reject, are counted separately for each band.
+         */
+        final StreamingSampleStats[][] sampleStats = new StreamingSampleStats[numRanges][numBands];
+        for (int r = 0; r < numRanges; r++) {
+            for (int k = 0; k < numBands; k++) {
+                sampleStats[r][k] = new StreamingSampleStats();
+                sampleStats[r][k].setStatistics(stats);
+            }
+        }
+        final long[] numOffered = new long[numBands];
+        final long[] numNaN = new long[numBands];
+        final long[] numNoData = new long[numBands];
+
+        final RangeMatcher noDataMatcher = new RangeMatcher(noDataRanges);
+        final RangeIndex rangeIndex = new RangeIndex(bucketRanges);
+        final boolean include = rangesType == Range.Type.INCLUDE;
+        final int[] matches = new int[numRanges];
+
+        final Rectangle bounds = dataImageBounds;
+        final int w = bounds.width;
+        SimpleIterator dataIter = new SimpleIterator(dataImage, bounds, null);
+        double[] dataRow = new double[w];
+        boolean[] inROI = new boolean[w];
+        ROITileMask roiMask = roi == null ? null : new ROITileMask(roi, dataImage, bounds);
+
+        for (int y = bounds.y, ny = 0; ny < bounds.height; y++, ny++) {
+            final int roiStatus = roiMask == null ? ROITileMask.INSIDE : roiMask.getRow(y, inROI);
+            if (roiStatus == ROITileMask.OUTSIDE) {
+                continue;
             }
 
-            SimpleIterator dataIter = new SimpleIterator(dataImage, dataImageBounds, null);
-            do {
-                    if (roi == null || roi.contains(dataIter.getPos())) {
-                        for (int k = 0; k < srcBands.length; k++) {
-                            final double value = dataIter.getSample(srcBands[k]).doubleValue();
-                            sampleStatsPerBand[k].offer(value);
+            for (int k = 0; k < numBands; k++) {
+                dataIter.getRowDouble(y, srcBands[k], dataRow);
+
+                for (int i = 0; i < w; i++) {
+                    if (roiStatus == ROITileMask.PARTIAL && !inROI[i]) {
+                        continue;
+                    }
+
+                    final double value = dataRow[i];
+                    numOffered[k]++ ;
+                    if (Double.isNaN(value)) {
+                        numNaN[k]++ ;
+                        numNoData[k]++ ;
+                        continue;
+                    }
+                    if (noDataMatcher.contains(value)) {
+                        numNoData[k]++ ;
+                        continue;
+                    }
+
+                    final int numMatches = rangeIndex.find(value, matches);
+                    if (include) {
+                        for (int m = 0; m < numMatches; m++) {
+                            sampleStats[matches[m]][k].offer(value);
+                        }
+                    } else {
+                        // with excluded ranges, each range's statistics take
+                        // all values other than those within that range
+                        for (int r = 0, m = 0; r < numRanges; r++) {
+                            if (m < numMatches && matches[m] == r) {
+                                m++ ;
+                            } else {
+                                sampleStats[r][k].offer(value);
+                            }
                         }
                     }
-            } while (dataIter.next());
-            dataIter.done();
-
-            // get the results
-            for (int index = 0; index < srcBands.length; index++) {
-                StreamingSampleStats sampleStats = sampleStatsPerBand[index];
-                List<Range> resultRanges = CollectionFactory.list();
-                resultRanges.add(range);
-                zs.setResults(srcBands[index], zoneID, sampleStats, resultRanges);
+                }
+            }
+        }
+        dataIter.done();
+
+        // get the results
+        for (int r = 0; r < numRanges; r++) {
+            List<Range> resultRanges = CollectionFactory.list();
+            resultRanges.add(bucketRanges.get(r));
+            for (int k = 0; k < numBands; k++) {
+                zs.setResults(srcBands[k], zoneID, sampleStats[r][k], resultRanges,
+                        numOffered[k], numNaN[k], numNoData[k]);
             }
         }
 
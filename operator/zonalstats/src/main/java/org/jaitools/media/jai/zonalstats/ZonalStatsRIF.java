@@ -34,6 +34,7 @@ import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.awt.image.renderable.RenderedImageFactory;
 import java.util.Collection;
+import java.util.Map;
 
 import javax.media.jai.ImageLayout;
 import javax.media.jai.ROI;
@@ -45,6 +46,8 @@ import com.sun.media.jai.util.ImageUtil;
 import org.jaitools.numeric.Range;
 import org.jaitools.numeric.Statistic;
 
+import com.vividsolutions.jts.geom.Geometry;
+
 /**
  * The image factory for the {@link ZonalStatsOpImage} operation.
  *
@@ -65,7 +68,8 @@ public class ZonalStatsRIF implements RenderedImageFactory {
      *
      * @param paramBlock specifies the source image, the optional zone image,
      * and the following parameters: "stats", "band", "roi", "zoneTransform", "ranges",
-     * "rangesType", "rangeLocalStats"
+     * "rangesType", "rangeLocalStats", "noDataRanges", "numThreads", "chunkSize",
+     * "zoneGeometries"
      *
      * @param renderHints optional RenderingHints object
      */
@@ -98,6 +102,15 @@ public class ZonalStatsRIF implements RenderedImageFactory {
         Object rngType = paramBlock.getObjectParameter(ZonalStatsDescriptor.RANGES_TYPE_ARG);
         Range.Type rangesType = rngType != null ? (Range.Type) rngType : rng != null ? Range.Type.EXCLUDE : Range.Type.UNDEFINED;
 
+        Object threads = paramBlock.getObjectParameter(ZonalStatsDescriptor.NUM_THREADS_ARG);
+        int numThreads = threads != null ? (Integer) threads : 1;
+
+        Object chunk = paramBlock.getObjectParameter(ZonalStatsDescriptor.CHUNK_SIZE_ARG);
+        int chunkSize = chunk != null ? (Integer) chunk : 0;
+
+        Map<Integer, Geometry> zoneGeometries = (Map<Integer, Geometry>) 
+                paramBlock.getObjectParameter(ZonalStatsDescriptor.ZONE_GEOMETRIES_ARG);
+
         SampleModel sm = layout.getSampleModel(null);
         if (sm == null || sm.getNumBands() != stats.length) {
 
@@ -139,7 +152,10 @@ public class ZonalStatsRIF implements RenderedImageFactory {
                 ranges,
                 rangesType,
                 rangeLocalStats,
-                noDataRanges
+                noDataRanges,
+                numThreads,
+                chunkSize,
+                zoneGeometries
                 );
     }
 }
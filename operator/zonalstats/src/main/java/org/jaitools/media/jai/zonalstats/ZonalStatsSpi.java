@@ -34,7 +34,7 @@ import javax.media.jai.registry.RenderedRegistryMode;
 
 /**
  * OperationRegistrySpi implementation to register the "ZonalStats"
- * operation and its associated image factories.
+ * and "ZonalHistogram" operations and their associated image factories.
  *
  * @author Michael Bedward
  * @since 1.0
@@ -49,9 +49,9 @@ public class ZonalStatsSpi implements OperationRegistrySpi {
     public ZonalStatsSpi() {}
 
     /**
-     * Registers the ZonalStats operation
+     * Registers the ZonalStats and ZonalHistogram operations
      *
-     * @param registry The registry with which to register the operation
+     * @param registry The registry with which to register the operations
      */
     public void updateRegistry(OperationRegistry registry) {
         OperationDescriptor op = new ZonalStatsDescriptor();
@@ -65,5 +65,16 @@ public class ZonalStatsSpi implements OperationRegistrySpi {
                                  productName,
                                  rif);
 
+        op = new ZonalHistogramDescriptor();
+        registry.registerDescriptor(op);
+        descName = op.getName();
+
+        rif = new ZonalHistogramRIF();
+
+        registry.registerFactory(RenderedRegistryMode.MODE_NAME,
+                                 descName,
+                                 productName,
+                                 rif);
+
     }
 }
@@ -0,0 +1,313 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.jaitools.numeric.LongCountMap;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
+
+
+/**
+ * Holds the per-band {@code StreamingSampleStats} objects for each zone 
+ * encountered while scanning a zone image. Used by {@link ZonalStatsOpImage}
+ * to find zones and accumulate their statistics in a single pass.
+ * <p>
+ * Zones are mapped to storage slots with a primitive array indexed by zone ID
+ * while the IDs span no more than 65536 values, and with an open-addressing
+ * hash table otherwise, so that no boxing or tree lookups are required per 
+ * pixel. The slot of the most recent zone is cached, which helps with the 
+ * runs of equal zone values typical of zone images.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+class ZoneAccumulator {
+    
+    /* Maximum span of zone IDs held in the dense index */
+    private static final int MAX_DENSE_SPAN = 1 << 16;
+    private static final int INITIAL_DENSE_SPAN = 256;
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Statistic[] stats;
+    private final int numBands;
+    private final List<Range<Double>> ranges;
+    private final Range.Type rangesType;
+    private final List<Range<Double>> noDataRanges;
+
+    // zone IDs and statistics by slot, in order of first encounter
+    private int[] zoneIds;
+    private StreamingSampleStats[][] zoneStats;
+    private int numZones;
+
+    // dense index: denseIndex[i] is the slot for zone denseOffset + i, or -1
+    private int[] denseIndex;
+    private long denseOffset;
+    private int minZone;
+    private int maxZone;
+
+    // sparse index of slot plus one by zone, used once the span of 
+    // zone IDs is too large
+    private LongCountMap sparseIndex;
+
+    private int lastZone;
+    private int lastSlot = -1;
+
+    /**
+     * Creates a new accumulator.
+     * 
+     * @param stats the statistics to calculate
+     * @param numBands number of data image bands
+     * @param ranges ranges of values to include or exclude (may be empty)
+     * @param rangesType whether {@code ranges} are to be included or excluded
+     * @param noDataRanges ranges of values to treat as NODATA (may be empty)
+     */
+    ZoneAccumulator(Statistic[] stats, int numBands, 
+            List<Range<Double>> ranges, Range.Type rangesType,
+            List<Range<Double>> noDataRanges) {
+        this.stats = stats;
+        this.numBands = numBands;
+        this.ranges = ranges;
+        this.rangesType = rangesType;
+        this.noDataRanges = noDataRanges;
+
+        zoneIds = new int[INITIAL_CAPACITY];
+        zoneStats = new StreamingSampleStats[INITIAL_CAPACITY][];
+        numZones = 0;
+    }
+
+    /**
+     * Gets the statistics objects, one per band, for a zone. They are
+     * created when the zone is first encountered.
+     * 
+     * @param zone zone ID
+     * 
+     * @return statistics objects indexed by band
+     */
+    StreamingSampleStats[] get(int zone) {
+        if (lastSlot < 0 || zone != lastZone) {
+            int slot = findSlot(zone);
+            if (slot < 0) {
+                slot = addZone(zone);
+            }
+            lastZone = zone;
+            lastSlot = slot;
+        }
+        return zoneStats[lastSlot];
+    }
+
+    /**
+     * Gets the number of zones encountered.
+     * 
+     * @return number of zones
+     */
+    int getNumZones() {
+        return numZones;
+    }
+
+    /**
+     * Gets the IDs of the zones encountered, in order of first encounter.
+     * 
+     * @return a new array of zone IDs
+     */
+    int[] getZones() {
+        int[] ids = new int[numZones];
+        System.arraycopy(zoneIds, 0, ids, 0, numZones);
+        return ids;
+    }
+
+    /**
+     * Gets the statistics objects for a zone, if it has been encountered.
+     * Unlike {@link #get(int)} this method does not add the zone.
+     * 
+     * @param zone zone ID
+     * 
+     * @return statistics objects indexed by band, or {@code null} if the
+     *         zone has not been encountered
+     */
+    StreamingSampleStats[] find(int zone) {
+        int slot = findSlot(zone);
+        return slot < 0 ? null : zoneStats[slot];
+    }
+
+    /**
+     * Tests if the statistics held by this accumulator support merging.
+     * 
+     * @return {@code true} if {@linkplain #merge(ZoneAccumulator)} is supported
+     */
+    boolean canMerge() {
+        return createStats().canMerge();
+    }
+
+    /**
+     * Merges the statistics of another accumulator, which must have been 
+     * created with the same arguments, into this one.
+     * 
+     * @param other the other accumulator
+     */
+    void merge(ZoneAccumulator other) {
+        for (int slot = 0; slot < other.numZones; slot++) {
+            StreamingSampleStats[] sss = get(other.zoneIds[slot]);
+            for (int k = 0; k < numBands; k++) {
+                sss[k].merge(other.zoneStats[slot][k]);
+            }
+        }
+    }
+
+    /**
+     * Copies the results for all zones, in order of band and then of
+     * ascending zone ID, into a {@code ZonalStats} object.
+     * 
+     * @param zs the object to receive results
+     * @param bands the data image bands, in the order of the statistics
+     *        objects returned by {@link #get(int)}
+     */
+    void setResults(ZonalStats zs, Integer[] bands) {
+        int[] sortedZones = new int[numZones];
+        System.arraycopy(zoneIds, 0, sortedZones, 0, numZones);
+        Arrays.sort(sortedZones);
+
+        int[] slots = new int[numZones];
+        for (int i = 0; i < numZones; i++) {
+            slots[i] = findSlot(sortedZones[i]);
+        }
+
+        for (int k = 0; k < bands.length; k++) {
+            for (int i = 0; i < numZones; i++) {
+                zs.setResults(bands[k], sortedZones[i], zoneStats[slots[i]][k]);
+            }
+        }
+    }
+
+    private int findSlot(int zone) {
+        if (sparseIndex != null) {
+            return (int) sparseIndex.get(zone) - 1;
+        }
+        if (denseIndex == null) {
+            return -1;
+        }
+        long i = zone - denseOffset;
+        if (i < 0 || i >= denseIndex.length) {
+            return -1;
+        }
+        return denseIndex[(int) i];
+    }
+
+    private int addZone(int zone) {
+        if (numZones == zoneIds.length) {
+            int[] ids = new int[2 * numZones];
+            System.arraycopy(zoneIds, 0, ids, 0, numZones);
+            zoneIds = ids;
+
+            StreamingSampleStats[][] ss = new StreamingSampleStats[2 * numZones][];
+            System.arraycopy(zoneStats, 0, ss, 0, numZones);
+            zoneStats = ss;
+        }
+
+        final int slot = numZones++ ;
+        zoneIds[slot] = zone;
+        zoneStats[slot] = new StreamingSampleStats[numBands];
+        for (int k = 0; k < numBands; k++) {
+            zoneStats[slot][k] = createStats();
+        }
+
+        if (sparseIndex != null) {
+            sparseIndex.put(zone, slot + 1);
+
+        } else if (denseIndex == null) {
+            denseIndex = new int[INITIAL_DENSE_SPAN];
+            Arrays.fill(denseIndex, -1);
+            denseOffset = zone;
+            minZone = maxZone = zone;
+            denseIndex[0] = slot;
+
+        } else {
+            minZone = Math.min(minZone, zone);
+            maxZone = Math.max(maxZone, zone);
+            long i = zone - denseOffset;
+            if (i < 0 || i >= denseIndex.length) {
+                expandDense(zone);
+            }
+            if (sparseIndex != null) {
+                sparseIndex.put(zone, slot + 1);
+            } else {
+                denseIndex[(int) (zone - denseOffset)] = slot;
+            }
+        }
+
+        return slot;
+    }
+
+    /**
+     * Enlarges the dense index to include the given zone or, if the span
+     * of zone IDs would become too large, moves to a sparse index.
+     */
+    private void expandDense(int zone) {
+        final long required = (long) maxZone - minZone + 1;
+        if (required > MAX_DENSE_SPAN) {
+            sparseIndex = new LongCountMap();
+            for (int slot = 0; slot < numZones - 1; slot++) {
+                sparseIndex.put(zoneIds[slot], slot + 1);
+            }
+            denseIndex = null;
+            return;
+        }
+
+        int newLen = (int) Math.min(MAX_DENSE_SPAN, 
+                Math.max(required, 2L * denseIndex.length));
+
+        // leave the extra room on the side towards which we are growing
+        long newOffset = zone < denseOffset ? (long) maxZone - newLen + 1 : minZone;
+
+        int[] newIndex = new int[newLen];
+        Arrays.fill(newIndex, -1);
+        long start = Math.max(denseOffset, newOffset);
+        long end = Math.min(denseOffset + denseIndex.length, newOffset + newLen);
+        if (end > start) {
+            System.arraycopy(denseIndex, (int) (start - denseOffset), 
+                    newIndex, (int) (start - newOffset), (int) (end - start));
+        }
+        denseIndex = newIndex;
+        denseOffset = newOffset;
+    }
+
+    private StreamingSampleStats createStats() {
+        StreamingSampleStats sampleStats = new StreamingSampleStats(rangesType);
+        for (Range<Double> r : ranges) {
+            sampleStats.addRange(r);
+        }
+        for (Range<Double> r : noDataRanges) {
+            sampleStats.addNoDataRange(r);
+        }
+        sampleStats.setStatistics(stats);
+        return sampleStats;
+    }
+
+}
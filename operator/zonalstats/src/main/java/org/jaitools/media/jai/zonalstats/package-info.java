@@ -24,8 +24,8 @@
  */   
 
 /**
- * Calculates summary statistics for values in a data image, optionally 
- * within zones defined by an integer zone image
+ * Calculates summary statistics, or counts of values by class, for a data 
+ * image, optionally within zones defined by an integer zone image
  */
 
 package org.jaitools.media.jai.zonalstats;
@@ -0,0 +1,121 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.Map;
+import java.util.Random;
+
+import org.jaitools.CollectionFactory;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for CrossTabCounter.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class CrossTabCounterTest {
+
+    @Test
+    public void testKeyOrder() {
+        System.out.println("   key order");
+        int[] values = {Integer.MIN_VALUE, -70000, -1, 0, 1, 255, 65536, Integer.MAX_VALUE};
+        long prev = 0;
+        boolean first = true;
+        for (int zone : values) {
+            for (int cls : values) {
+                long key = CrossTabCounter.key(zone, cls);
+                assertEquals(zone, CrossTabCounter.zoneOf(key));
+                assertEquals(cls, CrossTabCounter.classOf(key));
+                if (!first) {
+                    assertTrue(key > prev);
+                }
+                prev = key;
+                first = false;
+            }
+        }
+    }
+
+    @Test
+    public void testCounts() {
+        System.out.println("   counts");
+        CrossTabCounter counter = new CrossTabCounter();
+        Map<Long, Long> reference = CollectionFactory.map();
+        count(counter, reference, new Random(42), 100000);
+
+        assertEquals(reference.size(), counter.size());
+        assertMatches(reference, counter);
+    }
+
+    @Test
+    public void testMerge() {
+        System.out.println("   merge");
+        CrossTabCounter first = new CrossTabCounter();
+        CrossTabCounter second = new CrossTabCounter();
+        Map<Long, Long> reference = CollectionFactory.map();
+        Random rand = new Random(42);
+        count(first, reference, rand, 50000);
+        count(second, reference, rand, 50000);
+
+        first.merge(second);
+        assertEquals(reference.size(), first.size());
+        assertMatches(reference, first);
+    }
+
+    /**
+     * Counts runs of randomly chosen zones and classes, including sparse
+     * values, in both a counter and a map.
+     */
+    private void count(CrossTabCounter counter, Map<Long, Long> reference, Random rand, int n) {
+        for (int i = 0; i < n; i++) {
+            int zone = rand.nextInt(20) == 0 ? rand.nextInt() : rand.nextInt(50) - 10;
+            int cls = rand.nextInt(20) == 0 ? rand.nextInt() : rand.nextInt(12);
+            int runLength = 1 + rand.nextInt(5);
+            for (int j = 0; j < runLength; j++) {
+                counter.increment(zone, cls);
+            }
+
+            long key = CrossTabCounter.key(zone, cls);
+            Long count = reference.get(key);
+            reference.put(key, (count == null ? 0 : count) + runLength);
+        }
+    }
+
+    private void assertMatches(Map<Long, Long> reference, CrossTabCounter counter) {
+        long[] keys = counter.getSortedKeys();
+        assertEquals(reference.size(), keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            if (i > 0) {
+                assertTrue(keys[i] > keys[i - 1]);
+            }
+            assertEquals(reference.get(keys[i]).longValue(), counter.getCount(keys[i]));
+        }
+        assertEquals(0, counter.getCount(CrossTabCounter.key(1000, 1000)));
+    }
+}
@@ -0,0 +1,152 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.util.Map;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.geom.Point;
+import com.vividsolutions.jts.io.WKTReader;
+
+import org.jaitools.CollectionFactory;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for GeometryZones.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class GeometryZonesTest {
+
+    private static final WKTReader reader = new WKTReader();
+    private static final GeometryFactory gf = new GeometryFactory();
+    private static final double BOUNDARY_TOL = 0.01;
+
+    @Test
+    public void testCandidates() throws Exception {
+        System.out.println("   candidate zones");
+        Map<Integer, Geometry> zones = CollectionFactory.map();
+        zones.put(7, reader.read("POLYGON((0 0, 10 0, 10 10, 0 10, 0 0))"));
+        zones.put(3, reader.read("POLYGON((5 5, 20 5, 20 20, 5 20, 5 5))"));
+        zones.put(-1, reader.read("POLYGON((100 100, 110 100, 110 110, 100 100))"));
+
+        GeometryZones gz = new GeometryZones(zones);
+        assertEquals(3, gz.size());
+        assertEquals(-1, gz.getId(0));
+        assertEquals(3, gz.getId(1));
+        assertEquals(7, gz.getId(2));
+
+        int[] candidates = gz.getCandidates(new Rectangle(0, 0, 8, 8));
+        assertEquals(2, candidates.length);
+        assertEquals(1, candidates[0]);
+        assertEquals(2, candidates[1]);
+
+        assertEquals(0, gz.getCandidates(new Rectangle(50, 50, 10, 10)).length);
+    }
+
+    @Test
+    public void testCoverage() throws Exception {
+        System.out.println("   zone coverage");
+        Map<Integer, Geometry> zones = CollectionFactory.map();
+        zones.put(1, reader.read("POLYGON((2.3 1.2, 40.7 6.1, 30.2 35.8, 4.1 28.6, 2.3 1.2))"));
+        zones.put(2, reader.read("POLYGON((-10.2 -10.3, 100.1 -10.3, 100.1 100.4, -10.2 100.4, -10.2 -10.3), "
+                + "(10.2 10.3, 20.7 10.3, 20.7 20.6, 10.2 20.6, 10.2 10.3))"));
+        zones.put(3, reader.read("MULTIPOLYGON(((0.4 0.4, 5.6 0.4, 5.6 5.6, 0.4 5.6, 0.4 0.4)), "
+                + "((30.4 30.4, 45.6 30.4, 45.6 45.9, 30.4 30.4)))"));
+
+        GeometryZones gz = new GeometryZones(zones);
+        Rectangle[] areas = {
+            new Rectangle(0, 0, 16, 16),
+            new Rectangle(16, 16, 16, 16),
+            new Rectangle(32, 0, 16, 16),
+            new Rectangle(32, 32, 16, 16),
+            new Rectangle(-16, 0, 16, 16)
+        };
+
+        GeometryZones.Rasterizer rasterizer = gz.createRasterizer(16, 16);
+        Rectangle covered = new Rectangle();
+        boolean inside = false;
+        boolean partial = false;
+
+        for (Rectangle area : areas) {
+            for (int z = 0; z < gz.size(); z++) {
+                Geometry geom = zones.get(gz.getId(z));
+                int status = rasterizer.rasterize(z, area, covered);
+                inside |= status == GeometryZones.INSIDE;
+                partial |= status == GeometryZones.PARTIAL;
+
+                for (int y = area.y; y < area.y + area.height; y++) {
+                    for (int x = area.x; x < area.x + area.width; x++) {
+                        Point centre = gf.createPoint(new Coordinate(x + 0.5, y + 0.5));
+                        boolean expected = geom.contains(centre);
+
+                        boolean actual;
+                        switch (status) {
+                            case GeometryZones.INSIDE:
+                                actual = true;
+                                break;
+                            case GeometryZones.OUTSIDE:
+                                actual = false;
+                                break;
+                            default:
+                                actual = covered.contains(x, y) && rasterizer.isCovered(x, y);
+                        }
+                        if (actual != expected) {
+                            // allow for the sub-pixel precision of Java2D rendering
+                            assertTrue("zone " + gz.getId(z) + " x=" + x + " y=" + y, 
+                                    geom.getBoundary().distance(centre) < BOUNDARY_TOL);
+                        }
+                    }
+                }
+            }
+        }
+
+        assertTrue(inside);
+        assertTrue(partial);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNonPolygonalZone() throws Exception {
+        System.out.println("   non-polygonal zone");
+        Map<Integer, Geometry> zones = CollectionFactory.map();
+        zones.put(1, reader.read("LINESTRING(0 0, 10 10)"));
+        new GeometryZones(zones);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testNoZones() {
+        System.out.println("   no zones");
+        Map<Integer, Geometry> zones = CollectionFactory.map();
+        new GeometryZones(zones);
+    }
+}
@@ -0,0 +1,276 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.image.WritableRaster;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.media.jai.TiledImage;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for IncrementalZonalStats.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class IncrementalZonalStatsTest {
+
+    private static final int MIN_X = -10;
+    private static final int MIN_Y = 5;
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+    private static final int TILE_WIDTH = 32;
+    private static final int TILE_HEIGHT = 24;
+    private static final int NUM_ZONES = 5;
+
+    private static final Statistic[] STATS = {
+        Statistic.MEAN, Statistic.MIN, Statistic.MAX, Statistic.MEDIAN, Statistic.SUM
+    };
+
+    private static final Integer[] BANDS = {0, 1};
+
+    private TiledImage dataImage;
+    private TiledImage zoneImage;
+    private Random rand;
+
+    @Before
+    public void setup() {
+        rand = new Random(42);
+        dataImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Double[] {0.0, 0.0});
+        zoneImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Integer[] {0});
+
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                dataImage.setSample(x, y, 0, rand.nextInt(100));
+                dataImage.setSample(x, y, 1, rand.nextGaussian());
+                zoneImage.setSample(x, y, 0, (x - MIN_X) / 20 % NUM_ZONES);
+            }
+        }
+    }
+
+    @Test
+    public void testInitialResults() {
+        System.out.println("   initial results");
+        IncrementalZonalStats izs = create(zoneImage);
+        assertResults(izs.getResults(), zoneImage);
+        izs.dispose();
+    }
+
+    @Test
+    public void testObservedTileChanges() {
+        System.out.println("   observed tile changes");
+        IncrementalZonalStats izs = create(zoneImage);
+        izs.getResults();
+
+        for (int n = 0; n < 5; n++) {
+            // write to a single tile via the tile observer protocol
+            int tileX = rand.nextInt(dataImage.getNumXTiles()) + dataImage.getMinTileX();
+            int tileY = rand.nextInt(dataImage.getNumYTiles()) + dataImage.getMinTileY();
+            WritableRaster tile = dataImage.getWritableTile(tileX, tileY);
+            Rectangle r = tile.getBounds().intersection(getBounds());
+            for (int k = 0; k < 20; k++) {
+                int x = r.x + rand.nextInt(r.width);
+                int y = r.y + rand.nextInt(r.height);
+                tile.setSample(x, y, 0, 1000 + rand.nextInt(100));
+                tile.setSample(x, y, 1, rand.nextGaussian());
+            }
+            dataImage.releaseWritableTile(tileX, tileY);
+
+            assertResults(izs.getResults(), zoneImage);
+        }
+        izs.dispose();
+    }
+
+    @Test
+    public void testUnobservedChanges() {
+        System.out.println("   unobserved changes and invalidate");
+        IncrementalZonalStats izs = create(zoneImage);
+        ZonalStats before = izs.getResults();
+
+        // changes which don't notify observers are not seen until invalidated
+        dataImage.setSample(MIN_X + 50, MIN_Y + 30, 0, -1000);
+        assertEquals(before.getValue(0, 2, Statistic.MIN), 
+                izs.getResults().getValue(0, 2, Statistic.MIN));
+
+        izs.invalidate(new Rectangle(MIN_X + 50, MIN_Y + 30, 1, 1));
+        ZonalStats after = izs.getResults();
+        assertEquals(-1000.0, after.getValue(0, 2, Statistic.MIN), 0.0);
+        assertResults(after, zoneImage);
+        izs.dispose();
+    }
+
+    @Test
+    public void testZoneImageChanges() {
+        System.out.println("   zone image changes");
+        IncrementalZonalStats izs = create(zoneImage);
+        assertEquals(NUM_ZONES, izs.getResults().getZones().size());
+
+        // replace zone 0 with a new zone
+        final int tw = zoneImage.getTileWidth();
+        for (int tileY = zoneImage.getMinTileY(); tileY <= zoneImage.getMaxTileY(); tileY++) {
+            for (int tileX = zoneImage.getMinTileX(); tileX <= zoneImage.getMaxTileX(); tileX++) {
+                WritableRaster tile = zoneImage.getWritableTile(tileX, tileY);
+                Rectangle r = tile.getBounds().intersection(getBounds());
+                for (int y = r.y; y < r.y + r.height; y++) {
+                    for (int x = r.x; x < r.x + r.width; x++) {
+                        if (tile.getSample(x, y, 0) == 0) {
+                            tile.setSample(x, y, 0, 42);
+                        }
+                    }
+                }
+                zoneImage.releaseWritableTile(tileX, tileY);
+            }
+        }
+
+        ZonalStats zs = izs.getResults();
+        assertFalse(zs.getZones().contains(0));
+        assertTrue(zs.getZones().contains(42));
+        assertResults(zs, zoneImage);
+        izs.dispose();
+    }
+
+    @Test
+    public void testUnzoned() {
+        System.out.println("   unzoned with excluded range");
+        List<Range<Double>> ranges = CollectionFactory.list();
+        ranges.add(Range.create(10.0, true, 20.0, true));
+        IncrementalZonalStats izs = new IncrementalZonalStats(dataImage, null, STATS, BANDS, 
+                null, ranges, Range.Type.EXCLUDE, null);
+
+        izs.getResults();
+        WritableRaster tile = dataImage.getWritableTile(1, 1);
+        tile.setSample(tile.getMinX() + 3, tile.getMinY() + 4, 0, 15);
+        tile.setSample(tile.getMinX() + 5, tile.getMinY() + 6, 0, 999);
+        dataImage.releaseWritableTile(1, 1);
+
+        ZonalStats zs = izs.getResults();
+        assertEquals(1, zs.getZones().size());
+        assertEquals(999.0, zs.getValue(0, 0, Statistic.MAX), 0.0);
+
+        StreamingSampleStats ref = new StreamingSampleStats(Range.Type.EXCLUDE);
+        ref.addRange(ranges.get(0));
+        ref.setStatistics(STATS);
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                ref.offer(dataImage.getSampleDouble(x, y, 0));
+            }
+        }
+        for (Statistic s : STATS) {
+            double exp = ref.getStatisticValue(s);
+            assertEquals(exp, zs.getValue(0, 0, s), tolerance(s, exp));
+        }
+        izs.dispose();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidBand() {
+        System.out.println("   invalid band");
+        new IncrementalZonalStats(dataImage, zoneImage, STATS, new Integer[] {2}, 
+                null, null, null, null);
+    }
+
+    private IncrementalZonalStats create(TiledImage zones) {
+        return new IncrementalZonalStats(dataImage, zones, STATS, BANDS, null, null, null, null);
+    }
+
+    /**
+     * Compares results with statistics calculated from scratch.
+     */
+    private void assertResults(ZonalStats zs, TiledImage zones) {
+        Map<Integer, StreamingSampleStats[]> reference = CollectionFactory.sortedMap();
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                int zone = zones.getSample(x, y, 0);
+                StreamingSampleStats[] sss = reference.get(zone);
+                if (sss == null) {
+                    sss = new StreamingSampleStats[BANDS.length];
+                    for (int k = 0; k < BANDS.length; k++) {
+                        sss[k] = new StreamingSampleStats(Range.Type.EXCLUDE);
+                        sss[k].setStatistics(STATS);
+                    }
+                    reference.put(zone, sss);
+                }
+                for (int k = 0; k < BANDS.length; k++) {
+                    sss[k].offer(dataImage.getSampleDouble(x, y, BANDS[k]));
+                }
+            }
+        }
+
+        assertEquals(reference.keySet(), zs.getZones());
+        int numStats = reference.values().iterator().next()[0].getStatistics().size();
+        assertEquals(BANDS.length * reference.size() * numStats, zs.results().size());
+        for (int k = 0; k < BANDS.length; k++) {
+            for (Integer zone : reference.keySet()) {
+                for (Statistic s : STATS) {
+                    Result r = zs.getResult(BANDS[k], zone, s);
+                    assertNotNull(r);
+                    double exp = reference.get(zone)[k].getStatisticValue(s);
+                    assertEquals(exp, r.getValue(), tolerance(s, exp));
+                    assertEquals(reference.get(zone)[k].getNumAccepted(s), r.getNumAccepted());
+                }
+            }
+        }
+    }
+
+    /**
+     * Gets the tolerance for comparing a result with a value calculated from
+     * scratch. Merging per-tile statistics changes the order in which values
+     * are summed, so sums and moment statistics can differ in the final
+     * decimal places; other statistics must be equal.
+     */
+    private static double tolerance(Statistic s, double expected) {
+        switch (s) {
+            case MEAN:
+            case SDEV:
+            case SUM:
+            case VARIANCE:
+                return 1.0e-10 * Math.max(1.0, Math.abs(expected));
+
+            default:
+                return 0.0;
+        }
+    }
+
+    private Rectangle getBounds() {
+        return new Rectangle(MIN_X, MIN_Y, WIDTH, HEIGHT);
+    }
+}
@@ -0,0 +1,155 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.RenderedImage;
+
+import javax.media.jai.ROI;
+import javax.media.jai.ROIShape;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.imageutils.ROIGeometry;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ROITileMask.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ROITileMaskTest {
+
+    private static final int WIDTH = 200;
+    private static final int HEIGHT = 150;
+    private static final int TILE_WIDTH = 32;
+    private static final int TILE_HEIGHT = 24;
+
+    private static final RenderedImage image = ImageUtils.createConstantImage(
+            -10, 5, WIDTH, HEIGHT, TILE_WIDTH, TILE_HEIGHT, new Integer[] {0});
+
+    @Test
+    public void testPolygonROI() throws Exception {
+        System.out.println("   ROIGeometry polygon");
+        Geometry poly = new WKTReader().read(
+                "POLYGON((0 10, 150 20, 120 140, 40.5 100.5, 0 10))");
+        ROI roi = new ROIGeometry(poly);
+
+        assertMatchesPixelTests(roi, imageBounds());
+        assertMatchesPixelTests(roi, new Rectangle(3, 17, 101, 77));
+    }
+
+    @Test
+    public void testPolygonWithHoleROI() throws Exception {
+        System.out.println("   ROIGeometry polygon with hole");
+        Geometry poly = new WKTReader().read(
+                "POLYGON((-10 5, 189 5, 189 154, -10 154, -10 5), (20 30, 160 30, 160 120, 20 120, 20 30))");
+        ROI roi = new ROIGeometry(poly);
+
+        assertMatchesPixelTests(roi, imageBounds());
+    }
+
+    @Test
+    public void testShapeROI() {
+        System.out.println("   ROIShape");
+        ROI roi = new ROIShape(new Ellipse2D.Double(10, 20, 130.5, 90));
+        assertMatchesPixelTests(roi, imageBounds());
+    }
+
+    @Test
+    public void testROIOutsideImage() throws Exception {
+        System.out.println("   ROI outside image");
+        Geometry poly = new WKTReader().read(
+                "POLYGON((500 500, 600 500, 600 600, 500 500))");
+        ROI roi = new ROIGeometry(poly);
+
+        Rectangle bounds = imageBounds();
+        ROITileMask mask = new ROITileMask(roi, image, bounds);
+        boolean[] inROI = new boolean[bounds.width];
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            assertEquals(ROITileMask.OUTSIDE, mask.getRow(y, inROI));
+        }
+    }
+
+    @Test
+    public void testPartRows() throws Exception {
+        System.out.println("   parts of rows within tiles");
+        Geometry poly = new WKTReader().read(
+                "POLYGON((0 10, 150 20, 120 140, 40.5 100.5, 0 10))");
+        ROI roi = new ROIGeometry(poly);
+
+        // parts of lines from one tile, and spanning several tiles
+        Rectangle bounds = new Rectangle(3, 17, 151, 97);
+        ROITileMask mask = new ROITileMask(roi, image, bounds);
+        int[][] parts = {{3, 11}, {22, 32}, {54, 70}, {150, 4}};
+        boolean[] inROI = new boolean[bounds.width];
+
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            for (int[] part : parts) {
+                int status = mask.getRow(y, part[0], part[1], inROI);
+                for (int i = 0; i < part[1]; i++) {
+                    int x = part[0] + i;
+                    boolean actual = status == ROITileMask.INSIDE
+                            || (status == ROITileMask.PARTIAL && inROI[i]);
+                    assertEquals("x=" + x + " y=" + y, roi.contains(x, y), actual);
+                }
+            }
+        }
+    }
+
+    private Rectangle imageBounds() {
+        return new Rectangle(image.getMinX(), image.getMinY(), image.getWidth(), image.getHeight());
+    }
+
+    /**
+     * Checks the mask against testing each position with the ROI.
+     */
+    private void assertMatchesPixelTests(ROI roi, Rectangle bounds) {
+        ROITileMask mask = new ROITileMask(roi, image, bounds);
+        boolean[] inROI = new boolean[bounds.width];
+        boolean partial = false;
+
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            int status = mask.getRow(y, inROI);
+            partial |= status == ROITileMask.PARTIAL;
+
+            for (int i = 0; i < bounds.width; i++) {
+                boolean expected = roi.contains(bounds.x + i, y);
+                boolean actual = status == ROITileMask.INSIDE
+                        || (status == ROITileMask.PARTIAL && inROI[i]);
+                assertEquals("x=" + (bounds.x + i) + " y=" + y, expected, actual);
+            }
+        }
+        assertTrue(partial);
+    }
+}
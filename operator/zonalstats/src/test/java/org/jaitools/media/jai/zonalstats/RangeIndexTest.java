@@ -0,0 +1,144 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.RangeMatcher;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RangeIndex.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class RangeIndexTest {
+
+    @Test
+    public void testSeparatedRanges() {
+        System.out.println("   separated ranges");
+        List<Range<Double>> ranges = CollectionFactory.list();
+        ranges.add(Range.create(10.0, true, 20.0, false));
+        ranges.add(Range.create(null, false, -5.0, true));
+        ranges.add(Range.create(50.0, false, null, false));
+        ranges.add(Range.create(30.0, true, 30.0, true));
+        ranges.add(Range.create(0.0, false, 5.0, true));
+
+        assertFinds(ranges, new double[] {
+            -100, -5, -4.9, 0, 1e-12, 5, 5.1, 9.99, 10, 15, 20, 29, 30, 31, 50, 50.5, 
+            Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY, Double.NaN
+        });
+
+        int[] matches = new int[ranges.size()];
+        assertEquals(1, new RangeIndex(ranges).find(30.0, matches));
+        assertEquals(3, matches[0]);
+        assertEquals(0, new RangeIndex(ranges).find(20.0, matches));
+    }
+
+    @Test
+    public void testAdjacentRanges() {
+        System.out.println("   adjacent ranges");
+        List<Range<Double>> ranges = CollectionFactory.list();
+        ranges.add(Range.create(0.0, true, 1.0, true));
+        ranges.add(Range.create(1.0, true, 2.0, true));
+        ranges.add(Range.create(1.5, true, 3.0, false));
+
+        assertFinds(ranges, new double[] {-1, 0, 0.5, 1, 1.5, 1.75, 2, 2.5, 3});
+
+        int[] matches = new int[ranges.size()];
+        assertEquals(2, new RangeIndex(ranges).find(1.0, matches));
+        assertEquals(0, matches[0]);
+        assertEquals(1, matches[1]);
+    }
+
+    @Test
+    public void testContiguousBins() {
+        System.out.println("   contiguous bins");
+        List<Range<Double>> ranges = CollectionFactory.list();
+        for (int i = 9; i >= 0; i--) {
+            ranges.add(Range.create(i * 10.0, true, i * 10.0 + 10, i % 4 == 0));
+        }
+        ranges.add(Range.create(100.0, true, 100.0, true));
+
+        assertFinds(ranges, new double[] {
+            -1, 0, 5, 9.999, 10, 10.001, 40, 50, 55.5, 80, 99, 100, 100.5, Double.NaN
+        });
+
+        Random rand = new Random(42);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 2 == 0 ? rand.nextInt(110) - 5 : rand.nextDouble() * 110 - 5;
+        }
+        assertFinds(ranges, values);
+    }
+
+    @Test
+    public void testRandomValues() {
+        System.out.println("   random values");
+        List<Range<Double>> ranges = CollectionFactory.list();
+        for (int i = 19; i >= 0; i--) {
+            ranges.add(Range.create(i * 10.0, i % 2 == 0, i * 10.0 + 5, i % 3 == 0));
+        }
+
+        Random rand = new Random(42);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 2 == 0 ? rand.nextInt(220) - 10 : rand.nextDouble() * 220 - 10;
+        }
+        assertFinds(ranges, values);
+    }
+
+    /**
+     * Checks that the index finds the same ranges as testing each
+     * range with its own matcher.
+     */
+    private void assertFinds(List<Range<Double>> ranges, double[] values) {
+        RangeIndex index = new RangeIndex(ranges);
+        assertEquals(ranges.size(), index.size());
+        int[] matches = new int[ranges.size()];
+
+        for (double value : values) {
+            int numMatches = index.find(value, matches);
+            int m = 0;
+            for (int i = 0; i < ranges.size(); i++) {
+                RangeMatcher matcher = new RangeMatcher(Collections.singletonList(ranges.get(i)));
+                if (matcher.contains(value)) {
+                    assertTrue("value " + value, m < numMatches);
+                    assertEquals("value " + value, i, matches[m++]);
+                }
+            }
+            assertEquals("value " + value, m, numMatches);
+        }
+    }
+}
@@ -0,0 +1,318 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.SortedSet;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+
+import org.junit.Before;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ResultStore and the ZonalStats methods which use it.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ResultStoreTest {
+
+    private static final Statistic[] STATS = {
+        Statistic.MEAN, Statistic.MIN, Statistic.MAX
+    };
+
+    private static final int NUM_BANDS = 3;
+    private static final int[] ZONES = {-7, 0, 3, 42, 100000};
+
+    private List<Range> ranges1;
+    private List<Range> ranges2;
+    private ZonalStats zs;
+
+    /* Results added, in order, as a naive reference */
+    private List<Result> reference;
+
+    @Before
+    public void setup() {
+        ranges1 = CollectionFactory.list();
+        ranges1.add(Range.create(0.0, true, 10.0, false));
+        ranges2 = CollectionFactory.list();
+        ranges2.add(Range.create(10.0, true, null, false));
+        ranges2.add(Range.create(-5.0));
+
+        zs = new ZonalStats();
+        reference = CollectionFactory.list();
+
+        Random rand = new Random(42);
+        for (int b = 0; b < NUM_BANDS; b++) {
+            for (int z : ZONES) {
+                for (Statistic s : STATS) {
+                    for (List<Range> rr : Arrays.asList(null, ranges1, ranges2)) {
+                        Double value = rand.nextInt(10) == 0 ? null : rand.nextGaussian();
+                        long offered = rand.nextInt(1000);
+                        zs.setResult(b, z, s, rr, value, offered, offered / 2, 3, 4);
+                        reference.add(new Result(b, z, s, rr, value, offered, offered / 2, 3, 4));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testResults() {
+        System.out.println("   all results");
+        assertResults(reference, zs.results());
+    }
+
+    @Test
+    public void testFind() {
+        System.out.println("   find by band, zone and statistic");
+        for (int b = 0; b < NUM_BANDS; b++) {
+            for (int z : ZONES) {
+                for (Statistic s : STATS) {
+                    Result exp = null;
+                    for (Result r : reference) {
+                        if (r.getImageBand() == b && r.getZone() == z && r.getStatistic() == s) {
+                            exp = r;
+                            break;
+                        }
+                    }
+                    assertResult(exp, zs.getResult(b, z, s));
+                    assertEquals(valueOrNaN(exp), zs.getValue(b, z, s), 0.0);
+                }
+            }
+        }
+
+        assertNull(zs.getResult(0, 1, Statistic.MEAN));
+        assertNull(zs.getValue(0, 0, Statistic.SDEV));
+        assertNull(zs.band(1).getResult(0, 0, Statistic.MEAN));
+        assertNotNull(zs.band(1).zone(0).getResult(1, 0, Statistic.MEAN));
+    }
+
+    @Test
+    public void testChainedFilters() {
+        System.out.println("   chained filters");
+        for (int b = 0; b < NUM_BANDS; b++) {
+            for (int z : ZONES) {
+                for (Statistic s : STATS) {
+                    assertResults(select(b, z, s), zs.band(b).zone(z).statistic(s).results());
+                    assertResults(select(b, z, s), zs.statistic(s).zone(z).band(b).results());
+                    assertResults(select(null, z, s), zs.statistic(s).zone(z).results());
+                    assertResults(select(b, null, s), zs.band(b).statistic(s).results());
+                }
+                assertResults(select(b, z, null), zs.zone(z).band(b).results());
+                assertResults(select(null, z, null), zs.zone(z).results());
+            }
+            assertResults(select(b, null, null), zs.band(b).results());
+        }
+
+        // conflicting criteria
+        assertTrue(zs.band(0).band(1).results().isEmpty());
+        assertTrue(zs.zone(0).zone(3).results().isEmpty());
+    }
+
+    @Test
+    public void testRangesFilter() {
+        System.out.println("   ranges filter");
+        List<Result> exp = CollectionFactory.list();
+        for (Result r : reference) {
+            if (r.getImageBand() == 1 && r.getRanges() != null && r.getRanges().containsAll(ranges2)) {
+                exp.add(r);
+            }
+        }
+        ZonalStats subset = zs.band(1).ranges(ranges2);
+        assertResults(exp, subset.results());
+
+        // filters applied after ranges
+        List<Result> exp2 = CollectionFactory.list();
+        for (Result r : exp) {
+            if (r.getZone() == 42) {
+                exp2.add(r);
+            }
+        }
+        assertResults(exp2, subset.zone(42).results());
+        assertResult(exp2.get(0), subset.getResult(1, 42, exp2.get(0).getStatistic()));
+        assertNull(subset.getResult(0, 42, Statistic.MEAN));
+    }
+
+    @Test
+    public void testGetZonesAndBands() {
+        System.out.println("   zones and bands");
+        SortedSet<Integer> zones = zs.getZones();
+        assertEquals(ZONES.length, zones.size());
+        int i = 0;
+        for (int z : zones) {
+            assertEquals(ZONES[i++], z);
+        }
+
+        assertEquals(1, zs.zone(42).getZones().size());
+        assertEquals(NUM_BANDS, zs.getImageBands().size());
+        assertEquals(1, zs.band(2).getImageBands().size());
+
+        // a view's zones follow results added later
+        ZonalStats other = new ZonalStats();
+        other.setResult(0, 5, Statistic.MEAN, null, 1.0, 1, 1, 0, 0);
+        assertEquals(1, other.getZones().size());
+        other.setResult(0, 6, Statistic.MEAN, null, 1.0, 1, 1, 0, 0);
+        assertEquals(2, other.getZones().size());
+    }
+
+    @Test
+    public void testWriteCSV() throws Exception {
+        System.out.println("   write CSV");
+        StringWriter writer = new StringWriter();
+        zs.zone(3).band(0).statistic(Statistic.MIN).writeCSV(writer);
+
+        String[] lines = writer.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertEquals("band,zone,statistic,value,offered,accepted,nan,nodata,ranges", lines[0]);
+
+        List<Result> exp = select(0, 3, Statistic.MIN);
+        for (int k = 0; k < exp.size(); k++) {
+            String[] fields = lines[k + 1].split(",", 9);
+            Result r = exp.get(k);
+            assertEquals("0", fields[0]);
+            assertEquals("3", fields[1]);
+            assertEquals("MIN", fields[2]);
+            assertEquals(valueOrNaN(r), Double.parseDouble(fields[3]), 0.0);
+            assertEquals(r.getNumOffered(), Long.parseLong(fields[4]));
+            assertEquals(r.getNumAccepted(), Long.parseLong(fields[5]));
+        }
+        assertEquals("", lines[1].split(",", 9)[8]);
+        assertTrue(lines[3].split(",", 9)[8].contains(";"));
+    }
+
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        System.out.println("   binary round trip");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zs.writeBinary(out);
+
+        ZonalStats copy = ZonalStats.readBinary(new ByteArrayInputStream(out.toByteArray()));
+        assertResults(reference, copy.results());
+
+        out.reset();
+        zs.zone(42).writeBinary(out);
+        copy = ZonalStats.readBinary(new ByteArrayInputStream(out.toByteArray()));
+        assertResults(select(null, 42, null), copy.results());
+    }
+
+    @Test
+    public void testBinaryStatisticNames() throws Exception {
+        System.out.println("   binary statistic names");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        zs.statistic(Statistic.MAX).writeBinary(out);
+
+        // the header names the statistics held, in order of first use,
+        // rather than every Statistic constant
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        dis.readInt();
+        dis.readInt();
+        assertEquals(STATS.length, dis.readInt());
+        for (Statistic s : STATS) {
+            assertEquals(s.name(), dis.readUTF());
+        }
+
+        // rows are decoded by name, whatever the order of the constants
+        out.reset();
+        DataOutputStream dos = new DataOutputStream(out);
+        dos.writeInt(0x4A545A53);
+        dos.writeInt(1);
+        dos.writeInt(2);
+        dos.writeUTF("SUM");
+        dos.writeUTF("MEAN");
+        dos.writeInt(2);
+        for (int i = 0; i < 2; i++) {
+            dos.writeInt(0);
+            dos.writeInt(5);
+            dos.writeByte(1 - i);
+            dos.writeDouble(i);
+            for (int k = 0; k < 4; k++) {
+                dos.writeLong(10);
+            }
+            dos.writeShort(0);
+        }
+        dos.flush();
+
+        ZonalStats copy = ZonalStats.readBinary(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(0.0, copy.getValue(0, 5, Statistic.MEAN), 0.0);
+        assertEquals(1.0, copy.getValue(0, 5, Statistic.SUM), 0.0);
+        assertNull(copy.getValue(0, 5, Statistic.MAX));
+    }
+
+    private List<Result> select(Integer b, Integer z, Statistic s) {
+        List<Result> subset = CollectionFactory.list();
+        for (Result r : reference) {
+            if ((b == null || r.getImageBand() == b)
+                    && (z == null || r.getZone() == z)
+                    && (s == null || r.getStatistic() == s)) {
+                subset.add(r);
+            }
+        }
+        return subset;
+    }
+
+    private void assertResults(List<Result> expected, List<Result> results) {
+        assertEquals(expected.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertResult(expected.get(i), results.get(i));
+        }
+    }
+
+    private void assertResult(Result exp, Result r) {
+        assertNotNull(r);
+        assertEquals(exp.getImageBand(), r.getImageBand());
+        assertEquals(exp.getZone(), r.getZone());
+        assertEquals(exp.getStatistic(), r.getStatistic());
+        assertEquals(valueOrNaN(exp), valueOrNaN(r), 0.0);
+        assertEquals(exp.getNumOffered(), r.getNumOffered());
+        assertEquals(exp.getNumAccepted(), r.getNumAccepted());
+        assertEquals(exp.getNumNaN(), r.getNumNaN());
+        assertEquals(exp.getNumNoData(), r.getNumNoData());
+
+        if (exp.getRanges() == null || exp.getRanges().isEmpty()) {
+            assertTrue(r.getRanges() == null || r.getRanges().isEmpty());
+        } else {
+            assertEquals(exp.getRanges().size(), r.getRanges().size());
+            assertTrue(r.getRanges().containsAll(exp.getRanges()));
+        }
+    }
+
+    private double valueOrNaN(Result r) {
+        return r.getValue() == null ? Double.NaN : r.getValue();
+    }
+}
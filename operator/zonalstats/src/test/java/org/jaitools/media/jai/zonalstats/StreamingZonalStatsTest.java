@@ -0,0 +1,250 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.media.jai.TiledImage;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.numeric.Statistic;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for StreamingZonalStats.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class StreamingZonalStatsTest {
+
+    private static final int MIN_X = -10;
+    private static final int MIN_Y = 5;
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+    private static final int TILE_WIDTH = 32;
+    private static final int TILE_HEIGHT = 24;
+
+    // 4 x 4 tiles with the tile grid at the origin
+    private static final int NUM_TILES = 16;
+
+    private static final Statistic[] STATS = {
+        Statistic.MEAN, Statistic.MIN, Statistic.MAX, Statistic.MEDIAN
+    };
+
+    private static TiledImage dataImage;
+    private static TiledImage zoneImage;
+
+    @BeforeClass
+    public static void setup() {
+        dataImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Double[] {0.0});
+        zoneImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Integer[] {0});
+
+        Random rand = new Random(42);
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                dataImage.setSample(x, y, 0, rand.nextGaussian());
+                zoneImage.setSample(x, y, 0, (x - MIN_X) / 15 + 10 * ((y - MIN_Y) / 30));
+            }
+        }
+    }
+
+    @Test
+    public void testResults() {
+        System.out.println("   results match incremental calculation");
+        RecordingListener listener = new RecordingListener();
+        StreamingZonalStats szs = create();
+        szs.addListener(listener);
+        ZonalStats zs = szs.call();
+
+        assertResultsEqual(referenceResults(), zs);
+        assertEquals(1, listener.numFinished);
+        assertSame(zs, listener.finalResults);
+    }
+
+    @Test
+    public void testProgress() {
+        System.out.println("   progress");
+        RecordingListener listener = new RecordingListener();
+        StreamingZonalStats szs = create();
+        szs.addListener(listener);
+        szs.call();
+
+        assertEquals(NUM_TILES, listener.progress.size());
+        float prev = 0;
+        for (float p : listener.progress) {
+            assertTrue(p > prev);
+            prev = p;
+        }
+        assertEquals(1.0f, prev, 1.0e-6f);
+    }
+
+    @Test
+    public void testCheckpoints() {
+        System.out.println("   checkpoints");
+        RecordingListener listener = new RecordingListener();
+        StreamingZonalStats szs = create();
+        szs.addListener(listener);
+        szs.setCheckpointInterval(5);
+        szs.call();
+
+        // after tiles 5, 10 and 15 (not after the last tile)
+        assertEquals(3, listener.checkpoints.size());
+
+        // partial results cover fewer pixels than the final results
+        long partial = countAccepted(listener.checkpoints.get(0));
+        long later = countAccepted(listener.checkpoints.get(2));
+        long total = countAccepted(listener.finalResults);
+        assertTrue(partial > 0);
+        assertTrue(partial < later);
+        assertTrue(later < total);
+        assertEquals((long) WIDTH * HEIGHT, total);
+    }
+
+    @Test
+    public void testCancel() {
+        System.out.println("   cancel");
+        final StreamingZonalStats szs = create();
+        RecordingListener listener = new RecordingListener() {
+            @Override
+            public void progress(float p) {
+                super.progress(p);
+                if (progress.size() == 3) {
+                    szs.cancel();
+                }
+            }
+        };
+        szs.addListener(listener);
+
+        assertNull(szs.call());
+        assertTrue(szs.isCancelled());
+        assertEquals(3, listener.progress.size());
+        assertEquals(1, listener.numFinished);
+        assertNull(listener.finalResults);
+    }
+
+    @Test
+    public void testExecutor() throws Exception {
+        System.out.println("   run with executor");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            Future<ZonalStats> future = executor.submit(create());
+            assertResultsEqual(referenceResults(), future.get());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testInvalidCheckpointInterval() {
+        System.out.println("   invalid checkpoint interval");
+        create().setCheckpointInterval(-1);
+    }
+
+    private StreamingZonalStats create() {
+        return new StreamingZonalStats(dataImage, zoneImage, STATS, null, null, null, null, null);
+    }
+
+    private ZonalStats referenceResults() {
+        IncrementalZonalStats izs = new IncrementalZonalStats(
+                dataImage, zoneImage, STATS, null, null, null, null, null);
+        ZonalStats zs = izs.getResults();
+        izs.dispose();
+        return zs;
+    }
+
+    private long countAccepted(ZonalStats zs) {
+        long n = 0;
+        for (Result r : zs.statistic(Statistic.MEAN).results()) {
+            n += r.getNumAccepted();
+        }
+        return n;
+    }
+
+    private void assertResultsEqual(ZonalStats expected, ZonalStats zs) {
+        List<Result> expResults = expected.results();
+        List<Result> results = zs.results();
+        assertEquals(expResults.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Result exp = expResults.get(i);
+            Result r = results.get(i);
+            assertEquals(exp.getImageBand(), r.getImageBand());
+            assertEquals(exp.getZone(), r.getZone());
+            assertEquals(exp.getStatistic(), r.getStatistic());
+            assertEquals(exp.getStatistic().toString(), exp.getValue(), r.getValue(),
+                    tolerance(exp.getStatistic(), exp.getValue()));
+            assertEquals(exp.getNumAccepted(), r.getNumAccepted());
+        }
+    }
+
+    /**
+     * Moment statistics depend on the order in which values are offered,
+     * which differs between streaming and merging per-tile statistics.
+     */
+    private static double tolerance(Statistic s, double expected) {
+        switch (s) {
+            case MEAN:
+            case SDEV:
+            case SUM:
+            case VARIANCE:
+                return 1.0e-10 * Math.max(1.0, Math.abs(expected));
+
+            default:
+                return 0.0;
+        }
+    }
+
+    private static class RecordingListener implements ZonalStatsListener {
+        final List<Float> progress = CollectionFactory.list();
+        final List<ZonalStats> checkpoints = CollectionFactory.list();
+        ZonalStats finalResults;
+        int numFinished;
+
+        public void progress(float p) {
+            progress.add(p);
+        }
+
+        public void checkpoint(ZonalStats results, float p) {
+            checkpoints.add(results);
+        }
+
+        public void finished(ZonalStats results) {
+            finalResults = results;
+            numFinished++ ;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import javax.media.jai.TiledImage;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TransformedZoneReader and the accumulation of statistics
+ * with a data to zone transform.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class TransformedZoneReaderTest {
+
+    private static final int ZONE_MIN_X = -3;
+    private static final int ZONE_MIN_Y = 2;
+    private static final int ZONE_WIDTH = 40;
+    private static final int ZONE_HEIGHT = 30;
+
+    private static final Rectangle DATA_BOUNDS = new Rectangle(-5, 0, 100, 80);
+
+    private static TiledImage zoneImage;
+
+    @BeforeClass
+    public static void setup() {
+        zoneImage = ImageUtils.createConstantImage(ZONE_MIN_X, ZONE_MIN_Y, ZONE_WIDTH, ZONE_HEIGHT, 
+                16, 16, new Integer[] {0});
+
+        Random rand = new Random(42);
+        for (int y = ZONE_MIN_Y; y < ZONE_MIN_Y + ZONE_HEIGHT; y++) {
+            for (int x = ZONE_MIN_X; x < ZONE_MIN_X + ZONE_WIDTH; x++) {
+                zoneImage.setSample(x, y, 0, rand.nextInt(20));
+            }
+        }
+    }
+
+    @Test
+    public void testScale() {
+        System.out.println("   scale transform");
+        assertMatchesPointTransform(AffineTransform.getScaleInstance(0.4, 0.4));
+        assertMatchesPointTransform(AffineTransform.getScaleInstance(1.0 / 3, 0.25));
+    }
+
+    @Test
+    public void testScaleAndTranslate() {
+        System.out.println("   scale and translate transform");
+        AffineTransform tr = AffineTransform.getTranslateInstance(-2.5, 3.0);
+        tr.scale(0.5, 0.5);
+        assertMatchesPointTransform(tr);
+        assertMatchesPointTransform(AffineTransform.getTranslateInstance(7, -4));
+    }
+
+    @Test
+    public void testRotation() {
+        System.out.println("   rotation and shear transforms");
+        AffineTransform tr = AffineTransform.getRotateInstance(Math.PI / 7, 20, 15);
+        tr.scale(0.4, 0.4);
+        assertMatchesPointTransform(tr);
+        assertMatchesPointTransform(AffineTransform.getShearInstance(0.2, -0.1));
+    }
+
+    /**
+     * Regression test: previously only the first data image pixel was 
+     * processed when a data to zone transform was used.
+     */
+    @Test
+    public void testAccumulateAllPixels() {
+        System.out.println("   accumulate with transform");
+        TiledImage dataImage = ImageUtils.createConstantImage(DATA_BOUNDS.x, DATA_BOUNDS.y, 
+                DATA_BOUNDS.width, DATA_BOUNDS.height, 32, 32, new Double[] {0.0});
+        Random rand = new Random(42);
+        for (int y = DATA_BOUNDS.y; y < DATA_BOUNDS.y + DATA_BOUNDS.height; y++) {
+            for (int x = DATA_BOUNDS.x; x < DATA_BOUNDS.x + DATA_BOUNDS.width; x++) {
+                dataImage.setSample(x, y, 0, rand.nextInt(100));
+            }
+        }
+
+        AffineTransform tr = AffineTransform.getScaleInstance(0.4, 0.4);
+        tr.rotate(0.1);
+
+        List<Range<Double>> noRanges = Collections.emptyList();
+        ZoneAccumulator accumulator = new ZoneAccumulator(
+                new Statistic[] {Statistic.SUM}, 1, noRanges, Range.Type.EXCLUDE, noRanges);
+        ZonalStatsOpImage.accumulateTransformedRows(accumulator, dataImage, zoneImage, tr, 
+                new Integer[] {0}, null, DATA_BOUNDS);
+
+        Map<Integer, Double> sums = CollectionFactory.sortedMap();
+        Map<Integer, Long> counts = CollectionFactory.sortedMap();
+        Rectangle zoneBounds = zoneImage.getBounds();
+        Point zonePos = new Point();
+        for (int y = DATA_BOUNDS.y; y < DATA_BOUNDS.y + DATA_BOUNDS.height; y++) {
+            for (int x = DATA_BOUNDS.x; x < DATA_BOUNDS.x + DATA_BOUNDS.width; x++) {
+                tr.transform(new Point(x, y), zonePos);
+                if (zoneBounds.contains(zonePos)) {
+                    int zone = zoneImage.getSample(zonePos.x, zonePos.y, 0);
+                    Double sum = sums.get(zone);
+                    Long n = counts.get(zone);
+                    sums.put(zone, (sum == null ? 0 : sum) + dataImage.getSampleDouble(x, y, 0));
+                    counts.put(zone, (n == null ? 0 : n) + 1);
+                }
+            }
+        }
+
+        assertEquals(counts.size(), accumulator.getNumZones());
+        for (Integer zone : counts.keySet()) {
+            assertEquals(counts.get(zone).longValue(), 
+                    accumulator.find(zone)[0].getNumAccepted(Statistic.SUM));
+            assertEquals(sums.get(zone), accumulator.find(zone)[0].getStatisticValue(Statistic.SUM), 1.0e-8);
+        }
+    }
+
+    /**
+     * Compares zones read for each line of the data image bounds with those
+     * found by transforming each pixel position.
+     */
+    private void assertMatchesPointTransform(AffineTransform tr) {
+        final int w = DATA_BOUNDS.width;
+        TransformedZoneReader reader = new TransformedZoneReader(zoneImage, tr, DATA_BOUNDS.x, w);
+        int[] zones = new int[w];
+        boolean[] hasZone = new boolean[w];
+
+        Rectangle zoneBounds = zoneImage.getBounds();
+        Point zonePos = new Point();
+        int numInside = 0;
+        for (int y = DATA_BOUNDS.y; y < DATA_BOUNDS.y + DATA_BOUNDS.height; y++) {
+            boolean any = reader.getRow(y, zones, hasZone);
+            boolean expAny = false;
+            for (int i = 0; i < w; i++) {
+                tr.transform(new Point(DATA_BOUNDS.x + i, y), zonePos);
+                boolean inside = zoneBounds.contains(zonePos);
+                expAny |= inside;
+                if (any) {
+                    assertEquals(inside, hasZone[i]);
+                    if (inside) {
+                        assertEquals(zoneImage.getSample(zonePos.x, zonePos.y, 0), zones[i]);
+                        numInside++ ;
+                    }
+                }
+            }
+            assertEquals(expAny, any);
+        }
+        reader.done();
+        assertTrue(numInside > 0);
+    }
+}
@@ -0,0 +1,251 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.io.StringWriter;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.SortedMap;
+
+import javax.media.jai.ROIShape;
+import javax.media.jai.TiledImage;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.numeric.Range;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the ZonalHistogram operator.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ZonalHistogramTest {
+
+    private static final int MIN_X = -10;
+    private static final int MIN_Y = 5;
+    private static final int WIDTH = 100;
+    private static final int HEIGHT = 70;
+    private static final int TILE_WIDTH = 32;
+    private static final int TILE_HEIGHT = 24;
+
+    private static final int NUM_CLASSES = 7;
+    private static final int NODATA = -1;
+
+    private static TiledImage classImage;
+    private static TiledImage valueImage;
+    private static TiledImage zoneImage;
+
+    @BeforeClass
+    public static void setup() {
+        classImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Integer[] {0});
+        valueImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Double[] {0.0});
+        zoneImage = ImageUtils.createConstantImage(MIN_X, MIN_Y, WIDTH, HEIGHT, 
+                TILE_WIDTH, TILE_HEIGHT, new Integer[] {0});
+
+        Random rand = new Random(42);
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                // patches of classes with some NODATA pixels
+                int cls = rand.nextInt(50) == 0 ? NODATA : ((x - MIN_X) / 7 + (y - MIN_Y) / 9) % NUM_CLASSES;
+                classImage.setSample(x, y, 0, cls);
+                valueImage.setSample(x, y, 0, rand.nextInt(100) == 0 ? Double.NaN : rand.nextDouble() * 100);
+                zoneImage.setSample(x, y, 0, (x - MIN_X) / 15 + 10 * ((y - MIN_Y) / 30));
+            }
+        }
+    }
+
+    @Test
+    public void testCategorical() {
+        System.out.println("   categorical counts");
+        List<Range<Double>> noData = CollectionFactory.list();
+        noData.add(Range.create((double) NODATA, true, (double) NODATA, true));
+
+        ZonalHistogram hist = compute(classImage, zoneImage, null, null, noData, 1);
+        assertTrue(hist.isCategorical());
+        assertTrue(hist.getBins().isEmpty());
+
+        Map<Long, Long> expected = CollectionFactory.map();
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                int cls = classImage.getSample(x, y, 0);
+                if (cls != NODATA) {
+                    addCount(expected, zoneImage.getSample(x, y, 0), cls);
+                }
+            }
+        }
+        assertCounts(expected, hist);
+        assertFalse(hist.getClasses().contains(NODATA));
+    }
+
+    @Test
+    public void testBins() {
+        System.out.println("   binned counts");
+        List<Range<Double>> bins = CollectionFactory.list();
+        for (int i = 0; i < 10; i++) {
+            bins.add(Range.create(i * 10.0, true, i * 10.0 + 10, false));
+        }
+
+        ZonalHistogram hist = compute(valueImage, zoneImage, null, bins, null, 1);
+        assertFalse(hist.isCategorical());
+        assertEquals(bins, hist.getBins());
+
+        Map<Long, Long> expected = CollectionFactory.map();
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                double value = valueImage.getSampleDouble(x, y, 0);
+                if (!Double.isNaN(value)) {
+                    addCount(expected, zoneImage.getSample(x, y, 0), (int) (value / 10));
+                }
+            }
+        }
+        assertCounts(expected, hist);
+    }
+
+    @Test
+    public void testParallel() {
+        System.out.println("   parallel counts match sequential");
+        ZonalHistogram expected = compute(classImage, zoneImage, null, null, null, 1);
+        for (int numThreads = 2; numThreads <= 4; numThreads++) {
+            ZonalHistogram hist = compute(classImage, zoneImage, null, null, null, numThreads);
+            assertEquals(expected.getZones(), hist.getZones());
+            for (int zone : expected.getZones()) {
+                assertEquals(expected.getCounts(zone), hist.getCounts(zone));
+            }
+        }
+    }
+
+    @Test
+    public void testNoZoneImage() {
+        System.out.println("   without zone image");
+        ZonalHistogram hist = compute(classImage, null, null, null, null, 1);
+        assertEquals(1, hist.getZones().size());
+        assertEquals(0, hist.getZones().first().intValue());
+        assertEquals((long) WIDTH * HEIGHT, hist.getTotal(0));
+    }
+
+    @Test
+    public void testROI() {
+        System.out.println("   with ROI");
+        Rectangle roiBounds = new Rectangle(MIN_X + 20, MIN_Y + 10, 40, 30);
+        ZonalHistogramOpImage op = new ZonalHistogramOpImage(classImage, null, null, null, 0,
+                new ROIShape(roiBounds), null, null, null, 1, 0);
+        ZonalHistogram hist = (ZonalHistogram) op.getProperty(
+                ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY);
+        assertEquals((long) roiBounds.width * roiBounds.height, hist.getTotal(0));
+    }
+
+    @Test
+    public void testZoneTransform() {
+        System.out.println("   with zone transform");
+        AffineTransform tr = AffineTransform.getScaleInstance(0.5, 0.5);
+        ZonalHistogram hist = compute(classImage, zoneImage, tr, null, null, 1);
+
+        Map<Long, Long> expected = CollectionFactory.map();
+        for (int y = MIN_Y; y < MIN_Y + HEIGHT; y++) {
+            for (int x = MIN_X; x < MIN_X + WIDTH; x++) {
+                int zx = (int) Math.floor(x * 0.5 + 0.5);
+                int zy = (int) Math.floor(y * 0.5 + 0.5);
+                if (zx >= MIN_X && zy >= MIN_Y) {
+                    addCount(expected, zoneImage.getSample(zx, zy, 0), classImage.getSample(x, y, 0));
+                }
+            }
+        }
+        assertCounts(expected, hist);
+    }
+
+    @Test
+    public void testMatrixAndCSV() throws Exception {
+        System.out.println("   matrix and CSV");
+        ZonalHistogram hist = compute(classImage, zoneImage, null, null, null, 1);
+        long[][] matrix = hist.getMatrix();
+        assertEquals(hist.getZones().size(), matrix.length);
+
+        int row = 0;
+        int numLines = 1;
+        for (int zone : hist.getZones()) {
+            int col = 0;
+            long total = 0;
+            for (int cls : hist.getClasses()) {
+                assertEquals(hist.getCount(zone, cls), matrix[row][col++]);
+                total += hist.getCount(zone, cls);
+            }
+            assertEquals(hist.getTotal(zone), total);
+            numLines += hist.getCounts(zone).size();
+            row++;
+        }
+
+        StringWriter writer = new StringWriter();
+        hist.writeCSV(writer);
+        String[] lines = writer.toString().split("\n");
+        assertEquals(numLines, lines.length);
+        assertEquals("zone,class,count", lines[0]);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCategoricalRequiresIntegralData() {
+        System.out.println("   categorical mode with non-integral data");
+        compute(valueImage, zoneImage, null, null, null, 1);
+    }
+
+    private ZonalHistogram compute(TiledImage dataImage, TiledImage zones, AffineTransform tr,
+            List<Range<Double>> bins, List<Range<Double>> noData, int numThreads) {
+        ZonalHistogramOpImage op = new ZonalHistogramOpImage(dataImage, zones, null, null, 0,
+                null, tr, bins, noData, numThreads, 0);
+        return (ZonalHistogram) op.getProperty(ZonalHistogramDescriptor.ZONAL_HISTOGRAM_PROPERTY);
+    }
+
+    private void addCount(Map<Long, Long> counts, int zone, int cls) {
+        long key = CrossTabCounter.key(zone, cls);
+        Long count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    private void assertCounts(Map<Long, Long> expected, ZonalHistogram hist) {
+        int n = 0;
+        for (int zone : hist.getZones()) {
+            SortedMap<Integer, Long> counts = hist.getCounts(zone);
+            for (Map.Entry<Integer, Long> e : counts.entrySet()) {
+                Long count = expected.get(CrossTabCounter.key(zone, e.getKey()));
+                assertNotNull(count);
+                assertEquals(count.longValue(), e.getValue().longValue());
+                assertEquals(count.longValue(), hist.getCount(zone, e.getKey()));
+                n++;
+            }
+        }
+        assertEquals(expected.size(), n);
+    }
+}
@@ -26,6 +26,7 @@
 package org.jaitools.media.jai.zonalstats;
 
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.geom.AffineTransform;
 import java.awt.image.ComponentSampleModel;
@@ -33,22 +34,37 @@ import java.awt.image.DataBuffer;
 import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
+import java.awt.image.renderable.ParameterBlock;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.media.jai.ImageLayout;
 import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.PlanarImage;
+import javax.media.jai.ROI;
 import javax.media.jai.RenderedOp;
 import javax.media.jai.TiledImage;
 import javax.media.jai.iterator.RectIter;
 import javax.media.jai.iterator.RectIterFactory;
 import javax.media.jai.iterator.WritableRectIter;
 
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
+import com.vividsolutions.jts.io.ParseException;
+import com.vividsolutions.jts.io.WKTReader;
+
 import org.jaitools.CollectionFactory;
+import org.jaitools.imageutils.ImageUtils;
+import org.jaitools.imageutils.ROIGeometry;
 import org.jaitools.numeric.Range;
+import org.jaitools.numeric.RangeUtils;
 import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
 
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -79,6 +95,19 @@ public class ZonalStatsTest {
     private static RenderedImage multibandImage = createMultibandImage();
     private static RenderedImage multibandImageNoData = createMultibandImageNoData();
 
+    private static final Statistic[] TILED_STATS = {
+        Statistic.MIN, Statistic.MAX, Statistic.RANGE, Statistic.SUM, Statistic.MEDIAN,
+        Statistic.MODE, Statistic.DISTINCT, Statistic.MEAN, Statistic.SDEV, Statistic.VARIANCE
+    };
+    private static final List<Range<Double>> TILED_NODATA =
+            Collections.singletonList(new Range<Double>(-9999.0));
+
+    private static TiledImage tiledDataImage = createTiledDataImage();
+    private static TiledImage tiledZoneImage = createTiledZoneImage();
+
+    private static final double BOUNDARY_TOL = 0.01;
+    private static Map<Integer, Geometry> geometryZones = createGeometryZones();
+
 
     @Test
     public void testValidateNumSources() {
@@ -419,6 +448,351 @@ public class ZonalStatsTest {
         }
     }
 
+    @Test
+    public void testZoneTransform() {
+        System.out.println("   test zone image with transform");
+
+        // zone image with half the resolution of the data image
+        ParameterBlockJAI pb = new ParameterBlockJAI("ZonalStats");
+        pb.setSource("dataImage", constant1Image);
+        pb.setSource("zoneImage", createConstantImage(new Integer[]{3}));
+        pb.setParameter("stats", new Statistic[]{Statistic.SUM});
+        pb.setParameter("zoneTransform", AffineTransform.getScaleInstance(0.5, 0.5));
+
+        RenderedOp op = JAI.create("ZonalStats", pb);
+        ZonalStats stats = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
+
+        // all data image pixels should be processed
+        assertEquals(1, stats.getZones().size());
+        Result r = stats.zone(3).statistic(Statistic.SUM).results().get(0);
+        assertEquals(WIDTH * WIDTH, r.getNumAccepted());
+        assertEquals(WIDTH * WIDTH, r.getValue(), EPS);
+    }
+
+    @Test
+    public void testParallelSameAsSequential() {
+        System.out.println("   test parallel same as sequential");
+
+        // with the zone image the scan area does not start on a tile row
+        for (RenderedImage zoneImage : new RenderedImage[] {null, tiledZoneImage}) {
+            ZonalStats expected = getTiledStats(zoneImage, 1, 0);
+
+            int[][] threadsAndChunkSize = {{2, 0}, {4, 0}, {3, 1}, {4, 30}};
+            for (int[] params : threadsAndChunkSize) {
+                ZonalStats zs = getTiledStats(zoneImage, params[0], params[1]);
+                assertSameResults(expected, zs);
+            }
+        }
+    }
+
+    @Test
+    public void testChunksRoundedToTileRows() {
+        System.out.println("   test chunks rounded to tile rows");
+
+        final int th = tiledDataImage.getTileHeight();
+        final int oy = tiledDataImage.getTileGridYOffset();
+
+        // scan area starting and ending part way through tile rows
+        Rectangle bounds = new Rectangle(3, 17, 150, 100);
+        final int numTileRows = (bounds.y + bounds.height - 1 - oy) / th - (bounds.y - oy) / th + 1;
+
+        for (int chunkSize : new int[] {1, th, th + 1, 2 * th + 5}) {
+            final int tileRowsPerChunk = (chunkSize + th - 1) / th;
+            List<Rectangle> chunks = ZonalStatsOpImage.getChunks(tiledDataImage, bounds, 4, chunkSize);
+            assertEquals((numTileRows + tileRowsPerChunk - 1) / tileRowsPerChunk, chunks.size());
+
+            int y = bounds.y;
+            for (Rectangle chunk : chunks) {
+                assertEquals(bounds.x, chunk.x);
+                assertEquals(bounds.width, chunk.width);
+                assertEquals(y, chunk.y);
+                if (chunk.y > bounds.y) {
+                    assertEquals(0, (chunk.y - oy) % th);
+                }
+
+                int lastY = chunk.y + chunk.height - 1;
+                assertTrue((lastY - oy) / th - (chunk.y - oy) / th + 1 <= tileRowsPerChunk);
+                y += chunk.height;
+            }
+            assertEquals(bounds.y + bounds.height, y);
+        }
+
+        // a single thread always takes the whole area
+        List<Rectangle> chunks = ZonalStatsOpImage.getChunks(tiledDataImage, bounds, 1, 1);
+        assertEquals(1, chunks.size());
+        assertEquals(bounds, chunks.get(0));
+    }
+
+    @Test
+    public void testSingleChunkWhenStatisticsCannotMerge() {
+        System.out.println("   test single chunk when statistics can't be merged");
+
+        ZonalStats expected = getTiledStats(null, 1, 0);
+
+        CountingOpImage op = new CountingOpImage(false, 4, 1);
+        ZonalStats zs = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
+        assertEquals(1, op.numAccumulators.get());
+        assertSameResults(expected, zs);
+
+        // with merging the same image is processed in chunks
+        op = new CountingOpImage(true, 4, 1);
+        zs = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
+        assertTrue(op.numAccumulators.get() > 1);
+        assertSameResults(expected, zs);
+    }
+
+    @Test
+    public void testRangeLocalStatsInclude() {
+        System.out.println("   test range local statistics with included ranges");
+
+        List<Range<Double>> ranges = CollectionFactory.list();
+        ranges.add(Range.create(-10000.0, true, -30.0, false));
+        ranges.add(Range.create(-30.0, true, 0.0, true));
+        ranges.add(Range.create(10.0, false, 30.0, true));
+
+        List<Range<Double>> localRanges = CollectionFactory.list();
+        localRanges.addAll(ranges);
+        assertRangeLocalStats(ranges, Range.Type.INCLUDE, localRanges);
+    }
+
+    @Test
+    public void testRangeLocalStatsExclude() {
+        System.out.println("   test range local statistics with excluded ranges");
+
+        List<Range<Double>> ranges = CollectionFactory.list();
+        ranges.add(Range.create(null, true, -30.0, false));
+        ranges.add(Range.create(20.0, true, 25.0, true));
+
+        // statistics are calculated for each range between the excluded ones
+        List<Range<Double>> localRanges = RangeUtils.createComplement(RangeUtils.sort(ranges));
+        assertEquals(2, localRanges.size());
+        assertRangeLocalStats(ranges, Range.Type.EXCLUDE, localRanges);
+    }
+
+    /**
+     * Checks range local statistics for the tiled data image against those
+     * calculated with a separate {@code StreamingSampleStats} object for each
+     * range, which was how the operator formerly calculated them.
+     */
+    private void assertRangeLocalStats(List<Range<Double>> ranges, Range.Type rangesType,
+            List<Range<Double>> localRanges) {
+
+        ZonalStatsOpImage op = new ZonalStatsOpImage(tiledDataImage, null, null, null,
+                TILED_STATS, new Integer[] {0}, null, null, ranges, rangesType, true,
+                TILED_NODATA, 1, 0, null);
+        ZonalStats zs = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
+        assertEquals(localRanges.size() * TILED_STATS.length, zs.results().size());
+
+        for (Range<Double> range : localRanges) {
+            StreamingSampleStats expected = new StreamingSampleStats(rangesType);
+            expected.addRange(range);
+            for (Range<Double> noDataRange : TILED_NODATA) {
+                expected.addNoDataRange(noDataRange);
+            }
+            expected.setStatistics(TILED_STATS);
+
+            TiledImage img = tiledDataImage;
+            for (int y = img.getMinY(); y < img.getMinY() + img.getHeight(); y++) {
+                for (int x = img.getMinX(); x < img.getMinX() + img.getWidth(); x++) {
+                    expected.offer(img.getSampleDouble(x, y, 0));
+                }
+            }
+
+            List<Range> resultRanges = CollectionFactory.list();
+            resultRanges.add(range);
+            assertResults(expected, zs.ranges(resultRanges).zone(0).results());
+        }
+    }
+
+    @Test
+    public void testGeometryZones() throws Exception {
+        System.out.println("   test zones from geometries");
+
+        for (int numThreads : new int[] {1, 3}) {
+            ZonalStats zs = assertGeometryZoneStats(null, numThreads);
+
+            // zones without any pixels have results with no values offered
+            for (int zone : new int[] {4, 5}) {
+                for (Result r : zs.zone(zone).results()) {
+                    assertEquals(0, r.getNumOffered());
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testGeometryZonesWithROI() throws Exception {
+        System.out.println("   test zones from geometries with ROI");
+
+        // the ROI boundary crosses tiles, so only parts of some tile rows are in it
+        ROI roi = new ROIGeometry(new WKTReader().read(
+                "POLYGON((10.2 10.3, 190.2 15.3, 170.3 145.2, 20.3 120.2, 10.2 10.3))"));
+
+        for (int numThreads : new int[] {1, 3}) {
+            assertGeometryZoneStats(roi, numThreads);
+        }
+    }
+
+    @Test
+    public void testValidateGeometryZones() throws Exception {
+        System.out.println("   validate zone geometries");
+
+        ZonalStatsDescriptor descriptor = new ZonalStatsDescriptor();
+        WKTReader reader = new WKTReader();
+
+        ParameterBlock pb = createGeometryZonesParams(geometryZones);
+        assertTrue(descriptor.validateArguments("rendered", pb, new StringBuffer()));
+
+        pb = createGeometryZonesParams(geometryZones);
+        pb.addSource(tiledZoneImage);
+        assertFalse("Failed to reject zone geometries with a zone image",
+                descriptor.validateArguments("rendered", pb, new StringBuffer()));
+
+        pb = createGeometryZonesParams(geometryZones);
+        pb.set(AffineTransform.getScaleInstance(0.5, 0.5), ZonalStatsDescriptor.ZONE_TRANSFORM_ARG);
+        assertFalse("Failed to reject zone geometries with a zone transform",
+                descriptor.validateArguments("rendered", pb, new StringBuffer()));
+
+        Map<Object, Geometry> zones = CollectionFactory.map();
+        pb = createGeometryZonesParams(zones);
+        assertFalse("Failed to reject empty zone geometries",
+                descriptor.validateArguments("rendered", pb, new StringBuffer()));
+
+        zones.put("1", reader.read("POLYGON((0 0, 10 0, 10 10, 0 0))"));
+        pb = createGeometryZonesParams(zones);
+        assertFalse("Failed to reject zone geometries with non-Integer keys",
+                descriptor.validateArguments("rendered", pb, new StringBuffer()));
+
+        zones.clear();
+        zones.put(1, reader.read("LINESTRING(0 0, 10 10)"));
+        pb = createGeometryZonesParams(zones);
+        assertFalse("Failed to reject non-polygonal zone geometries",
+                descriptor.validateArguments("rendered", pb, new StringBuffer()));
+    }
+
+    /**
+     * Checks statistics for the geometry zones against values worked out
+     * pixel by pixel. A pixel is in a zone if its centre is within the zone
+     * geometry; the zones are defined so that no pixel centre is close to a
+     * zone boundary.
+     */
+    private ZonalStats assertGeometryZoneStats(ROI roi, int numThreads) {
+        ZonalStatsOpImage op = new ZonalStatsOpImage(tiledDataImage, null, null, null,
+                TILED_STATS, new Integer[] {0}, roi, null, null, Range.Type.UNDEFINED, false,
+                TILED_NODATA, numThreads, 0, geometryZones);
+        ZonalStats zs = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
+        assertEquals(geometryZones.keySet(), zs.getZones());
+
+        GeometryFactory gf = new GeometryFactory();
+        TiledImage img = tiledDataImage;
+        for (Map.Entry<Integer, Geometry> e : geometryZones.entrySet()) {
+            Geometry geom = e.getValue();
+            Geometry boundary = geom.getBoundary();
+
+            StreamingSampleStats expected = new StreamingSampleStats(Range.Type.UNDEFINED);
+            for (Range<Double> noDataRange : TILED_NODATA) {
+                expected.addNoDataRange(noDataRange);
+            }
+            expected.setStatistics(TILED_STATS);
+
+            for (int y = img.getMinY(); y < img.getMinY() + img.getHeight(); y++) {
+                for (int x = img.getMinX(); x < img.getMinX() + img.getWidth(); x++) {
+                    Geometry centre = gf.createPoint(new Coordinate(x + 0.5, y + 0.5));
+                    assertTrue(boundary.distance(centre) > BOUNDARY_TOL);
+
+                    if ((roi == null || roi.contains(x, y)) && geom.contains(centre)) {
+                        expected.offer(img.getSampleDouble(x, y, 0));
+                    }
+                }
+            }
+
+            assertResults(expected, zs.zone(e.getKey()).results());
+        }
+
+        return zs;
+    }
+
+    /**
+     * Creates a parameter block for the tiled data image and the given
+     * zone geometries, with other parameters at their default values.
+     */
+    private ParameterBlock createGeometryZonesParams(Map<?, Geometry> zones) {
+        ParameterBlock pb = new ParameterBlock();
+        pb.addSource(tiledDataImage);
+        pb.set(TILED_STATS, ZonalStatsDescriptor.STATS_ARG);
+        pb.set(new Integer[] {0}, ZonalStatsDescriptor.BAND_ARG);
+        pb.set(Range.Type.UNDEFINED, ZonalStatsDescriptor.RANGES_TYPE_ARG);
+        pb.set(Boolean.FALSE, ZonalStatsDescriptor.RANGE_LOCAL_STATS_ARG);
+        pb.set(Integer.valueOf(1), ZonalStatsDescriptor.NUM_THREADS_ARG);
+        pb.set(Integer.valueOf(0), ZonalStatsDescriptor.CHUNK_SIZE_ARG);
+        pb.set(zones, ZonalStatsDescriptor.ZONE_GEOMETRIES_ARG);
+        return pb;
+    }
+
+    /**
+     * Checks results for each of the tiled image statistics against the values
+     * and counts of a {@code StreamingSampleStats} object.
+     */
+    private void assertResults(StreamingSampleStats expected, List<Result> results) {
+        assertEquals(TILED_STATS.length, results.size());
+
+        for (Result r : results) {
+            Statistic stat = r.getStatistic();
+            String msg = r.toString();
+            assertEquals(msg, expected.getNumOffered(stat), r.getNumOffered());
+            assertEquals(msg, expected.getNumAccepted(stat), r.getNumAccepted());
+            assertEquals(msg, expected.getNumNaN(stat), r.getNumNaN());
+            assertEquals(msg, expected.getNumNoData(stat), r.getNumNoData());
+            assertEquals(msg, expected.getStatisticValue(stat), r.getValue(), EPS);
+        }
+    }
+
+    /**
+     * Calculates statistics for the tiled data image by constructing
+     * the operator directly.
+     */
+    private ZonalStats getTiledStats(RenderedImage zoneImage, int numThreads, int chunkSize) {
+        ZonalStatsOpImage op = new ZonalStatsOpImage(tiledDataImage, zoneImage, null, null,
+                TILED_STATS, new Integer[] {0}, null, null, null, Range.Type.UNDEFINED, false,
+                TILED_NODATA, numThreads, chunkSize, null);
+        return (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
+    }
+
+    /**
+     * Checks that two sets of results match. Moment statistics, which depend
+     * on the order in which values are summed, are compared with a tolerance
+     * relative to the expected value; other statistics must be equal.
+     */
+    private void assertSameResults(ZonalStats expected, ZonalStats actual) {
+        List<Result> expResults = expected.results();
+        List<Result> results = actual.results();
+        assertEquals(expResults.size(), results.size());
+
+        for (int i = 0; i < results.size(); i++) {
+            Result exp = expResults.get(i);
+            Result r = results.get(i);
+            String msg = exp.toString();
+
+            assertEquals(msg, exp.getImageBand(), r.getImageBand());
+            assertEquals(msg, exp.getZone(), r.getZone());
+            assertEquals(msg, exp.getStatistic(), r.getStatistic());
+            assertEquals(msg, exp.getNumOffered(), r.getNumOffered());
+            assertEquals(msg, exp.getNumAccepted(), r.getNumAccepted());
+            assertEquals(msg, exp.getNumNaN(), r.getNumNaN());
+            assertEquals(msg, exp.getNumNoData(), r.getNumNoData());
+
+            double tol = 0;
+            switch (exp.getStatistic()) {
+                case MEAN:
+                case SDEV:
+                case VARIANCE:
+                    tol = EPS * Math.max(1.0, Math.abs(exp.getValue()));
+                    break;
+            }
+            assertEquals(msg, exp.getValue(), r.getValue(), tol);
+        }
+    }
+
     private void assertSingleResult(RenderedOp op, Statistic stat, Double value) {
         ZonalStats stats = (ZonalStats) op.getProperty(ZonalStatsDescriptor.ZONAL_STATS_PROPERTY);
         Result r = stats.band(0).zone(0).statistic(stat).results().get(0);
@@ -579,4 +953,94 @@ public class ZonalStatsTest {
 
         return img;
     }
+
+    /**
+     * Create a single band image of integral double values with several rows
+     * and columns of tiles, some NaN values and some NODATA (-9999) values.
+     */
+    private static TiledImage createTiledDataImage() {
+        TiledImage img = ImageUtils.createConstantImage(-10, 5, 200, 150, 32, 24, new Double[] {0.0});
+        Random rand = new Random(42);
+        for (int y = img.getMinY(); y < img.getMinY() + img.getHeight(); y++) {
+            for (int x = img.getMinX(); x < img.getMinX() + img.getWidth(); x++) {
+                double value = rand.nextInt(101) - 50;
+                if (rand.nextInt(40) == 0) {
+                    value = Double.NaN;
+                } else if (rand.nextInt(40) == 0) {
+                    value = -9999;
+                }
+                img.setSample(x, y, 0, value);
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Create a zone image, with zones of various sizes, which covers part
+     * of the tiled data image and starts part way through a tile row.
+     */
+    private static TiledImage createTiledZoneImage() {
+        TiledImage img = ImageUtils.createConstantImage(3, 17, 150, 100, 32, 24, new Integer[] {0});
+        for (int y = img.getMinY(); y < img.getMinY() + img.getHeight(); y++) {
+            for (int x = img.getMinX(); x < img.getMinX() + img.getWidth(); x++) {
+                img.setSample(x, y, 0, x / 40 + 4 * (y / 35));
+            }
+        }
+        return img;
+    }
+
+    /**
+     * Create zone geometries for the tiled data image. Zones 1, 2 and 3
+     * overlap; zone 3 has a hole; zone 4 is outside the image and zone 5
+     * is too small to contain any pixel centres.
+     */
+    private static Map<Integer, Geometry> createGeometryZones() {
+        String[] wkt = {
+            "POLYGON((20.3 10.2, 130.7 10.2, 160.7 40.2, 160.7 99.8, 120.7 139.8, "
+                    + "40.3 139.8, 10.3 109.8, 10.3 20.2, 20.3 10.2))",
+            "POLYGON((60.2 0.2, 199.2 0.2, 199.2 80.3, 60.2 80.3, 60.2 0.2))",
+            "POLYGON((-20.3 60.2, 100.2 60.2, 100.2 160.3, -20.3 160.3, -20.3 60.2), "
+                    + "(10.2 90.3, 40.3 90.3, 40.3 120.2, 10.2 120.2, 10.2 90.3))",
+            "POLYGON((500.2 500.2, 600.2 500.2, 600.2 600.2, 500.2 500.2))",
+            "POLYGON((20.6 30.6, 20.9 30.6, 20.9 30.9, 20.6 30.9, 20.6 30.6))"
+        };
+
+        Map<Integer, Geometry> zones = CollectionFactory.map();
+        WKTReader reader = new WKTReader();
+        try {
+            for (int i = 0; i < wkt.length; i++) {
+                zones.put(i + 1, reader.read(wkt[i]));
+            }
+        } catch (ParseException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return zones;
+    }
+
+    /**
+     * Operator which counts the accumulators it creates and which can
+     * report that their statistics do not support merging.
+     */
+    private static class CountingOpImage extends ZonalStatsOpImage {
+        private final boolean mergeable;
+        final AtomicInteger numAccumulators = new AtomicInteger();
+
+        CountingOpImage(boolean mergeable, int numThreads, int chunkSize) {
+            super(tiledDataImage, null, null, null, TILED_STATS, new Integer[] {0}, null, null,
+                    null, Range.Type.UNDEFINED, false, TILED_NODATA, numThreads, chunkSize, null);
+            this.mergeable = mergeable;
+        }
+
+        @Override
+        ZoneAccumulator createAccumulator(Range.Type type) {
+            numAccumulators.incrementAndGet();
+            List<Range<Double>> ranges = CollectionFactory.list();
+            return new ZoneAccumulator(TILED_STATS, 1, ranges, type, TILED_NODATA) {
+                @Override
+                boolean canMerge() {
+                    return mergeable && super.canMerge();
+                }
+            };
+        }
+    }
 }
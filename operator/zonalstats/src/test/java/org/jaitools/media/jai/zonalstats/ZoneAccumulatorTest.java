@@ -0,0 +1,189 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.media.jai.zonalstats;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.numeric.Range;
+import org.jaitools.numeric.Statistic;
+import org.jaitools.numeric.StreamingSampleStats;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ZoneAccumulator.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ZoneAccumulatorTest {
+
+    private static final Statistic[] STATS = {
+        Statistic.MEAN, Statistic.MIN, Statistic.MAX, Statistic.MEDIAN
+    };
+    private static final Integer[] BANDS = {0, 2};
+
+    private static final List<Range<Double>> NO_RANGES = Collections.emptyList();
+
+    @Test
+    public void testCompactZones() {
+        System.out.println("   compact zone IDs");
+        assertMatchesReference(new int[] {3, 4, 5, 6, 7, 8});
+    }
+
+    @Test
+    public void testZonesGrowingDownwards() {
+        System.out.println("   zone IDs growing downwards");
+        int[] zones = new int[600];
+        for (int i = 0; i < zones.length; i++) {
+            zones[i] = 100 - i;
+        }
+        assertMatchesReference(zones);
+    }
+
+    @Test
+    public void testSparseZones() {
+        System.out.println("   sparse zone IDs");
+        assertMatchesReference(new int[] {
+            -5, 0, 7, 100000, Integer.MAX_VALUE, Integer.MIN_VALUE, 42, 65536, -70000
+        });
+    }
+
+    @Test
+    public void testManySparseZones() {
+        System.out.println("   many sparse zone IDs");
+        Random rand = new Random(42);
+        int[] zones = new int[2000];
+        for (int i = 0; i < zones.length; i++) {
+            zones[i] = rand.nextInt();
+        }
+        assertMatchesReference(zones);
+    }
+
+    @Test
+    public void testMerge() {
+        System.out.println("   merge accumulators");
+        final Statistic[] exactStats = {Statistic.MIN, Statistic.MAX, Statistic.MEDIAN, Statistic.SUM};
+        ZoneAccumulator whole = new ZoneAccumulator(exactStats, 1, NO_RANGES, Range.Type.EXCLUDE, NO_RANGES);
+        ZoneAccumulator first = new ZoneAccumulator(exactStats, 1, NO_RANGES, Range.Type.EXCLUDE, NO_RANGES);
+        ZoneAccumulator second = new ZoneAccumulator(exactStats, 1, NO_RANGES, Range.Type.EXCLUDE, NO_RANGES);
+
+        // zones 0-9 in the first half of the data; zones 5-14 in the second
+        Random rand = new Random(42);
+        for (int i = 0; i < 10000; i++) {
+            int zone = rand.nextInt(10) + (i < 5000 ? 0 : 5);
+            double value = rand.nextInt(1000);
+            whole.get(zone)[0].offer(value);
+            (i < 5000 ? first : second).get(zone)[0].offer(value);
+        }
+
+        first.merge(second);
+        assertEquals(whole.getNumZones(), first.getNumZones());
+
+        ZonalStats expected = new ZonalStats();
+        whole.setResults(expected, new Integer[] {0});
+        ZonalStats merged = new ZonalStats();
+        first.setResults(merged, new Integer[] {0});
+
+        List<Result> expResults = expected.results();
+        List<Result> results = merged.results();
+        assertEquals(expResults.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Result exp = expResults.get(i);
+            Result r = results.get(i);
+            assertEquals(exp.getZone(), r.getZone());
+            assertEquals(exp.getStatistic(), r.getStatistic());
+            assertEquals(exp.getValue(), r.getValue(), 1.0e-8);
+            assertEquals(exp.getNumAccepted(), r.getNumAccepted());
+        }
+    }
+
+    /**
+     * Offers random data for randomly chosen zones to both an accumulator and
+     * a sorted map of statistics (as previously used by ZonalStatsOpImage) and
+     * compares the results.
+     */
+    private void assertMatchesReference(int[] zoneValues) {
+        ZoneAccumulator acc = new ZoneAccumulator(STATS, BANDS.length, NO_RANGES, Range.Type.EXCLUDE, NO_RANGES);
+        Map<Integer, StreamingSampleStats[]> reference = CollectionFactory.sortedMap();
+
+        Random rand = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            // runs of equal zones as in a zone image
+            int zone = zoneValues[rand.nextInt(zoneValues.length)];
+            int runLength = 1 + rand.nextInt(5);
+            for (int j = 0; j < runLength; j++) {
+                StreamingSampleStats[] refStats = reference.get(zone);
+                if (refStats == null) {
+                    refStats = new StreamingSampleStats[BANDS.length];
+                    for (int k = 0; k < BANDS.length; k++) {
+                        refStats[k] = new StreamingSampleStats(Range.Type.EXCLUDE);
+                        refStats[k].setStatistics(STATS);
+                    }
+                    reference.put(zone, refStats);
+                }
+
+                StreamingSampleStats[] accStats = acc.get(zone);
+                for (int k = 0; k < BANDS.length; k++) {
+                    double value = rand.nextGaussian();
+                    refStats[k].offer(value);
+                    accStats[k].offer(value);
+                }
+            }
+        }
+
+        assertEquals(reference.size(), acc.getNumZones());
+
+        ZonalStats expected = new ZonalStats();
+        for (int k = 0; k < BANDS.length; k++) {
+            for (Integer zone : reference.keySet()) {
+                expected.setResults(BANDS[k], zone, reference.get(zone)[k]);
+            }
+        }
+
+        ZonalStats zs = new ZonalStats();
+        acc.setResults(zs, BANDS);
+
+        List<Result> expResults = expected.results();
+        List<Result> results = zs.results();
+        assertEquals(expResults.size(), results.size());
+        for (int i = 0; i < results.size(); i++) {
+            Result exp = expResults.get(i);
+            Result r = results.get(i);
+            assertEquals(exp.getImageBand(), r.getImageBand());
+            assertEquals(exp.getZone(), r.getZone());
+            assertEquals(exp.getStatistic(), r.getStatistic());
+            assertEquals(exp.getValue(), r.getValue());
+            assertEquals(exp.getNumAccepted(), r.getNumAccepted());
+        }
+    }
+}
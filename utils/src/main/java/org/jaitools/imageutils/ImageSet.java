@@ -24,6 +24,7 @@
  */
 package org.jaitools.imageutils;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.RenderedImage;
 import java.util.Collections;
@@ -366,12 +367,23 @@ public class ImageSet<K> {
     }
 
     
+    /**
+     * An iterator which samples all images in an {@code ImageSet} at each
+     * position. Values can be retrieved either as a {@code Map} of key : value
+     * pairs or, to avoid allocating objects for each position, written into
+     * a caller-supplied array in the key order returned by {@link #getKeys()}.
+     * An iterator can be divided into tile-aligned chunks with {@link #split(int)}
+     * for concurrent processing, e.g. with 
+     * {@link org.jaitools.imageutils.iterator.ParallelIteration}.
+     * 
+     * @param <K> the key type
+     */
     public static class Iterator<K> {
 
-        // It is more convenient to work with two lists 
-        // than a map in this class
+        // It is more convenient to work with a list and 
+        // an array than a map in this class
         private final List<K> keys;
-        private final List<SimpleIterator> delegates;
+        private final SimpleIterator[] delegates;
 
         /**
          * Private constructor.
@@ -379,21 +391,60 @@ public class ImageSet<K> {
          * @param set the target image set
          * @param bounds the bounds for this iterator
          */
-        private Iterator(ImageSet set, Rectangle bounds) {
+        private Iterator(ImageSet<K> set, Rectangle bounds) {
             if (set == null || set.isEmpty()) {
                 throw new IllegalArgumentException("The ImageSet must not be null or empty");
             }
 
             this.keys = CollectionFactory.list();
-            this.delegates = CollectionFactory.list();
+            this.delegates = new SimpleIterator[set.size()];
 
-            Set<K> keySet = set.keySet();
-            for (K key : keySet) {
+            int k = 0;
+            for (K key : set.keySet()) {
                 keys.add(key);
-                delegates.add(new SimpleIterator(set.get(key), bounds, set.getOutsideValue(key)));
+                delegates[k++] = new SimpleIterator(set.get(key), bounds, set.getOutsideValue(key));
             }
         }
 
+        /**
+         * Private constructor used to create chunk iterators.
+         * 
+         * @param keys image keys
+         * @param templates delegate iterators providing images and outside values
+         * @param bounds the bounds for this iterator
+         */
+        private Iterator(List<K> keys, SimpleIterator[] templates, Rectangle bounds) {
+            this.keys = keys;
+            this.delegates = new SimpleIterator[templates.length];
+            
+            for (int i = 0; i < templates.length; i++) {
+                RenderedImage image = templates[i].getImage();
+                if (image == null) {
+                    throw new IllegalStateException("Target image has been deleted");
+                }
+                delegates[i] = new SimpleIterator(image, bounds, templates[i].getOutsideValue());
+            }
+        }
+
+        /**
+         * Gets the image keys in the order used by the array-based
+         * {@code getSample} methods.
+         * 
+         * @return unmodifiable list of keys
+         */
+        public List<K> getKeys() {
+            return Collections.unmodifiableList(keys);
+        }
+
+        /**
+         * Gets the bounds of this iterator.
+         * 
+         * @return iterator bounds
+         */
+        public Rectangle getBounds() {
+            return delegates[0].getBounds();
+        }
+
         /**
          * Gets a value from the first band of each image in this set 
          * and returns them as a {@code Map} of key : value pairs. 
@@ -414,15 +465,92 @@ public class ImageSet<K> {
         public Map<K, Number> getSample(int band) {
             Map<K, Number> sample = CollectionFactory.map();
 
-            for (int i = 0; i < keys.size(); i++) {
+            for (int i = 0; i < delegates.length; i++) {
                 K key = keys.get(i);
-                Number value = delegates.get(i).getSample(band);
+                Number value = delegates[i].getSample(band);
                 sample.put(key, value);
             }
 
             return sample;
         }
 
+        /**
+         * Gets a value from the first band of each image in this set as 
+         * integers. See {@link #getSampleInt(int, int[])} for details.
+         * 
+         * @param dest destination array or {@code null}
+         * @return the filled destination array
+         */
+        public int[] getSampleInt(int[] dest) {
+            return getSampleInt(0, dest);
+        }
+
+        /**
+         * Gets a value from the specified band of each image in this set as 
+         * integers. Values are written in the key order returned by
+         * {@link #getKeys()}. If {@code dest} is {@code null}, or shorter
+         * than the number of images, a new array is allocated; otherwise the
+         * provided array is filled. In either case, the destination array is
+         * returned for convenience. For an image with no outside value, 0 
+         * is returned at positions beyond its bounds.
+         * 
+         * @param band the image band to sample
+         * @param dest destination array or {@code null}
+         * @return the filled destination array
+         */
+        public int[] getSampleInt(int band, int[] dest) {
+            if (dest == null || dest.length < delegates.length) {
+                dest = new int[delegates.length];
+            }
+            for (int i = 0; i < delegates.length; i++) {
+                dest[i] = delegates[i].getSampleInt(band);
+            }
+            return dest;
+        }
+
+        /**
+         * Gets a value from the first band of each image in this set as 
+         * doubles. See {@link #getSampleDouble(int, double[])} for details.
+         * 
+         * @param dest destination array or {@code null}
+         * @return the filled destination array
+         */
+        public double[] getSampleDouble(double[] dest) {
+            return getSampleDouble(0, dest);
+        }
+
+        /**
+         * Gets a value from the specified band of each image in this set as 
+         * doubles. Values are written in the key order returned by
+         * {@link #getKeys()}. If {@code dest} is {@code null}, or shorter
+         * than the number of images, a new array is allocated; otherwise the
+         * provided array is filled. In either case, the destination array is
+         * returned for convenience. For an image with no outside value, 
+         * {@code Double.NaN} is returned at positions beyond its bounds.
+         * 
+         * @param band the image band to sample
+         * @param dest destination array or {@code null}
+         * @return the filled destination array
+         */
+        public double[] getSampleDouble(int band, double[] dest) {
+            if (dest == null || dest.length < delegates.length) {
+                dest = new double[delegates.length];
+            }
+            for (int i = 0; i < delegates.length; i++) {
+                dest[i] = delegates[i].getSampleDouble(band);
+            }
+            return dest;
+        }
+
+        /**
+         * Gets the current iterator position.
+         * 
+         * @return current position
+         */
+        public Point getPos() {
+            return delegates[0].getPos();
+        }
+
         /**
          * Tests if the iterator has any more positions to sample.
          * 
@@ -430,7 +558,7 @@ public class ImageSet<K> {
          *     {@code false} otherwise
          */
         public boolean hasNext() {
-            return delegates.get(0).hasNext();
+            return delegates[0].hasNext();
         }
 
         /**
@@ -441,8 +569,8 @@ public class ImageSet<K> {
          */
         public boolean next() {
             if (hasNext()) {
-                for (SimpleIterator iter : delegates) {
-                    iter.next();
+                for (int i = 0; i < delegates.length; i++) {
+                    delegates[i].next();
                 }
 
                 return true;
@@ -450,5 +578,39 @@ public class ImageSet<K> {
 
             return false;
         }
+
+        /**
+         * Divides this iterator into at most {@code maxChunks} new iterators
+         * whose bounds are aligned with the tile grid of the first image in
+         * the set. Iterating over each of them in list order visits the same
+         * positions, in the same sequence, as this iterator. Each new iterator
+         * has its own delegates so that they can be used concurrently. The
+         * position of this iterator is not changed.
+         * 
+         * @param maxChunks maximum number of iterators to create
+         * @return the new iterators
+         * 
+         * @throws IllegalArgumentException if {@code maxChunks} is less than 1
+         * @throws IllegalStateException if any image has been deleted
+         */
+        public List<Iterator<K>> split(int maxChunks) {
+            List<Iterator<K>> iters = CollectionFactory.list();
+            for (SimpleIterator chunk : delegates[0].split(maxChunks)) {
+                iters.add(new Iterator<K>(keys, delegates, chunk.getBounds()));
+                chunk.done();
+            }
+            return iters;
+        }
+
+        /**
+         * Closes this iterator and frees its references to the images
+         * in the set. Attempting to use the iterator after calling this
+         * method will result in an exception being thrown.
+         */
+        public void done() {
+            for (SimpleIterator iter : delegates) {
+                iter.done();
+            }
+        }
     }
 }
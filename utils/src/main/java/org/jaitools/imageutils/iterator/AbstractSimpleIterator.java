@@ -28,8 +28,12 @@ package org.jaitools.imageutils.iterator;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
+import java.awt.image.WritableRenderedImage;
 import java.lang.ref.WeakReference;
+import java.util.Arrays;
 import java.util.List;
 
 import javax.media.jai.iterator.RandomIter;
@@ -108,6 +112,10 @@ public abstract class AbstractSimpleIterator {
     // visiting order for this iterator
     private final Order order;
 
+    // the value to return when the iterator is positioned beyond
+    // the bounds of the target image as originally supplied
+    private final Number outsideValue;
+
     // the value to return when the iterator is positioned beyond
     // the bounds of the target image; three types are created to
     // save time a little in the getSample method
@@ -115,6 +123,12 @@ public abstract class AbstractSimpleIterator {
     private final Float outsideValue_Float;
     private final Double outsideValue_Double;
 
+    // primitive versions of the outside value used by the getSampleInt,
+    // getSampleFloat and getSampleDouble methods
+    private final int outsideValue_int;
+    private final float outsideValue_float;
+    private final double outsideValue_double;
+
     // list of sub-bounds (a single rectangle for image-wise iteration or
     // a series of tile portions for tile-wise iteration)
     private final List<Rectangle> subBoundList;
@@ -142,6 +156,11 @@ public abstract class AbstractSimpleIterator {
     // the current delegate position
     private final Point delegatePos;
 
+    // scratch arrays for row transfers (allocated when first required)
+    private int[] rowData_int;
+    private float[] rowData_float;
+    private double[] rowData_double;
+
     
     /**
      * Creates a new instance. The helper object is provided by a sub-class 
@@ -195,9 +214,14 @@ public abstract class AbstractSimpleIterator {
         
         mainPos = new Point(iterBounds.x, iterBounds.y);
         
+        this.outsideValue = outsideValue;
         this.outsideValue_Integer = outsideValue == null ? null : outsideValue.intValue();
         this.outsideValue_Float = outsideValue == null ? null : outsideValue.floatValue();
         this.outsideValue_Double = outsideValue == null ? null : outsideValue.doubleValue();
+
+        this.outsideValue_int = outsideValue == null ? 0 : outsideValue.intValue();
+        this.outsideValue_float = outsideValue == null ? Float.NaN : outsideValue.floatValue();
+        this.outsideValue_double = outsideValue == null ? Double.NaN : outsideValue.doubleValue();
         
         this.order = order;
         this.startSubPos = new Point();
@@ -251,6 +275,26 @@ public abstract class AbstractSimpleIterator {
         return new Point(iterBounds.x + iterBounds.width - 1, iterBounds.y + iterBounds.height - 1);
     }
 
+    /**
+     * Gets the visiting order followed by this iterator when moved with
+     * the {@link #next()} method.
+     * 
+     * @return the iterator order
+     */
+    public Order getOrder() {
+        return order;
+    }
+
+    /**
+     * Gets the value returned by this iterator when positioned outside
+     * the bounds of the target image.
+     * 
+     * @return the outside value (may be {@code null})
+     */
+    public Number getOutsideValue() {
+        return outsideValue;
+    }
+
     /**
      * Tests whether the iterator is currently positioned within the bounds of 
      * the target image.
@@ -462,6 +506,99 @@ public abstract class AbstractSimpleIterator {
         return value;
     }
 
+    /**
+     * Returns the value from the first band of the image at the current position
+     * as an integer, or the outside value if the iterator is positioned beyond
+     * the image bounds. Unlike {@link #getSample()} this method does not allocate
+     * a {@code Number} object.
+     * 
+     * @return image or outside value
+     * @see #getSampleInt(int)
+     */
+    public int getSampleInt() {
+        return getSampleInt(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current position
+     * as an integer, or the outside value if the iterator is positioned beyond the 
+     * image bounds. If no outside value was provided when the iterator was created,
+     * 0 is returned for positions beyond the image bounds.
+     * 
+     * @param band image band
+     * @return image or outside value
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public int getSampleInt(int band) {
+        checkImageRef();
+        if (isInsideDelegateBounds()) {
+            return delegateIter.getSample(band);
+        }
+        return outsideValue_int;
+    }
+
+    /**
+     * Returns the value from the first band of the image at the current position
+     * as a float, or the outside value if the iterator is positioned beyond
+     * the image bounds. Unlike {@link #getSample()} this method does not allocate
+     * a {@code Number} object.
+     * 
+     * @return image or outside value
+     * @see #getSampleFloat(int)
+     */
+    public float getSampleFloat() {
+        return getSampleFloat(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current position
+     * as a float, or the outside value if the iterator is positioned beyond the 
+     * image bounds. If no outside value was provided when the iterator was created,
+     * {@code Float.NaN} is returned for positions beyond the image bounds.
+     * 
+     * @param band image band
+     * @return image or outside value
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public float getSampleFloat(int band) {
+        checkImageRef();
+        if (isInsideDelegateBounds()) {
+            return delegateIter.getSampleFloat(band);
+        }
+        return outsideValue_float;
+    }
+
+    /**
+     * Returns the value from the first band of the image at the current position
+     * as a double, or the outside value if the iterator is positioned beyond
+     * the image bounds. Unlike {@link #getSample()} this method does not allocate
+     * a {@code Number} object.
+     * 
+     * @return image or outside value
+     * @see #getSampleDouble(int)
+     */
+    public double getSampleDouble() {
+        return getSampleDouble(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current position
+     * as a double, or the outside value if the iterator is positioned beyond the 
+     * image bounds. If no outside value was provided when the iterator was created,
+     * {@code Double.NaN} is returned for positions beyond the image bounds.
+     * 
+     * @param band image band
+     * @return image or outside value
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public double getSampleDouble(int band) {
+        checkImageRef();
+        if (isInsideDelegateBounds()) {
+            return delegateIter.getSampleDouble(band);
+        }
+        return outsideValue_double;
+    }
+
     /**
      * Returns the value from the specified band of the image at the specified position,
      * If the position is within the iterator's bounds, but outside the target
@@ -509,6 +646,90 @@ public abstract class AbstractSimpleIterator {
         }
     }
     
+    /**
+     * Reads a line of integer values from the specified band of the image. 
+     * The line spans the horizontal extent of this iterator's bounds: element
+     * 0 of the destination array corresponds to the minimum X ordinate of the
+     * bounds. Positions beyond the image bounds receive the outside value
+     * (or 0 if no outside value was provided). Image data are read in bulk from
+     * each tile, making this method much faster than calling 
+     * {@link #getSampleInt(int)} for each position. The iterator position is
+     * not changed.
+     * <p>
+     * If {@code dest} is {@code null}, or shorter than the width of the 
+     * iterator's bounds, a new array is allocated, otherwise the provided 
+     * array is filled. In either case, the destination array is returned 
+     * for convenience.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param dest destination array or {@code null}
+     * @return the filled destination array
+     * 
+     * @throws IllegalArgumentException if {@code y} is outside the iterator's
+     *     bounds or {@code band} is out of range
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public int[] getRowInt(int y, int band, int[] dest) {
+        checkRowArgs(y, band);
+        if (dest == null || dest.length < iterBounds.width) {
+            dest = new int[iterBounds.width];
+        }
+        Arrays.fill(dest, 0, iterBounds.width, outsideValue_int);
+        transferRow(y, band, dest, false);
+        return dest;
+    }
+
+    /**
+     * Reads a line of float values from the specified band of the image.
+     * Positions beyond the image bounds receive the outside value (or
+     * {@code Float.NaN} if no outside value was provided).
+     * See {@link #getRowInt(int, int, int[])} for details.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param dest destination array or {@code null}
+     * @return the filled destination array
+     * 
+     * @throws IllegalArgumentException if {@code y} is outside the iterator's
+     *     bounds or {@code band} is out of range
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public float[] getRowFloat(int y, int band, float[] dest) {
+        checkRowArgs(y, band);
+        if (dest == null || dest.length < iterBounds.width) {
+            dest = new float[iterBounds.width];
+        }
+        Arrays.fill(dest, 0, iterBounds.width, outsideValue_float);
+        transferRow(y, band, dest, false);
+        return dest;
+    }
+
+    /**
+     * Reads a line of double values from the specified band of the image.
+     * Positions beyond the image bounds receive the outside value (or
+     * {@code Double.NaN} if no outside value was provided).
+     * See {@link #getRowInt(int, int, int[])} for details.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param dest destination array or {@code null}
+     * @return the filled destination array
+     * 
+     * @throws IllegalArgumentException if {@code y} is outside the iterator's
+     *     bounds or {@code band} is out of range
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public double[] getRowDouble(int y, int band, double[] dest) {
+        checkRowArgs(y, band);
+        if (dest == null || dest.length < iterBounds.width) {
+            dest = new double[iterBounds.width];
+        }
+        Arrays.fill(dest, 0, iterBounds.width, outsideValue_double);
+        transferRow(y, band, dest, false);
+        return dest;
+    }
+
     /**
      * Closes this iterator and frees resources including the iterator's 
      * reference to the source image. Attempting to use the iterator after
@@ -566,6 +787,134 @@ public abstract class AbstractSimpleIterator {
         return delegateIter != null && delegateBounds.contains(mainPos);
     }
 
+    /**
+     * Helper method to check that the target image is still available.
+     * 
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    protected void checkImageRef() {
+        if (imageRef.get() == null) {
+            throw new IllegalStateException("Target image has been deleted");
+        }
+    }
+
+    /**
+     * Helper method to check the arguments for a row transfer.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     */
+    protected void checkRowArgs(int y, int band) {
+        if (y < iterBounds.y || y >= iterBounds.y + iterBounds.height) {
+            throw new IllegalArgumentException(String.format(
+                    "y (%d) is outside the iterator bounds", y));
+        }
+        checkBandArg(band);
+        checkImageRef();
+    }
+
+    /**
+     * Copies data between a line of the image and an array, one tile segment 
+     * at a time. Only the part of the line within both the iterator bounds and
+     * the image bounds is transferred. Element 0 of the array corresponds to the
+     * minimum X ordinate of the iterator bounds.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param data an {@code int}, {@code float} or {@code double} array
+     * @param write {@code true} to write array values to the image; 
+     *     {@code false} to read image values into the array
+     * @return {@code true} if any data were transferred; {@code false} if the
+     *     line lies outside the image
+     */
+    protected boolean transferRow(int y, int band, Object data, boolean write) {
+        if (delegateIter == null || 
+                y < delegateBounds.y || y >= delegateBounds.y + delegateBounds.height) {
+            return false;
+        }
+
+        RenderedImage image = imageRef.get();
+        if (image == null) {
+            throw new IllegalStateException("Target image has been deleted");
+        }
+
+        final int tw = image.getTileWidth();
+        final int ox = image.getTileGridXOffset();
+        final int minX = delegateBounds.x;
+        final int maxX = delegateBounds.x + delegateBounds.width - 1;
+        
+        final int tileY = pixelToTileOrdinate(y, image.getTileGridYOffset(), image.getTileHeight());
+        final int minTileX = pixelToTileOrdinate(minX, ox, tw);
+        final int maxTileX = pixelToTileOrdinate(maxX, ox, tw);
+
+        for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
+            final int x0 = Math.max(minX, tileX * tw + ox);
+            final int x1 = Math.min(maxX, tileX * tw + ox + tw - 1);
+            final int len = x1 - x0 + 1;
+            final int pos = x0 - iterBounds.x;
+
+            if (write) {
+                WritableRenderedImage wImage = (WritableRenderedImage) image;
+                WritableRaster tile = wImage.getWritableTile(tileX, tileY);
+                try {
+                    setRowSegment(tile, x0, y, len, band, data, pos);
+                } finally {
+                    wImage.releaseWritableTile(tileX, tileY);
+                }
+            } else {
+                getRowSegment(image.getTile(tileX, tileY), x0, y, len, band, data, pos);
+            }
+        }
+        
+        return true;
+    }
+
+    /**
+     * Reads a line segment from a raster into an array.
+     */
+    private void getRowSegment(Raster tile, int x, int y, int len, int band, 
+            Object data, int pos) {
+        
+        if (data instanceof int[]) {
+            if (rowData_int == null) rowData_int = new int[iterBounds.width];
+            tile.getSamples(x, y, len, 1, band, rowData_int);
+            System.arraycopy(rowData_int, 0, data, pos, len);
+            
+        } else if (data instanceof float[]) {
+            if (rowData_float == null) rowData_float = new float[iterBounds.width];
+            tile.getSamples(x, y, len, 1, band, rowData_float);
+            System.arraycopy(rowData_float, 0, data, pos, len);
+            
+        } else {
+            if (rowData_double == null) rowData_double = new double[iterBounds.width];
+            tile.getSamples(x, y, len, 1, band, rowData_double);
+            System.arraycopy(rowData_double, 0, data, pos, len);
+        }
+    }
+
+    /**
+     * Writes a line segment from an array into a raster.
+     */
+    private void setRowSegment(WritableRaster tile, int x, int y, int len, int band, 
+            Object data, int pos) {
+        
+        if (data instanceof int[]) {
+            if (rowData_int == null) rowData_int = new int[iterBounds.width];
+            System.arraycopy(data, pos, rowData_int, 0, len);
+            tile.setSamples(x, y, len, 1, band, rowData_int);
+            
+        } else if (data instanceof float[]) {
+            if (rowData_float == null) rowData_float = new float[iterBounds.width];
+            System.arraycopy(data, pos, rowData_float, 0, len);
+            tile.setSamples(x, y, len, 1, band, rowData_float);
+            
+        } else {
+            if (rowData_double == null) rowData_double = new double[iterBounds.width];
+            System.arraycopy(data, pos, rowData_double, 0, len);
+            tile.setSamples(x, y, len, 1, band, rowData_double);
+        }
+    }
+
     /**
      * Helper method to check that a band value is valid.
      * 
@@ -579,6 +928,77 @@ public abstract class AbstractSimpleIterator {
         }
     }
 
+    /**
+     * Divides the bounds of this iterator into at most {@code maxChunks} 
+     * rectangles which are aligned with the tile grid of the target image.
+     * The rectangles are returned in visiting order: iterating over each of 
+     * them in turn, with the order used by this iterator, visits the same 
+     * positions in the same sequence as this iterator does.
+     * <p>
+     * The bounds are divided along tile row boundaries. When the iterator
+     * order is {@linkplain Order#TILE_X_Y} and its bounds span a single row
+     * of tiles, they are divided along tile column boundaries instead. The
+     * number of rectangles returned can be less than {@code maxChunks} when
+     * there are too few tiles.
+     * 
+     * @param maxChunks maximum number of rectangles
+     * @return the list of rectangles
+     * 
+     * @throws IllegalArgumentException if {@code maxChunks} is less than 1
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    protected List<Rectangle> getSplitBounds(int maxChunks) {
+        if (maxChunks < 1) {
+            throw new IllegalArgumentException("maxChunks must be 1 or greater");
+        }
+        RenderedImage image = imageRef.get();
+        if (image == null) {
+            throw new IllegalStateException("Target image has been deleted");
+        }
+
+        List<Rectangle> chunks = CollectionFactory.list();
+        if (iterBounds.isEmpty()) {
+            chunks.add(new Rectangle(iterBounds));
+            return chunks;
+        }
+
+        final int tw = image.getTileWidth();
+        final int th = image.getTileHeight();
+        final int ox = image.getTileGridXOffset();
+        final int oy = image.getTileGridYOffset();
+
+        final int lastX = iterBounds.x + iterBounds.width - 1;
+        final int lastY = iterBounds.y + iterBounds.height - 1;
+
+        final int minTileY = pixelToTileOrdinate(iterBounds.y, oy, th);
+        final int numTileRows = pixelToTileOrdinate(lastY, oy, th) - minTileY + 1;
+
+        if (numTileRows > 1 || order == Order.IMAGE_X_Y) {
+            final int n = Math.min(maxChunks, numTileRows);
+            for (int i = 0; i < n; i++) {
+                int firstTile = minTileY + i * numTileRows / n;
+                int lastTile = minTileY + (i + 1) * numTileRows / n - 1;
+                int y0 = Math.max(iterBounds.y, firstTile * th + oy);
+                int y1 = Math.min(lastY, (lastTile + 1) * th + oy - 1);
+                chunks.add(new Rectangle(iterBounds.x, y0, iterBounds.width, y1 - y0 + 1));
+            }
+
+        } else {
+            final int minTileX = pixelToTileOrdinate(iterBounds.x, ox, tw);
+            final int numTileCols = pixelToTileOrdinate(lastX, ox, tw) - minTileX + 1;
+            final int n = Math.min(maxChunks, numTileCols);
+            for (int i = 0; i < n; i++) {
+                int firstTile = minTileX + i * numTileCols / n;
+                int lastTile = minTileX + (i + 1) * numTileCols / n - 1;
+                int x0 = Math.max(iterBounds.x, firstTile * tw + ox);
+                int x1 = Math.min(lastX, (lastTile + 1) * tw + ox - 1);
+                chunks.add(new Rectangle(x0, iterBounds.y, x1 - x0 + 1, iterBounds.height));
+            }
+        }
+
+        return chunks;
+    }
+
     /**
      * Builds the list of sub-bounds, each of which is a Rectangle to (possibly)
      * be processed by this iterator.
@@ -652,23 +1072,15 @@ public abstract class AbstractSimpleIterator {
         final int ox = image.getTileGridXOffset();
         final int oy = image.getTileGridYOffset();
 
-        final int lastX = iterBounds.x + iterBounds.width - 1;
-        final int lastY = iterBounds.y + iterBounds.height - 1;
-
-        boolean moreY = true;
-        for (int y = iterBounds.y; moreY; y = Math.min(y + th, lastY)) {
-            moreY = y < lastY;
-            
-            boolean moreX = true;
-            for (int x = iterBounds.x; moreX; x = Math.min(x + tw, lastX)) {
-                moreX = x < lastX;
-
-                // Get tile X and Y ordinates. Remember that the tile might 
-                // not exist in the image if the iterator's bounds lie beyond the
-                // image bounds, but we allow this.
-                int tileX = pixelToTileOrdinate(x, ox, tw);
-                int tileY = pixelToTileOrdinate(y, oy, th);
+        final int minTileX = pixelToTileOrdinate(iterBounds.x, ox, tw);
+        final int minTileY = pixelToTileOrdinate(iterBounds.y, oy, th);
+        final int maxTileX = pixelToTileOrdinate(iterBounds.x + iterBounds.width - 1, ox, tw);
+        final int maxTileY = pixelToTileOrdinate(iterBounds.y + iterBounds.height - 1, oy, th);
 
+        // Remember that a tile might not exist in the image if the iterator's 
+        // bounds lie beyond the image bounds, but we allow this.
+        for (int tileY = minTileY; tileY <= maxTileY; tileY++) {
+            for (int tileX = minTileX; tileX <= maxTileX; tileX++) {
                 Rectangle tileRect = new Rectangle(
                         tileX * tw + ox, tileY * th + oy, tw, th);
 
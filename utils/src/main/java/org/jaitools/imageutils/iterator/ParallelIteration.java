@@ -0,0 +1,287 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.imageutils.iterator;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.DaemonThreadFactory;
+
+/**
+ * Runs a task over a {@link SimpleIterator} concurrently. The iterator is
+ * divided into tile-aligned chunks with {@link SimpleIterator#split(int)} and
+ * each chunk is processed on a separate thread with its own delegate iterator.
+ * The partial results are then combined, in chunk order, with a {@link Reducer}.
+ * Because chunks are combined in the same sequence as the original iterator
+ * visits them, the iterator's {@code Order} is respected even by reductions
+ * which are not commutative.
+ * <p>
+ * Example: summing the values in band 0 of an image using four threads...
+ * <pre><code>
+ * SimpleIterator iter = new SimpleIterator(image, null, 0, SimpleIterator.Order.TILE_X_Y);
+ * 
+ * Double sum = ParallelIteration.run(iter, 4, 
+ *     new ParallelIteration.Task&lt;Double&gt;() {
+ *         public Double process(SimpleIterator chunk) {
+ *             double total = 0;
+ *             do {
+ *                 total += chunk.getSampleDouble();
+ *             } while (chunk.next());
+ *             return total;
+ *         }
+ *     },
+ *     new ParallelIteration.Reducer&lt;Double&gt;() {
+ *         public Double reduce(Double a, Double b) {
+ *             return a + b;
+ *         }
+ *     });
+ * </code></pre>
+ * 
+ * Chunks prepared in other ways, such as those returned by 
+ * {@link org.jaitools.imageutils.ImageSet.Iterator#split(int)}, can be processed
+ * with {@link #run(List, ExecutorService, ChunkTask, Reducer)}.
+ * 
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ParallelIteration {
+
+    /**
+     * A task to be run over one chunk of an iterator's bounds.
+     * 
+     * @param <R> the type of result produced
+     */
+    public static interface Task<R> {
+
+        /**
+         * Processes the given iterator, which is positioned at the start of 
+         * its bounds, and returns a partial result.
+         * 
+         * @param iter the iterator for the chunk
+         * @return partial result
+         */
+        R process(SimpleIterator iter);
+    }
+
+    /**
+     * A task to be run over one of a list of prepared chunks.
+     * 
+     * @param <C> the type of chunk
+     * @param <R> the type of result produced
+     */
+    public static interface ChunkTask<C, R> {
+
+        /**
+         * Processes the given chunk and returns a partial result.
+         * 
+         * @param chunk the chunk
+         * @return partial result
+         */
+        R process(C chunk);
+    }
+
+    /**
+     * Combines two partial results.
+     * 
+     * @param <R> the type of result
+     */
+    public static interface Reducer<R> {
+
+        /**
+         * Combines two partial results. The first argument is the accumulated
+         * result for chunks visited earlier by the iterator.
+         * 
+         * @param first result for the earlier chunk(s)
+         * @param second result for the later chunk
+         * @return the combined result
+         */
+        R reduce(R first, R second);
+    }
+
+    /**
+     * Runs a task over the given iterator using a new pool of daemon threads
+     * which is shut down before this method returns. The iterator is divided
+     * into at most {@code numThreads} chunks.
+     * 
+     * @param <R> the type of result
+     * @param iter the iterator
+     * @param numThreads number of threads to use
+     * @param task the task to run for each chunk
+     * @param reducer used to combine partial results
+     * 
+     * @return the combined result
+     * 
+     * @throws IllegalArgumentException if any argument is {@code null} or
+     *     {@code numThreads} is less than 1
+     * @throws IllegalStateException if a task fails or the calling thread
+     *     is interrupted
+     */
+    public static <R> R run(SimpleIterator iter, int numThreads, 
+            Task<R> task, Reducer<R> reducer) {
+        
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be 1 or greater");
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                numThreads, new DaemonThreadFactory());
+        try {
+            return run(iter, executor, numThreads, task, reducer);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Runs a task over the given iterator using the supplied executor. The 
+     * iterator is divided into at most {@code maxChunks} chunks. The executor
+     * is not shut down by this method.
+     * 
+     * @param <R> the type of result
+     * @param iter the iterator
+     * @param executor the executor to run tasks
+     * @param maxChunks maximum number of chunks to divide the iterator into
+     * @param task the task to run for each chunk
+     * @param reducer used to combine partial results
+     * 
+     * @return the combined result
+     * 
+     * @throws IllegalArgumentException if any argument is {@code null} or
+     *     {@code maxChunks} is less than 1
+     * @throws IllegalStateException if a task fails or the calling thread
+     *     is interrupted
+     */
+    public static <R> R run(SimpleIterator iter, ExecutorService executor, int maxChunks, 
+            final Task<R> task, Reducer<R> reducer) {
+        
+        if (iter == null) {
+            throw new IllegalArgumentException("iter must not be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("task must not be null");
+        }
+        if (reducer == null) {
+            throw new IllegalArgumentException("reducer must not be null");
+        }
+
+        List<SimpleIterator> chunks = iter.split(maxChunks);
+        return run(chunks, executor, new ChunkTask<SimpleIterator, R>() {
+            public R process(SimpleIterator chunk) {
+                try {
+                    return task.process(chunk);
+                } finally {
+                    chunk.done();
+                }
+            }
+        }, reducer);
+    }
+
+    /**
+     * Runs a task over each of a list of prepared chunks using the supplied 
+     * executor, and combines the partial results in list order. The executor 
+     * is not shut down by this method.
+     * 
+     * @param <C> the type of chunk
+     * @param <R> the type of result
+     * @param chunks the chunks to process
+     * @param executor the executor to run tasks
+     * @param task the task to run for each chunk
+     * @param reducer used to combine partial results
+     * 
+     * @return the combined result or {@code null} if {@code chunks} is empty
+     * 
+     * @throws IllegalArgumentException if any argument is {@code null}
+     * @throws IllegalStateException if a task fails or the calling thread
+     *     is interrupted
+     */
+    public static <C, R> R run(List<? extends C> chunks, ExecutorService executor,
+            final ChunkTask<C, R> task, Reducer<R> reducer) {
+        
+        if (chunks == null) {
+            throw new IllegalArgumentException("chunks must not be null");
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null");
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("task must not be null");
+        }
+        if (reducer == null) {
+            throw new IllegalArgumentException("reducer must not be null");
+        }
+
+        List<Future<R>> futures = CollectionFactory.list();
+        for (final C chunk : chunks) {
+            futures.add(executor.submit(new Callable<R>() {
+                public R call() throws Exception {
+                    return task.process(chunk);
+                }
+            }));
+        }
+
+        R result = null;
+        try {
+            boolean first = true;
+            for (Future<R> f : futures) {
+                R partial = f.get();
+                result = first ? partial : reducer.reduce(result, partial);
+                first = false;
+            }
+
+        } catch (ExecutionException execEx) {
+            cancelAll(futures);
+            throw new IllegalStateException(execEx);
+
+        } catch (InterruptedException intEx) {
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(intEx);
+        }
+
+        return result;
+    }
+
+    /**
+     * Cancels any tasks that have not yet completed.
+     * 
+     * @param futures pending results
+     */
+    private static <R> void cancelAll(List<Future<R>> futures) {
+        for (Future<R> f : futures) {
+            f.cancel(true);
+        }
+    }
+
+}
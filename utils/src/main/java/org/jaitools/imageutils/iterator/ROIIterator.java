@@ -0,0 +1,871 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.imageutils.iterator;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+import java.awt.geom.Rectangle2D;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+import javax.media.jai.ROI;
+import javax.media.jai.ROIShape;
+
+import org.jaitools.imageutils.ROIGeometry;
+
+import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * A read-only image iterator which only visits pixels inside an {@code ROI}.
+ * Rather than testing each pixel with {@code ROI.contains}, the iterator
+ * converts the ROI into runs of inside pixels for each image line and then
+ * visits only the pixels in those runs. Tiles and lines that do not intersect
+ * the ROI are skipped without being requested from the image.
+ * <p>
+ * Runs are computed directly from the boundary of {@link ROIGeometry} objects
+ * and of {@link ROIShape} objects whose outline is made up of straight line 
+ * segments, with {@code ROI.contains} only being called for pixels lying on, 
+ * or very close to, the boundary. For other ROIs, each pixel within the
+ * ROI bounds is tested.
+ * <p>
+ * Pixels are visited tile by tile (as with {@linkplain SimpleIterator.Order#TILE_X_Y})
+ * and by line then pixel within each tile. Since the ROI might not contain any
+ * pixels, the iterator starts <i>before</i> the first pixel:
+ * <pre><code>
+ * ROIIterator iter = new ROIIterator(image, null, roi);
+ * while (iter.next()) {
+ *     double value = iter.getSampleDouble();
+ *     ...
+ * }
+ * </code></pre>
+ * 
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ROIIterator {
+
+    private static final int[] NO_RUNS = new int[0];
+    
+    /*
+     * Crossings of an image line with the ROI boundary which are within
+     * this distance of a pixel position are treated as uncertain and 
+     * that pixel is tested with ROI.contains.
+     */
+    private static final double TOL = 1.0e-6;
+
+    private final WeakReference<RenderedImage> imageRef;
+    private final int imageDataType;
+    private final int numImageBands;
+    
+    private final ROI roi;
+    private final EdgeRunBuilder runBuilder;
+
+    // intersection of the requested bounds, image bounds and ROI bounds
+    private final Rectangle iterBounds;
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final int tileGridXOffset;
+    private final int tileGridYOffset;
+    private final int minTileX;
+    private final int maxTileX;
+    private final int minTileY;
+    private final int maxTileY;
+
+    // runs for each line of the current tile row as [start, end] pairs
+    // (inclusive) spanning the width of the iterator bounds
+    private int[][] lineRuns;
+    private int lineRunsTileY;
+
+    // current tile and its intersection with the iterator bounds
+    private int tileX;
+    private int tileY;
+    private final Rectangle tileBounds;
+    private Raster tile;
+
+    // current line, index of the next run to examine, and run end
+    private int y;
+    private int runIndex;
+    private int runEnd;
+    
+    private final Point pos;
+    private boolean started;
+    private boolean finished;
+
+    /**
+     * Creates a new iterator.
+     * 
+     * @param image the target image
+     * @param bounds bounds for the iterator; if {@code null} the bounds of 
+     *     the target image will be used
+     * @param roi the region of interest
+     * 
+     * @throws IllegalArgumentException if {@code image} or {@code roi} is {@code null}
+     */
+    public ROIIterator(RenderedImage image, Rectangle bounds, ROI roi) {
+        if (image == null) {
+            throw new IllegalArgumentException("image must not be null");
+        }
+        if (roi == null) {
+            throw new IllegalArgumentException("roi must not be null");
+        }
+
+        this.imageRef = new WeakReference<RenderedImage>(image);
+        this.imageDataType = image.getSampleModel().getDataType();
+        this.numImageBands = image.getSampleModel().getNumBands();
+        this.roi = roi;
+
+        Rectangle r = new Rectangle(image.getMinX(), image.getMinY(), 
+                image.getWidth(), image.getHeight());
+        if (bounds != null) {
+            r = r.intersection(bounds);
+        }
+
+        if (roi instanceof ROIGeometry) {
+            runBuilder = EdgeRunBuilder.create((ROIGeometry) roi);
+        } else if (roi instanceof ROIShape) {
+            runBuilder = EdgeRunBuilder.create(roi.getAsShape());
+        } else {
+            runBuilder = null;
+        }
+        
+        this.iterBounds = r.intersection(getROIBounds(roi));
+
+        tileWidth = image.getTileWidth();
+        tileHeight = image.getTileHeight();
+        tileGridXOffset = image.getTileGridXOffset();
+        tileGridYOffset = image.getTileGridYOffset();
+        
+        if (iterBounds.isEmpty()) {
+            minTileX = maxTileX = minTileY = maxTileY = 0;
+            finished = true;
+        } else {
+            minTileX = pixelToTileOrdinate(iterBounds.x, tileGridXOffset, tileWidth);
+            maxTileX = pixelToTileOrdinate(iterBounds.x + iterBounds.width - 1, tileGridXOffset, tileWidth);
+            minTileY = pixelToTileOrdinate(iterBounds.y, tileGridYOffset, tileHeight);
+            maxTileY = pixelToTileOrdinate(iterBounds.y + iterBounds.height - 1, tileGridYOffset, tileHeight);
+        }
+        
+        tileBounds = new Rectangle();
+        pos = new Point();
+        lineRunsTileY = Integer.MIN_VALUE;
+        
+        reset();
+    }
+
+    /**
+     * Gets the bounds within which this iterator looks for ROI pixels.
+     * This is the intersection of the bounds requested when the iterator
+     * was created, the image bounds and the ROI bounds.
+     * 
+     * @return iterator bounds as a new Rectangle
+     */
+    public Rectangle getBounds() {
+        return new Rectangle(iterBounds);
+    }
+
+    /**
+     * Gets the ROI used by this iterator.
+     * 
+     * @return the ROI
+     */
+    public ROI getROI() {
+        return roi;
+    }
+
+    /**
+     * Advances the iterator to the next pixel inside the ROI. When the 
+     * iterator is first created, or after {@link #reset()}, this method
+     * must be called to move to the first pixel.
+     * 
+     * @return {@code true} if the iterator was moved; {@code false} if 
+     *     there are no more pixels inside the ROI
+     */
+    public boolean next() {
+        if (finished) {
+            return false;
+        }
+
+        if (started && pos.x < runEnd) {
+            pos.x++ ;
+            return true;
+        }
+
+        started = true;
+        if (nextRun()) {
+            return true;
+        }
+        
+        finished = true;
+        return false;
+    }
+
+    /**
+     * Resets the iterator to its position before the first pixel.
+     */
+    public void reset() {
+        started = false;
+        tileX = minTileX;
+        tileY = minTileY;
+        tile = null;
+        setTileBounds();
+        y = tileBounds.y;
+        runIndex = 0;
+        finished = iterBounds.isEmpty();
+    }
+
+    /**
+     * Gets the current iterator position.
+     * 
+     * @return current position
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public Point getPos() {
+        checkPositioned();
+        return new Point(pos);
+    }
+
+    /**
+     * Returns the value from the first band of the image at the current position.
+     * 
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public Number getSample() {
+        return getSample(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current position.
+     * The class of the value corresponds to the image data type as for
+     * {@link SimpleIterator#getSample(int)}.
+     * 
+     * @param band image band
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public Number getSample(int band) {
+        checkPositioned();
+        switch (imageDataType) {
+            case DataBuffer.TYPE_DOUBLE:
+                return Double.valueOf(tile.getSampleDouble(pos.x, pos.y, band));
+
+            case DataBuffer.TYPE_FLOAT:
+                return Float.valueOf(tile.getSampleFloat(pos.x, pos.y, band));
+
+            default:
+                return Integer.valueOf(tile.getSample(pos.x, pos.y, band));
+        }
+    }
+
+    /**
+     * Returns the value from the first band of the image at the current position
+     * as an integer.
+     * 
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public int getSampleInt() {
+        return getSampleInt(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current 
+     * position as an integer.
+     * 
+     * @param band image band
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public int getSampleInt(int band) {
+        checkPositioned();
+        return tile.getSample(pos.x, pos.y, band);
+    }
+
+    /**
+     * Returns the value from the first band of the image at the current position
+     * as a float.
+     * 
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public float getSampleFloat() {
+        return getSampleFloat(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current 
+     * position as a float.
+     * 
+     * @param band image band
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public float getSampleFloat(int band) {
+        checkPositioned();
+        return tile.getSampleFloat(pos.x, pos.y, band);
+    }
+
+    /**
+     * Returns the value from the first band of the image at the current position
+     * as a double.
+     * 
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public double getSampleDouble() {
+        return getSampleDouble(0);
+    }
+
+    /**
+     * Returns the value from the specified band of the image at the current 
+     * position as a double.
+     * 
+     * @param band image band
+     * @return image value
+     * @throws IllegalStateException if the iterator is not positioned at a pixel
+     */
+    public double getSampleDouble(int band) {
+        checkPositioned();
+        return tile.getSampleDouble(pos.x, pos.y, band);
+    }
+
+    /**
+     * Gets the number of bands in the target image.
+     * 
+     * @return number of bands
+     */
+    public int getNumBands() {
+        return numImageBands;
+    }
+
+    /**
+     * Closes this iterator and frees resources including the iterator's 
+     * reference to the source image. Attempting to use the iterator after
+     * calling this method will result in an exception being thrown.
+     */
+    public void done() {
+        imageRef.clear();
+        tile = null;
+        finished = true;
+    }
+
+    /**
+     * Moves to the start of the next run, clipped to the current tile, 
+     * moving to following lines and tiles as required.
+     * 
+     * @return {@code true} if a run was found; {@code false} if there are no more
+     */
+    private boolean nextRun() {
+        while (true) {
+            final int tileMaxX = tileBounds.x + tileBounds.width - 1;
+            
+            if (y < tileBounds.y + tileBounds.height) {
+                int[] runs = getLineRuns(y);
+                while (runIndex < runs.length) {
+                    int start = runs[runIndex];
+                    int end = runs[runIndex + 1];
+                    runIndex += 2;
+                    
+                    if (start > tileMaxX) {
+                        runIndex = runs.length;
+                    } else if (end >= tileBounds.x) {
+                        if (tile == null) {
+                            tile = getImage().getTile(tileX, tileY);
+                        }
+                        pos.x = Math.max(start, tileBounds.x);
+                        pos.y = y;
+                        runEnd = Math.min(end, tileMaxX);
+                        return true;
+                    }
+                }
+                
+                y++ ;
+                runIndex = 0;
+                
+            } else {
+                // move to the next tile
+                tile = null;
+                if (tileX < maxTileX) {
+                    tileX++ ;
+                } else if (tileY < maxTileY) {
+                    tileX = minTileX;
+                    tileY++ ;
+                } else {
+                    return false;
+                }
+                
+                setTileBounds();
+                y = tileBounds.y;
+                runIndex = 0;
+            }
+        }
+    }
+
+    /**
+     * Gets the runs for a line, computing them for all lines of the 
+     * current tile row when first required.
+     */
+    private int[] getLineRuns(int line) {
+        if (lineRunsTileY != tileY) {
+            final int y0 = Math.max(iterBounds.y, tileY * tileHeight + tileGridYOffset);
+            final int y1 = Math.min(iterBounds.y + iterBounds.height,
+                    (tileY + 1) * tileHeight + tileGridYOffset);
+            
+            lineRuns = new int[y1 - y0][];
+            for (int i = 0; i < lineRuns.length; i++) {
+                lineRuns[i] = buildRuns(y0 + i);
+            }
+            lineRunsTileY = tileY;
+        }
+        
+        return lineRuns[line - tileBounds.y];
+    }
+
+    /**
+     * Builds the runs for a line across the full width of the iterator bounds.
+     */
+    private int[] buildRuns(int line) {
+        final int minX = iterBounds.x;
+        final int maxX = iterBounds.x + iterBounds.width - 1;
+        
+        if (runBuilder != null) {
+            return runBuilder.getRuns(roi, line, minX, maxX);
+        }
+        
+        RunList runs = new RunList();
+        for (int x = minX; x <= maxX; x++) {
+            if (roi.contains(x, line)) {
+                runs.add(x, x);
+            }
+        }
+        return runs.toArray();
+    }
+
+    /**
+     * Sets the tile bounds field to the intersection of the current tile
+     * and the iterator bounds.
+     */
+    private void setTileBounds() {
+        tileBounds.setBounds(
+                tileX * tileWidth + tileGridXOffset, tileY * tileHeight + tileGridYOffset,
+                tileWidth, tileHeight);
+        Rectangle.intersect(tileBounds, iterBounds, tileBounds);
+    }
+
+    private RenderedImage getImage() {
+        RenderedImage image = imageRef.get();
+        if (image == null) {
+            throw new IllegalStateException("Target image has been deleted");
+        }
+        return image;
+    }
+
+    private void checkPositioned() {
+        if (!started || finished) {
+            throw new IllegalStateException("The iterator is not positioned at a pixel");
+        }
+        if (imageRef.get() == null) {
+            throw new IllegalStateException("Target image has been deleted");
+        }
+    }
+
+    /**
+     * Gets integer bounds enclosing all pixels which might be inside the ROI.
+     */
+    private static Rectangle getROIBounds(ROI roi) {
+        if (roi instanceof ROIGeometry || roi instanceof ROIShape) {
+            // ROIGeometry.getBounds truncates the ROI extent so we 
+            // use the double precision bounds here
+            Rectangle2D r2 = roi.getBounds2D();
+            int x0 = (int) Math.floor(r2.getMinX());
+            int y0 = (int) Math.floor(r2.getMinY());
+            int x1 = (int) Math.ceil(r2.getMaxX());
+            int y1 = (int) Math.ceil(r2.getMaxY());
+            return new Rectangle(x0, y0, x1 - x0 + 1, y1 - y0 + 1);
+        }
+        return roi.getBounds();
+    }
+
+    private static int pixelToTileOrdinate(int ordinate, int offset, int dim) {
+        ordinate -= offset;
+        if (ordinate < 0) {
+            ordinate += 1 - dim;
+        }
+        return ordinate / dim;
+    }
+
+
+    /**
+     * Copies an array to a new array of the given length (which may be 
+     * shorter than the original).
+     */
+    private static int[] resize(int[] src, int len) {
+        int[] dest = new int[len];
+        System.arraycopy(src, 0, dest, 0, Math.min(len, src.length));
+        return dest;
+    }
+
+    private static double[] resize(double[] src, int len) {
+        double[] dest = new double[len];
+        System.arraycopy(src, 0, dest, 0, Math.min(len, src.length));
+        return dest;
+    }
+    
+    /**
+     * Computes runs from the crossings of an image line with the straight edges of
+     * the ROI boundary. 
+     */
+    private static class EdgeRunBuilder {
+        private final double[] edges;  // x1, y1, x2, y2 for each edge
+        private final int numEdges;
+        private final boolean evenOdd;
+
+        // work arrays
+        private double[] xs = new double[16];
+        private int[] dirs = new int[16];
+
+        /**
+         * Creates a run builder for a polygonal geometry.
+         */
+        static EdgeRunBuilder create(ROIGeometry roi) {
+            Geometry geom = roi.getAsGeometry();
+            EdgeList list = new EdgeList();
+            
+            for (int i = 0; i < geom.getNumGeometries(); i++) {
+                Polygon poly = (Polygon) geom.getGeometryN(i);
+                list.addRing(poly.getExteriorRing());
+                for (int k = 0; k < poly.getNumInteriorRing(); k++) {
+                    list.addRing(poly.getInteriorRingN(k));
+                }
+            }
+            
+            return new EdgeRunBuilder(list, true);
+        }
+
+        /**
+         * Creates a run builder for a shape or returns {@code null} if the 
+         * shape has curved segments.
+         */
+        static EdgeRunBuilder create(Shape shape) {
+            if (shape == null) {
+                return null;
+            }
+            
+            PathIterator pi = shape.getPathIterator(null);
+            EdgeList list = new EdgeList();
+            double[] coords = new double[6];
+            double startX = 0, startY = 0, lastX = 0, lastY = 0;
+
+            while (!pi.isDone()) {
+                switch (pi.currentSegment(coords)) {
+                    case PathIterator.SEG_MOVETO:
+                        if (lastX != startX || lastY != startY) {
+                            list.add(lastX, lastY, startX, startY);
+                        }
+                        startX = lastX = coords[0];
+                        startY = lastY = coords[1];
+                        break;
+
+                    case PathIterator.SEG_LINETO:
+                        list.add(lastX, lastY, coords[0], coords[1]);
+                        lastX = coords[0];
+                        lastY = coords[1];
+                        break;
+
+                    case PathIterator.SEG_CLOSE:
+                        list.add(lastX, lastY, startX, startY);
+                        lastX = startX;
+                        lastY = startY;
+                        break;
+
+                    default:
+                        // curved segment
+                        return null;
+                }
+                pi.next();
+            }
+            
+            if (lastX != startX || lastY != startY) {
+                list.add(lastX, lastY, startX, startY);
+            }
+            
+            return new EdgeRunBuilder(list, pi.getWindingRule() == PathIterator.WIND_EVEN_ODD);
+        }
+
+        private EdgeRunBuilder(EdgeList list, boolean evenOdd) {
+            this.edges = list.toArray();
+            this.numEdges = edges.length / 4;
+            this.evenOdd = evenOdd;
+        }
+
+        /**
+         * Gets the runs of pixels inside the ROI on the given line
+         * between minX and maxX inclusive.
+         */
+        int[] getRuns(ROI roi, int line, int minX, int maxX) {
+            final double y = line;
+            int n = 0;
+            RunList uncertain = new RunList();
+            
+            for (int i = 0, k = 0; i < numEdges; i++, k += 4) {
+                final double x1 = edges[k], y1 = edges[k + 1];
+                final double x2 = edges[k + 2], y2 = edges[k + 3];
+                
+                // vertices on this line are boundary pixels
+                if (y1 == y) {
+                    uncertain.add((int) Math.ceil(x1 - TOL), (int) Math.floor(x1 + TOL));
+                }
+                if (y2 == y) {
+                    uncertain.add((int) Math.ceil(x2 - TOL), (int) Math.floor(x2 + TOL));
+                }
+                
+                if (y1 == y2) {
+                    if (y1 == y) {
+                        // horizontal edge on this line: its pixels are boundary pixels
+                        uncertain.add((int) Math.ceil(Math.min(x1, x2) - TOL), 
+                                (int) Math.floor(Math.max(x1, x2) + TOL));
+                    }
+                    
+                } else if ((y1 <= y && y < y2) || (y2 <= y && y < y1)) {
+                    if (n == xs.length) {
+                        xs = resize(xs, 2 * n);
+                        dirs = resize(dirs, 2 * n);
+                    }
+                    double xc = x1 + (y - y1) * (x2 - x1) / (y2 - y1);
+                    
+                    // insertion sort by X
+                    int pos = n;
+                    while (pos > 0 && xs[pos - 1] > xc) {
+                        xs[pos] = xs[pos - 1];
+                        dirs[pos] = dirs[pos - 1];
+                        pos-- ;
+                    }
+                    xs[pos] = xc;
+                    dirs[pos] = y2 > y1 ? 1 : -1;
+                    n++ ;
+                    
+                    uncertain.add((int) Math.ceil(xc - TOL), (int) Math.floor(xc + TOL));
+                }
+            }
+            
+            if (n == 0 && uncertain.isEmpty()) {
+                return NO_RUNS;
+            }
+
+            RunList sure = new RunList();
+            int winding = 0;
+            double insideFrom = 0;
+            for (int i = 0; i < n; i++) {
+                boolean wasInside = winding != 0;
+                winding = evenOdd ? winding ^ 1 : winding + dirs[i];
+                boolean isInside = winding != 0;
+                
+                if (isInside && !wasInside) {
+                    insideFrom = xs[i];
+                } else if (wasInside && !isInside) {
+                    int start = Math.max(minX, (int) Math.floor(insideFrom + TOL) + 1);
+                    int end = Math.min(maxX, (int) Math.ceil(xs[i] - TOL) - 1);
+                    sure.add(start, end);
+                }
+            }
+            
+            // Uncertain pixels are removed from the sure runs and then 
+            // tested individually
+            int[] unc = uncertain.toSortedPixels(minX, maxX);
+            RunList result = new RunList();
+            int u = 0;
+            for (int i = 0; i < sure.size(); i++) {
+                int start = sure.getStart(i);
+                int end = sure.getEnd(i);
+                
+                while (u < unc.length && unc[u] < start) {
+                    u++ ;
+                }
+                while (u < unc.length && unc[u] <= end) {
+                    if (unc[u] > start) {
+                        result.add(start, unc[u] - 1);
+                    }
+                    start = unc[u] + 1;
+                    u++ ;
+                }
+                if (start <= end) {
+                    result.add(start, end);
+                }
+            }
+            
+            for (int x : unc) {
+                if (roi.contains(x, line)) {
+                    result.add(x, x);
+                }
+            }
+            
+            return result.toMergedArray();
+        }
+    }
+
+    
+    /**
+     * Accumulates edges as x1, y1, x2, y2 values.
+     */
+    private static class EdgeList {
+        private double[] data = new double[64];
+        private int size;
+
+        void add(double x1, double y1, double x2, double y2) {
+            if (size + 4 > data.length) {
+                data = resize(data, 2 * data.length);
+            }
+            data[size++] = x1;
+            data[size++] = y1;
+            data[size++] = x2;
+            data[size++] = y2;
+        }
+
+        void addRing(LineString ring) {
+            Coordinate[] coords = ring.getCoordinates();
+            for (int i = 1; i < coords.length; i++) {
+                add(coords[i - 1].x, coords[i - 1].y, coords[i].x, coords[i].y);
+            }
+        }
+
+        double[] toArray() {
+            return resize(data, size);
+        }
+    }
+
+    
+    /**
+     * Accumulates runs as [start, end] pairs.
+     */
+    private static class RunList {
+        private int[] data = new int[16];
+        private int size;
+
+        void add(int start, int end) {
+            if (start > end) {
+                return;
+            }
+            if (size + 2 > data.length) {
+                data = resize(data, 2 * data.length);
+            }
+            data[size++] = start;
+            data[size++] = end;
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        int size() {
+            return size / 2;
+        }
+
+        int getStart(int i) {
+            return data[2 * i];
+        }
+
+        int getEnd(int i) {
+            return data[2 * i + 1];
+        }
+
+        /**
+         * Returns the runs, which must be in order and non-overlapping, as an array.
+         */
+        int[] toArray() {
+            return size == 0 ? NO_RUNS : resize(data, size);
+        }
+
+        /**
+         * Returns the distinct pixel positions covered by the runs, 
+         * clipped to the given range, in ascending order.
+         */
+        int[] toSortedPixels(int minX, int maxX) {
+            int n = 0;
+            int[] pixels = new int[size];
+            for (int i = 0; i < size; i += 2) {
+                for (int x = Math.max(minX, data[i]); x <= Math.min(maxX, data[i + 1]); x++) {
+                    if (n == pixels.length) {
+                        pixels = resize(pixels, 2 * n + 2);
+                    }
+                    pixels[n++] = x;
+                }
+            }
+            
+            Arrays.sort(pixels, 0, n);
+            int distinct = 0;
+            for (int i = 0; i < n; i++) {
+                if (distinct == 0 || pixels[i] != pixels[distinct - 1]) {
+                    pixels[distinct++] = pixels[i];
+                }
+            }
+            return resize(pixels, distinct);
+        }
+
+        /**
+         * Sorts the runs, which must not overlap, and merges adjacent runs.
+         */
+        int[] toMergedArray() {
+            if (size == 0) {
+                return NO_RUNS;
+            }
+            
+            final int n = size / 2;
+            long[] packed = new long[n];
+            for (int i = 0; i < n; i++) {
+                packed[i] = ((long) data[2 * i] << 32) | (data[2 * i + 1] & 0xffffffffL);
+            }
+            Arrays.sort(packed);
+            
+            RunList merged = new RunList();
+            int curStart = (int) (packed[0] >> 32);
+            int curEnd = (int) packed[0];
+            for (int i = 1; i < n; i++) {
+                int start = (int) (packed[i] >> 32);
+                int end = (int) packed[i];
+                if (start <= curEnd + 1) {
+                    curEnd = Math.max(curEnd, end);
+                } else {
+                    merged.add(curStart, curEnd);
+                    curStart = start;
+                    curEnd = end;
+                }
+            }
+            merged.add(curStart, curEnd);
+            return merged.toArray();
+        }
+    }
+
+}
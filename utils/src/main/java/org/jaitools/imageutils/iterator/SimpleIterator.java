@@ -27,10 +27,13 @@ package org.jaitools.imageutils.iterator;
 
 import java.awt.Rectangle;
 import java.awt.image.RenderedImage;
+import java.util.List;
 
 import javax.media.jai.iterator.RectIter;
 import javax.media.jai.iterator.RectIterFactory;
 
+import org.jaitools.CollectionFactory;
+
 /**
  * A read-only image iterator which moves by column then row (pixel then line).
  * 
@@ -90,4 +93,33 @@ public class SimpleIterator extends AbstractSimpleIterator {
         super(new Helper(), image, bounds, outsideValue, order);
     }
 
+    /**
+     * Divides this iterator into at most {@code maxChunks} new iterators 
+     * whose bounds are aligned with the tile grid of the target image. Each 
+     * new iterator has its own delegate, the same outside value and the same
+     * order as this iterator, so that the iterators can be used concurrently
+     * (e.g. with {@link ParallelIteration}). Iterating over each of them in 
+     * list order visits the same positions, in the same sequence, as this 
+     * iterator. The position of this iterator is not changed.
+     * 
+     * @param maxChunks maximum number of iterators to create
+     * @return the new iterators
+     * 
+     * @throws IllegalArgumentException if {@code maxChunks} is less than 1
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public List<SimpleIterator> split(int maxChunks) {
+        List<Rectangle> chunkBounds = getSplitBounds(maxChunks);
+        RenderedImage image = getImage();
+        if (image == null) {
+            throw new IllegalStateException("Target image has been deleted");
+        }
+
+        List<SimpleIterator> iters = CollectionFactory.list();
+        for (Rectangle r : chunkBounds) {
+            iters.add(new SimpleIterator(image, r, getOutsideValue(), getOrder()));
+        }
+        return iters;
+    }
+
 }
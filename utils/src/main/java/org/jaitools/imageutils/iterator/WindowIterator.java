@@ -28,8 +28,8 @@ package org.jaitools.imageutils.iterator;
 import java.awt.Dimension;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.image.DataBuffer;
 import java.awt.image.RenderedImage;
-import java.util.Arrays;
 
 /**
  * An image iterator that passes a moving window over an image.
@@ -93,10 +93,18 @@ public class WindowIterator {
     private final int topPadding;
     private final int bottomPadding;
 
-    // data buffer dimensions: band, line, pixel
-    private final Number[][][] buffers;
-    
-    private final Number[][] destBuffer;
+    /*
+     * Data buffers: band, line, pixel. Only the buffer matching the
+     * image data type is allocated: integral types use int, otherwise
+     * float or double. Lines are used as a ring: window line y is held
+     * in buffer line (topLine + y) % windowDim.height.
+     */
+    private final int bufferType;
+    private final int[][][] intBuffers;
+    private final float[][][] floatBuffers;
+    private final double[][][] doubleBuffers;
+    private int topLine;
+
     private final int bufferWidth;
     
     private final Rectangle iterBounds;
@@ -108,9 +116,6 @@ public class WindowIterator {
     private final Point lowerRightPos;
     
     private final SimpleIterator delegate;
-    
-    // Value to use for out-of-bounds parts of the data window
-    private Number outsideValue;
 
     /**
      * Creates a new iterator. The iterator will advance one pixel at each
@@ -206,8 +211,8 @@ public class WindowIterator {
         topPadding = keyElement.y;
         bottomPadding = windowDim.height - keyElement.y - 1;
 
-        // The delegate terator's bounds take into account the position of
-        // the ke element in the data window
+        // The delegate iterator's bounds take into account the position of
+        // the key element in the data window
         Rectangle delegateBounds = new Rectangle(
                 iterBounds.x - leftPadding, iterBounds.y - topPadding,
                 iterBounds.width + leftPadding + rightPadding,
@@ -217,36 +222,44 @@ public class WindowIterator {
                 image, delegateBounds, outsideValue, SimpleIterator.Order.IMAGE_X_Y);
 
         this.windowDim = new Dimension(windowDim);
-        this.outsideValue = outsideValue;
 
         this.numImageBands = image.getSampleModel().getNumBands();
-
         bufferWidth = iterBounds.width + leftPadding + rightPadding;
-        buffers = new Number[numImageBands][][];
 
-        for (int b = 0; b < numImageBands; b++) {
-            Number[][] bandBuffer = new Number[windowDim.height][];
-            for (int i = 0; i < windowDim.height; i++) {
-                Number[] ar = new Number[bufferWidth];
-                Arrays.fill(ar, this.outsideValue);
-                bandBuffer[i] = ar;
-            }
-            buffers[b] = bandBuffer;
-        }
-
-        this.destBuffer = new Number[numImageBands][];
-        for (int b = 0; b < numImageBands; b++) {
-            destBuffer[b] = new Number[windowDim.width * windowDim.height];
+        switch (image.getSampleModel().getDataType()) {
+            case DataBuffer.TYPE_DOUBLE:
+                bufferType = DataBuffer.TYPE_DOUBLE;
+                doubleBuffers = new double[numImageBands][windowDim.height][bufferWidth];
+                intBuffers = null;
+                floatBuffers = null;
+                break;
+
+            case DataBuffer.TYPE_FLOAT:
+                bufferType = DataBuffer.TYPE_FLOAT;
+                floatBuffers = new float[numImageBands][windowDim.height][bufferWidth];
+                intBuffers = null;
+                doubleBuffers = null;
+                break;
+
+            default:
+                bufferType = DataBuffer.TYPE_INT;
+                intBuffers = new int[numImageBands][windowDim.height][bufferWidth];
+                floatBuffers = null;
+                doubleBuffers = null;
         }
 
         this.xstep = xstep;
         this.ystep = ystep;
         
-        readData(0);
         mainPos = new Point(iterBounds.x, iterBounds.y);
         lowerRightPos = new Point(
                 iterBounds.x + iterBounds.width - 1,
                 iterBounds.y + iterBounds.height - 1);
+
+        topLine = 0;
+        for (int y = 0; y < windowDim.height; y++) {
+            readLine(y, iterBounds.y - topPadding + y);
+        }
     }
 
     /**
@@ -324,11 +337,23 @@ public class WindowIterator {
             dest = new Number[windowDim.height][windowDim.width];
         }
 
-        loadDestBuffer(band);
-        int k = 0;
+        checkImageRef();
+        final int offset = mainPos.x - iterBounds.x;
         for (int y = 0; y < windowDim.height; y++) {
-            for (int x = 0; x < windowDim.width; x++) {
-                dest[y][x] = destBuffer[band][k++];
+            final int line = bufferLine(y);
+            for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                switch (bufferType) {
+                    case DataBuffer.TYPE_DOUBLE:
+                        dest[y][x] = Double.valueOf(doubleBuffers[band][line][k]);
+                        break;
+
+                    case DataBuffer.TYPE_FLOAT:
+                        dest[y][x] = Float.valueOf(floatBuffers[band][line][k]);
+                        break;
+
+                    default:
+                        dest[y][x] = Integer.valueOf(intBuffers[band][line][k]);
+                }
             }
         }
         return dest;
@@ -365,11 +390,25 @@ public class WindowIterator {
             dest = new int[windowDim.height][windowDim.width];
         }
 
-        loadDestBuffer(band);
-        int k = 0;
+        checkImageRef();
+        final int offset = mainPos.x - iterBounds.x;
         for (int y = 0; y < windowDim.height; y++) {
-            for (int x = 0; x < windowDim.width; x++) {
-                dest[y][x] = destBuffer[band][k++].intValue();
+            final int line = bufferLine(y);
+            switch (bufferType) {
+                case DataBuffer.TYPE_DOUBLE:
+                    for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                        dest[y][x] = (int) doubleBuffers[band][line][k];
+                    }
+                    break;
+
+                case DataBuffer.TYPE_FLOAT:
+                    for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                        dest[y][x] = (int) floatBuffers[band][line][k];
+                    }
+                    break;
+
+                default:
+                    System.arraycopy(intBuffers[band][line], offset, dest[y], 0, windowDim.width);
             }
         }
         return dest;
@@ -406,11 +445,25 @@ public class WindowIterator {
             dest = new float[windowDim.height][windowDim.width];
         }
 
-        loadDestBuffer(band);
-        int k = 0;
+        checkImageRef();
+        final int offset = mainPos.x - iterBounds.x;
         for (int y = 0; y < windowDim.height; y++) {
-            for (int x = 0; x < windowDim.width; x++) {
-                dest[y][x] = destBuffer[band][k++].floatValue();
+            final int line = bufferLine(y);
+            switch (bufferType) {
+                case DataBuffer.TYPE_DOUBLE:
+                    for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                        dest[y][x] = (float) doubleBuffers[band][line][k];
+                    }
+                    break;
+
+                case DataBuffer.TYPE_FLOAT:
+                    System.arraycopy(floatBuffers[band][line], offset, dest[y], 0, windowDim.width);
+                    break;
+
+                default:
+                    for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                        dest[y][x] = intBuffers[band][line][k];
+                    }
             }
         }
         return dest;
@@ -447,78 +500,96 @@ public class WindowIterator {
             dest = new double[windowDim.height][windowDim.width];
         }
 
-        loadDestBuffer(band);
-        int k = 0;
+        checkImageRef();
+        final int offset = mainPos.x - iterBounds.x;
         for (int y = 0; y < windowDim.height; y++) {
-            for (int x = 0; x < windowDim.width; x++) {
-                dest[y][x] = destBuffer[band][k++].doubleValue();
+            final int line = bufferLine(y);
+            switch (bufferType) {
+                case DataBuffer.TYPE_DOUBLE:
+                    System.arraycopy(doubleBuffers[band][line], offset, dest[y], 0, windowDim.width);
+                    break;
+
+                case DataBuffer.TYPE_FLOAT:
+                    for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                        dest[y][x] = floatBuffers[band][line][k];
+                    }
+                    break;
+
+                default:
+                    for (int x = 0, k = offset; x < windowDim.width; x++, k++) {
+                        dest[y][x] = intBuffers[band][line][k];
+                    }
             }
         }
         return dest;
     }
 
     /**
-     * Helper for the getWindow methods. Loads the destination buffer from
-     * the line buffers.
+     * Gets the index of the buffer line holding the given data window line.
      */
-    private void loadDestBuffer(int band) {
-        final int minx = mainPos.x - iterBounds.x;
-        final int bufx = minx + leftPadding;
-        final int maxx = bufx + rightPadding;
+    private int bufferLine(int windowLine) {
+        return (topLine + windowLine) % windowDim.height;
+    }
 
-        int k = 0;
-        for (int y = 0; y < windowDim.height; y++) {
-            for (int x = minx, winX = 0; x <= maxx; x++, winX++) {
-                destBuffer[band][k++] = buffers[band][y][x];
+    /**
+     * Called by {@link #next()} after the iterator has moved down. Lines
+     * still within the data window are kept and only the new lines are
+     * read from the image.
+     */
+    private void readNextData() {
+        final int windowTopY = mainPos.y - topPadding;
+        
+        if (ystep >= windowDim.height) {
+            topLine = 0;
+            for (int y = 0; y < windowDim.height; y++) {
+                readLine(y, windowTopY + y);
+            }
+            
+        } else {
+            // recycle the lines that have scrolled off the top of the window
+            // as the new bottom lines
+            final int firstNewY = windowTopY + windowDim.height - ystep;
+            for (int i = 0; i < ystep; i++) {
+                int line = topLine;
+                topLine = (topLine + 1) % windowDim.height;
+                readLine(line, firstNewY + i);
             }
         }
     }
 
-    private void readNextData() {
-        moveLinesUp();
-        skipImageLines();
-        int topBufferLine = Math.max(windowDim.height - ystep, 0);
-        readData(topBufferLine);
-    }
+    /**
+     * Fills a buffer line, for all bands, with data from the given image line.
+     * Data are read in bulk by the delegate iterator, which sets any parts of
+     * the line beyond the image bounds to the outside value.
+     * 
+     * @param line buffer line index
+     * @param imageY image line (Y ordinate)
+     */
+    private void readLine(int line, int imageY) {
+        for (int b = 0; b < numImageBands; b++) {
+            switch (bufferType) {
+                case DataBuffer.TYPE_DOUBLE:
+                    delegate.getRowDouble(imageY, b, doubleBuffers[b][line]);
+                    break;
 
-    private void readData(int topBufferLine) {
-        for (int line = topBufferLine; line < windowDim.height; line++) {
-            for (int x = 0; x < bufferWidth; x++) {
-                for (int b = 0; b < numImageBands; b++) {
-                    buffers[b][line][x] = delegate.getSample(b);
-                }
-                delegate.next();
+                case DataBuffer.TYPE_FLOAT:
+                    delegate.getRowFloat(imageY, b, floatBuffers[b][line]);
+                    break;
+
+                default:
+                    delegate.getRowInt(imageY, b, intBuffers[b][line]);
             }
         }
     }
 
-    private void skipImageLines() {
-        int nlines = ystep - windowDim.height;
-        if (nlines > 0) {
-            Point pos = delegate.getPos();
-            delegate.setPos(pos.x, pos.y + nlines);
-        }
-    }
-    
     /**
-     * Moves lines up in the data buffer by ystep.
+     * Helper method to check that the target image is still available.
+     * 
+     * @throws IllegalStateException if the image has been deleted
      */
-    private void moveLinesUp() {
-        for (int b = 0; b < numImageBands; b++) {
-            if (ystep >= windowDim.height) {
-                // just fill lines with the outside value
-                for (int y = 0; y < windowDim.height; y++) {
-                    Arrays.fill(buffers[b][y], outsideValue);
-                }
-            } else {
-                // shuffle lines up, avoiding cost of allocating new memory
-                for (int y = ystep, ynew = 0; y < windowDim.height; y++, ynew++) {
-                    Number[] temp = buffers[b][ynew];
-                    buffers[b][ynew] = buffers[b][y];
-                    Arrays.fill(temp, outsideValue);
-                    buffers[b][y] = temp;
-                }
-            }
+    private void checkImageRef() {
+        if (delegate.getImage() == null) {
+            throw new IllegalStateException("Target image has been deleted");
         }
     }
 
@@ -176,6 +176,179 @@ public class WritableSimpleIterator extends AbstractSimpleIterator {
         }
     }
 
+    /**
+     * Sets an integer value in the first band of the image at the current position.
+     * If the iterator is positioned outside the image bounds, no change is made
+     * and this method returns {@code false}. Unlike {@link #setSample(Number)}
+     * this method does not require a {@code Number} object.
+     * 
+     * @param value the new value
+     * @return {@code true} if the image value was set; {@code false} if the 
+     *     iterator was positioned outside the bounds of the image
+     */
+    public boolean setSampleInt(int value) {
+        return setSampleInt(0, value);
+    }
+
+    /**
+     * Sets an integer value in the specified band of the image at the current position.
+     * If the iterator is positioned outside the image bounds, no change is made
+     * and this method returns {@code false}.
+     * 
+     * @param band image band
+     * @param value the new value
+     * @return {@code true} if the image value was set; {@code false} if the 
+     *     iterator was positioned outside the bounds of the image
+     * 
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public boolean setSampleInt(int band, int value) {
+        if (isInsideDelegateBounds()) {
+            checkImageRef();
+            ((WritableRectIter) delegateIter).setSample(band, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets a float value in the first band of the image at the current position.
+     * If the iterator is positioned outside the image bounds, no change is made
+     * and this method returns {@code false}. Unlike {@link #setSample(Number)}
+     * this method does not require a {@code Number} object.
+     * 
+     * @param value the new value
+     * @return {@code true} if the image value was set; {@code false} if the 
+     *     iterator was positioned outside the bounds of the image
+     */
+    public boolean setSampleFloat(float value) {
+        return setSampleFloat(0, value);
+    }
+
+    /**
+     * Sets a float value in the specified band of the image at the current position.
+     * If the iterator is positioned outside the image bounds, no change is made
+     * and this method returns {@code false}.
+     * 
+     * @param band image band
+     * @param value the new value
+     * @return {@code true} if the image value was set; {@code false} if the 
+     *     iterator was positioned outside the bounds of the image
+     * 
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public boolean setSampleFloat(int band, float value) {
+        if (isInsideDelegateBounds()) {
+            checkImageRef();
+            ((WritableRectIter) delegateIter).setSample(band, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Sets a double value in the first band of the image at the current position.
+     * If the iterator is positioned outside the image bounds, no change is made
+     * and this method returns {@code false}. Unlike {@link #setSample(Number)}
+     * this method does not require a {@code Number} object.
+     * 
+     * @param value the new value
+     * @return {@code true} if the image value was set; {@code false} if the 
+     *     iterator was positioned outside the bounds of the image
+     */
+    public boolean setSampleDouble(double value) {
+        return setSampleDouble(0, value);
+    }
+
+    /**
+     * Sets a double value in the specified band of the image at the current position.
+     * If the iterator is positioned outside the image bounds, no change is made
+     * and this method returns {@code false}.
+     * 
+     * @param band image band
+     * @param value the new value
+     * @return {@code true} if the image value was set; {@code false} if the 
+     *     iterator was positioned outside the bounds of the image
+     * 
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public boolean setSampleDouble(int band, double value) {
+        if (isInsideDelegateBounds()) {
+            checkImageRef();
+            ((WritableRectIter) delegateIter).setSample(band, value);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Writes a line of integer values to the specified band of the image.
+     * The line spans the horizontal extent of this iterator's bounds: element
+     * 0 of the {@code values} array corresponds to the minimum X ordinate of the
+     * bounds. Values for positions beyond the image bounds are ignored. Data
+     * are written in bulk to each tile, making this method much faster than
+     * calling {@link #setSampleInt(int, int)} for each position. The iterator 
+     * position is not changed.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param values the new values
+     * @return {@code true} if any image values were set; {@code false} if the
+     *     line lies outside the bounds of the image
+     * 
+     * @throws IllegalArgumentException if {@code y} is outside the iterator's
+     *     bounds; or {@code band} is out of range; or {@code values} is 
+     *     {@code null} or shorter than the width of the iterator's bounds
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public boolean setRowInt(int y, int band, int[] values) {
+        checkRowArgs(y, band);
+        checkRowValues(values == null ? -1 : values.length);
+        return transferRow(y, band, values, true);
+    }
+
+    /**
+     * Writes a line of float values to the specified band of the image.
+     * See {@link #setRowInt(int, int, int[])} for details.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param values the new values
+     * @return {@code true} if any image values were set; {@code false} if the
+     *     line lies outside the bounds of the image
+     * 
+     * @throws IllegalArgumentException if {@code y} is outside the iterator's
+     *     bounds; or {@code band} is out of range; or {@code values} is 
+     *     {@code null} or shorter than the width of the iterator's bounds
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public boolean setRowFloat(int y, int band, float[] values) {
+        checkRowArgs(y, band);
+        checkRowValues(values == null ? -1 : values.length);
+        return transferRow(y, band, values, true);
+    }
+
+    /**
+     * Writes a line of double values to the specified band of the image.
+     * See {@link #setRowInt(int, int, int[])} for details.
+     * 
+     * @param y image Y ordinate of the line
+     * @param band image band
+     * @param values the new values
+     * @return {@code true} if any image values were set; {@code false} if the
+     *     line lies outside the bounds of the image
+     * 
+     * @throws IllegalArgumentException if {@code y} is outside the iterator's
+     *     bounds; or {@code band} is out of range; or {@code values} is 
+     *     {@code null} or shorter than the width of the iterator's bounds
+     * @throws IllegalStateException if the target image has been deleted
+     */
+    public boolean setRowDouble(int y, int band, double[] values) {
+        checkRowArgs(y, band);
+        checkRowValues(values == null ? -1 : values.length);
+        return transferRow(y, band, values, true);
+    }
+
     /**
      * Sets the value in the specified band of the image at the specified position.
      * If the position lies outside the image bounds, no change is made
@@ -217,4 +390,20 @@ public class WritableSimpleIterator extends AbstractSimpleIterator {
         return (setPos(x, y) && setSample(band, value));
     }
 
+    /**
+     * Helper method to check the length of an array of row values.
+     * 
+     * @param len array length or -1 if the array is {@code null}
+     */
+    private void checkRowValues(int len) {
+        if (len < 0) {
+            throw new IllegalArgumentException("values must not be null");
+        }
+        if (len < iterBounds.width) {
+            throw new IllegalArgumentException(String.format(
+                    "values array length (%d) is less than the iterator width (%d)",
+                    len, iterBounds.width));
+        }
+    }
+
 }
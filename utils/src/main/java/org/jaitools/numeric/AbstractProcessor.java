@@ -64,6 +64,10 @@ public abstract class AbstractProcessor implements Processor {
     /* Ranges of data values to treat as NoData and exclude from calculations */
     private List<Range<Double>> noDataRanges;
 
+    /* Compiled forms of ranges and noDataRanges, created when first needed */
+    private RangeMatcher rangesMatcher;
+    private RangeMatcher noDataMatcher;
+
 
     /**
      * Default constructor.
@@ -96,6 +100,7 @@ public abstract class AbstractProcessor implements Processor {
         if (noData != null) {
             // copy the input Range defensively
             noDataRanges.add(new Range<Double>(noData));
+            noDataMatcher = null;
         }
     }
 
@@ -105,6 +110,7 @@ public abstract class AbstractProcessor implements Processor {
     public void addNoDataValue(Double noData) {
         if (noData != null && !noData.isNaN()) {
             noDataRanges.add(new Range<Double>(noData));
+            noDataMatcher = null;
         }
     }
 
@@ -140,6 +146,36 @@ public abstract class AbstractProcessor implements Processor {
         }
     }
 
+    /**
+     * Offers a primitive sample value to the processor. This is equivalent to
+     * {@link #offer(Double)} but avoids boxing the value.
+     *
+     * @param sample the sample value
+     */
+    public void offer(double sample) {
+        numOffered++;
+        if (update(sample)) {
+            numAccepted++;
+        }
+    }
+
+    /**
+     * Offers a series of sample values from an array to the processor.
+     *
+     * @param values array of sample values
+     * @param off index of the first value to offer
+     * @param len number of values to offer
+     * 
+     * @throws IllegalArgumentException if {@code values} is {@code null} or
+     *         {@code off} and {@code len} do not specify a valid part of the array
+     */
+    public void offer(double[] values, int off, int len) {
+        checkArrayArgs(values, off, len);
+        for (int i = off, end = off + len; i < end; i++) {
+            offer(values[i]);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -161,6 +197,138 @@ public abstract class AbstractProcessor implements Processor {
      */
     protected abstract boolean update(Double sample);
 
+    /**
+     * Processes a primitive sample value. The default implementation boxes 
+     * the value and calls {@link #update(Double)}. Sub-classes can override 
+     * this method to avoid boxing when values are offered with 
+     * {@link #offer(double)} or {@link #offer(double[], int, int)}.
+     * 
+     * @param sample the sample value
+     *
+     * @return {@code true} if the sample is accepted;
+     *         {@code false} otherwise
+     */
+    protected boolean update(double sample) {
+        return update(Double.valueOf(sample));
+    }
+
+    /**
+     * Merges the partial results of another processor into this one. After
+     * merging, this processor's statistics and counts are those that would have
+     * been obtained by offering it all of the values that were offered to both 
+     * processors. The other processor is not modified.
+     * <p>
+     * This allows statistics to be calculated separately for parts of
+     * a data set (e.g. image tiles processed in parallel) and then combined.
+     * The counts of offered, accepted, NaN and NoData values are summed and 
+     * {@link #mergeState(AbstractProcessor)} is called to combine the 
+     * statistic-specific state.
+     *
+     * @param other the processor to merge into this one
+     *
+     * @throws IllegalArgumentException if {@code other} is {@code null}, is this
+     *         processor, is of a different class or has different range settings
+     * 
+     * @throws UnsupportedOperationException if this processor does not support
+     *         merging
+     * 
+     * @see #canMerge()
+     */
+    public void merge(Processor other) {
+        if (!canMerge()) {
+            throw new UnsupportedOperationException(
+                    getClass().getName() + " does not support merging");
+        }
+        if (other == null) {
+            throw new IllegalArgumentException("other must not be null");
+        }
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot merge a processor with itself");
+        }
+        if (other.getClass() != getClass()) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge %s into %s", 
+                    other.getClass().getName(), getClass().getName()));
+        }
+
+        AbstractProcessor ap = (AbstractProcessor) other;
+        if (!sameRanges(ranges, ap.ranges) 
+                || !sameRanges(noDataRanges, ap.noDataRanges)
+                || (!ranges.isEmpty() && rangesType != ap.rangesType)) {
+            throw new IllegalArgumentException(
+                    "Cannot merge processors with different range settings");
+        }
+
+        mergeState(ap);
+
+        numOffered += ap.numOffered;
+        numAccepted += ap.numAccepted;
+        numNaN += ap.numNaN;
+        numNoData += ap.numNoData;
+    }
+
+    /**
+     * Tests if this processor supports {@linkplain #merge(Processor)}. Callers
+     * which divide a data set into parts, such as the parallel mode of the
+     * ZonalStats operator, should check this and process the data as a whole
+     * when merging is not supported.
+     * <p>
+     * The default implementation returns {@code false}. Sub-classes which
+     * support merging override this method to return {@code true}, and 
+     * override {@link #mergeState(AbstractProcessor)}. A sub-class of such
+     * a processor which adds its own state must either override 
+     * {@code mergeState} to merge that state as well, or override this method
+     * to return {@code false}.
+     *
+     * @return {@code true} if merging is supported; {@code false} otherwise
+     */
+    public boolean canMerge() {
+        return false;
+    }
+
+    /**
+     * Merges the statistic-specific state of another processor of the same
+     * class into this one. This method is called by {@link #merge(Processor)}
+     * before the sample counts are updated, so {@link #getNumAccepted()} 
+     * still returns the count for this processor alone.
+     * <p>
+     * Sub-classes override this method, and {@link #canMerge()}, to support
+     * merging; all of the processors in this package do so. It is only called
+     * when {@code canMerge()} returns {@code true}, so the default 
+     * implementation does nothing.
+     *
+     * @param other the processor to merge (same class as this one)
+     */
+    protected void mergeState(AbstractProcessor other) {
+    }
+
+    /**
+     * Tests if two lists contain the same ranges, ignoring order.
+     */
+    private static boolean sameRanges(List<Range<Double>> a, List<Range<Double>> b) {
+        return a.size() == b.size() && a.containsAll(b) && b.containsAll(a);
+    }
+
+    /**
+     * Checks the array arguments to the {@code offer(double[], int, int)} method.
+     * 
+     * @param values array of sample values
+     * @param off index of the first value
+     * @param len number of values
+     * 
+     * @throws IllegalArgumentException if the arguments are invalid
+     */
+    protected static void checkArrayArgs(double[] values, int off, int len) {
+        if (values == null) {
+            throw new IllegalArgumentException("values must not be null");
+        }
+        if (off < 0 || len < 0 || off + len > values.length) {
+            throw new IllegalArgumentException(String.format(
+                    "Invalid off (%d) and len (%d) for array of length %d", 
+                    off, len, values.length));
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -171,6 +339,7 @@ public abstract class AbstractProcessor implements Processor {
             }
             // copy the input Range defensively
             ranges.add(new Range<Double>(range));
+            rangesMatcher = null;
         }
     }
 
@@ -188,6 +357,7 @@ public abstract class AbstractProcessor implements Processor {
             }
             // copy the input Range defensively
             ranges.add(new Range<Double>(range));
+            rangesMatcher = null;
         }
     }
 
@@ -229,37 +399,51 @@ public abstract class AbstractProcessor implements Processor {
         if (sample == null) {
             return false;
         }
-        if (sample.isNaN()) {
+        return isAccepted(sample.doubleValue());
+    }
+
+    /**
+     * Tests whether a primitive sample value will be accepted for calculations 
+     * by the processor. This is equivalent to {@link #isAccepted(Double)} but
+     * avoids boxing the value.
+     *
+     * @param sample the sample value
+     *
+     * @return true if the sample is accepted in compliance with the ranges settings.
+     *         false otherwise
+     */
+    public boolean isAccepted(double sample) {
+        if (Double.isNaN(sample)) {
             numNaN++;
             numNoData++;
             return false;
         }
 
-        if (noDataRanges != null){
-            for (Range<Double> r : noDataRanges) {
-                if (r.contains(sample)) {
-                    numNoData++;
-                    return false;
-                }
+        if (!noDataRanges.isEmpty()) {
+            if (noDataMatcher == null) {
+                noDataMatcher = new RangeMatcher(noDataRanges);
+            }
+            if (noDataMatcher.contains(sample)) {
+                numNoData++;
+                return false;
             }
         }
 
-        if (ranges == null || ranges.isEmpty()) {
+        if (ranges.isEmpty()) {
             return true;
         }
 
-        boolean isAccepted = rangesType == Type.INCLUDE ? false : true;
-        for (Range<Double> r : ranges) {
-            switch (rangesType) {
-                case EXCLUDE:
-                    isAccepted &= !r.contains(sample);
-                    break;
-                case INCLUDE:
-                    isAccepted |= r.contains(sample);
-                    break;
-            }
+        if (rangesMatcher == null) {
+            rangesMatcher = new RangeMatcher(ranges);
+        }
+        switch (rangesType) {
+            case EXCLUDE:
+                return !rangesMatcher.contains(sample);
+            case INCLUDE:
+                return rangesMatcher.contains(sample);
+            default:
+                return true;
         }
-        return isAccepted;
     }
 
     /**
@@ -118,6 +118,13 @@ public class ApproxMedianProcessor extends AbstractProcessor {
      * {@inheritDoc}
      */
     protected boolean update(Double sample) {
+        return sample != null && update(sample.doubleValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    protected boolean update(double sample) {
     	if (isAccepted(sample)) {
             if (buf0.isFull()) {
                 cascade(0);
@@ -130,6 +137,34 @@ public class ApproxMedianProcessor extends AbstractProcessor {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * This processor supports merging.
+     */
+    @Override
+    public boolean canMerge() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * Each value held in a buffer of the other processor's remedian stands for
+     * a fixed number of samples determined by the buffer's level. The values
+     * are added to the buffers at the same level in this processor, so the
+     * merged estimator gives each original sample the same weight.
+     */
+    @Override
+    protected void mergeState(AbstractProcessor other) {
+        ApproxMedianProcessor amp = (ApproxMedianProcessor) other;
+        for (int level = 0; level < amp.buffers.size(); level++) {
+            Buffer src = amp.buffers.get(level);
+            for (int i = 0; i < src.pos; i++) {
+                addAtLevel(level, src.data[i]);
+            }
+        }
+        needsCalculation = true;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -176,6 +211,21 @@ public class ApproxMedianProcessor extends AbstractProcessor {
         throw new IllegalArgumentException(stat + " not supported by " + getClass().getName());
     }
 
+    /*
+     * Add a value to the buffer at the given level, creating the
+     * buffer if necessary and cascading it first if it is full.
+     */
+    private void addAtLevel(int level, double value) {
+        while (buffers.size() <= level) {
+            buffers.add(new Buffer());
+        }
+        Buffer buf = buffers.get(level);
+        if (buf.isFull()) {
+            cascade(level);
+        }
+        buf.add(value);
+    }
+
     /*
      * Calculate the median of the values in the full buffer at
      * the given level and store the result in the next
@@ -0,0 +1,353 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+
+/**
+ * A final, primitive {@code double} counterpart to {@code Range<Double>}.
+ * It is intended for per-pixel loops where {@link Range#contains(Number)}
+ * would box each value and dispatch on its class.
+ * <p>
+ * End-points and containment follow the same rules as {@code Range}:
+ * <ul>
+ * <li> {@code Double.NEGATIVE_INFINITY} as a lower bound, or {@code Double.POSITIVE_INFINITY}
+ *      as an upper bound, gives an open (unbounded) end, which is never included
+ * <li> NaN as a lower bound is treated as negative infinity and as an upper bound as
+ *      positive infinity
+ * <li> a point at NaN contains NaN; a point at positive or negative infinity 
+ *      contains nothing
+ * <li> a NaN test value is always outside a proper interval
+ * <li> values are compared with end-points using a tolerance, which is the value of
+ *      {@link NumberOperations#getDoubleTolerance()} when the range is created
+ * </ul>
+ * Use {@link #fromRange(Range)} and {@link #toRange()} to convert to and from
+ * {@code Range<Double>}.
+ * <pre><code>
+ * DoubleRange r = DoubleRange.create(0, true, 100, false);
+ * for (double value : data) {
+ *     if (r.contains(value)) {
+ *         ...
+ *     }
+ * }
+ * </code></pre>
+ * Instances are immutable.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public final class DoubleRange {
+
+    private final double min;
+    private final boolean minIncluded;
+    private final double max;
+    private final boolean maxIncluded;
+    private final boolean point;
+    private final double tol;
+
+    /**
+     * Creates a new range with non-zero width (may be infinite).
+     * 
+     * @param min the lower bound; {@code Double.NEGATIVE_INFINITY} or NaN for an open lower bound
+     * @param minIncluded true if the lower bound is included; ignored if the lower bound is open
+     * @param max the upper bound; {@code Double.POSITIVE_INFINITY} or NaN for an open upper bound
+     * @param maxIncluded true if the upper bound is included; ignored if the upper bound is open
+     * 
+     * @return the new instance
+     * 
+     * @throws IllegalArgumentException if {@code min} is greater than {@code max}, or if
+     *         {@code min} equals {@code max} and either end-point is excluded
+     */
+    public static DoubleRange create(double min, boolean minIncluded, double max, boolean maxIncluded) {
+        return create(min, minIncluded, max, maxIncluded, NumberOperations.getDoubleTolerance());
+    }
+
+    /**
+     * Creates a new range with non-zero width which compares values with its
+     * end-points using the given tolerance.
+     */
+    static DoubleRange create(double min, boolean minIncluded, double max, boolean maxIncluded,
+            double tol) {
+        if (Double.isNaN(min)) {
+            min = Double.NEGATIVE_INFINITY;
+        }
+        if (Double.isNaN(max)) {
+            max = Double.POSITIVE_INFINITY;
+        }
+        if (min > max) {
+            throw new IllegalArgumentException("min greater than max");
+        }
+
+        boolean isPoint = false;
+        if (min == max) {
+            if (Double.isInfinite(min)) {
+                isPoint = true;
+            } else if (minIncluded && maxIncluded) {
+                isPoint = true;
+            } else {
+                throw new IllegalArgumentException(
+                        "point range created with the interval method must have " +
+                        "min and max endpoints included");
+            }
+        }
+        
+        return new DoubleRange(
+                min, minIncluded && !Double.isInfinite(min),
+                max, maxIncluded && !Double.isInfinite(max),
+                isPoint, tol);
+    }
+
+    /**
+     * Creates a point (degenerate) range. The value may be NaN or infinite.
+     * 
+     * @param value the value of both end-points
+     * 
+     * @return the new instance
+     */
+    public static DoubleRange point(double value) {
+        return point(value, NumberOperations.getDoubleTolerance());
+    }
+
+    /**
+     * Creates a point range which compares values using the given tolerance.
+     */
+    static DoubleRange point(double value, double tol) {
+        boolean finite = !(Double.isNaN(value) || Double.isInfinite(value));
+        return new DoubleRange(value, finite, value, finite, true, tol);
+    }
+
+    /**
+     * Creates a new instance with the same end-points as a {@code Range<Double>}.
+     * 
+     * @param range the range to convert
+     * 
+     * @return the new instance
+     * 
+     * @throws IllegalArgumentException if {@code range} is {@code null}
+     */
+    public static DoubleRange fromRange(Range<Double> range) {
+        return fromRange(range, NumberOperations.getDoubleTolerance());
+    }
+
+    /**
+     * Creates a new instance with the same end-points as a {@code Range}, 
+     * which compares values using the given tolerance. The range may have 
+     * any value type.
+     */
+    static DoubleRange fromRange(Range<? extends Number> range, double tol) {
+        if (range == null) {
+            throw new IllegalArgumentException("range must not be null");
+        }
+
+        if (range.isPoint()) {
+            if (range.isMinInf()) {
+                return point(Double.POSITIVE_INFINITY, tol);
+            } else if (range.isMinNegInf()) {
+                return point(Double.NEGATIVE_INFINITY, tol);
+            } else if (range.getMin() == null) {
+                return point(Double.NaN, tol);
+            }
+            return point(range.getMin().doubleValue(), tol);
+        }
+
+        double lo = range.isMinNegInf() ? Double.NEGATIVE_INFINITY : range.getMin().doubleValue();
+        double hi = range.isMaxInf() ? Double.POSITIVE_INFINITY : range.getMax().doubleValue();
+        return create(lo, range.isMinIncluded(), hi, range.isMaxIncluded(), tol);
+    }
+
+    private DoubleRange(double min, boolean minIncluded, double max, boolean maxIncluded,
+            boolean point, double tol) {
+        this.min = min;
+        this.minIncluded = minIncluded;
+        this.max = max;
+        this.maxIncluded = maxIncluded;
+        this.point = point;
+        this.tol = tol;
+    }
+
+    /**
+     * Creates a {@code Range<Double>} with the same end-points as this range.
+     * 
+     * @return a new {@code Range} instance
+     */
+    public Range<Double> toRange() {
+        if (point) {
+            return new Range<Double>(min);
+        }
+        return new Range<Double>(min, minIncluded, max, maxIncluded);
+    }
+
+    /**
+     * Tests if this range contains the specified value.
+     * 
+     * @param value the value
+     * 
+     * @return {@code true} if the value is within this range; {@code false} otherwise
+     */
+    public boolean contains(double value) {
+        if (point) {
+            if (Double.isNaN(min)) {
+                return Double.isNaN(value);
+            }
+            return minIncluded && compare(value, min) == 0;
+        }
+
+        // NaN values are always outside a proper interval
+        if (Double.isNaN(value)) {
+            return false;
+        }
+        return isAboveMin(value) && isBelowMax(value);
+    }
+
+    /**
+     * Tests if a value lies on or above the lower bound of this range, taking
+     * into account whether the bound is included. Used by classes which search
+     * sorted ranges. The value must not be NaN.
+     */
+    boolean isAboveMin(double value) {
+        if (min == Double.NEGATIVE_INFINITY) {
+            return true;
+        }
+        int comp = compare(value, min);
+        return comp > 0 || (comp == 0 && minIncluded);
+    }
+
+    /**
+     * Tests if a value lies on or below the upper bound of this range, taking
+     * into account whether the bound is included. The value must not be NaN.
+     */
+    boolean isBelowMax(double value) {
+        if (max == Double.POSITIVE_INFINITY) {
+            return true;
+        }
+        int comp = compare(value, max);
+        return comp < 0 || (comp == 0 && maxIncluded);
+    }
+
+    /**
+     * Compares values in the same way as {@link NumberOperations#compare(Number, Number)}
+     * does for {@code Double} arguments.
+     */
+    private int compare(double v1, double v2) {
+        if (Double.isInfinite(v1) || Double.isInfinite(v2)) {
+            return Double.compare(v1, v2);
+        }
+        if (Math.abs(v1 - v2) < tol) {
+            return 0;
+        }
+        return v1 < v2 ? -1 : 1;
+    }
+
+    /**
+     * Checks if this range is a point (degenerate) interval.
+     * 
+     * @return {@code true} if this is a point; {@code false} otherwise
+     */
+    public boolean isPoint() {
+        return point;
+    }
+
+    /**
+     * Gets the minimum value of this range. This will be 
+     * {@code Double.NEGATIVE_INFINITY} if the range is lower-open.
+     * 
+     * @return the minimum value
+     */
+    public double getMin() {
+        return min;
+    }
+
+    /**
+     * Gets the maximum value of this range. This will be 
+     * {@code Double.POSITIVE_INFINITY} if the range is upper-open.
+     * 
+     * @return the maximum value
+     */
+    public double getMax() {
+        return max;
+    }
+
+    /**
+     * Tests if the minimum value is included in the range.
+     * 
+     * @return {@code true} if included; {@code false} otherwise
+     */
+    public boolean isMinIncluded() {
+        return minIncluded;
+    }
+
+    /**
+     * Tests if the maximum value is included in the range.
+     * 
+     * @return {@code true} if included; {@code false} otherwise
+     */
+    public boolean isMaxIncluded() {
+        return maxIncluded;
+    }
+
+    /**
+     * Tests for equality with another range. Two ranges are equal if
+     * their respective end-points are identical in both value and type 
+     * (included / excluded).
+     *
+     * @param obj the other range
+     *
+     * @return {@code true} if equal; {@code false} otherwise
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof DoubleRange)) {
+            return false;
+        }
+        final DoubleRange other = (DoubleRange) obj;
+        return point == other.point &&
+                Double.compare(min, other.min) == 0 && minIncluded == other.minIncluded &&
+                Double.compare(max, other.max) == 0 && maxIncluded == other.maxIncluded;
+    }
+
+    @Override
+    public int hashCode() {
+        long bits = Double.doubleToLongBits(min);
+        int hash = 7;
+        hash = 11 * hash + (int) (bits ^ (bits >>> 32));
+        hash = 11 * hash + (minIncluded ? 1 : 0);
+        bits = Double.doubleToLongBits(max);
+        hash = 11 * hash + (int) (bits ^ (bits >>> 32));
+        hash = 11 * hash + (maxIncluded ? 1 : 0);
+        return hash;
+    }
+
+    /**
+     * Returns a string representation of this range in the same
+     * form as {@link Range#toString()}.
+     * 
+     * @return the string
+     */
+    @Override
+    public String toString() {
+        return toRange().toString();
+    }
+}
@@ -27,20 +27,29 @@ package org.jaitools.numeric;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.List;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
-import org.jaitools.CollectionFactory;
-
 
 /**
  * Processor for the exact median {@code Statistic.MEDIAN}.
  * <p>
- * <b>Note:</b> this processor stores sll accepted sample values in memory in order
- * to calculate the exact median. For very large data streams {@linkplain Statistic#APPROX_MEDIAN}
- * might be preferred.
+ * To calculate the exact median this processor must retain all accepted
+ * sample values. While the values are integral (as they will be when sampling
+ * an image with an integral data type) they are held as counts per distinct
+ * value, so memory use scales with the number of distinct values rather than 
+ * the number of samples: a dense array of counts is used while the values span
+ * no more than 65536 integers (e.g. byte or ushort data) and a hash table 
+ * otherwise. Once a non-integral value is accepted, the processor switches to
+ * storing individual values in a {@code double} array and finds the median by
+ * selection rather than sorting.
+ * <p>
+ * <b>Note:</b> in the second case, the maximum number of sample values that can be
+ * stored is slightly less than {@code Integer.MAX_VALUE} (available memory permitting).
+ * Once this limit is reached, subsequent values will be rejected and a warning 
+ * message will be logged. For very large data streams of non-integral values
+ * {@linkplain Statistic#APPROX_MEDIAN} might be preferred.
  *
  * @see Statistic
  * @see StreamingSampleStats
@@ -53,7 +62,41 @@ public class ExactMedianProcessor extends AbstractProcessor {
 
     private static final Set<Statistic> SUPPORTED = Collections.singleton(Statistic.MEDIAN);
 
-    private List<Double> values = CollectionFactory.list();
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_CAPACITY = Integer.MAX_VALUE - 8;
+
+    /* Maximum span of integral values held in the dense count array */
+    private static final int MAX_DENSE_SPAN = 1 << 16;
+    private static final int INITIAL_DENSE_SPAN = 256;
+
+    /* Values beyond this magnitude are not treated as integral */
+    private static final double MAX_INTEGRAL = (double) (1L << 53);
+
+    private static enum Mode {
+        EMPTY,
+        DENSE,
+        SPARSE,
+        VALUES;
+    }
+
+    private Mode mode = Mode.EMPTY;
+
+    // count of retained values (all modes)
+    private long numValues = 0;
+
+    // DENSE mode: counts[i] is the count for value denseOffset + i
+    private long[] denseCounts;
+    private long denseOffset;
+    private long minKey;
+    private long maxKey;
+
+    // SPARSE mode
+    private LongCountMap sparseCounts;
+
+    // VALUES mode
+    private double[] values;
+
+    private boolean capacityWarned = false;
     private boolean calculationRequired = true;
     private double median;
 
@@ -66,58 +109,97 @@ public class ExactMedianProcessor extends AbstractProcessor {
 
     /**
      * {@inheritDoc}
-     * The maximum number of sample values than can be stored is
-     * {@code Integer.MAX_VALUE} (available memory permitting).
-     * Once this limit is reached, subsequent values will be
-     * rejected and a warning message will be logged.
      */
     @Override
-    public final void offer(Double sample) {
-        numOffered++ ;
-
-        if (getNumAccepted() >= Integer.MAX_VALUE) {
-            // only log a warning for the first extraneous value
-            if (getNumOffered() == Integer.MAX_VALUE) {
-                Logger.getLogger("org.jaitools.numeric").log(
-                        Level.WARNING, "Too many values for exact median calculation");
-            }
-        }
-
-        if (update(sample)) {
-            numAccepted++ ;
-        }
+    protected boolean update(Double sample) {
+        return sample != null && update(sample.doubleValue());
     }
 
     /**
      * {@inheritDoc}.
      */
     @Override
-    protected boolean update(Double sample) {
+    protected boolean update(double sample) {
         if (isAccepted(sample)) {
-            values.add(sample);
-            calculationRequired = true;
-            return true;
+            return store(sample, 1);
         }
 
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * This processor supports merging.
+     */
+    @Override
+    public boolean canMerge() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The retained values of the other processor are added to those 
+     * of this processor.
+     *
+     * @throws IllegalStateException if the merged values cannot be stored
+     */
+    @Override
+    protected void mergeState(AbstractProcessor other) {
+        ExactMedianProcessor emp = (ExactMedianProcessor) other;
+        boolean stored = true;
+
+        switch (emp.mode) {
+            case DENSE:
+                for (int i = 0; i < emp.denseCounts.length && stored; i++) {
+                    if (emp.denseCounts[i] > 0) {
+                        stored = store(emp.denseOffset + i, emp.denseCounts[i]);
+                    }
+                }
+                break;
+
+            case SPARSE:
+                LongCountMap map = emp.sparseCounts;
+                for (int i = 0; i < map.keys.length && stored; i++) {
+                    if (map.counts[i] > 0) {
+                        stored = store(map.keys[i], map.counts[i]);
+                    }
+                }
+                break;
+
+            case VALUES:
+                for (int i = 0; i < emp.numValues && stored; i++) {
+                    stored = store(emp.values[i], 1);
+                }
+                break;
+        }
+
+        if (!stored) {
+            throw new IllegalStateException("Too many values for exact median calculation");
+        }
+    }
+
     /**
      * {@inheritDoc}.
      */
     public Double get(Statistic stat) {
         if (SUPPORTED.contains(stat)) {
-            if (getNumAccepted() == 0) {
+            if (numValues == 0) {
                 return Double.NaN;
             }
 
             if (calculationRequired) {
-                Collections.sort(values);
-                int n0 = (int) getNumAccepted() / 2;
-                if (getNumAccepted() % 2 == 1) {
-                    median = values.get(n0);
-                } else {
-                    median = (values.get(n0) + values.get(n0 - 1)) / 2;
+                switch (mode) {
+                    case DENSE:
+                        median = denseMedian();
+                        break;
+
+                    case SPARSE:
+                        median = sparseMedian();
+                        break;
+
+                    case VALUES:
+                        median = valuesMedian();
+                        break;
                 }
                 calculationRequired = false;
             }
@@ -126,4 +208,213 @@ public class ExactMedianProcessor extends AbstractProcessor {
 
         throw new IllegalArgumentException(stat + " not supported by " + getClass().getName());
     }
+
+    /**
+     * Stores a number of instances of a value.
+     *
+     * @param value the value
+     * @param count number of instances
+     *
+     * @return {@code true} if the value was stored; {@code false} if
+     *         the capacity of the value array would be exceeded
+     */
+    private boolean store(double value, long count) {
+        if (mode != Mode.VALUES && isIntegral(value)) {
+            long key = (long) value;
+
+            // upgrade the mode first: EMPTY to DENSE, then DENSE to
+            // SPARSE if the dense array can't be expanded to the key
+            if (mode == Mode.EMPTY) {
+                initDense(key);
+            }
+            if (mode == Mode.DENSE 
+                    && (key < denseOffset || key >= denseOffset + denseCounts.length)) {
+                expandDense(key);
+            }
+
+            if (mode == Mode.DENSE) {
+                denseCounts[(int) (key - denseOffset)] += count;
+                minKey = Math.min(minKey, key);
+                maxKey = Math.max(maxKey, key);
+            } else {
+                sparseCounts.add(key, count);
+            }
+
+        } else {
+            if (numValues + count > MAX_CAPACITY) {
+                // only log a warning for the first extraneous value
+                if (!capacityWarned) {
+                    Logger.getLogger("org.jaitools.numeric").log(
+                            Level.WARNING, "Too many values for exact median calculation");
+                    capacityWarned = true;
+                }
+                return false;
+            }
+
+            if (mode != Mode.VALUES) {
+                switchToValues(count);
+            }
+            ensureCapacity(numValues + count);
+            for (long i = 0; i < count; i++) {
+                values[(int) numValues++] = value;
+            }
+            calculationRequired = true;
+            return true;
+        }
+
+        numValues += count;
+        calculationRequired = true;
+        return true;
+    }
+
+    /**
+     * Tests if a value is integral and small enough to be represented exactly
+     * as a {@code long}.
+     */
+    private static boolean isIntegral(double value) {
+        return value == Math.rint(value) && Math.abs(value) < MAX_INTEGRAL;
+    }
+
+    /**
+     * Creates the dense count array to hold the first value.
+     */
+    private void initDense(long key) {
+        denseCounts = new long[INITIAL_DENSE_SPAN];
+        denseOffset = key - (key % INITIAL_DENSE_SPAN + INITIAL_DENSE_SPAN) % INITIAL_DENSE_SPAN;
+        minKey = maxKey = key;
+        mode = Mode.DENSE;
+    }
+
+    /**
+     * Enlarges the dense count array to include the given value or, if the 
+     * span of values would become too large, moves the counts to a hash table.
+     */
+    private void expandDense(long key) {
+        final long lo = Math.min(minKey, key);
+        final long hi = Math.max(maxKey, key);
+        final long required = hi - lo + 1;
+
+        if (required > MAX_DENSE_SPAN) {
+            sparseCounts = new LongCountMap();
+            for (int i = 0; i < denseCounts.length; i++) {
+                if (denseCounts[i] > 0) {
+                    sparseCounts.add(denseOffset + i, denseCounts[i]);
+                }
+            }
+            denseCounts = null;
+            mode = Mode.SPARSE;
+            return;
+        }
+
+        int newLen = (int) Math.min(MAX_DENSE_SPAN, 
+                Math.max(required, 2L * denseCounts.length));
+
+        // leave the extra room on the side towards which we are growing
+        long newOffset = key < minKey ? hi - newLen + 1 : lo;
+
+        long[] newCounts = new long[newLen];
+        System.arraycopy(denseCounts, (int) (minKey - denseOffset), 
+                newCounts, (int) (minKey - newOffset), (int) (maxKey - minKey + 1));
+
+        denseCounts = newCounts;
+        denseOffset = newOffset;
+    }
+
+    /**
+     * Moves values held as counts into the value array.
+     *
+     * @param extra number of further values to make room for
+     */
+    private void switchToValues(long extra) {
+        values = new double[(int) Math.min(MAX_CAPACITY, 
+                Math.max(INITIAL_CAPACITY, numValues + extra))];
+        int k = 0;
+        switch (mode) {
+            case DENSE:
+                for (int i = 0; i < denseCounts.length; i++) {
+                    for (long c = denseCounts[i]; c > 0; c--) {
+                        values[k++] = denseOffset + i;
+                    }
+                }
+                break;
+
+            case SPARSE:
+                for (int i = 0; i < sparseCounts.keys.length; i++) {
+                    for (long c = sparseCounts.counts[i]; c > 0; c--) {
+                        values[k++] = sparseCounts.keys[i];
+                    }
+                }
+                break;
+        }
+
+        denseCounts = null;
+        sparseCounts = null;
+        mode = Mode.VALUES;
+    }
+
+    /**
+     * Ensures that the value array can hold the given number of values,
+     * roughly doubling its capacity when it needs to grow.
+     */
+    private void ensureCapacity(long n) {
+        if (values.length < n) {
+            int newCapacity = (int) Math.min(MAX_CAPACITY, 
+                    Math.max(n, (long) values.length * 2));
+            double[] newValues = new double[newCapacity];
+            System.arraycopy(values, 0, newValues, 0, (int) numValues);
+            values = newValues;
+        }
+    }
+
+    /**
+     * Calculates the median from the dense count array.
+     */
+    private double denseMedian() {
+        final long lowerRank = (numValues - 1) / 2;
+        final long upperRank = numValues / 2;
+
+        long cumCount = 0;
+        double lower = Double.NaN;
+        for (int i = (int) (minKey - denseOffset); i < denseCounts.length; i++) {
+            cumCount += denseCounts[i];
+            if (Double.isNaN(lower) && cumCount > lowerRank) {
+                lower = denseOffset + i;
+            }
+            if (cumCount > upperRank) {
+                return (lower + (denseOffset + i)) / 2;
+            }
+        }
+
+        throw new IllegalStateException("Median not found: corrupt counts");
+    }
+
+    /**
+     * Calculates the median from the hash table of counts.
+     */
+    private double sparseMedian() {
+        final long[] keys = sparseCounts.sortedKeys();
+        final long lowerRank = (numValues - 1) / 2;
+        final long upperRank = numValues / 2;
+
+        long cumCount = 0;
+        double lower = Double.NaN;
+        for (long key : keys) {
+            cumCount += sparseCounts.get(key);
+            if (Double.isNaN(lower) && cumCount > lowerRank) {
+                lower = key;
+            }
+            if (cumCount > upperRank) {
+                return (lower + key) / 2;
+            }
+        }
+
+        throw new IllegalStateException("Median not found: corrupt counts");
+    }
+
+    /**
+     * Calculates the median of the value array by selection.
+     */
+    private double valuesMedian() {
+        return SampleStats.orderedMedian(values, (int) numValues);
+    }
 }
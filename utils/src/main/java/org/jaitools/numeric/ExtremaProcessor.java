@@ -64,6 +64,14 @@ public class ExtremaProcessor extends AbstractProcessor {
      */
     @Override
     protected boolean update(Double sample) {
+        return sample != null && update(sample.doubleValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean update(double sample) {
         if (isAccepted(sample)) {
             if (getNumAccepted() == 0) {
                 min = max = sample;
@@ -82,6 +90,34 @@ public class ExtremaProcessor extends AbstractProcessor {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * This processor supports merging.
+     */
+    @Override
+    public boolean canMerge() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected void mergeState(AbstractProcessor other) {
+        ExtremaProcessor ep = (ExtremaProcessor) other;
+        if (ep.getNumAccepted() == 0) {
+            return;
+        }
+
+        if (getNumAccepted() == 0) {
+            min = ep.min;
+            max = ep.max;
+        } else {
+            min = Math.min(min, ep.min);
+            max = Math.max(max, ep.max);
+        }
+    }
+
     /**
      * {@inheritDoc}
      */
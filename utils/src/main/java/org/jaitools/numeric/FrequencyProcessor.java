@@ -0,0 +1,436 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.jaitools.CollectionFactory;
+
+
+/**
+ * Processor for the frequency {@code Statistics}: MODE (most frequent value)
+ * and DISTINCT (number of distinct values). These are mainly intended for
+ * categorical data, e.g. finding the majority class and the number of classes
+ * within each zone of a land cover image. Values are compared exactly 
+ * (no tolerance is applied).
+ * <p>
+ * While the number of distinct values accepted is no more than a limit
+ * ({@link #DEFAULT_MAX_EXACT} unless specified otherwise) the processor keeps
+ * an exact count for each value in a primitive hash table and both statistics
+ * are exact. Once the limit is exceeded, the table is replaced by two
+ * bounded-memory summaries:
+ * <ul>
+ * <li> the number of distinct values is estimated with a HyperLogLog sketch
+ *      of 2<sup>14</sup> registers, which has a relative standard error of
+ *      about 0.8%
+ * <li> the mode is taken from a Misra-Gries heavy-hitters summary which 
+ *      keeps up to twice {@link #NUM_COUNTERS} counters, pruning them to at 
+ *      most {@code NUM_COUNTERS} when full; this is guaranteed to be the true 
+ *      mode if its frequency exceeds that of any other value by more than
+ *      {@code n / (NUM_COUNTERS + 1)}, where {@code n} is the number of
+ *      accepted values
+ * </ul>
+ * In both cases memory use is bounded regardless of the number of samples, 
+ * and processors can be combined with {@link #merge(Processor)}.
+ * <p>
+ * Where more than one value has the greatest frequency, the mode is chosen 
+ * with the same tie-break rule as {@link SampleStats#mode(Double[], boolean)}.
+ *
+ * @see Statistic
+ * @see StreamingSampleStats
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class FrequencyProcessor extends AbstractProcessor {
+
+    private static final Set<Statistic> SUPPORTED;
+    static {
+        SUPPORTED = CollectionFactory.orderedSet();
+        SUPPORTED.add(Statistic.MODE);
+        SUPPORTED.add(Statistic.DISTINCT);
+    }
+
+    /** Default limit on the number of distinct values counted exactly. */
+    public static final int DEFAULT_MAX_EXACT = 1 << 16;
+
+    /** Number of counters retained by the heavy-hitters summary used beyond the exact limit. */
+    public static final int NUM_COUNTERS = 1024;
+
+    /* HyperLogLog precision: the sketch has 2^HLL_P registers */
+    private static final int HLL_P = 14;
+    private static final int HLL_M = 1 << HLL_P;
+
+    private final int maxExact;
+
+    // exact counts or, once approximating, heavy-hitter counters
+    private LongCountMap counts;
+    
+    // HyperLogLog registers (null while counting exactly)
+    private byte[] registers;
+
+    // work space for pruning the heavy-hitter counters
+    private long[] pruneCounts;
+
+    /**
+     * Creates a new processor which counts up to {@link #DEFAULT_MAX_EXACT}
+     * distinct values exactly.
+     */
+    public FrequencyProcessor() {
+        this(DEFAULT_MAX_EXACT);
+    }
+
+    /**
+     * Creates a new processor which counts up to {@code maxExact} 
+     * distinct values exactly.
+     * 
+     * @param maxExact the limit on the number of distinct values counted exactly
+     * 
+     * @throws IllegalArgumentException if {@code maxExact} is less than 1
+     */
+    public FrequencyProcessor(int maxExact) {
+        if (maxExact < 1) {
+            throw new IllegalArgumentException("maxExact must be at least 1");
+        }
+        this.maxExact = maxExact;
+        this.counts = new LongCountMap();
+    }
+
+    /**
+     * Gets the limit on the number of distinct values counted exactly.
+     * 
+     * @return the limit
+     */
+    public int getMaxExact() {
+        return maxExact;
+    }
+
+    /**
+     * Tests if the statistics are exact, ie. the number of distinct 
+     * values accepted has not exceeded the limit.
+     * 
+     * @return {@code true} if exact; {@code false} if estimated
+     */
+    public boolean isExact() {
+        return registers == null;
+    }
+
+    /**
+     * Gets the number of values with exact counts or, once approximating,
+     * the number of heavy-hitter counters in use. Used by unit tests.
+     *
+     * @return the number of counts held
+     */
+    int getNumCounts() {
+        return counts.size;
+    }
+
+    /**
+     * Gets the number of slots in the table of counts. Used by unit tests.
+     *
+     * @return table capacity
+     */
+    int getCountsCapacity() {
+        return counts.keys.length;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Collection<Statistic> getSupported() {
+        return Collections.unmodifiableCollection(SUPPORTED);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean update(Double sample) {
+        return sample != null && update(sample.doubleValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean update(double sample) {
+        if (isAccepted(sample)) {
+            // treat -0.0 and 0.0 as the same value
+            long key = sample == 0 ? 0L : Double.doubleToLongBits(sample);
+            addCount(key, 1);
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * This processor supports merging.
+     */
+    @Override
+    public boolean canMerge() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The processors may have different exact limits; the limit of this 
+     * processor applies to the merged counts.
+     */
+    @Override
+    protected void mergeState(AbstractProcessor other) {
+        FrequencyProcessor fp = (FrequencyProcessor) other;
+        
+        if (fp.registers != null) {
+            if (registers == null) {
+                toApproximate();
+            }
+            for (int i = 0; i < HLL_M; i++) {
+                if (fp.registers[i] > registers[i]) {
+                    registers[i] = fp.registers[i];
+                }
+            }
+        }
+
+        // when both processors are approximating, the other's register
+        // values are already included and only the counters are added
+        final boolean addToSketch = fp.registers == null;
+        final LongCountMap map = fp.counts;
+        for (int i = 0; i < map.keys.length; i++) {
+            if (map.counts[i] > 0) {
+                if (registers == null) {
+                    addCount(map.keys[i], map.counts[i]);
+                } else {
+                    if (addToSketch) {
+                        addToSketch(map.keys[i]);
+                    }
+                    addToCounters(map.keys[i], map.counts[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Double get(Statistic stat) {
+        switch (stat) {
+            case MODE:
+                return mode();
+
+            case DISTINCT:
+                return (double) distinct();
+
+            default:
+                throw new IllegalArgumentException(stat + " not supported by " + getClass().getName());
+        }
+    }
+
+    /**
+     * Adds to the count for a value.
+     */
+    private void addCount(long key, long count) {
+        if (registers == null) {
+            counts.add(key, count);
+            if (counts.size > maxExact) {
+                toApproximate();
+            }
+        } else {
+            addToSketch(key);
+            addToCounters(key, count);
+        }
+    }
+
+    /**
+     * Replaces the exact counts with the distinct value sketch 
+     * and heavy-hitter counters.
+     */
+    private void toApproximate() {
+        LongCountMap exact = counts;
+        counts = new LongCountMap(2 * NUM_COUNTERS);
+        registers = new byte[HLL_M];
+        pruneCounts = new long[2 * NUM_COUNTERS];
+
+        for (int i = 0; i < exact.keys.length; i++) {
+            if (exact.counts[i] > 0) {
+                addToSketch(exact.keys[i]);
+                addToCounters(exact.keys[i], exact.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Misra-Gries update. Counters are added until twice {@code NUM_COUNTERS}
+     * are in use. Then all counters are decremented by the 
+     * {@code (NUM_COUNTERS + 1)}th largest count, which removes at least 
+     * {@code NUM_COUNTERS} of them. Each decrement is taken from at least 
+     * {@code NUM_COUNTERS + 1} values, which gives the error bound of the 
+     * standard algorithm, and the cost of pruning is spread over the
+     * values added since the previous pruning.
+     */
+    private void addToCounters(long key, long count) {
+        counts.add(key, count);
+        if (counts.size >= 2 * NUM_COUNTERS) {
+            int n = 0;
+            for (int i = 0; i < counts.keys.length; i++) {
+                if (counts.counts[i] > 0) {
+                    pruneCounts[n++] = counts.counts[i];
+                }
+            }
+            counts.subtractAll(select(pruneCounts, n, n - NUM_COUNTERS - 1));
+        }
+    }
+
+    /**
+     * Finds the k-th smallest (from 0) of the first n elements of an array,
+     * which are reordered (Hoare's quickselect).
+     */
+    private static long select(long[] a, int n, int k) {
+        int lo = 0;
+        int hi = n - 1;
+        while (lo < hi) {
+            long pivot = a[(lo + hi) >>> 1];
+            int i = lo;
+            int j = hi;
+            while (i <= j) {
+                while (a[i] < pivot) {
+                    i++ ;
+                }
+                while (a[j] > pivot) {
+                    j-- ;
+                }
+                if (i <= j) {
+                    long t = a[i];
+                    a[i] = a[j];
+                    a[j] = t;
+                    i++ ;
+                    j-- ;
+                }
+            }
+            if (k <= j) {
+                hi = j;
+            } else if (k >= i) {
+                lo = i;
+            } else {
+                break;
+            }
+        }
+        return a[k];
+    }
+
+    /**
+     * HyperLogLog update.
+     */
+    private void addToSketch(long key) {
+        long h = hash(key);
+        int index = (int) (h >>> (64 - HLL_P));
+        // guard bit so that the rank is at most 64 - HLL_P + 1
+        long w = (h << HLL_P) | (1L << (HLL_P - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(w) + 1);
+        if (rank > registers[index]) {
+            registers[index] = rank;
+        }
+    }
+
+    /**
+     * Mixes the bits of a key (the finalizer of the SplitMix64 generator).
+     */
+    private static long hash(long key) {
+        long z = key + 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Gets the exact or estimated number of distinct values.
+     */
+    private long distinct() {
+        if (registers == null) {
+            return counts.size;
+        }
+
+        double sum = 0;
+        int zeros = 0;
+        for (int i = 0; i < HLL_M; i++) {
+            sum += 1.0 / (1L << registers[i]);
+            if (registers[i] == 0) {
+                zeros++;
+            }
+        }
+
+        final double alpha = 0.7213 / (1 + 1.079 / HLL_M);
+        double estimate = alpha * HLL_M * HLL_M / sum;
+        if (estimate <= 2.5 * HLL_M && zeros > 0) {
+            // small range correction (linear counting)
+            estimate = HLL_M * Math.log((double) HLL_M / zeros);
+        }
+        
+        // the exact limit has been exceeded
+        return Math.max(Math.round(estimate), maxExact + 1L);
+    }
+
+    /**
+     * Gets the value with the highest exact or estimated count.
+     */
+    private double mode() {
+        long maxCount = 0;
+        int numTied = 0;
+        for (int i = 0; i < counts.keys.length; i++) {
+            if (counts.counts[i] > maxCount) {
+                maxCount = counts.counts[i];
+                numTied = 1;
+            } else if (counts.counts[i] == maxCount && maxCount > 0) {
+                numTied++;
+            }
+        }
+        if (maxCount == 0) {
+            return Double.NaN;
+        }
+
+        double[] tied = new double[numTied];
+        int k = 0;
+        for (int i = 0; i < counts.keys.length; i++) {
+            if (counts.counts[i] == maxCount) {
+                tied[k++] = Double.longBitsToDouble(counts.keys[i]);
+            }
+        }
+        Arrays.sort(tied);
+
+        // tie-break rule as for SampleStats.mode
+        int index = numTied / 2;
+        if (numTied % 2 == 0) {
+            index-- ;
+        }
+        return tied[index];
+    }
+
+}
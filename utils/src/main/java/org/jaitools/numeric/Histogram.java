@@ -35,6 +35,15 @@ import java.util.List;
  * to define bins. New bins can be defined even after data had already been
  * added to allow a histogram to adapt to the input data, however the new bins
  * must <strong>not</strong> overlap with existing bins.
+ * <p>
+ * Bins are kept in ascending order and the bin for a value is found by binary
+ * search. A histogram with bins of equal width, created with
+ * {@link #createEqualWidth(double, double, int)}, calculates bin indices 
+ * arithmetically instead. Primitive values can be added in bulk with 
+ * {@link #addValues(double[])} and {@link #addValues(int[])}. Primitive values
+ * are compared with bin bounds using the same tolerance as 
+ * {@link NumberOperations#compare(Number, Number)}, so a value close to a bin
+ * edge is allocated to the same bin whichever method it is passed to.
  *
  * @param <T> the value type
  * @author Michael Bedward
@@ -48,6 +57,28 @@ public class Histogram<T extends Number & Comparable> {
     private List<Bin> bins;
     private boolean needsSort;
 
+    /*
+     * Bin ranges as primitive ranges for lookup of primitive values, and
+     * the tolerance they were created with. These are rebuilt, with the
+     * bin order, by ensureBinsSorted.
+     */
+    private DoubleRange[] binRanges;
+    private double binTol;
+
+    /*
+     * Set if any bin is a point at NaN or infinity, which the
+     * binary search does not handle, in which case bins are scanned.
+     */
+    private boolean hasSpecialBins;
+
+    /*
+     * Set when the bins are of equal width (see createEqualWidth). The
+     * edges array holds the lower bound of each bin plus the overall maximum.
+     */
+    private boolean equalWidth;
+    private double[] edges;
+    private double binWidth;
+
     /**
      * Creates a new histogram.
      */
@@ -55,6 +86,55 @@ public class Histogram<T extends Number & Comparable> {
         bins = new ArrayList<Bin>();
     }
 
+    /**
+     * Creates a new histogram with {@code numBins} bins of equal width spanning 
+     * the interval from {@code minValue} to {@code maxValue}. Each bin includes
+     * its lower bound and excludes its upper bound, except for the last bin 
+     * which includes {@code maxValue}. Bin indices for values are calculated
+     * arithmetically rather than by searching. Further bins can be added
+     * outside this interval with {@link #addBin(Range)}, in which case the 
+     * histogram reverts to searching.
+     *
+     * @param minValue lower bound of the first bin
+     * @param maxValue upper bound of the last bin
+     * @param numBins number of bins
+     *
+     * @return a new histogram
+     *
+     * @throws IllegalArgumentException if {@code minValue} and {@code maxValue}
+     *         are not finite with {@code minValue < maxValue}, or if
+     *         {@code numBins} is less than 1
+     */
+    public static Histogram<Double> createEqualWidth(double minValue, double maxValue, int numBins) {
+        if (Double.isNaN(minValue) || Double.isInfinite(minValue) ||
+                Double.isNaN(maxValue) || Double.isInfinite(maxValue) ||
+                minValue >= maxValue) {
+            throw new IllegalArgumentException(
+                    "minValue and maxValue must be finite with minValue < maxValue");
+        }
+        if (numBins < 1) {
+            throw new IllegalArgumentException("numBins must be at least 1");
+        }
+
+        Histogram<Double> hist = new Histogram<Double>();
+
+        double width = (maxValue - minValue) / numBins;
+        double[] edges = new double[numBins + 1];
+        for (int i = 0; i < numBins; i++) {
+            edges[i] = minValue + i * width;
+        }
+        edges[numBins] = maxValue;
+
+        for (int i = 0; i < numBins; i++) {
+            hist.addBin(Range.create(edges[i], true, edges[i + 1], i == numBins - 1));
+        }
+
+        hist.equalWidth = true;
+        hist.edges = edges;
+        hist.binWidth = width;
+        return hist;
+    }
+
     /**
      * Adds a new bin to the histogram.
      *
@@ -69,6 +149,7 @@ public class Histogram<T extends Number & Comparable> {
         }
         bins.add(new Bin(range));
         needsSort = true;
+        equalWidth = false;
     }
 
     /**
@@ -112,6 +193,42 @@ public class Histogram<T extends Number & Comparable> {
         }
     }
 
+    /**
+     * Adds an array of primitive values to the histogram. Values are
+     * compared with bin bounds as {@code double} values.
+     *
+     * @param values input values
+     */
+    public void addValues(double[] values) {
+        ensureBinsSorted();
+        final int[] counts = new int[bins.size()];
+        for (double value : values) {
+            int index = findBin(value);
+            if (index != NO_BIN) {
+                counts[index]++ ;
+            }
+        }
+        addCounts(counts);
+    }
+
+    /**
+     * Adds an array of primitive values to the histogram. Values are
+     * compared with bin bounds as {@code double} values.
+     *
+     * @param values input values
+     */
+    public void addValues(int[] values) {
+        ensureBinsSorted();
+        final int[] counts = new int[bins.size()];
+        for (int value : values) {
+            int index = findBin((double) value);
+            if (index != NO_BIN) {
+                counts[index]++ ;
+            }
+        }
+        addCounts(counts);
+    }
+
     /**
      * Gets the bin index for a value. The value is not added to the histogram.
      *
@@ -124,6 +241,19 @@ public class Histogram<T extends Number & Comparable> {
         return findBin(value);
     }
 
+    /**
+     * Gets the bin index for a primitive value. The value is not added 
+     * to the histogram.
+     *
+     * @param value the value
+     *
+     * @return the bin index or {@link #NO_BIN}
+     */
+    public int getBinForValue(double value) {
+        ensureBinsSorted();
+        return findBin(value);
+    }
+
     /**
      * Gets bin indices for a list of input values. The values are not added
      * to the histogram.
@@ -170,23 +300,200 @@ public class Histogram<T extends Number & Comparable> {
      * @return bin index or {@code NO_BIN}
      */
     private int findBin(T value) {
-        int index = 0;
-        for (Bin bin : bins) {
-            if (bin.range.contains(value)) {
-                return index;
+        if (equalWidth) {
+            return findBin(value.doubleValue());
+        }
+
+        if (hasSpecialBins) {
+            return scanBins(value);
+        }
+
+        // find the last bin whose lower bound admits the value
+        int lo = 0;
+        int hi = bins.size() - 1;
+        int index = NO_BIN;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (aboveLowerBound(bins.get(mid).range, value)) {
+                index = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
             }
+        }
+
+        if (index != NO_BIN && bins.get(index).range.contains(value)) {
+            return index;
+        }
+        return NO_BIN;
+    }
+
+    /**
+     * Finds the bin for the given primitive value.
+     *
+     * @param value the value
+     *
+     * @return bin index or {@code NO_BIN}
+     */
+    private int findBin(double value) {
+        if (equalWidth) {
+            return findEqualWidthBin(value, binTol);
+        }
+
+        if (hasSpecialBins) {
+            return scanBins(value);
+        }
+        if (Double.isNaN(value)) {
+            return NO_BIN;
+        }
+
+        // find the last bin whose lower bound admits the value
+        int lo = 0;
+        int hi = binRanges.length - 1;
+        int index = NO_BIN;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (binRanges[mid].isAboveMin(value)) {
+                index = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (index != NO_BIN && binRanges[index].isBelowMax(value)) {
+            return index;
+        }
+        return NO_BIN;
+    }
+
+    /**
+     * Calculates the bin index for a value when bins are of equal width.
+     *
+     * @param value the value
+     *
+     * @return bin index or {@code NO_BIN}
+     */
+    private int findEqualWidthBin(double value, double tol) {
+        final int numBins = edges.length - 1;
+        if (compare(value, edges[0], tol) < 0 || compare(value, edges[numBins], tol) > 0) {
+            // also rejects NaN
+            return NO_BIN;
+        }
+
+        int index = (int) ((value - edges[0]) / binWidth);
+
+        // correct for rounding and tolerance so that the result agrees 
+        // with the bin ranges
+        if (index >= numBins) {
+            index = numBins - 1;
+        } else if (index < 0) {
+            index = 0;
+        }
+        while (index > 0 && compare(value, edges[index], tol) < 0) {
+            index-- ;
+        }
+        while (index < numBins - 1 && compare(value, edges[index + 1], tol) >= 0) {
             index++ ;
         }
+        return index;
+    }
+
+    /**
+     * Finds the bin for a value by testing each bin in turn.
+     */
+    private int scanBins(T value) {
+        for (int i = 0; i < bins.size(); i++) {
+            if (bins.get(i).range.contains(value)) {
+                return i;
+            }
+        }
         return NO_BIN;
     }
 
     /**
-     * Ensures that bins are sorted in ascending order.
+     * Finds the bin for a primitive value by testing each bin in turn.
+     */
+    private int scanBins(double value) {
+        for (int i = 0; i < binRanges.length; i++) {
+            if (binRanges[i].contains(value)) {
+                return i;
+            }
+        }
+        return NO_BIN;
+    }
+
+    /**
+     * Tests if a value lies on or above the lower bound of a range, taking 
+     * into account whether the bound is included.
+     */
+    private boolean aboveLowerBound(Range<T> range, T value) {
+        if (range.isMinNegInf()) {
+            return true;
+        }
+        int comp = NumberOperations.compare(value, range.getMin());
+        return comp > 0 || (comp == 0 && range.isMinIncluded());
+    }
+
+    /**
+     * Compares a primitive value with a bin bound in the same way as 
+     * {@link NumberOperations#compare(Number, Number)} compares {@code Double}
+     * values: finite values closer than the tolerance are equal.
+     */
+    private static int compare(double value, double bound, double tol) {
+        final double diff = value - bound;
+        if (diff >= tol) {
+            return 1;
+        } else if (diff <= -tol) {
+            return -1;
+        }
+
+        // within tolerance, or comparing infinities or NaN
+        if (Double.isInfinite(value) || Double.isNaN(value) ||
+                Double.isInfinite(bound) || Double.isNaN(bound)) {
+            return Double.compare(value, bound);
+        }
+        return 0;
+    }
+
+    /**
+     * Tests if a range is a point at NaN.
+     */
+    private static boolean isNaNPoint(Range<?> r) {
+        return r.isPoint() && r.getMin() == null && !r.isMinInf() && !r.isMinNegInf();
+    }
+
+    /**
+     * Adds counts to the bins.
+     */
+    private void addCounts(int[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            bins.get(i).count += counts[i];
+        }
+    }
+
+    /**
+     * Ensures that bins are sorted in ascending order and that the primitive
+     * bin ranges are up to date, including with the current tolerance.
      */
     private void ensureBinsSorted() {
-        if (needsSort) {
+        final double tol = NumberOperations.getDoubleTolerance();
+        if (needsSort || binRanges == null || tol != binTol) {
             Collections.sort(bins, new BinComparator());
             needsSort = false;
+
+            final int n = bins.size();
+            binRanges = new DoubleRange[n];
+            binTol = tol;
+            hasSpecialBins = false;
+
+            for (int i = 0; i < n; i++) {
+                binRanges[i] = DoubleRange.fromRange(bins.get(i).range, tol);
+                if (binRanges[i].isPoint()) {
+                    double v = binRanges[i].getMin();
+                    hasSpecialBins |= Double.isNaN(v) || Double.isInfinite(v);
+                }
+            }
         }
     }
 
@@ -205,18 +512,40 @@ public class Histogram<T extends Number & Comparable> {
 
     /**
      * A comparator used to sort bins into ascending order based on their
-     * lower bound.
+     * lower bound. Where two bins have the same lower bound value, the
+     * one which includes it comes first (this can only occur for a point
+     * bin followed by a lower-open bin).
      */
     private class BinComparator implements Comparator<Bin> {
-        private RangeComparator<T> rc = new RangeComparator<T>();
-
         public int compare(Bin b1, Bin b2) {
-            RangeComparator.Result result = rc.compare(b1.range, b2.range);
-            switch (result.getNotation().charAt(1)) {
-                case '<': return -1;
-                case '>': return 1;
-                default: return 0;
+            Range<T> r1 = b1.range;
+            Range<T> r2 = b2.range;
+
+            int rank1 = boundRank(r1);
+            int rank2 = boundRank(r2);
+            if (rank1 != rank2 || rank1 != 0) {
+                return rank1 - rank2;
+            }
+
+            int comp = NumberOperations.compare(r1.getMin(), r2.getMin());
+            if (comp == 0 && r1.isMinIncluded() != r2.isMinIncluded()) {
+                comp = r1.isMinIncluded() ? -1 : 1;
+            }
+            return comp;
+        }
+
+        /*
+         * Orders non-finite lower bounds relative to finite values (0).
+         */
+        private int boundRank(Range<T> r) {
+            if (r.isMinNegInf()) {
+                return -1;
+            } else if (r.isMinInf()) {
+                return 1;
+            } else if (isNaNPoint(r)) {
+                return 2;
             }
+            return 0;
         }
     }
 }
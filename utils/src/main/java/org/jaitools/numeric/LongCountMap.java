@@ -0,0 +1,296 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.Arrays;
+
+
+/**
+ * A minimal open-addressing hash table of positive counts keyed by {@code long}
+ * values. It is used wherever JAITools needs to count, or index, primitive keys
+ * in a hot loop without boxing: for example, distinct sample values in the
+ * frequency and median processors and zone and class pairs in the
+ * {@code ZonalHistogram} operator.
+ * <p>
+ * Slots with a zero count are empty. The entries can be visited by scanning
+ * slots from 0 to {@link #capacity()} - 1 with {@link #countAt(int)} and
+ * {@link #keyAt(int)}. The slot of the most recently added key is cached,
+ * which helps with runs of equal keys such as those typical of categorical
+ * images.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public final class LongCountMap {
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    
+    // keys and counts by slot; classes in this package scan them directly
+    long[] keys;
+    long[] counts;
+    int size;
+
+    // slot of the key most recently added to (only a hint: it is checked
+    // against the key before use)
+    private int lastSlot;
+
+    /**
+     * Creates an empty map.
+     */
+    public LongCountMap() {
+        this(INITIAL_CAPACITY / 2);
+    }
+
+    /**
+     * Creates an empty map which can hold {@code maxSize} keys 
+     * without being resized.
+     * 
+     * @param maxSize the expected maximum number of keys
+     */
+    public LongCountMap(int maxSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * maxSize) {
+            capacity *= 2;
+        }
+        keys = new long[capacity];
+        counts = new long[capacity];
+        size = 0;
+        lastSlot = 0;
+    }
+
+    /**
+     * Adds to the count for a key.
+     * 
+     * @param key the key
+     * @param count a positive count
+     */
+    public void add(long key, long count) {
+        if (counts[lastSlot] > 0 && keys[lastSlot] == key) {
+            counts[lastSlot] += count;
+            return;
+        }
+
+        int i = findSlot(keys, counts, key);
+        if (counts[i] == 0) {
+            keys[i] = key;
+            size++;
+        }
+        counts[i] += count;
+        lastSlot = i;
+
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Sets the count for a key, replacing any existing count. This allows
+     * the map to be used as an index from keys to positive values.
+     * 
+     * @param key the key
+     * @param count a positive count
+     */
+    public void put(long key, long count) {
+        int i = findSlot(keys, counts, key);
+        if (counts[i] == 0) {
+            keys[i] = key;
+            size++;
+        }
+        counts[i] = count;
+
+        if (size * 2 > keys.length) {
+            rehash(keys.length * 2);
+        }
+    }
+
+    /**
+     * Gets the count for a key.
+     * 
+     * @param key the key
+     * @return the count (zero if the key is absent)
+     */
+    public long get(long key) {
+        return counts[findSlot(keys, counts, key)];
+    }
+
+    /**
+     * Gets the number of keys.
+     * 
+     * @return number of keys
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Gets the number of slots in the table. 
+     * 
+     * @return number of slots
+     */
+    public int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Gets the key held in a slot. The result is meaningless if the
+     * slot is empty.
+     * 
+     * @param slot slot index, from 0 to {@code capacity() - 1}
+     * @return the key
+     */
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * Gets the count held in a slot.
+     * 
+     * @param slot slot index, from 0 to {@code capacity() - 1}
+     * @return the count (zero if the slot is empty)
+     */
+    public long countAt(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Adds the counts of another map to this one.
+     * 
+     * @param other the other map
+     */
+    public void addAll(LongCountMap other) {
+        for (int i = 0; i < other.keys.length; i++) {
+            if (other.counts[i] > 0) {
+                add(other.keys[i], other.counts[i]);
+            }
+        }
+    }
+
+    /**
+     * Subtracts an amount from every count, removing entries
+     * whose counts fall to zero or below. The table is updated in 
+     * place.
+     * 
+     * @param amount the amount to subtract
+     */
+    public void subtractAll(long amount) {
+        // first mark the entries to remove with a negative count, which
+        // keeps probe sequences intact
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] > 0) {
+                counts[i] -= amount;
+                if (counts[i] <= 0) {
+                    counts[i] = -1;
+                }
+            }
+        }
+
+        // removal can move a later entry, possibly also marked, 
+        // into the slot so it is checked again
+        for (int i = 0; i < keys.length; i++) {
+            while (counts[i] < 0) {
+                removeSlot(i);
+            }
+        }
+    }
+
+    /**
+     * Gets the keys in ascending order.
+     * 
+     * @return a new array of keys
+     */
+    public long[] sortedKeys() {
+        long[] sorted = new long[size];
+        int k = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] > 0) {
+                sorted[k++] = keys[i];
+            }
+        }
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    private void rehash(int capacity) {
+        long[] newKeys = new long[capacity];
+        long[] newCounts = new long[capacity];
+        for (int i = 0; i < keys.length; i++) {
+            if (counts[i] > 0) {
+                int slot = findSlot(newKeys, newCounts, keys[i]);
+                newKeys[slot] = keys[i];
+                newCounts[slot] = counts[i];
+            }
+        }
+        keys = newKeys;
+        counts = newCounts;
+        lastSlot = 0;
+    }
+
+    /**
+     * Empties a slot using backward-shift deletion: entries later in the 
+     * probe sequence are moved back so that no gap is left before them.
+     */
+    private void removeSlot(int slot) {
+        final int mask = keys.length - 1;
+        int gap = slot;
+        int i = slot;
+        while (true) {
+            i = (i + 1) & mask;
+            if (counts[i] == 0) {
+                break;
+            }
+            // an entry can fill the gap unless its home slot lies 
+            // cyclically after the gap
+            int home = home(keys[i], mask);
+            if (((i - home) & mask) >= ((i - gap) & mask)) {
+                keys[gap] = keys[i];
+                counts[gap] = counts[i];
+                gap = i;
+            }
+        }
+        counts[gap] = 0;
+        size--;
+    }
+
+    /**
+     * Gets the home slot of a key by multiplicative hashing. The high bits
+     * of the product are used because they depend on all bits of the key,
+     * whereas the low bits are zero for keys such as the bits of
+     * integral {@code double} values.
+     */
+    private static int home(long key, int mask) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> Long.numberOfLeadingZeros((long) mask));
+    }
+
+    private static int findSlot(long[] keys, long[] counts, long key) {
+        final int mask = keys.length - 1;
+        int i = home(key, mask);
+        while (counts[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+}
@@ -74,6 +74,14 @@ public class MeanVarianceProcessor extends AbstractProcessor {
      */
     @Override
     protected boolean update(Double sample) {
+        return sample != null && update(sample.doubleValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean update(double sample) {
     	if (isAccepted(sample)) {
             if (getNumAccepted() == 0) {  // first value
                 mOld = mNew = sample;
@@ -89,6 +97,41 @@ public class MeanVarianceProcessor extends AbstractProcessor {
         return false;
     }
 
+    /**
+     * {@inheritDoc}
+     * This processor supports merging.
+     */
+    @Override
+    public boolean canMerge() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The running mean and sum of squared deviations are combined using the
+     * pairwise formula of Chan, Golub and LeVeque (1979).
+     */
+    @Override
+    protected void mergeState(AbstractProcessor other) {
+        MeanVarianceProcessor mvp = (MeanVarianceProcessor) other;
+        final long nb = mvp.getNumAccepted();
+        if (nb == 0) {
+            return;
+        }
+
+        final long na = getNumAccepted();
+        if (na == 0) {
+            mNew = mvp.mNew;
+            s = mvp.s;
+        } else {
+            final double n = na + nb;
+            final double delta = mvp.mNew - mNew;
+            mNew = mNew + delta * nb / n;
+            s = s + mvp.s + delta * delta * ((double) na * nb / n);
+        }
+        mOld = mNew;
+    }
+
     /**
      * {@inheritDoc}
      */
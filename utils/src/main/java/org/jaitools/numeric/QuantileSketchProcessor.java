@@ -0,0 +1,396 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Random;
+import java.util.Set;
+
+import org.jaitools.CollectionFactory;
+
+
+/**
+ * Processor for the percentile statistics {@code Statistic.PERCENTILE_5},
+ * {@code PERCENTILE_25}, {@code PERCENTILE_75} and {@code PERCENTILE_95}.
+ * Other quantiles can be retrieved with {@link #getQuantile(double)}.
+ * <p>
+ * The quantiles are estimated with the KLL sketch described in:
+ * <blockquote>
+ * Z Karnin, K Lang and E Liberty (2016)
+ * <i>Optimal quantile approximation in streams.</i>
+ * IEEE 57th Annual Symposium on Foundations of Computer Science, pp. 71-78
+ * </blockquote>
+ * The sketch holds a stack of buffers ("compactors") in which a value at level
+ * <i>h</i> stands for 2<sup><i>h</i></sup> samples. When the buffers are full, the
+ * values of a buffer are sorted and every second one (starting at random from the 
+ * first or second) is promoted to the next level. The capacity of the top buffer
+ * is {@code k} and lower buffers have geometrically decreasing capacities, so memory
+ * use is bounded by about {@code 3k} values regardless of the number of samples.
+ * Sketches are mergeable, so partial results (e.g. for image tiles) can be combined
+ * with {@link #merge(Processor)}.
+ * <p>
+ * <b>Error bound:</b> the error is measured in rank, as a proportion of the number of
+ * samples {@code n}, and is roughly inversely proportional to {@code k}. With the default
+ * {@code k = 200}, the rank of an estimate differs from the requested rank by less
+ * than about 1.7% of {@code n} with 99% confidence; e.g. the estimate of the 95th
+ * percentile lies between the true 93.3th and 96.7th percentiles. The result is always
+ * one of the sample values.
+ * While fewer than {@code k} values have been accepted the result is exact and 
+ * equal to that given by {@link SampleStats#quantile(Double[], double, boolean)}.
+ * Random choices are made with a fixed seed so that results are repeatable.
+ *
+ * @see Statistic
+ * @see StreamingSampleStats
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class QuantileSketchProcessor extends AbstractProcessor {
+
+    private static final Set<Statistic> SUPPORTED;
+    static {
+        SUPPORTED = CollectionFactory.orderedSet();
+        SUPPORTED.add(Statistic.PERCENTILE_5);
+        SUPPORTED.add(Statistic.PERCENTILE_25);
+        SUPPORTED.add(Statistic.PERCENTILE_75);
+        SUPPORTED.add(Statistic.PERCENTILE_95);
+    }
+
+    /** Default value of the accuracy parameter {@code k}. */
+    public static final int DEFAULT_K = 200;
+
+    /** The smallest accepted value of the accuracy parameter {@code k}. */
+    public static final int MIN_K = 8;
+
+    /* Ratio of the capacities of successive compactors */
+    private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+    /* Tolerance used when converting a quantile to a rank */
+    private static final double RANK_TOL = 1.0e-9;
+
+    private final int k;
+    private final Random rand;
+
+    // compactors[h] holds counts[h] values, each with weight 2^h
+    private double[][] compactors;
+    private int[] counts;
+    private int numLevels;
+
+    // number of values held and the number at which compaction is triggered
+    private int size;
+    private int maxSize;
+
+    // sorted values and cumulative weights, built on demand
+    private boolean calculationRequired = true;
+    private double[] sortedValues;
+    private long[] cumWeights;
+    private int numSorted;
+
+    /**
+     * Creates a new processor with the default accuracy parameter
+     * {@link #DEFAULT_K}.
+     */
+    public QuantileSketchProcessor() {
+        this(DEFAULT_K);
+    }
+
+    /**
+     * Creates a new processor. Larger values of {@code k} give more accurate
+     * estimates at the cost of more memory.
+     * 
+     * @param k the accuracy parameter (at least {@link #MIN_K})
+     * 
+     * @throws IllegalArgumentException if {@code k} is less than {@code MIN_K}
+     */
+    public QuantileSketchProcessor(int k) {
+        if (k < MIN_K) {
+            throw new IllegalArgumentException("k must be at least " + MIN_K);
+        }
+        this.k = k;
+        this.rand = new Random(k);
+        this.compactors = new double[0][];
+        this.counts = new int[0];
+        this.numLevels = 0;
+        this.size = 0;
+        addLevel();
+    }
+
+    /**
+     * Gets the accuracy parameter of this processor.
+     * 
+     * @return the value of {@code k}
+     */
+    public int getK() {
+        return k;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Collection<Statistic> getSupported() {
+        return Collections.unmodifiableCollection(SUPPORTED);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean update(Double sample) {
+        return sample != null && update(sample.doubleValue());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected boolean update(double sample) {
+        if (isAccepted(sample)) {
+            add(0, sample);
+            if (size >= maxSize) {
+                compress();
+            }
+            calculationRequired = true;
+            return true;
+        }
+
+        return false;
+    }
+
+    /**
+     * {@inheritDoc}
+     * This processor supports merging.
+     */
+    @Override
+    public boolean canMerge() {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     * The other processor must have the same value of {@code k}. Its values
+     * are added to the compactors at the same levels in this processor, which
+     * are then compacted as necessary.
+     * 
+     * @throws IllegalArgumentException if the processors have different {@code k}
+     */
+    @Override
+    protected void mergeState(AbstractProcessor other) {
+        QuantileSketchProcessor qsp = (QuantileSketchProcessor) other;
+        if (qsp.k != k) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge sketches with different k (%d and %d)", k, qsp.k));
+        }
+
+        while (numLevels < qsp.numLevels) {
+            addLevel();
+        }
+        for (int h = 0; h < qsp.numLevels; h++) {
+            for (int i = 0; i < qsp.counts[h]; i++) {
+                add(h, qsp.compactors[h][i]);
+            }
+        }
+        while (size >= maxSize) {
+            compress();
+        }
+        calculationRequired = true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public Double get(Statistic stat) {
+        if (SUPPORTED.contains(stat)) {
+            return getQuantile(stat.getQuantile());
+        }
+
+        throw new IllegalArgumentException(stat + " not supported by " + getClass().getName());
+    }
+
+    /**
+     * Gets an estimate of a quantile of the accepted values: the smallest
+     * retained value such that the estimated proportion of samples less than 
+     * or equal to it is at least {@code q}.
+     * 
+     * @param q the quantile as a proportion between 0 and 1
+     * 
+     * @return the estimated quantile or {@code Double.NaN} if no values
+     *         have been accepted
+     * 
+     * @throws IllegalArgumentException if {@code q} is not between 0 and 1
+     */
+    public double getQuantile(double q) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("q must be between 0 and 1");
+        }
+        if (size == 0) {
+            return Double.NaN;
+        }
+
+        if (calculationRequired) {
+            sortValues();
+            calculationRequired = false;
+        }
+
+        final long total = cumWeights[numSorted - 1];
+        final long rank = Math.max(1, (long) Math.ceil(q * total - RANK_TOL));
+
+        // binary search for the first cumulative weight >= rank
+        int lo = 0;
+        int hi = numSorted - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cumWeights[mid] < rank) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return sortedValues[lo];
+    }
+
+    /**
+     * Adds a value to the compactor at the given level.
+     */
+    private void add(int level, double value) {
+        if (counts[level] == compactors[level].length) {
+            double[] newData = new double[compactors[level].length * 2];
+            System.arraycopy(compactors[level], 0, newData, 0, counts[level]);
+            compactors[level] = newData;
+        }
+        compactors[level][counts[level]++] = value;
+        size++;
+    }
+
+    /**
+     * Adds a new top level and updates the compactor capacities.
+     */
+    private void addLevel() {
+        double[][] newCompactors = new double[numLevels + 1][];
+        int[] newCounts = new int[numLevels + 1];
+        System.arraycopy(compactors, 0, newCompactors, 0, numLevels);
+        System.arraycopy(counts, 0, newCounts, 0, numLevels);
+        newCompactors[numLevels] = new double[capacity(numLevels, numLevels + 1)];
+
+        compactors = newCompactors;
+        counts = newCounts;
+        numLevels++;
+
+        maxSize = 0;
+        for (int h = 0; h < numLevels; h++) {
+            maxSize += capacity(h, numLevels);
+        }
+    }
+
+    /**
+     * Gets the capacity of the compactor at the given level.
+     */
+    private int capacity(int level, int levels) {
+        int depth = levels - level - 1;
+        return (int) Math.ceil(Math.pow(CAPACITY_RATIO, depth) * k) + 1;
+    }
+
+    /**
+     * Compacts the lowest compactor that is at or above capacity.
+     */
+    private void compress() {
+        for (int h = 0; h < numLevels; h++) {
+            if (counts[h] >= capacity(h, numLevels)) {
+                if (h + 1 >= numLevels) {
+                    addLevel();
+                }
+                compact(h);
+                if (size < maxSize) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Sorts the values in the compactor at the given level and promotes
+     * every second value to the next level. If the compactor holds an
+     * odd number of values, the largest is retained.
+     */
+    private void compact(int level) {
+        double[] data = compactors[level];
+        int n = counts[level];
+        Arrays.sort(data, 0, n);
+
+        int numPairs = n / 2;
+        int offset = rand.nextBoolean() ? 1 : 0;
+        for (int i = 0; i < numPairs; i++) {
+            add(level + 1, data[2 * i + offset]);
+        }
+
+        size -= 2 * numPairs;
+        if (n % 2 == 1) {
+            data[0] = data[n - 1];
+            counts[level] = 1;
+        } else {
+            counts[level] = 0;
+        }
+    }
+
+    /**
+     * Builds the sorted array of retained values and their cumulative weights.
+     */
+    private void sortValues() {
+        sortedValues = new double[size];
+        long[] weights = new long[size];
+
+        // sort each level and then merge the levels
+        double[][] levelValues = new double[numLevels][];
+        int[] pos = new int[numLevels];
+        for (int h = 0; h < numLevels; h++) {
+            levelValues[h] = new double[counts[h]];
+            System.arraycopy(compactors[h], 0, levelValues[h], 0, counts[h]);
+            Arrays.sort(levelValues[h]);
+        }
+
+        for (int i = 0; i < size; i++) {
+            int minLevel = -1;
+            for (int h = 0; h < numLevels; h++) {
+                if (pos[h] < levelValues[h].length &&
+                        (minLevel < 0 || levelValues[h][pos[h]] < levelValues[minLevel][pos[minLevel]])) {
+                    minLevel = h;
+                }
+            }
+            sortedValues[i] = levelValues[minLevel][pos[minLevel]++];
+            weights[i] = 1L << minLevel;
+        }
+
+        cumWeights = new long[size];
+        long cum = 0;
+        for (int i = 0; i < size; i++) {
+            cum += weights[i];
+            cumWeights[i] = cum;
+        }
+        numSorted = size;
+    }
+}
@@ -0,0 +1,201 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+
+/**
+ * Tests primitive {@code double} values for membership of a set of ranges.
+ * This is intended for hot loops such as per-pixel NoData checks where
+ * calling {@link Range#contains(Number)} for each range in turn would be slow.
+ * <p>
+ * On construction, the ranges are merged with {@link RangeUtils#simplify(Collection)}
+ * and stored, sorted by lower bound, as {@link DoubleRange} objects so that {@link #contains(double)} can be
+ * answered with a binary search and without boxing. As with {@code Range}, end-points
+ * are compared using a tolerance (by default the value of 
+ * {@link NumberOperations#getDoubleTolerance()} when the matcher is created).
+ * <p>
+ * A point range at {@code Double.NaN} matches NaN values. Points at positive or 
+ * negative infinity match nothing, as is the case for {@code Range}.
+ * <pre><code>
+ * List&lt;Range&lt;Double&gt;&gt; noDataRanges = ...
+ * RangeMatcher noData = new RangeMatcher(noDataRanges);
+ * 
+ * for (double value : data) {
+ *     if (!noData.contains(value)) {
+ *         // process value
+ *     }
+ * }
+ * </code></pre>
+ * Instances are immutable and may be shared between threads.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class RangeMatcher {
+
+    private final DoubleRange[] intervals;
+    private final boolean matchesNaN;
+
+    /**
+     * Creates a new matcher for the given ranges using the current
+     * double tolerance of {@link NumberOperations}.
+     * 
+     * @param ranges the ranges (may be empty)
+     * 
+     * @throws IllegalArgumentException if {@code ranges} is {@code null}
+     */
+    public RangeMatcher(Collection<Range<Double>> ranges) {
+        this(null, ranges, NumberOperations.getDoubleTolerance());
+    }
+
+    /**
+     * Creates a new matcher for the given single values and ranges using the
+     * current double tolerance of {@link NumberOperations}.
+     * 
+     * @param values single values to match (may be {@code null} or empty)
+     * @param ranges the ranges (may be {@code null} or empty)
+     */
+    public RangeMatcher(Collection<Double> values, Collection<Range<Double>> ranges) {
+        this(values, ranges, NumberOperations.getDoubleTolerance());
+    }
+
+    /**
+     * Creates a new matcher for the given single values and ranges.
+     * 
+     * @param values single values to match (may be {@code null} or empty)
+     * @param ranges the ranges (may be {@code null} or empty)
+     * @param tol tolerance used when comparing values with end-points
+     * 
+     * @throws IllegalArgumentException if both {@code values} and {@code ranges}
+     *         are {@code null}, or if {@code tol} is negative
+     */
+    public RangeMatcher(Collection<Double> values, Collection<Range<Double>> ranges, double tol) {
+        if (values == null && ranges == null) {
+            throw new IllegalArgumentException("values and ranges must not both be null");
+        }
+        if (!(tol >= 0)) {
+            throw new IllegalArgumentException("tol must not be negative");
+        }
+
+        List<Range<Double>> inputs = new ArrayList<Range<Double>>();
+        boolean nan = false;
+
+        if (values != null) {
+            for (Double value : values) {
+                if (value != null) {
+                    if (value.isNaN()) {
+                        nan = true;
+                    } else if (!value.isInfinite()) {
+                        inputs.add(new Range<Double>(value));
+                    }
+                }
+            }
+        }
+
+        if (ranges != null) {
+            for (Range<Double> r : ranges) {
+                if (r.isPoint() && r.getMin() == null) {
+                    // a point at NaN or infinity, which RangeUtils can't handle
+                    nan |= !r.isMinInf() && !r.isMinNegInf();
+                } else {
+                    inputs.add(r);
+                }
+            }
+        }
+        matchesNaN = nan;
+
+        List<DoubleRange> sorted = new ArrayList<DoubleRange>();
+        for (Range<Double> r : RangeUtils.simplify(inputs)) {
+            sorted.add(DoubleRange.fromRange(r, tol));
+        }
+        Collections.sort(sorted, new Comparator<DoubleRange>() {
+            public int compare(DoubleRange r1, DoubleRange r2) {
+                int comp = Double.compare(r1.getMin(), r2.getMin());
+                if (comp == 0 && r1.isMinIncluded() != r2.isMinIncluded()) {
+                    // closed lower bound first
+                    comp = r1.isMinIncluded() ? -1 : 1;
+                }
+                return comp;
+            }
+        });
+        intervals = sorted.toArray(new DoubleRange[sorted.size()]);
+    }
+
+    /**
+     * Tests if this matcher has no ranges or values to match.
+     * 
+     * @return {@code true} if {@link #contains(double)} always returns {@code false}
+     */
+    public boolean isEmpty() {
+        return intervals.length == 0 && !matchesNaN;
+    }
+
+    /**
+     * Tests if a value is contained in any of the ranges or is equal
+     * to any of the single values of this matcher.
+     * 
+     * @param value the value to test
+     * 
+     * @return {@code true} if the value is matched; {@code false} otherwise
+     */
+    public boolean contains(double value) {
+        if (Double.isNaN(value)) {
+            return matchesNaN;
+        }
+
+        // find the last interval whose lower bound admits the value
+        int lo = 0;
+        int hi = intervals.length - 1;
+        int index = -1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            if (intervals[mid].isAboveMin(value)) {
+                index = mid;
+                lo = mid + 1;
+            } else {
+                hi = mid - 1;
+            }
+        }
+
+        if (index < 0) {
+            return false;
+        }
+        if (intervals[index].isBelowMax(value)) {
+            return true;
+        }
+
+        // with a non-zero tolerance, the value might still be within
+        // the upper bound of the preceding interval
+        return index > 0 && intervals[index - 1].isBelowMax(value);
+    }
+}
@@ -233,7 +233,8 @@ public class RangeUtils {
         } while (changed);
 
         /*
-         * Next, look for any pairs of the form [A, B) [B, C] that can be joined as [A, C]
+         * Next, look for any pairs of the form [A, B) [B, C] that can be joined as [A, C].
+         * At least one of the ranges must include B, otherwise there is a gap.
          */
         Collections.sort(inputs, new RangeSortComparator(comparator));
         do {
@@ -243,7 +244,7 @@ public class RangeUtils {
                 if (r1.isMaxClosed()) {
                     for (int j = i + 1; j < inputs.size() && !changed; j++) {
                         Range<T> r2 = inputs.get(j);
-                        if (r2.isMinClosed()) {
+                        if (r2.isMinClosed() && (r1.isMaxIncluded() || r2.isMinIncluded())) {
                             if (r1.getMax().compareTo(r2.getMin()) == 0) {
                                 inputs.remove(j);
                                 inputs.remove(i);
@@ -43,6 +43,9 @@ import org.jaitools.CollectionFactory;
  * @version $Id$
  */
 public class SampleStats {
+
+    /* Tolerance used when converting a quantile to a rank */
+    private static final double RANK_TOL = 1.0e-9;
     
     /**
      * Return the maximum of the given values.
@@ -167,6 +170,44 @@ public class SampleStats {
         return 0;  // to suppress compiler warning
     }
     
+    /**
+     * Calculates a quantile of the given values using the nearest-rank method:
+     * the result is the smallest sample value such that at least a proportion
+     * {@code q} of the sample is less than or equal to it. A {@code q} value
+     * of 0 gives the minimum sample value.
+     * 
+     * @param values sample values (need not be pre-sorted)
+     * @param q the quantile as a proportion between 0 and 1
+     * @param ignoreNaN specifies whether to ignore NaN values
+     * @return quantile value or Double.NaN if the sample is empty
+     * 
+     * @throws IllegalArgumentException if {@code q} is not between 0 and 1
+     */
+    public static double quantile(Double[] values, double q, boolean ignoreNaN) {
+        if (!(q >= 0 && q <= 1)) {
+            throw new IllegalArgumentException("q must be between 0 and 1");
+        }
+        if (values == null) {
+            return Double.NaN;
+        }
+
+        double[] sorted = new double[values.length];
+        int n = 0;
+        for (Double value : values) {
+            if (value != null && !(ignoreNaN && value.isNaN())) {
+                sorted[n++] = value;
+            }
+        }
+
+        if (n == 0) {
+            return Double.NaN;
+        }
+
+        Arrays.sort(sorted, 0, n);
+        int rank = Math.max(1, (int) Math.ceil(q * n - RANK_TOL));
+        return sorted[rank - 1];
+    }
+    
     /**
      * Calculates the empirical mode (highest frequency value) of the given values.
      * Double.NaN values are ignored. If more than one data value occurs with
@@ -344,4 +385,312 @@ public class SampleStats {
         
         return sum;
     }
+
+    /**
+     * Calculates a set of statistics for values in a primitive array. Moments and
+     * extrema are calculated in a single pass through the data; order statistics
+     * ({@link Statistic#MEDIAN} and the percentiles) are then found by selection
+     * rather than sorting, while {@link Statistic#MODE} and {@link Statistic#DISTINCT}
+     * require a single sort. No objects are allocated, making this method suitable
+     * for use in per-pixel loops.
+     * <p>
+     * If {@code ignoreNaN} is {@code false} and a NaN value is present, all results
+     * are NaN. Results are also NaN for an empty sample and, for {@code SDEV} and 
+     * {@code VARIANCE}, a sample with fewer than two non-NaN values. Note that this
+     * differs from the single-statistic methods in two cases: {@link #min(Double[], boolean)}
+     * ignores a NaN value even when {@code ignoreNaN} is {@code false}, and
+     * {@link #variance(Double[], boolean)} returns 0 when a single non-NaN value
+     * remains after NaN values are ignored. Percentiles are 
+     * calculated as for {@link #quantile(Double[], double, boolean)} and the mode
+     * as for {@link #mode(Double[], boolean)}. Distinct values are counted exactly.
+     * <p>
+     * Order statistics require the non-NaN values to be copied and reordered. If
+     * {@code work} is {@code null} this is done in the {@code values} array itself,
+     * otherwise in {@code work} and {@code values} is left unchanged.
+     * <pre><code>
+     * Statistic[] stats = { Statistic.MEAN, Statistic.SDEV, Statistic.MEDIAN };
+     * double[] results = new double[stats.length];
+     * 
+     * SampleStats.calculate(data, n, true, stats, results, null);
+     * </code></pre>
+     *
+     * @param values sample values
+     * @param n number of values to use from the start of the array
+     * @param ignoreNaN specifies whether to ignore NaN values
+     * @param stats the statistics to calculate
+     * @param results receives the results, with {@code results[i]} being the
+     *        value of {@code stats[i]}
+     * @param work optional array for order statistics (may be {@code null})
+     *
+     * @throws IllegalArgumentException if any of {@code values}, {@code stats} or
+     *         {@code results} are {@code null}; {@code n} is invalid; {@code results}
+     *         or {@code work} are too short; or a statistic is not supported
+     *         ({@code APPROX_MEDIAN})
+     */
+    public static void calculate(double[] values, int n, boolean ignoreNaN,
+            Statistic[] stats, double[] results, double[] work) {
+
+        if (values == null || stats == null || results == null) {
+            throw new IllegalArgumentException("values, stats and results must not be null");
+        }
+        if (n < 0 || n > values.length) {
+            throw new IllegalArgumentException("invalid number of values: " + n);
+        }
+        if (results.length < stats.length) {
+            throw new IllegalArgumentException("results array is shorter than stats array");
+        }
+        if (work != null && work.length < n) {
+            throw new IllegalArgumentException("work array is shorter than n");
+        }
+
+        boolean needsOrder = false;
+        for (Statistic stat : stats) {
+            if (stat == Statistic.APPROX_MEDIAN) {
+                throw new IllegalArgumentException(stat + " is not supported");
+            }
+            needsOrder |= stat == Statistic.MEDIAN || stat.isQuantile() ||
+                    stat == Statistic.MODE || stat == Statistic.DISTINCT;
+        }
+
+        double[] ordered = work == null ? values : work;
+        double min = Double.NaN;
+        double max = Double.NaN;
+        double sum = 0.0;
+        double mean = 0.0;
+        double s = 0.0;
+        int count = 0;
+
+        for (int i = 0; i < n; i++) {
+            double value = values[i];
+            if (Double.isNaN(value)) {
+                if (!ignoreNaN) {
+                    for (int k = 0; k < stats.length; k++) {
+                        results[k] = Double.NaN;
+                    }
+                    return;
+                }
+
+            } else {
+                if (needsOrder) {
+                    ordered[count] = value;
+                }
+                count++;
+
+                if (count == 1) {
+                    min = max = mean = value;
+                } else {
+                    if (value < min) {
+                        min = value;
+                    } else if (value > max) {
+                        max = value;
+                    }
+                    // Welford's running variance (see variance method)
+                    double delta = value - mean;
+                    mean += delta / count;
+                    s += delta * (value - mean);
+                }
+                sum += value;
+            }
+        }
+
+        for (int k = 0; k < stats.length; k++) {
+            double result = Double.NaN;
+            if (count > 0) {
+                switch (stats[k]) {
+                    case MAX:
+                        result = max;
+                        break;
+
+                    case MEAN:
+                        result = sum / count;
+                        break;
+
+                    case MEDIAN:
+                        result = orderedMedian(ordered, count);
+                        break;
+
+                    case MIN:
+                        result = min;
+                        break;
+
+                    case MODE:
+                        Arrays.sort(ordered, 0, count);
+                        result = sortedMode(ordered, count);
+                        break;
+
+                    case DISTINCT:
+                        Arrays.sort(ordered, 0, count);
+                        result = 1;
+                        for (int i = 1; i < count; i++) {
+                            if (ordered[i] != ordered[i - 1]) {
+                                result++ ;
+                            }
+                        }
+                        break;
+
+                    case RANGE:
+                        result = max - min;
+                        break;
+
+                    case SDEV:
+                        if (count > 1) {
+                            result = Math.sqrt(s / (count - 1));
+                        }
+                        break;
+
+                    case SUM:
+                        result = sum;
+                        break;
+
+                    case VARIANCE:
+                        if (count > 1) {
+                            result = s / (count - 1);
+                        }
+                        break;
+
+                    default:
+                        if (stats[k].isQuantile()) {
+                            int rank = Math.max(1, (int) Math.ceil(stats[k].getQuantile() * count - RANK_TOL));
+                            select(ordered, count, rank - 1);
+                            result = ordered[rank - 1];
+                        } else {
+                            throw new IllegalArgumentException(stats[k] + " is not supported");
+                        }
+                }
+            }
+            results[k] = result;
+        }
+    }
+
+    /**
+     * Finds the mode of the first {@code n} values of a sorted array, 
+     * following the rules of {@link #mode(Double[], boolean)}.
+     *
+     * @param sorted the values in ascending order (must not include NaN)
+     * @param n number of values
+     *
+     * @return the mode
+     */
+    static double sortedMode(double[] sorted, int n) {
+        // first pass: find the maximum frequency and the number of values with it
+        int maxFreq = 0;
+        int numTied = 0;
+        int start = 0;
+        while (start < n) {
+            int end = start + 1;
+            while (end < n && CompareOp.aequal(sorted[start], sorted[end])) {
+                end++ ;
+            }
+            int freq = end - start;
+            if (freq > maxFreq) {
+                maxFreq = freq;
+                numTied = 1;
+            } else if (freq == maxFreq) {
+                numTied++ ;
+            }
+            start = end;
+        }
+
+        int target = numTied / 2;
+        if (numTied % 2 == 0) {
+            target-- ;
+        }
+
+        // second pass: return the target value among those tied
+        start = 0;
+        int k = 0;
+        while (start < n) {
+            int end = start + 1;
+            while (end < n && CompareOp.aequal(sorted[start], sorted[end])) {
+                end++ ;
+            }
+            if (end - start == maxFreq) {
+                if (k == target) {
+                    return sorted[start];
+                }
+                k++ ;
+            }
+            start = end;
+        }
+
+        throw new IllegalStateException("Mode not found");
+    }
+
+    /**
+     * Finds the median of the first {@code n} values of an array by selection.
+     * The values are reordered.
+     *
+     * @param data the values (must not include NaN)
+     * @param n number of values
+     *
+     * @return the median
+     */
+    static double orderedMedian(double[] data, int n) {
+        final int n0 = n / 2;
+        select(data, n, n0);
+        double upper = data[n0];
+        if (n % 2 == 1) {
+            return upper;
+        }
+
+        // after selection, all values below position n0 are <= upper
+        double lower = data[0];
+        for (int i = 1; i < n0; i++) {
+            if (data[i] > lower) {
+                lower = data[i];
+            }
+        }
+        return (lower + upper) / 2;
+    }
+
+    /**
+     * Partially orders the first {@code n} elements of an array so that the element
+     * at position {@code k} is the one that would be there if the elements were
+     * sorted, elements before it are less than or equal to it and elements after 
+     * it are greater than or equal to it (Hoare's quickselect). The array must
+     * not contain NaN values.
+     *
+     * @param data the values
+     * @param n number of values to consider
+     * @param k the position to select
+     */
+    static void select(double[] data, int n, int k) {
+        int left = 0;
+        int right = n - 1;
+
+        while (right > left) {
+            // median of three pivot
+            int mid = (left + right) >>> 1;
+            if (data[mid] < data[left]) swap(data, mid, left);
+            if (data[right] < data[left]) swap(data, right, left);
+            if (data[right] < data[mid]) swap(data, right, mid);
+            final double pivot = data[mid];
+
+            int i = left;
+            int j = right;
+            while (i <= j) {
+                while (data[i] < pivot) i++;
+                while (data[j] > pivot) j--;
+                if (i <= j) {
+                    swap(data, i, j);
+                    i++;
+                    j--;
+                }
+            }
+
+            if (k <= j) {
+                right = j;
+            } else if (k >= i) {
+                left = i;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static void swap(double[] data, int i, int j) {
+        double temp = data[i];
+        data[i] = data[j];
+        data[j] = temp;
+    }
 }
@@ -65,7 +65,39 @@ public enum Statistic {
     SUM("sum", "sum of valid values", true),
     
     /** Sample variance */
-    VARIANCE("variance", "sample variance", false);
+    VARIANCE("variance", "sample variance", false),
+
+    /** 5th percentile. With {@linkplain StreamingSampleStats} this is estimated 
+     * with a bounded-memory sketch (see {@linkplain QuantileSketchProcessor}).
+     */
+    PERCENTILE_5("p5", "5th percentile", true, 0.05),
+
+    /** 25th percentile (lower quartile). With {@linkplain StreamingSampleStats} this
+     * is estimated with a bounded-memory sketch (see {@linkplain QuantileSketchProcessor}).
+     */
+    PERCENTILE_25("p25", "25th percentile", true, 0.25),
+
+    /** 75th percentile (upper quartile). With {@linkplain StreamingSampleStats} this
+     * is estimated with a bounded-memory sketch (see {@linkplain QuantileSketchProcessor}).
+     */
+    PERCENTILE_75("p75", "75th percentile", true, 0.75),
+
+    /** 95th percentile. With {@linkplain StreamingSampleStats} this is estimated 
+     * with a bounded-memory sketch (see {@linkplain QuantileSketchProcessor}).
+     */
+    PERCENTILE_95("p95", "95th percentile", true, 0.95),
+
+    /** Most frequent sample value (e.g. majority class of categorical data).
+     * With {@linkplain StreamingSampleStats} this is exact up to a limiting number
+     * of distinct values and estimated beyond it (see {@linkplain FrequencyProcessor}).
+     */
+    MODE("mode", "most frequent value", true),
+
+    /** Number of distinct sample values. With {@linkplain StreamingSampleStats} this
+     * is exact up to a limiting number of distinct values and estimated beyond it
+     * (see {@linkplain FrequencyProcessor}).
+     */
+    DISTINCT("distinct", "number of distinct values", true);
 
     private static final Map<String, Statistic> lookup;
     static {
@@ -78,14 +110,23 @@ public enum Statistic {
     private String name;
     private String desc;
     private boolean supportsIntResult;
+    private double quantile;
 
     /**
      * Private constructor
      */
     private Statistic(String name, String desc, boolean supportsIntResult) {
+        this(name, desc, supportsIntResult, Double.NaN);
+    }
+
+    /**
+     * Private constructor for quantile statistics
+     */
+    private Statistic(String name, String desc, boolean supportsIntResult, double quantile) {
         this.name = name;
         this.desc = desc;
         this.supportsIntResult = supportsIntResult;
+        this.quantile = quantile;
     }
 
     /**
@@ -115,6 +156,26 @@ public enum Statistic {
         return supportsIntResult;
     }
 
+    /**
+     * Tests if this statistic is a quantile (percentile) of the sample values.
+     * 
+     * @return {@code true} if this is a quantile statistic
+     */
+    public boolean isQuantile() {
+        return !Double.isNaN(quantile);
+    }
+
+    /**
+     * Gets the quantile, as a proportion between 0 and 1, for a quantile
+     * statistic. For example, 0.05 is returned for {@link #PERCENTILE_5}.
+     * 
+     * @return the quantile or {@code Double.NaN} if this is not a 
+     *         quantile statistic
+     */
+    public double getQuantile() {
+        return quantile;
+    }
+
     /**
      * Gets a Statistic constant by name (case-insensitive).
      * 
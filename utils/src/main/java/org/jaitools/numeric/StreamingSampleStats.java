@@ -384,6 +384,151 @@ public class StreamingSampleStats {
         }
     }
 
+    /**
+     * Offers a primitive sample value. This is equivalent to {@link #offer(Double)}
+     * but avoids boxing the value.
+     *
+     * @param sample the sample value
+     */
+    public void offer(double sample) {
+        for (Processor p : processors) {
+            if (p instanceof AbstractProcessor) {
+                ((AbstractProcessor) p).offer(sample);
+            } else {
+                p.offer(Double.valueOf(sample));
+            }
+        }
+    }
+
+    /**
+     * Offers an array of primitive sample values. Each processor is passed
+     * the whole block of values in turn.
+     *
+     * @param samples the sample values
+     */
+    public void offer(double[] samples) {
+        offer(samples, 0, samples == null ? 0 : samples.length);
+    }
+
+    /**
+     * Offers part of an array of primitive sample values. Each processor is passed
+     * the whole block of values in turn.
+     *
+     * @param samples the sample values
+     * @param off index of the first value to offer
+     * @param len number of values to offer
+     * 
+     * @throws IllegalArgumentException if {@code samples} is {@code null} or
+     *         {@code off} and {@code len} do not specify a valid part of the array
+     */
+    public void offer(double[] samples, int off, int len) {
+        AbstractProcessor.checkArrayArgs(samples, off, len);
+        for (Processor p : processors) {
+            if (p instanceof AbstractProcessor) {
+                ((AbstractProcessor) p).offer(samples, off, len);
+            } else {
+                for (int i = off, end = off + len; i < end; i++) {
+                    p.offer(Double.valueOf(samples[i]));
+                }
+            }
+        }
+    }
+
+    /**
+     * Merges the partial results of another sampler into this one. Both samplers
+     * must have the same statistics set and the same range settings. After merging,
+     * this sampler reports the statistics and counts that would have been obtained
+     * by offering it all of the values offered to both samplers. The other sampler
+     * is not modified.
+     * <p>
+     * Example: calculating statistics for each image tile separately and then
+     * combining them
+     * <pre><code>
+     * StreamingSampleStats total = new StreamingSampleStats();
+     * total.setStatistics(stats);
+     *
+     * for (StreamingSampleStats tileStats : statsPerTile) {
+     *     total.merge(tileStats);
+     * }
+     * </code></pre>
+     *
+     * @param other the sampler to merge into this one
+     *
+     * @throws IllegalArgumentException if {@code other} is {@code null} or this sampler,
+     *         or if the samplers have different statistics or range settings
+     * 
+     * @throws UnsupportedOperationException if a processor for one of the 
+     *         statistics does not support merging
+     * 
+     * @see #canMerge()
+     */
+    public void merge(StreamingSampleStats other) {
+        if (!canMerge()) {
+            throw new UnsupportedOperationException(
+                    "Cannot merge samplers with processors which do not support merging");
+        }
+        if (other == null) {
+            throw new IllegalArgumentException("other must not be null");
+        }
+        if (other == this) {
+            throw new IllegalArgumentException("Cannot merge a sampler with itself");
+        }
+        if (!getStatistics().equals(other.getStatistics())) {
+            throw new IllegalArgumentException(String.format(
+                    "Cannot merge samplers with different statistics: %s and %s",
+                    getStatistics(), other.getStatistics()));
+        }
+
+        if (rangesType != other.rangesType
+                || !sameRanges(ranges, other.ranges) 
+                || !sameRanges(noDataRanges, other.noDataRanges)) {
+            throw new IllegalArgumentException(
+                    "Cannot merge samplers with different range settings");
+        }
+
+        // pair processors before merging so that a mismatch leaves this sampler unchanged
+        List<Processor> otherProcessors = CollectionFactory.list();
+        for (Processor p : processors) {
+            Processor op = other.findProcessor(p.getSupported().iterator().next());
+            if (op == null || op.getClass() != p.getClass()) {
+                throw new IllegalArgumentException(
+                        "Cannot merge samplers with different processors");
+            }
+            otherProcessors.add(op);
+        }
+
+        for (int i = 0; i < processors.size(); i++) {
+            ((AbstractProcessor) processors.get(i)).merge(otherProcessors.get(i));
+        }
+    }
+
+    /**
+     * Tests if this sampler supports {@linkplain #merge(StreamingSampleStats)},
+     * which requires that the processors for all of its statistics do so. 
+     * The processors provided with JAITools all support merging but others,
+     * registered with {@code ProcessorFactory}, may not. Processors which do 
+     * not extend {@code AbstractProcessor} never support merging.
+     *
+     * @return {@code true} if merging is supported; {@code false} otherwise
+     * 
+     * @see AbstractProcessor#canMerge()
+     */
+    public boolean canMerge() {
+        for (Processor p : processors) {
+            if (!(p instanceof AbstractProcessor) || !((AbstractProcessor) p).canMerge()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tests if two lists contain the same ranges, ignoring order.
+     */
+    private static boolean sameRanges(List<Range<Double>> a, List<Range<Double>> b) {
+        return a.size() == b.size() && a.containsAll(b) && b.containsAll(a);
+    }
+
     /**
      * Searches the list of {@code Processors} for one that supports
      * the given {@code Statistic}.
@@ -26,11 +26,15 @@
 package org.jaitools.imageutils;
 
 import java.awt.image.RenderedImage;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.media.jai.TiledImage;
 
 import org.jaitools.imageutils.ImageSet.Iterator;
+import org.jaitools.imageutils.iterator.ParallelIteration;
 import org.junit.Before;
 import org.junit.Test;
 import static org.junit.Assert.*;
@@ -108,6 +112,90 @@ public class ImageSetTest extends TestBase {
         } while (iterator.next());
     }
 
+    @Test
+    public void getIterSampleArrays() {
+        Iterator<String> iterator = theSet.getIterator();
+        assertEquals(theSet.keySet().size(), iterator.getKeys().size());
+        
+        int[] intSample = null;
+        double[] doubleSample = new double[NAMES.length];
+        do {
+            for (int band = 0; band < NUM_BANDS; band++) {
+                Map<String, Number> sample = iterator.getSample(band);
+                intSample = iterator.getSampleInt(band, intSample);
+                assertSame(doubleSample, iterator.getSampleDouble(band, doubleSample));
+
+                List<String> keys = iterator.getKeys();
+                for (int i = 0; i < keys.size(); i++) {
+                    assertEquals(sample.get(keys.get(i)).intValue(), intSample[i]);
+                    assertEquals(sample.get(keys.get(i)).doubleValue(), doubleSample[i], 0.0);
+                }
+            }
+        } while (iterator.next());
+    }
+
+    @Test
+    public void splitIterator() {
+        ImageSet<String> tiledSet = createTiledSet();
+        Iterator<String> iterator = tiledSet.getIterator();
+        List<Iterator<String>> chunks = iterator.split(3);
+        assertTrue(chunks.size() > 1);
+
+        for (Iterator<String> chunk : chunks) {
+            assertEquals(iterator.getKeys(), chunk.getKeys());
+            do {
+                assertEquals(iterator.getPos(), chunk.getPos());
+                assertEquals(iterator.getSample(), chunk.getSample());
+                iterator.next();
+            } while (chunk.next());
+        }
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void parallelSum() {
+        ImageSet<String> tiledSet = createTiledSet();
+        
+        double expected = 0;
+        Iterator<String> iterator = tiledSet.getIterator();
+        double[] values = null;
+        do {
+            values = iterator.getSampleDouble(values);
+            for (double v : values) {
+                expected += v;
+            }
+        } while (iterator.next());
+        
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        try {
+            Double sum = ParallelIteration.run(tiledSet.getIterator().split(3), executor, 
+                    new ParallelIteration.ChunkTask<Iterator<String>, Double>() {
+                        public Double process(Iterator<String> chunk) {
+                            double total = 0;
+                            double[] values = null;
+                            do {
+                                values = chunk.getSampleDouble(values);
+                                for (double v : values) {
+                                    total += v;
+                                }
+                            } while (chunk.next());
+                            chunk.done();
+                            return total;
+                        }
+                    },
+                    new ParallelIteration.Reducer<Double>() {
+                        public Double reduce(Double first, Double second) {
+                            return first + second;
+                        }
+                    });
+            
+            assertEquals(expected, sum, 1.0e-8);
+            
+        } finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     public void copySet() {
         ImageSet<String> copy = ImageSet.copy(theSet);
@@ -121,6 +209,16 @@ public class ImageSetTest extends TestBase {
         }
     }
 
+    private ImageSet<String> createTiledSet() {
+        ImageSet<String> set = new ImageSet<String>();
+        for (int i = 0; i < NAMES.length; i++) {
+            set.add(NAMES[i], 
+                    createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 5, 4, NUM_BANDS, i * 10), 
+                    OUTSIDE);
+        }
+        return set;
+    }
+
     private void assertSample(Map<String, ? extends Number> sample, int x, int y, int band) {
         assertEquals(NAMES.length, sample.size());
         for (int i = 0; i < NAMES.length; i++) {
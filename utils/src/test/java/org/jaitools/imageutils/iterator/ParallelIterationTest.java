@@ -0,0 +1,111 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.imageutils.iterator;
+
+import java.awt.Rectangle;
+
+import javax.media.jai.TiledImage;
+
+import org.jaitools.imageutils.TestBase;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Tests for ParallelIteration.
+ * 
+ * @author michael
+ */
+public class ParallelIterationTest extends TestBase {
+    
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 41;
+    private static final int OUTSIDE = -1;
+
+    private static final ParallelIteration.Task<Long> SUM_TASK = 
+            new ParallelIteration.Task<Long>() {
+                public Long process(SimpleIterator iter) {
+                    long sum = 0;
+                    do {
+                        sum += iter.getSampleInt();
+                    } while (iter.next());
+                    return sum;
+                }
+            };
+
+    private static final ParallelIteration.Reducer<Long> SUM_REDUCER = 
+            new ParallelIteration.Reducer<Long>() {
+                public Long reduce(Long first, Long second) {
+                    return first + second;
+                }
+            };
+
+    @Test
+    public void sumMatchesSequential() {
+        TiledImage image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 8, 8, 1, 0);
+        Rectangle bounds = createAdjustedBounds(image.getBounds(), 2);
+        
+        for (SimpleIterator.Order order : SimpleIterator.Order.values()) {
+            SimpleIterator iter = new SimpleIterator(image, bounds, OUTSIDE, order);
+            long expected = SUM_TASK.process(iter);
+            iter.reset();
+            
+            long sum = ParallelIteration.run(iter, 4, SUM_TASK, SUM_REDUCER);
+            assertEquals(expected, sum);
+        }
+    }
+
+    @Test
+    public void reductionFollowsIteratorOrder() {
+        TiledImage image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 8, 8, 1, 0);
+        SimpleIterator iter = new SimpleIterator(image, null, OUTSIDE, SimpleIterator.Order.TILE_X_Y);
+
+        ParallelIteration.Task<String> firstPos = new ParallelIteration.Task<String>() {
+            public String process(SimpleIterator iter) {
+                return iter.getPos().x + "," + iter.getPos().y + ";";
+            }
+        };
+        
+        ParallelIteration.Reducer<String> concat = new ParallelIteration.Reducer<String>() {
+            public String reduce(String first, String second) {
+                return first + second;
+            }
+        };
+
+        StringBuilder sb = new StringBuilder();
+        for (SimpleIterator chunk : iter.split(4)) {
+            sb.append(chunk.getPos().x).append(",").append(chunk.getPos().y).append(";");
+        }
+
+        assertEquals(sb.toString(), ParallelIteration.run(iter, 4, firstPos, concat));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullTask() {
+        TiledImage image = createSequentialImage(WIDTH, HEIGHT, 1);
+        ParallelIteration.run(new SimpleIterator(image, null, OUTSIDE), 2, null, SUM_REDUCER);
+    }
+}
@@ -0,0 +1,188 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.imageutils.iterator;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.Ellipse2D;
+import java.awt.geom.GeneralPath;
+import java.util.List;
+
+import javax.media.jai.ROI;
+import javax.media.jai.ROIShape;
+import javax.media.jai.TiledImage;
+
+import org.jaitools.CollectionFactory;
+import org.jaitools.imageutils.ROIGeometry;
+import org.jaitools.imageutils.TestBase;
+
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.io.WKTReader;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ROIIterator.
+ * 
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class ROIIteratorTest extends TestBase {
+
+    private static final int WIDTH = 37;
+    private static final int HEIGHT = 29;
+
+    private TiledImage image;
+
+    @Test
+    public void polygonWithHole() throws Exception {
+        // integer vertices put many pixels on the boundary
+        Geometry geom = new WKTReader().read(
+                "POLYGON((2 3, 30 3, 30 25, 2 25, 2 3), (10 8, 20 8, 15 18, 10 8))");
+        assertVisitsROIPixels(new ROIGeometry(geom), null);
+    }
+
+    @Test
+    public void multiPolygonWithFractionalVertices() throws Exception {
+        Geometry geom = new WKTReader().read(
+                "MULTIPOLYGON(((-3.5 -2.25, 12.7 1.5, 5.2 14.9, -3.5 -2.25)), " +
+                "((20.1 10.6, 40.3 12.2, 33.3 35.7, 20.1 10.6)))");
+        assertVisitsROIPixels(new ROIGeometry(geom), null);
+    }
+
+    @Test
+    public void polygonalShape() {
+        GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO);
+        path.moveTo(1f, 1f);
+        path.lineTo(35f, 4.5f);
+        path.lineTo(18.5f, 27f);
+        path.closePath();
+        // second, overlapping triangle tests the non-zero winding rule
+        path.moveTo(5f, 20f);
+        path.lineTo(30f, 2f);
+        path.lineTo(33f, 22f);
+        path.closePath();
+        assertVisitsROIPixels(new ROIShape(path), null);
+    }
+
+    @Test
+    public void rectangleShapeWithIterBounds() {
+        Shape shape = new Rectangle(-5, 4, 30, 12);
+        assertVisitsROIPixels(new ROIShape(shape), new Rectangle(3, 2, 20, 20));
+    }
+
+    @Test
+    public void curvedShape() {
+        Shape shape = new Ellipse2D.Double(3.3, 2.1, 25.0, 19.5);
+        assertVisitsROIPixels(new ROIShape(shape), null);
+    }
+
+    @Test
+    public void genericROI() {
+        ROI roi = new ROI() {
+            @Override
+            public Rectangle getBounds() {
+                return new Rectangle(4, 4, 20, 20);
+            }
+
+            @Override
+            public boolean contains(int x, int y) {
+                return (x + y) % 3 == 0 && getBounds().contains(x, y);
+            }
+        };
+        assertVisitsROIPixels(roi, null);
+    }
+
+    @Test
+    public void roiOutsideImage() {
+        ROI roi = new ROIShape(new Rectangle(100, 100, 10, 10));
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 8, 6, 1, 0);
+        ROIIterator iter = new ROIIterator(image, null, roi);
+        assertFalse(iter.next());
+        assertFalse(iter.next());
+    }
+
+    @Test
+    public void resetIterator() {
+        ROI roi = new ROIShape(new Rectangle(5, 5, 10, 10));
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 8, 6, 1, 0);
+        ROIIterator iter = new ROIIterator(image, null, roi);
+        
+        int count = 0;
+        while (iter.next()) count++ ;
+        iter.reset();
+        while (iter.next()) count-- ;
+        assertEquals(0, count);
+    }
+
+    @Test(expected=IllegalStateException.class)
+    public void getSampleBeforeNext() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 8, 6, 1, 0);
+        ROIIterator iter = new ROIIterator(image, null, new ROIShape(new Rectangle(5, 5, 10, 10)));
+        iter.getSample();
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void nullROI() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 8, 6, 1, 0);
+        new ROIIterator(image, null, null);
+    }
+
+    /**
+     * Checks that the iterator visits exactly those pixels for which 
+     * ROI.contains is true, in tile order, and returns the correct values.
+     */
+    private void assertVisitsROIPixels(ROI roi, Rectangle bounds) {
+        image = createSequentialTiledImage(-2, -1, WIDTH, HEIGHT, 8, 6, 2, 0);
+        
+        List<Point> expected = CollectionFactory.list();
+        SimpleIterator simple = new SimpleIterator(image, bounds, null, SimpleIterator.Order.TILE_X_Y);
+        do {
+            Point p = simple.getPos();
+            if (simple.isWithinImage() && roi.contains(p.x, p.y)) {
+                expected.add(p);
+            }
+        } while (simple.next());
+        assertFalse(expected.isEmpty());
+
+        ROIIterator iter = new ROIIterator(image, bounds, roi);
+        int k = 0;
+        while (iter.next()) {
+            assertTrue("too many pixels visited", k < expected.size());
+            Point p = iter.getPos();
+            assertEquals(expected.get(k++), p);
+            for (int band = 0; band < 2; band++) {
+                assertEquals(image.getSample(p.x, p.y, band), iter.getSampleInt(band));
+                assertEquals(image.getSample(p.x, p.y, band), iter.getSample(band).intValue());
+            }
+        }
+        assertEquals(expected.size(), k);
+    }
+
+}
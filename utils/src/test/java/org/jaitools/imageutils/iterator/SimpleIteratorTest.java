@@ -27,7 +27,10 @@ package org.jaitools.imageutils.iterator;
 
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 import javax.media.jai.PlanarImage;
 
@@ -404,6 +407,124 @@ public class SimpleIteratorTest extends TestBase {
         }
     }
     
+    @Test
+    public void primitiveSamplesMatchNumberSamples() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, WIDTH / 2, HEIGHT / 2, NUM_BANDS, 0);
+        Rectangle iterBounds = createAdjustedBounds(image.getBounds(), 5);
+        iter = new SimpleIterator(image, iterBounds, OUTSIDE, SimpleIterator.Order.TILE_X_Y);
+
+        do {
+            for (int band = 0; band < NUM_BANDS; band++) {
+                Number sample = iter.getSample(band);
+                assertEquals(sample.intValue(), iter.getSampleInt(band));
+                assertEquals(sample.floatValue(), iter.getSampleFloat(band), 0.0f);
+                assertEquals(sample.doubleValue(), iter.getSampleDouble(band), 0.0d);
+            }
+        } while (iter.next());
+    }
+
+    @Test
+    public void primitiveSamplesWithNullOutsideValue() {
+        image = createSequentialImage(WIDTH, HEIGHT, 1);
+        Rectangle iterBounds = createAdjustedBounds(image.getBounds(), 1);
+        iter = new SimpleIterator(image, iterBounds, null);
+
+        assertFalse(iter.isWithinImage());
+        assertEquals(0, iter.getSampleInt());
+        assertTrue(Float.isNaN(iter.getSampleFloat()));
+        assertTrue(Double.isNaN(iter.getSampleDouble()));
+    }
+
+    @Test
+    public void getRowMatchesSamples() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 5, 4, NUM_BANDS, 0);
+        Rectangle iterBounds = createAdjustedBounds(image.getBounds(), 3);
+        iter = new SimpleIterator(image, iterBounds, OUTSIDE);
+
+        int[] intRow = null;
+        float[] floatRow = null;
+        double[] doubleRow = new double[iterBounds.width];
+        for (int y = iterBounds.y; y < iterBounds.y + iterBounds.height; y++) {
+            for (int band = 0; band < NUM_BANDS; band++) {
+                intRow = iter.getRowInt(y, band, intRow);
+                floatRow = iter.getRowFloat(y, band, floatRow);
+                assertSame(doubleRow, iter.getRowDouble(y, band, doubleRow));
+
+                for (int i = 0; i < iterBounds.width; i++) {
+                    Number sample = iter.getSample(iterBounds.x + i, y, band);
+                    assertEquals(sample.intValue(), intRow[i]);
+                    assertEquals(sample.floatValue(), floatRow[i], 0.0f);
+                    assertEquals(sample.doubleValue(), doubleRow[i], 0.0d);
+                }
+            }
+        }
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void getRowOutsideBounds() {
+        image = createSequentialImage(WIDTH, HEIGHT, 1);
+        iter = new SimpleIterator(image, null, OUTSIDE);
+        iter.getRowInt(HEIGHT, 0, null);
+    }
+
+    @Test
+    public void tileOrderVisitsEachPositionOnce() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 5, 4, NUM_BANDS, 0);
+        Rectangle iterBounds = createAdjustedBounds(image.getBounds(), 3);
+        iter = new SimpleIterator(image, iterBounds, OUTSIDE, SimpleIterator.Order.TILE_X_Y);
+
+        Set<Point> visited = new HashSet<Point>();
+        do {
+            assertTrue(visited.add(iter.getPos()));
+        } while (iter.next());
+        
+        assertEquals(iterBounds.width * iterBounds.height, visited.size());
+    }
+
+    @Test
+    public void splitPreservesOrder() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 5, 4, NUM_BANDS, 0);
+        Rectangle iterBounds = createAdjustedBounds(image.getBounds(), 3);
+        
+        for (SimpleIterator.Order order : SimpleIterator.Order.values()) {
+            assertSplitSequence(new SimpleIterator(image, iterBounds, OUTSIDE, order), 3);
+        }
+    }
+
+    @Test
+    public void splitSingleTileRow() {
+        image = createSequentialTiledImage(0, 0, WIDTH, HEIGHT, 4, HEIGHT, NUM_BANDS, 0);
+        iter = new SimpleIterator(image, null, OUTSIDE, SimpleIterator.Order.TILE_X_Y);
+        List<SimpleIterator> chunks = iter.split(3);
+        assertEquals(3, chunks.size());
+        assertSplitSequence(iter, 3);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void splitInvalidChunks() {
+        image = createSequentialImage(WIDTH, HEIGHT, 1);
+        iter = new SimpleIterator(image, null, OUTSIDE);
+        iter.split(0);
+    }
+
+    private void assertSplitSequence(SimpleIterator src, int maxChunks) {
+        List<SimpleIterator> chunks = src.split(maxChunks);
+        assertTrue(chunks.size() <= maxChunks);
+        
+        src.reset();
+        for (SimpleIterator chunk : chunks) {
+            assertEquals(src.getOrder(), chunk.getOrder());
+            do {
+                assertEquals(src.getPos(), chunk.getPos());
+                for (int band = 0; band < NUM_BANDS; band++) {
+                    assertEquals(src.getSample(band), chunk.getSample(band));
+                }
+                src.next();
+            } while (chunk.next());
+        }
+        assertFalse(src.hasNext());
+    }
+
     @Test
     public void doneClearsSourceImageRef() {
         image = createSequentialImage(WIDTH, WIDTH, 1);
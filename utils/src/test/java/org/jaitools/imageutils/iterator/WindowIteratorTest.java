@@ -176,6 +176,45 @@ public class WindowIteratorTest extends TestBase {
         doWindowIntTest(iter, iterBounds, winDim, key, 1, 1);
     }
 
+    @Test
+    public void multiTileImage() {
+        image = createSequentialTiledImage(OX, OY, WIDTH, HEIGHT, 5, 4, NUM_BANDS, 0);
+
+        Rectangle bounds = createAdjustedBounds(image.getBounds(), 2);
+        Dimension winDim = new Dimension(5, 3);
+        Point key = new Point(3, 1);
+        WindowIterator iter = new WindowIterator(image, bounds, winDim, key, 1, 2, OUTSIDE);
+        doWindowIntTest(iter, bounds, winDim, key, 1, 2);
+    }
+
+    @Test
+    public void getWindowDouble_DoubleImage() {
+        image = ImageUtils.createConstantImage(OX, OY, WIDTH, HEIGHT, 4, 4, new Double[]{0d});
+        for (int y = OY; y < OY + HEIGHT; y++) {
+            for (int x = OX; x < OX + WIDTH; x++) {
+                image.setSample(x, y, 0, x + y / 10.0);
+            }
+        }
+
+        Dimension winDim = new Dimension(3, 3);
+        Point key = new Point(1, 1);
+        WindowIterator iter = new WindowIterator(image, null, winDim, key, Double.NaN);
+        double[][] window = new double[winDim.height][winDim.width];
+        do {
+            Point pos = iter.getPos();
+            iter.getWindowDouble(window);
+            for (int wy = 0; wy < winDim.height; wy++) {
+                for (int wx = 0; wx < winDim.width; wx++) {
+                    int x = pos.x - key.x + wx;
+                    int y = pos.y - key.y + wy;
+                    double expected = image.getBounds().contains(x, y) ? 
+                            image.getSampleDouble(x, y, 0) : Double.NaN;
+                    assertEquals(expected, window[wy][wx], 0.0);
+                }
+            }
+        } while (iter.next());
+    }
+
     @Test
     public void dataWindowNumber_IntImage() {
         image = ImageUtils.createConstantImage(WIDTH, HEIGHT, Integer.valueOf(0));
@@ -96,6 +96,78 @@ public class WritableSimpleIteratorTest extends TestBase {
         } while (iter.next());
     }
 
+    @Test
+    public void setSequentialPrimitiveValues() {
+        final int[] startValues = {100, 200, 300};
+        
+        Integer[] fill = new Integer[startValues.length];
+        Arrays.fill(fill, 0);
+        image = ImageUtils.createConstantImage(-3, 3, WIDTH, HEIGHT, fill);
+        iter = new WritableSimpleIterator(image, null, 0);
+
+        int k = 0;
+        do {
+            iter.setSampleInt(0, startValues[0] + k);
+            iter.setSampleFloat(1, startValues[1] + k);
+            iter.setSampleDouble(2, startValues[2] + k);
+            k++ ;
+        } while (iter.next());
+
+        assertImageValues(startValues);
+    }
+
+    @Test
+    public void setPrimitiveSampleReturnsFalseOutsideImage() {
+        image = ImageUtils.createConstantImage(WIDTH, HEIGHT, 0);
+        final Rectangle imageBounds = image.getBounds();
+        Rectangle iterBounds = createAdjustedBounds(imageBounds, 5);
+        iter = new WritableSimpleIterator(image, iterBounds, 0);
+
+        do {
+            boolean inside = imageBounds.contains(iter.getPos());
+            assertEquals(inside, iter.setSampleInt(1));
+            assertEquals(inside, iter.setSampleDouble(1.0));
+        } while (iter.next());
+    }
+
+    @Test
+    public void setRowValues() {
+        final int[] startValues = {100, 200, 300};
+        
+        Integer[] fill = new Integer[startValues.length];
+        Arrays.fill(fill, 0);
+        image = ImageUtils.createConstantImage(-3, 3, WIDTH, HEIGHT, 5, 4, fill);
+        Rectangle iterBounds = createAdjustedBounds(image.getBounds(), 2);
+        iter = new WritableSimpleIterator(image, iterBounds, 0);
+
+        final int w = image.getWidth();
+        int[] intRow = new int[iterBounds.width];
+        double[] doubleRow = new double[iterBounds.width];
+        for (int y = iterBounds.y, iy = -2; iy < HEIGHT + 2; y++, iy++) {
+            for (int band = 0; band < startValues.length; band++) {
+                for (int i = 0; i < iterBounds.width; i++) {
+                    intRow[i] = startValues[band] + iy * w + i - 2;
+                    doubleRow[i] = intRow[i];
+                }
+                boolean inside = iy >= 0 && iy < HEIGHT;
+                if (band == 1) {
+                    assertEquals(inside, iter.setRowDouble(y, band, doubleRow));
+                } else {
+                    assertEquals(inside, iter.setRowInt(y, band, intRow));
+                }
+            }
+        }
+
+        assertImageValues(startValues);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void setRowValuesTooShort() {
+        image = ImageUtils.createConstantImage(WIDTH, HEIGHT, 0);
+        iter = new WritableSimpleIterator(image, null, 0);
+        iter.setRowInt(0, 0, new int[WIDTH - 1]);
+    }
+
     @Test
     public void setSampleForPosition() {
         final int[] startValues = {100, 200, 300};
@@ -0,0 +1,134 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AbstractProcessor.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class AbstractProcessorTest {
+
+    @Test
+    public void testLegacySubclass() {
+        System.out.println("   sub-class overriding only update(Double)");
+        LegacyMaxProcessor p = new LegacyMaxProcessor();
+        p.addNoDataValue(-1.0);
+
+        p.offer(3.0);
+        p.offer(Double.valueOf(7.0));
+        p.offer((Double) null);
+        p.offer(new double[] {1.0, -1.0, 5.0}, 0, 3);
+
+        assertEquals(6, p.getNumOffered());
+        assertEquals(4, p.getNumAccepted());
+        assertEquals(1, p.getNumNoData());
+        assertEquals(7.0, p.get(Statistic.MAX), 0.0);
+    }
+
+    @Test
+    public void testCanMerge() {
+        System.out.println("   merge support");
+        assertFalse(new LegacyMaxProcessor().canMerge());
+
+        for (Statistic stat : Statistic.values()) {
+            StreamingSampleStats sss = new StreamingSampleStats();
+            sss.setStatistic(stat);
+            assertTrue(stat.name(), sss.canMerge());
+        }
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testSubclassWithStateNotMerged() {
+        System.out.println("   sub-class of a bundled processor with its own state");
+        CountingSumProcessor p = new CountingSumProcessor();
+        assertFalse(p.canMerge());
+        p.offer(1.0);
+        p.merge(new CountingSumProcessor());
+    }
+
+    @Test(expected=UnsupportedOperationException.class)
+    public void testMergeUnsupported() {
+        System.out.println("   merge unsupported");
+        LegacyMaxProcessor p = new LegacyMaxProcessor();
+        p.offer(1.0);
+        p.merge(new LegacyMaxProcessor());
+    }
+
+    /**
+     * A sub-class of a bundled processor which adds state that
+     * it does not merge.
+     */
+    private static class CountingSumProcessor extends SumProcessor {
+        int numLarge;
+
+        @Override
+        protected boolean update(double sample) {
+            if (sample > 100) {
+                numLarge++;
+            }
+            return super.update(sample);
+        }
+
+        @Override
+        public boolean canMerge() {
+            return false;
+        }
+    }
+
+    /**
+     * A processor written against the original API, which only
+     * implements {@code update(Double)}.
+     */
+    private static class LegacyMaxProcessor extends AbstractProcessor {
+        private Double max;
+
+        public Collection<Statistic> getSupported() {
+            return Collections.singleton(Statistic.MAX);
+        }
+
+        @Override
+        protected boolean update(Double sample) {
+            if (isAccepted(sample)) {
+                max = max == null ? sample : Math.max(max, sample);
+                return true;
+            }
+            return false;
+        }
+
+        public Double get(Statistic stat) {
+            return max;
+        }
+    }
+}
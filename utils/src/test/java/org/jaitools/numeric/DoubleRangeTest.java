@@ -0,0 +1,127 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.List;
+
+import org.jaitools.CollectionFactory;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for DoubleRange.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class DoubleRangeTest {
+
+    private static final double[] TEST_VALUES = {
+        Double.NEGATIVE_INFINITY, -100, -10, -1.0e-10, 0, 1.0e-10, 0.5, 1, 
+        10 - 1.0e-10, 10, 10 + 1.0e-6, 50, Double.POSITIVE_INFINITY, Double.NaN
+    };
+
+    @Test
+    public void testContainsMatchesRange() {
+        System.out.println("   contains gives same results as Range");
+
+        List<Range<Double>> ranges = CollectionFactory.list();
+        ranges.add(Range.create(0.0, true, 10.0, true));
+        ranges.add(Range.create(0.0, false, 10.0, false));
+        ranges.add(Range.create(null, false, 10.0, true));
+        ranges.add(Range.create(0.0, false, null, false));
+        ranges.add(Range.create(Double.NEGATIVE_INFINITY, false, Double.POSITIVE_INFINITY, false));
+        ranges.add(Range.create(1.0, true, Double.NaN, true));
+        ranges.add(Range.create(10.0));
+        ranges.add(Range.create(Double.NaN));
+        ranges.add(Range.create(Double.POSITIVE_INFINITY));
+        ranges.add(Range.create(Double.NEGATIVE_INFINITY));
+
+        for (Range<Double> r : ranges) {
+            DoubleRange dr = DoubleRange.fromRange(r);
+            for (double value : TEST_VALUES) {
+                assertEquals(r + " contains " + value, r.contains(value), dr.contains(value));
+            }
+        }
+    }
+
+    @Test
+    public void testRoundTrip() {
+        System.out.println("   conversion to and from Range");
+
+        Range<Double> r = Range.create(-1.0, false, 5.0, true);
+        assertEquals(r, DoubleRange.fromRange(r).toRange());
+
+        r = Range.create(null, false, 5.0, false);
+        assertEquals(r, DoubleRange.fromRange(r).toRange());
+
+        r = Range.create(5.0);
+        assertEquals(r, DoubleRange.fromRange(r).toRange());
+
+        r = Range.create(Double.NaN);
+        assertTrue(DoubleRange.fromRange(r).toRange().contains(Double.NaN));
+    }
+
+    @Test
+    public void testCreate() {
+        System.out.println("   create");
+
+        DoubleRange r = DoubleRange.create(Double.NEGATIVE_INFINITY, true, 1, true);
+        assertFalse(r.isMinIncluded());
+        assertTrue(r.isMaxIncluded());
+        assertFalse(r.isPoint());
+        assertTrue(r.contains(-1.0e100));
+
+        r = DoubleRange.create(2, true, 2, true);
+        assertTrue(r.isPoint());
+        assertTrue(r.contains(2));
+        assertFalse(r.contains(2.1));
+    }
+
+    @Test
+    public void testEquals() {
+        System.out.println("   equals and hashCode");
+        DoubleRange r1 = DoubleRange.create(0, true, 1, false);
+        DoubleRange r2 = DoubleRange.fromRange(Range.create(0.0, true, 1.0, false));
+        assertEquals(r1, r2);
+        assertEquals(r1.hashCode(), r2.hashCode());
+        assertFalse(r1.equals(DoubleRange.create(0, true, 1, true)));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMinGreaterThanMax() {
+        System.out.println("   min greater than max");
+        DoubleRange.create(2, true, 1, true);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPointWithExcludedEndPoint() {
+        System.out.println("   point with excluded end-point");
+        DoubleRange.create(1, true, 1, false);
+    }
+}
@@ -25,7 +25,11 @@
 
 package org.jaitools.numeric;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -107,4 +111,180 @@ public class HistogramTest {
         assertEquals(Arrays.asList(2, 3, 0), hist.getCounts());
     }
 
+    @Test
+    public void testManyBinsAddedOutOfOrder() {
+        final int numBins = 500;
+        final double width = 0.5;
+        List<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < numBins; i++) {
+            order.add(i);
+        }
+        Collections.shuffle(order, new Random(42));
+        for (int i : order) {
+            hist.addBin(Range.create(i * width, true, (i + 1) * width, false));
+        }
+
+        for (int i = 0; i < numBins; i++) {
+            assertEquals(i, hist.getBinForValue(i * width));
+            assertEquals(i, hist.getBinForValue(i * width + width / 2));
+        }
+        assertEquals(Histogram.NO_BIN, hist.getBinForValue(-0.1));
+        assertEquals(Histogram.NO_BIN, hist.getBinForValue(numBins * width));
+    }
+
+    @Test
+    public void testOpenAndPointBins() {
+        hist.addBin(Range.create(1.0, false, 2.0, false));
+        hist.addBin(Range.create(1.0, true, 1.0, true));
+        hist.addBin(Range.create(null, false, 0.0, true));
+        hist.addBin(Range.create(2.0, true, null, false));
+
+        assertEquals(0, hist.getBinForValue(-1.0e10));
+        assertEquals(0, hist.getBinForValue(0.0));
+        assertEquals(Histogram.NO_BIN, hist.getBinForValue(0.5));
+        assertEquals(1, hist.getBinForValue(1.0));
+        assertEquals(2, hist.getBinForValue(1.5));
+        assertEquals(3, hist.getBinForValue(2.0));
+        assertEquals(3, hist.getBinForValue(1.0e10));
+        assertEquals(Histogram.NO_BIN, hist.getBinForValue(Double.NaN));
+
+        hist.addValues(new double[] {-5, 0.5, 1, 1.5, 1.5, 7, Double.NaN});
+        assertEquals(Arrays.asList(1, 1, 2, 1), hist.getCounts());
+    }
+
+    @Test
+    public void testPrimitiveValuesMatchBoxedValues() {
+        Histogram<Double> boxed = new Histogram<Double>();
+        for (int i = 0; i < 20; i++) {
+            Range<Double> r = Range.create(i * 1.5, true, i * 1.5 + 1.0, i % 2 == 0);
+            hist.addBin(r);
+            boxed.addBin(r);
+        }
+
+        Random rand = new Random(42);
+        double[] values = new double[1000];
+        List<Double> valueList = new ArrayList<Double>();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rand.nextInt(70) / 2.0;
+            valueList.add(values[i]);
+        }
+
+        hist.addValues(values);
+        boxed.addValues(valueList);
+        assertEquals(boxed.getCounts(), hist.getCounts());
+    }
+
+    @Test
+    public void testValuesOnBinEdge() {
+        hist.addBin(Range.create(0.0, true, 1.0, false));
+        hist.addBin(Range.create(1.0, true, 2.0, true));
+        hist.addBin(Range.create(2.0, false, 3.0, false));
+        Histogram<Double> eqHist = Histogram.createEqualWidth(0.0, 2.0, 2);
+
+        final double tol = NumberOperations.getDoubleTolerance();
+        double[] values = {
+            1.0, 1.0 - tol / 2, 1.0 + tol / 2, 1.0 - 2 * tol,
+            2.0, 2.0 + tol / 2, 0.0 - tol / 2, 3.0 - tol / 2
+        };
+
+        for (double value : values) {
+            int expected = hist.getBinForValue(Double.valueOf(value));
+            assertEquals("value " + value, expected, hist.getBinForValue(value));
+            if (value <= 2.0 + tol) {
+                assertEquals("value " + value, expected, eqHist.getBinForValue(value));
+                assertEquals("value " + value, expected, eqHist.getBinForValue(Double.valueOf(value)));
+            }
+        }
+
+        assertEquals(1, hist.getBinForValue(1.0 - tol / 2));
+        assertEquals(0, hist.getBinForValue(1.0 - 2 * tol));
+        assertEquals(1, hist.getBinForValue(2.0 + tol / 2));
+        assertEquals(0, hist.getBinForValue(0.0 - tol / 2));
+        assertEquals(Histogram.NO_BIN, hist.getBinForValue(3.0 - tol / 2));
+
+        hist.addValues(values);
+        List<Double> valueList = new ArrayList<Double>();
+        for (double value : values) {
+            valueList.add(value);
+        }
+        Histogram<Double> boxed = new Histogram<Double>();
+        boxed.addBin(Range.create(0.0, true, 1.0, false));
+        boxed.addBin(Range.create(1.0, true, 2.0, true));
+        boxed.addBin(Range.create(2.0, false, 3.0, false));
+        boxed.addValues(valueList);
+        assertEquals(boxed.getCounts(), hist.getCounts());
+    }
+
+    @Test
+    public void testIntValues() {
+        Histogram<Integer> intHist = new Histogram<Integer>();
+        intHist.addBin(Range.create(0, true, 10, false));
+        intHist.addBin(Range.create(10, true, 20, true));
+
+        intHist.addValues(new int[] {-1, 0, 5, 9, 10, 20, 21});
+        assertEquals(Arrays.asList(3, 2), intHist.getCounts());
+    }
+
+    @Test
+    public void testEqualWidth() {
+        Histogram<Double> eqHist = Histogram.createEqualWidth(0.0, 1.0, 10);
+        assertEquals(10, eqHist.size());
+
+        assertEquals(0, eqHist.getBinForValue(0.0));
+        assertEquals(0, eqHist.getBinForValue(0.05));
+        assertEquals(5, eqHist.getBinForValue(0.5));
+        assertEquals(9, eqHist.getBinForValue(0.95));
+        assertEquals(9, eqHist.getBinForValue(1.0));
+        assertEquals(Histogram.NO_BIN, eqHist.getBinForValue(-0.01));
+        assertEquals(Histogram.NO_BIN, eqHist.getBinForValue(1.01));
+        assertEquals(Histogram.NO_BIN, eqHist.getBinForValue(Double.NaN));
+    }
+
+    @Test
+    public void testEqualWidthMatchesBinSearch() {
+        final double min = -3.7;
+        final double max = 11.3;
+        final int numBins = 37;
+        Histogram<Double> eqHist = Histogram.createEqualWidth(min, max, numBins);
+
+        // the same bins added individually
+        double width = (max - min) / numBins;
+        for (int i = 0; i < numBins; i++) {
+            double upper = i == numBins - 1 ? max : min + (i + 1) * width;
+            hist.addBin(Range.create(min + i * width, true, upper, i == numBins - 1));
+        }
+
+        Random rand = new Random(42);
+        double[] values = new double[10000];
+        for (int i = 0; i < values.length; i++) {
+            if (i % 10 == 0) {
+                // exact bin edges
+                values[i] = min + rand.nextInt(numBins + 1) * width;
+            } else {
+                values[i] = min - 1 + rand.nextDouble() * (max - min + 2);
+            }
+            assertEquals(hist.getBinForValue(values[i]), eqHist.getBinForValue(values[i]));
+        }
+
+        eqHist.addValues(values);
+        hist.addValues(values);
+        assertEquals(hist.getCounts(), eqHist.getCounts());
+    }
+
+    @Test
+    public void testEqualWidthWithAddedBin() {
+        Histogram<Double> eqHist = Histogram.createEqualWidth(0.0, 1.0, 4);
+        eqHist.addBin(Range.create(-1.0, true, 0.0, false));
+
+        assertEquals(5, eqHist.size());
+        assertEquals(0, eqHist.getBinForValue(-0.5));
+        assertEquals(1, eqHist.getBinForValue(0.0));
+        assertEquals(4, eqHist.getBinForValue(1.0));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testEqualWidthInvalidArgs() {
+        Histogram.createEqualWidth(1.0, 0.0, 10);
+    }
+
 }
@@ -0,0 +1,138 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LongCountMap.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class LongCountMapTest {
+
+    @Test
+    public void addAndGet() {
+        System.out.println("   add and get counts");
+        LongCountMap map = new LongCountMap();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random rr = new Random(42);
+
+        // runs of equal keys, with enough keys to force rehashing
+        for (int i = 0; i < 20000; i++) {
+            long key = rr.nextInt(5000) - 2500;
+            int run = 1 + rr.nextInt(3);
+            for (int k = 0; k < run; k++) {
+                map.add(key, 2);
+                Long n = expected.get(key);
+                expected.put(key, n == null ? 2L : n + 2);
+            }
+        }
+
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> e : expected.entrySet()) {
+            assertEquals(e.getValue().longValue(), map.get(e.getKey()));
+        }
+        assertEquals(0, map.get(99999L));
+    }
+
+    @Test
+    public void putReplacesCount() {
+        System.out.println("   put replaces count");
+        LongCountMap map = new LongCountMap();
+        map.add(7L, 3);
+        map.put(7L, 10);
+        map.put(8L, 1);
+        map.add(7L, 1);
+
+        assertEquals(2, map.size());
+        assertEquals(11, map.get(7L));
+        assertEquals(1, map.get(8L));
+    }
+
+    @Test
+    public void scanSlots() {
+        System.out.println("   scan slots");
+        LongCountMap map = new LongCountMap();
+        for (long key = -10; key < 10; key++) {
+            map.add(key, key + 11);
+        }
+
+        int n = 0;
+        long total = 0;
+        for (int i = 0; i < map.capacity(); i++) {
+            if (map.countAt(i) > 0) {
+                assertEquals(map.keyAt(i) + 11, map.countAt(i));
+                total += map.countAt(i);
+                n++;
+            }
+        }
+        assertEquals(20, n);
+        assertEquals(210, total);
+    }
+
+    @Test
+    public void addAll() {
+        System.out.println("   add all counts of another map");
+        LongCountMap a = new LongCountMap();
+        LongCountMap b = new LongCountMap();
+        a.add(1L, 1);
+        a.add(2L, 2);
+        b.add(2L, 5);
+        b.add(3L, 1);
+        a.addAll(b);
+
+        assertArrayEquals(new long[] {1, 2, 3}, a.sortedKeys());
+        assertEquals(1, a.get(1L));
+        assertEquals(7, a.get(2L));
+        assertEquals(1, a.get(3L));
+    }
+
+    @Test
+    public void subtractAllThenAdd() {
+        System.out.println("   subtract from all counts then add");
+        LongCountMap map = new LongCountMap();
+        for (long key = 0; key < 1000; key++) {
+            map.add(key, 1 + key % 3);
+        }
+        // the cached slot of the last key is emptied here
+        map.subtractAll(1);
+        map.add(999L, 1);
+
+        assertEquals(667, map.size());
+        for (long key = 0; key < 999; key++) {
+            assertEquals(key % 3, map.get(key));
+        }
+        assertEquals(1, map.get(999L));
+    }
+}
@@ -0,0 +1,143 @@
+/* 
+ *  Copyright (c) 2011, Michael Bedward. All rights reserved. 
+ *   
+ *  Redistribution and use in source and binary forms, with or without modification, 
+ *  are permitted provided that the following conditions are met: 
+ *   
+ *  - Redistributions of source code must retain the above copyright notice, this  
+ *    list of conditions and the following disclaimer. 
+ *   
+ *  - Redistributions in binary form must reproduce the above copyright notice, this 
+ *    list of conditions and the following disclaimer in the documentation and/or 
+ *    other materials provided with the distribution.   
+ *   
+ *  THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND 
+ *  ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED 
+ *  WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE 
+ *  DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE FOR 
+ *  ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES 
+ *  (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; 
+ *  LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON 
+ *  ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT 
+ *  (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS 
+ *  SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE. 
+ */   
+
+package org.jaitools.numeric;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RangeMatcher.
+ *
+ * @author Michael Bedward
+ * @since 1.3
+ * @version $Id$
+ */
+public class RangeMatcherTest {
+
+    @Test
+    public void emptyMatcher() {
+        RangeMatcher matcher = new RangeMatcher(Collections.<Range<Double>>emptyList());
+        assertTrue(matcher.isEmpty());
+        assertFalse(matcher.contains(0.0));
+        assertFalse(matcher.contains(Double.NaN));
+    }
+
+    @Test
+    public void openAndClosedEndPoints() {
+        List<Range<Double>> ranges = new ArrayList<Range<Double>>();
+        ranges.add(Range.create(0.0, true, 1.0, false));
+        ranges.add(Range.create(1.0, false, 2.0, true));
+        ranges.add(Range.create(5.0, true, 5.0, true));
+        RangeMatcher matcher = new RangeMatcher(ranges);
+
+        assertFalse(matcher.isEmpty());
+        assertFalse(matcher.contains(-0.5));
+        assertTrue(matcher.contains(0.0));
+        assertTrue(matcher.contains(0.5));
+        assertFalse(matcher.contains(1.0));
+        assertTrue(matcher.contains(1.5));
+        assertTrue(matcher.contains(2.0));
+        assertFalse(matcher.contains(3.0));
+        assertTrue(matcher.contains(5.0));
+        assertFalse(matcher.contains(5.5));
+        assertFalse(matcher.contains(Double.NaN));
+    }
+
+    @Test
+    public void infiniteRanges() {
+        List<Range<Double>> ranges = new ArrayList<Range<Double>>();
+        ranges.add(Range.create(null, false, -10.0, false));
+        ranges.add(Range.create(10.0, true, null, false));
+        RangeMatcher matcher = new RangeMatcher(ranges);
+
+        assertTrue(matcher.contains(Double.NEGATIVE_INFINITY));
+        assertTrue(matcher.contains(-1.0e100));
+        assertFalse(matcher.contains(-10.0));
+        assertFalse(matcher.contains(0.0));
+        assertTrue(matcher.contains(10.0));
+        assertTrue(matcher.contains(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    public void valuesAndNaN() {
+        RangeMatcher matcher = new RangeMatcher(
+                Arrays.asList(1.0, Double.NaN, 3.0), 
+                Collections.singletonList(Range.create(2.0, true, 2.5, true)));
+
+        assertTrue(matcher.contains(Double.NaN));
+        assertTrue(matcher.contains(1.0));
+        assertTrue(matcher.contains(2.2));
+        assertTrue(matcher.contains(3.0));
+        assertFalse(matcher.contains(1.5));
+        assertFalse(matcher.contains(4.0));
+    }
+
+    @Test
+    public void tolerance() {
+        RangeMatcher matcher = new RangeMatcher(
+                Arrays.asList(1.0), 
+                Collections.singletonList(Range.create(2.0, false, 3.0, true)),
+                1.0e-6);
+
+        assertTrue(matcher.contains(1.0 + 1.0e-7));
+        assertFalse(matcher.contains(1.0 + 1.0e-5));
+        assertFalse(matcher.contains(2.0 + 1.0e-7));
+        assertTrue(matcher.contains(2.0 + 1.0e-5));
+        assertTrue(matcher.contains(3.0 + 1.0e-7));
+        assertFalse(matcher.contains(3.0 + 1.0e-5));
+    }
+
+    @Test
+    public void matchesRangeContains() {
+        Random rand = new Random(42);
+        for (int trial = 0; trial < 20; trial++) {
+            List<Range<Double>> ranges = new ArrayList<Range<Double>>();
+            for (int i = 0; i < 10; i++) {
+                double min = rand.nextInt(100);
+                double max = min + rand.nextInt(10);
+                ranges.add(Range.create(min, rand.nextBoolean() || min == max, 
+                        max, rand.nextBoolean() || min == max));
+            }
+
+            RangeMatcher matcher = new RangeMatcher(ranges);
+            for (int i = 0; i < 500; i++) {
+                double value = rand.nextInt(220) / 2.0;
+                boolean expected = false;
+                for (Range<Double> r : ranges) {
+                    expected |= r.contains(value);
+                }
+                assertEquals("value " + value, expected, matcher.contains(value));
+            }
+        }
+    }
+
+}
@@ -228,6 +228,25 @@ public class RangeUtilsTest {
         assertEquals(new Range<Integer>(20, true, 30, true), result.get(1));
     }
 
+    @Test
+    public void testSimplifyKeepsGapAtExcludedEndPoint() {
+        System.out.println("   testSimplifyKeepsGapAtExcludedEndPoint");
+
+        List<Range<Integer>> inputs = CollectionFactory.list();
+        inputs.add( Range.create(0, true, 5, false));
+        inputs.add( Range.create(5, false, 10, true));
+
+        List<Range<Integer>> result = RangeUtils.simplify(inputs);
+        assertEquals(2, result.size());
+        
+        inputs.add( Range.create(10, false, 20, true));
+        inputs.add( Range.create(20, true, 30, true));
+        result = RangeUtils.simplify(inputs);
+        assertEquals(2, result.size());
+        assertEquals(new Range<Integer>(0, true, 5, false), result.get(0));
+        assertEquals(new Range<Integer>(5, false, 30, true), result.get(1));
+    }
+
     @Test
     public void testIntersection() {
         System.out.println("   testIntersection");
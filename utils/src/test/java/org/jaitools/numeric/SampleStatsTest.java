@@ -142,4 +142,153 @@ public class SampleStatsTest {
         assertTrue(Double.isNaN(SampleStats.variance(singleValue, true)));
     }
 
+    @Test
+    public void testQuantile() {
+        System.out.println("   quantile");
+        assertEquals(1.0, SampleStats.quantile(values, 0.0, true), TOL);
+        assertEquals(1.0, SampleStats.quantile(values, 0.05, true), TOL);
+        assertEquals(3.0, SampleStats.quantile(values, 0.25, true), TOL);
+        assertEquals(5.0, SampleStats.quantile(values, 0.5, true), TOL);
+        assertEquals(8.0, SampleStats.quantile(values, 0.75, true), TOL);
+        assertEquals(10.0, SampleStats.quantile(values, 0.95, true), TOL);
+        assertEquals(10.0, SampleStats.quantile(values, 1.0, true), TOL);
+    }
+
+    @Test
+    public void testQuantileSingleValue() {
+        System.out.println("   quantile with single value");
+        assertEquals(singleValue[0], SampleStats.quantile(singleValue, 0.95, true), TOL);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testQuantileInvalid() {
+        System.out.println("   quantile with invalid argument");
+        SampleStats.quantile(values, 1.5, true);
+    }
+
+    @Test
+    public void testCalculateMatchesSingleStatistics() {
+        System.out.println("   calculate all statistics in one pass");
+        Statistic[] stats = {
+            Statistic.MIN, Statistic.MAX, Statistic.MEAN, Statistic.MEDIAN,
+            Statistic.RANGE, Statistic.SDEV, Statistic.SUM, Statistic.VARIANCE,
+            Statistic.PERCENTILE_25, Statistic.PERCENTILE_95
+        };
+        double[] expected = {
+            SampleStats.min(values, true), SampleStats.max(values, true),
+            SampleStats.mean(values, true), SampleStats.median(values, true),
+            SampleStats.range(values, true), SampleStats.sdev(values, true),
+            SampleStats.sum(values, true), SampleStats.variance(values, true),
+            SampleStats.quantile(values, 0.25, true), SampleStats.quantile(values, 0.95, true)
+        };
+
+        double[] data = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = values[i];
+        }
+        double[] copy = data.clone();
+        double[] results = new double[stats.length];
+        double[] work = new double[data.length];
+
+        SampleStats.calculate(data, data.length, true, stats, results, work);
+        for (int i = 0; i < stats.length; i++) {
+            assertEquals(stats[i].toString(), expected[i], results[i], TOL);
+        }
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(copy[i], data[i], 0.0);
+        }
+
+        // without a work array the input may be reordered
+        SampleStats.calculate(data, data.length, true, stats, results, null);
+        for (int i = 0; i < stats.length; i++) {
+            assertEquals(stats[i].toString(), expected[i], results[i], TOL);
+        }
+    }
+
+    @Test
+    public void testCalculateUsesFirstNValues() {
+        System.out.println("   calculate with partly filled array");
+        double[] data = {3, 1, 2, 100, 200};
+        Statistic[] stats = {Statistic.MAX, Statistic.MEDIAN};
+        double[] results = new double[2];
+
+        SampleStats.calculate(data, 3, false, stats, results, null);
+        assertEquals(3.0, results[0], TOL);
+        assertEquals(2.0, results[1], TOL);
+    }
+
+    @Test
+    public void testCalculateNaN() {
+        System.out.println("   calculate with NaN values");
+        double[] data = {1, Double.NaN, 3};
+        Statistic[] stats = {Statistic.MIN, Statistic.MEAN};
+        double[] results = new double[2];
+
+        SampleStats.calculate(data, data.length, false, stats, results, null);
+        assertTrue(Double.isNaN(results[0]));
+        assertTrue(Double.isNaN(results[1]));
+
+        SampleStats.calculate(data, data.length, true, stats, results, null);
+        assertEquals(1.0, results[0], TOL);
+        assertEquals(2.0, results[1], TOL);
+    }
+
+    @Test
+    public void testCalculateMeanSameAsMeanMethod() {
+        System.out.println("   calculate mean same as mean method");
+        Double[] values = new Double[1000];
+        double[] data = new double[values.length];
+        for (int i = 0; i < values.length; i++) {
+            data[i] = values[i] = 1.0e6 + 0.1 * (i % 7);
+        }
+        Statistic[] stats = {Statistic.MEAN};
+        double[] results = new double[1];
+
+        SampleStats.calculate(data, data.length, true, stats, results, null);
+        assertEquals(SampleStats.mean(values, true), results[0], 0.0);
+    }
+
+    @Test
+    public void testCalculateSingleValue() {
+        System.out.println("   calculate with single value");
+        Statistic[] stats = {Statistic.MEAN, Statistic.SDEV};
+        double[] results = new double[2];
+
+        SampleStats.calculate(new double[] {42}, 1, true, stats, results, null);
+        assertEquals(42.0, results[0], TOL);
+        assertTrue(Double.isNaN(results[1]));
+    }
+
+    @Test
+    public void testCalculateModeAndDistinct() {
+        System.out.println("   calculate mode and number of distinct values");
+        Double[] boxed = {4.0, 1.0, 4.0, 2.0, 1.0, 7.0, Double.NaN};
+        double[] data = new double[boxed.length];
+        for (int i = 0; i < boxed.length; i++) {
+            data[i] = boxed[i];
+        }
+
+        Statistic[] stats = {Statistic.MODE, Statistic.DISTINCT, Statistic.MEDIAN};
+        double[] results = new double[stats.length];
+        SampleStats.calculate(data, data.length, true, stats, results, new double[data.length]);
+
+        assertEquals(SampleStats.mode(boxed, true), results[0], TOL);
+        assertEquals(4.0, results[1], TOL);
+        assertEquals(SampleStats.median(boxed, true), results[2], TOL);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCalculateUnsupportedStatistic() {
+        System.out.println("   calculate with unsupported statistic");
+        SampleStats.calculate(new double[] {1, 2}, 2, true,
+                new Statistic[] {Statistic.APPROX_MEDIAN}, new double[1], null);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testCalculateShortResults() {
+        System.out.println("   calculate with short results array");
+        SampleStats.calculate(new double[] {1, 2}, 2, true,
+                new Statistic[] {Statistic.MIN, Statistic.MAX}, new double[1], null);
+    }
+
 }
@@ -25,6 +25,7 @@
 
 package org.jaitools.numeric;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
@@ -321,4 +322,475 @@ public class StreamingSampleStatsTest {
 
         assertEquals(7, streamStats.getNumNoData(Statistic.SUM));
     }
+
+    @Test
+    public void testPrimitiveArrayMatchesBoxed() {
+        System.out.println("   testPrimitiveArrayMatchesBoxed");
+
+        Statistic[] stats = {
+            Statistic.MEAN, Statistic.SDEV, Statistic.MIN, Statistic.MAX, 
+            Statistic.SUM, Statistic.MEDIAN, Statistic.APPROX_MEDIAN
+        };
+
+        StreamingSampleStats boxed = new StreamingSampleStats();
+        boxed.setStatistics(stats);
+        boxed.addNoDataValue(5.0);
+
+        StreamingSampleStats primitive = new StreamingSampleStats();
+        primitive.setStatistics(stats);
+        primitive.addNoDataValue(5.0);
+
+        Random rand = new Random(42);
+        double[] values = new double[1000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 100 == 0 ? Double.NaN : rand.nextInt(20);
+            boxed.offer(Double.valueOf(values[i]));
+        }
+        primitive.offer(values);
+
+        for (Statistic stat : stats) {
+            assertEquals(stat.toString(),
+                    boxed.getStatisticValue(stat), primitive.getStatisticValue(stat), TOL);
+            assertEquals(boxed.getNumAccepted(stat), primitive.getNumAccepted(stat));
+            assertEquals(boxed.getNumOffered(stat), primitive.getNumOffered(stat));
+            assertEquals(boxed.getNumNaN(stat), primitive.getNumNaN(stat));
+            assertEquals(boxed.getNumNoData(stat), primitive.getNumNoData(stat));
+        }
+    }
+
+    @Test
+    public void testPrimitiveArrayPart() {
+        System.out.println("   testPrimitiveArrayPart");
+
+        StreamingSampleStats streamStats = new StreamingSampleStats();
+        streamStats.setStatistics(new Statistic[] {Statistic.SUM, Statistic.MEDIAN});
+
+        streamStats.offer(new double[] {100, 1, 2, 3, 100}, 1, 3);
+        assertEquals(6.0, streamStats.getStatisticValue(Statistic.SUM), TOL);
+        assertEquals(2.0, streamStats.getStatisticValue(Statistic.MEDIAN), TOL);
+        assertEquals(3, streamStats.getNumOffered(Statistic.SUM));
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testPrimitiveArrayInvalidPart() {
+        System.out.println("   testPrimitiveArrayInvalidPart");
+
+        StreamingSampleStats streamStats = new StreamingSampleStats();
+        streamStats.setStatistic(Statistic.SUM);
+        streamStats.offer(new double[3], 2, 2);
+    }
+
+    @Test
+    public void testNullValueCountedAsOffered() {
+        System.out.println("   testNullValueCountedAsOffered");
+
+        StreamingSampleStats streamStats = new StreamingSampleStats();
+        streamStats.setStatistics(new Statistic[] {Statistic.MEAN, Statistic.MEDIAN});
+
+        streamStats.offer(new Double[] {1.0, null, 3.0});
+        assertEquals(2.0, streamStats.getStatisticValue(Statistic.MEAN), TOL);
+        assertEquals(2.0, streamStats.getStatisticValue(Statistic.MEDIAN), TOL);
+        assertEquals(3, streamStats.getNumOffered(Statistic.MEDIAN));
+        assertEquals(2, streamStats.getNumAccepted(Statistic.MEDIAN));
+    }
+
+    @Test
+    public void testMergeMatchesSingleStream() {
+        System.out.println("   testMergeMatchesSingleStream");
+
+        Statistic[] stats = {
+            Statistic.MEAN, Statistic.SDEV, Statistic.VARIANCE, Statistic.MIN, 
+            Statistic.MAX, Statistic.RANGE, Statistic.SUM, Statistic.MEDIAN
+        };
+
+        StreamingSampleStats whole = new StreamingSampleStats();
+        whole.setStatistics(stats);
+        whole.addNoDataValue(0.0);
+
+        StreamingSampleStats merged = new StreamingSampleStats();
+        merged.setStatistics(stats);
+        merged.addNoDataValue(0.0);
+
+        // uneven parts, including an empty one
+        final int[] partSizes = {1, 0, 999, 37, 5000};
+        Random rand = new Random(42);
+        for (int size : partSizes) {
+            StreamingSampleStats part = new StreamingSampleStats();
+            part.setStatistics(stats);
+            part.addNoDataValue(0.0);
+
+            for (int i = 0; i < size; i++) {
+                double value = 1.0e6 + rand.nextInt(100) + rand.nextDouble();
+                if (i % 50 == 0) {
+                    value = rand.nextBoolean() ? 0.0 : Double.NaN;
+                }
+                whole.offer(value);
+                part.offer(value);
+            }
+
+            merged.merge(part);
+        }
+
+        for (Statistic stat : stats) {
+            assertEquals(stat.toString(),
+                    whole.getStatisticValue(stat), merged.getStatisticValue(stat), TOL);
+            assertEquals(whole.getNumOffered(stat), merged.getNumOffered(stat));
+            assertEquals(whole.getNumAccepted(stat), merged.getNumAccepted(stat));
+            assertEquals(whole.getNumNaN(stat), merged.getNumNaN(stat));
+            assertEquals(whole.getNumNoData(stat), merged.getNumNoData(stat));
+        }
+    }
+
+    @Test
+    public void testMergeApproxMedian() {
+        System.out.println("   testMergeApproxMedian");
+
+        StreamingSampleStats merged = new StreamingSampleStats();
+        merged.setStatistic(Statistic.APPROX_MEDIAN);
+
+        // parts of a shuffled sequence 1..N
+        final int N = 20001;
+        List<Double> values = CollectionFactory.list();
+        for (int i = 1; i <= N; i++) {
+            values.add((double) i);
+        }
+        Collections.shuffle(values, new Random(42));
+        
+        final int numParts = 7;
+        for (int k = 0; k < numParts; k++) {
+            StreamingSampleStats part = new StreamingSampleStats();
+            part.setStatistic(Statistic.APPROX_MEDIAN);
+            for (int i = k; i < N; i += numParts) {
+                part.offer(values.get(i));
+            }
+            merged.merge(part);
+        }
+
+        assertEquals(N, merged.getNumAccepted(Statistic.APPROX_MEDIAN));
+        double median = merged.getStatisticValue(Statistic.APPROX_MEDIAN);
+        assertEquals((N + 1) / 2, median, N * 0.05);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMergeDifferentStatistics() {
+        System.out.println("   testMergeDifferentStatistics");
+
+        StreamingSampleStats s1 = new StreamingSampleStats();
+        s1.setStatistic(Statistic.MEAN);
+        StreamingSampleStats s2 = new StreamingSampleStats();
+        s2.setStatistic(Statistic.SUM);
+        s1.merge(s2);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMergeDifferentRanges() {
+        System.out.println("   testMergeDifferentRanges");
+
+        StreamingSampleStats s1 = new StreamingSampleStats();
+        s1.setStatistic(Statistic.MEAN);
+        s1.addRange(Range.create(0.0, true, 1.0, true));
+        StreamingSampleStats s2 = new StreamingSampleStats();
+        s2.setStatistic(Statistic.MEAN);
+        s1.merge(s2);
+    }
+
+    @Test(expected=IllegalArgumentException.class)
+    public void testMergeProcessorsOfDifferentClass() {
+        System.out.println("   testMergeProcessorsOfDifferentClass");
+
+        new SumProcessor().merge(new ExtremaProcessor());
+    }
+
+    @Test
+    public void testMedianDenseIntegralValues() {
+        System.out.println("   testMedianDenseIntegralValues");
+
+        Random rand = new Random(42);
+        // byte-like values followed by a widening of the range to ushort
+        assertMedian(randomInts(rand, 10001, 0, 256));
+        assertMedian(concat(randomInts(rand, 1000, 200, 256), randomInts(rand, 999, -1000, 60000)));
+    }
+
+    @Test
+    public void testMedianSparseIntegralValues() {
+        System.out.println("   testMedianSparseIntegralValues");
+
+        Random rand = new Random(42);
+        assertMedian(randomInts(rand, 10000, -1000000, 1000000));
+        assertMedian(concat(randomInts(rand, 500, 0, 100), randomInts(rand, 501, 0, Integer.MAX_VALUE)));
+    }
+
+    @Test
+    public void testMedianIntegralThenFractionalValues() {
+        System.out.println("   testMedianIntegralThenFractionalValues");
+
+        Random rand = new Random(42);
+        double[] values = randomInts(rand, 2000, 0, 50);
+        values[1500] = 10.5;
+        assertMedian(values);
+
+        values = new double[3001];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rand.nextGaussian();
+        }
+        assertMedian(values);
+    }
+
+    @Test
+    public void testMergeMedianAcrossModes() {
+        System.out.println("   testMergeMedianAcrossModes");
+
+        Random rand = new Random(42);
+        double[][] parts = {
+            randomInts(rand, 1000, 0, 256),
+            randomInts(rand, 1001, -100000, 100000),
+            {0.25, 1.5, 2.75},
+            randomInts(rand, 10, 0, 10)
+        };
+
+        StreamingSampleStats merged = new StreamingSampleStats();
+        merged.setStatistic(Statistic.MEDIAN);
+        int n = 0;
+        for (double[] part : parts) {
+            StreamingSampleStats partStats = new StreamingSampleStats();
+            partStats.setStatistic(Statistic.MEDIAN);
+            partStats.offer(part);
+            merged.merge(partStats);
+            n += part.length;
+        }
+
+        double[] all = new double[n];
+        int k = 0;
+        for (double[] part : parts) {
+            System.arraycopy(part, 0, all, k, part.length);
+            k += part.length;
+        }
+        assertEquals(sortedMedian(all), merged.getStatisticValue(Statistic.MEDIAN), TOL);
+    }
+
+    private void assertMedian(double[] values) {
+        StreamingSampleStats streamStats = new StreamingSampleStats();
+        streamStats.setStatistic(Statistic.MEDIAN);
+        for (double value : values) {
+            streamStats.offer(value);
+        }
+        assertEquals(sortedMedian(values), streamStats.getStatisticValue(Statistic.MEDIAN), TOL);
+    }
+
+    private double sortedMedian(double[] values) {
+        double[] sorted = new double[values.length];
+        System.arraycopy(values, 0, sorted, 0, values.length);
+        Arrays.sort(sorted);
+        int n0 = sorted.length / 2;
+        return sorted.length % 2 == 1 ? sorted[n0] : (sorted[n0] + sorted[n0 - 1]) / 2;
+    }
+
+    private double[] randomInts(Random rand, int n, int min, int max) {
+        double[] values = new double[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = min + (long) (rand.nextDouble() * ((long) max - min));
+        }
+        return values;
+    }
+
+    private double[] concat(double[] a, double[] b) {
+        double[] c = new double[a.length + b.length];
+        System.arraycopy(a, 0, c, 0, a.length);
+        System.arraycopy(b, 0, c, a.length, b.length);
+        return c;
+    }
+
+    @Test
+    public void testPercentilesSmallSampleAreExact() {
+        System.out.println("   testPercentilesSmallSampleAreExact");
+
+        Statistic[] stats = {
+            Statistic.PERCENTILE_5, Statistic.PERCENTILE_25, 
+            Statistic.PERCENTILE_75, Statistic.PERCENTILE_95
+        };
+
+        StreamingSampleStats streamStats = new StreamingSampleStats();
+        streamStats.setStatistics(stats);
+
+        Random rand = new Random(42);
+        Double[] values = new Double[150];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = rand.nextGaussian();
+        }
+        streamStats.offer(values);
+
+        for (Statistic stat : stats) {
+            assertEquals(stat.toString(), 
+                    SampleStats.quantile(values, stat.getQuantile(), false),
+                    streamStats.getStatisticValue(stat), TOL);
+        }
+    }
+
+    @Test
+    public void testPercentilesErrorBound() {
+        System.out.println("   testPercentilesErrorBound");
+
+        Statistic[] stats = {
+            Statistic.PERCENTILE_5, Statistic.PERCENTILE_25, 
+            Statistic.PERCENTILE_75, Statistic.PERCENTILE_95
+        };
+
+        // sample is split between two samplers to exercise merging
+        StreamingSampleStats s1 = new StreamingSampleStats();
+        s1.setStatistics(stats);
+        StreamingSampleStats s2 = new StreamingSampleStats();
+        s2.setStatistics(stats);
+
+        final int N = 200000;
+        Random rand = new Random(42);
+        double[] values = new double[N];
+        for (int i = 0; i < N; i++) {
+            values[i] = rand.nextGaussian();
+            if (i % 3 == 0) {
+                s1.offer(values[i]);
+            } else {
+                s2.offer(values[i]);
+            }
+        }
+        s1.merge(s2);
+        Arrays.sort(values);
+
+        for (Statistic stat : stats) {
+            assertEquals(N, s1.getNumAccepted(stat));
+            double estimate = s1.getStatisticValue(stat);
+            int rank = Arrays.binarySearch(values, estimate) + 1;
+            assertTrue(rank > 0);
+            assertEquals(stat.toString(), stat.getQuantile(), (double) rank / N, 0.017);
+        }
+    }
+
+    @Test
+    public void testModeAndDistinct() {
+        System.out.println("   testModeAndDistinct");
+
+        StreamingSampleStats stats = new StreamingSampleStats();
+        stats.setStatistics(new Statistic[] {Statistic.MODE, Statistic.DISTINCT});
+        stats.addNoDataValue(0.0);
+
+        // classes 0 (no data) to 9, with class 3 most frequent
+        for (int i = 0; i < 1000; i++) {
+            stats.offer((double) (i % 10));
+            if (i % 4 == 0) {
+                stats.offer(3.0);
+            }
+        }
+
+        assertEquals(3.0, stats.getStatisticValue(Statistic.MODE), TOL);
+        assertEquals(9.0, stats.getStatisticValue(Statistic.DISTINCT), TOL);
+    }
+
+    @Test
+    public void testModeTieBreakMatchesSampleStats() {
+        System.out.println("   testModeTieBreakMatchesSampleStats");
+
+        Double[] values = {5.0, 1.0, 2.0, 5.0, 1.0, 2.0, 8.0, 8.0, 9.0};
+        StreamingSampleStats stats = new StreamingSampleStats();
+        stats.setStatistic(Statistic.MODE);
+        stats.offer(values);
+
+        assertEquals(SampleStats.mode(values, true), stats.getStatisticValue(Statistic.MODE), TOL);
+        
+        // break the tie
+        stats.offer(2.0);
+        values = new Double[] {5.0, 1.0, 2.0, 5.0, 1.0, 2.0, 8.0, 8.0, 9.0, 2.0};
+        assertEquals(2.0, stats.getStatisticValue(Statistic.MODE), TOL);
+        assertEquals(SampleStats.mode(values, true), stats.getStatisticValue(Statistic.MODE), TOL);
+    }
+
+    @Test
+    public void testModeAndDistinctBeyondExactLimit() {
+        System.out.println("   testModeAndDistinctBeyondExactLimit");
+
+        final int N = 20000;
+        FrequencyProcessor p1 = new FrequencyProcessor(100);
+        FrequencyProcessor p2 = new FrequencyProcessor(100);
+
+        for (int i = 0; i < N; i++) {
+            p1.offer((double) i);
+            if (i % 20 == 0) {
+                p2.offer(-1.5);
+            }
+        }
+        p2.offer(-2.0);
+
+        assertFalse(p1.isExact());
+        assertTrue(p2.isExact());
+        assertEquals(N, p1.get(Statistic.DISTINCT), 0.03 * N);
+        
+        p1.merge(p2);
+        assertEquals(N + N / 20 + 1, p1.getNumAccepted());
+        assertEquals(-1.5, p1.get(Statistic.MODE), TOL);
+        assertEquals(N + 2, p1.get(Statistic.DISTINCT), 0.03 * N);
+    }
+
+    @Test
+    public void testModeBeyondExactLimitDistinctValues() {
+        System.out.println("   testModeBeyondExactLimitDistinctValues");
+
+        // a stream of distinct values should prune the heavy-hitter counters
+        // in batches of at least NUM_COUNTERS values, without growing the table
+        final int N = 500000;
+        final int maxCounters = 2 * FrequencyProcessor.NUM_COUNTERS;
+        FrequencyProcessor p = new FrequencyProcessor(100);
+        int capacity = -1;
+        int numPrunings = 0;
+        int prevCounts = 0;
+        for (int i = 0; i < N; i++) {
+            p.offer(i % 10 == 0 ? -1.5 : i);
+
+            int numCounts = p.getNumCounts();
+            if (!p.isExact()) {
+                if (capacity < 0) {
+                    capacity = p.getCountsCapacity();
+                }
+                assertTrue(numCounts < maxCounters);
+                assertEquals(capacity, p.getCountsCapacity());
+                if (numCounts < prevCounts) {
+                    assertTrue(numCounts <= FrequencyProcessor.NUM_COUNTERS);
+                    numPrunings++ ;
+                }
+            }
+            prevCounts = numCounts;
+        }
+
+        assertFalse(p.isExact());
+        assertTrue(numPrunings > 0);
+        assertTrue("pruned " + numPrunings + " times",
+                numPrunings <= N / FrequencyProcessor.NUM_COUNTERS);
+        assertEquals(-1.5, p.get(Statistic.MODE), TOL);
+        assertEquals(N - N / 10 + 1, p.get(Statistic.DISTINCT), 0.03 * N);
+    }
+
+    @Test
+    public void testMergeModeAndDistinct() {
+        System.out.println("   testMergeModeAndDistinct");
+
+        Statistic[] stats = {Statistic.MODE, Statistic.DISTINCT};
+        StreamingSampleStats whole = new StreamingSampleStats();
+        whole.setStatistics(stats);
+        StreamingSampleStats merged = new StreamingSampleStats();
+        merged.setStatistics(stats);
+
+        Random rand = new Random(42);
+        for (int part = 0; part < 4; part++) {
+            StreamingSampleStats partStats = new StreamingSampleStats();
+            partStats.setStatistics(stats);
+            for (int i = 0; i < 1000; i++) {
+                double value = rand.nextInt(50) + part * 10;
+                whole.offer(value);
+                partStats.offer(value);
+            }
+            merged.merge(partStats);
+        }
+
+        for (Statistic stat : stats) {
+            assertEquals(stat.toString(),
+                    whole.getStatisticValue(stat), merged.getStatisticValue(stat), TOL);
+        }
+    }
 }